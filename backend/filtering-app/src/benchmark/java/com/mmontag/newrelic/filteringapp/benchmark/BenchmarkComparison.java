@@ -0,0 +1,174 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH JSON result files (as written with {@code -rf json}), a baseline and a candidate, and prints a Markdown table
+ * of the score and allocation deltas per benchmark and parameter combination, for pasting into a PR.
+ * <pre/>
+ * A score change is only flagged (as a regression or an improvement) when it's larger than both runs' error margins combined, and
+ * than the minimum change given (5% by default); allocations, which are far less noisy, just by the minimum change. Allocations
+ * are the gc profiler's {@code gc.alloc.rate.norm}, in bytes per operation, when both runs have it.
+ * <pre/>
+ * Usage: {@code BenchmarkComparison <baseline.json> <candidate.json> [minChangePercent]}. Exits with status 1 if any benchmark
+ * regressed, so that it can gate a build.
+ */
+public final class BenchmarkComparison {
+
+    private static final double DEFAULT_MIN_CHANGE_PERCENT = 5;
+
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    private BenchmarkComparison() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <candidate.json> [minChangePercent]");
+            System.exit(2);
+        }
+
+        var baseline = read(new File(args[0]));
+        var candidate = read(new File(args[1]));
+        var minChange = args.length == 3 ? Double.parseDouble(args[2]) / 100 : DEFAULT_MIN_CHANGE_PERCENT / 100;
+        var regressions = 0;
+
+        System.out.println("| Benchmark | Params | Baseline | Candidate | Change | Alloc/op baseline | Alloc/op candidate | Alloc change | |");
+        System.out.println("|---|---|---:|---:|---:|---:|---:|---:|---|");
+
+        for (var entry : candidate.entrySet()) {
+            var after = entry.getValue();
+            var before = baseline.get(entry.getKey());
+
+            if (before == null) {
+                System.out.printf("| %s | %s | | %s | | | %s | | new |%n", after.benchmark, after.params, after.formatScore(), formatBytes(after.allocation));
+                continue;
+            }
+
+            var verdict = verdict(before, after, minChange);
+
+            if (verdict.equals("regression")) {
+                ++regressions;
+            }
+
+            System.out.printf("| %s | %s | %s | %s | %s | %s | %s | %s | %s |%n", after.benchmark, after.params, before.formatScore(), after.formatScore(),
+                formatChange(before.score, after.score), formatBytes(before.allocation), formatBytes(after.allocation),
+                formatChange(before.allocation, after.allocation), verdict);
+        }
+
+        for (var entry : baseline.entrySet()) {
+            if (!candidate.containsKey(entry.getKey())) {
+                var before = entry.getValue();
+                System.out.printf("| %s | %s | %s | | | %s | | | removed |%n", before.benchmark, before.params, before.formatScore(), formatBytes(before.allocation));
+            }
+        }
+
+        System.out.printf("%n%d regression(s), at a minimum change of %.0f%%.%n", regressions, minChange * 100);
+
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    // A result is worse when its score moves the wrong way for its mode (up for times, down for throughput), beyond the noise, or
+    // when it allocates more.
+    private static String verdict(Result before, Result after, double minChange) {
+        var scoreChange = relativeChange(before.score, after.score);
+        var significant = Math.abs(after.score - before.score) > before.error + after.error && Math.abs(scoreChange) > minChange;
+        var faster = before.higherIsBetter() ? scoreChange > 0 : scoreChange < 0;
+
+        if (significant && !faster) {
+            return "regression";
+        }
+
+        var allocationChange = relativeChange(before.allocation, after.allocation);
+
+        if (allocationChange > minChange) {
+            return "regression";
+        } else if (significant || allocationChange < -minChange) {
+            return "improvement";
+        }
+
+        return "";
+    }
+
+    // Results by benchmark and parameters, in a stable order.
+    private static Map<String, Result> read(File file) throws IOException {
+        var results = new TreeMap<String, Result>();
+
+        for (var node : new ObjectMapper().readTree(file)) {
+            var result = new Result(node);
+            results.put(result.benchmark + " " + result.params, result);
+        }
+
+        return results;
+    }
+
+    // NaN (shown blank) when either side is missing.
+    private static double relativeChange(double before, double after) {
+        return (after - before) / before;
+    }
+
+    private static String formatChange(double before, double after) {
+        var change = relativeChange(before, after);
+        return Double.isNaN(change) || Double.isInfinite(change) ? "" : String.format("%+.1f%%", change * 100);
+    }
+
+    private static String formatBytes(double bytes) {
+        return Double.isNaN(bytes) ? "" : String.format("%.0f B", bytes);
+    }
+
+    // One benchmark run with one combination of parameters.
+    private static final class Result {
+
+        private final String benchmark;
+
+        private final String params;
+
+        private final String mode;
+
+        private final double score;
+
+        private final double error;
+
+        private final String unit;
+
+        private final double allocation;
+
+        private Result(JsonNode node) {
+            var paramValues = new LinkedHashMap<String, String>();
+            node.path("params").fields().forEachRemaining(param -> paramValues.put(param.getKey(), param.getValue().asText()));
+
+            var name = node.path("benchmark").asText();
+            this.benchmark = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+            this.params = paramValues.toString().replaceAll("[{}]", "");
+            this.mode = node.path("mode").asText();
+            this.score = node.path("primaryMetric").path("score").asDouble(Double.NaN);
+            // NaN for single measurements, which have no error margin.
+            var scoreError = node.path("primaryMetric").path("scoreError").asDouble(Double.NaN);
+            this.error = Double.isNaN(scoreError) ? 0 : scoreError;
+            this.unit = node.path("primaryMetric").path("scoreUnit").asText();
+            this.allocation = allocation(node.path("secondaryMetrics"));
+        }
+
+        // Older JMH versions prefix profiler metrics with a middle dot.
+        private static double allocation(JsonNode secondaryMetrics) {
+            var metric = secondaryMetrics.has(ALLOCATION_METRIC) ? secondaryMetrics.path(ALLOCATION_METRIC) : secondaryMetrics.path("\u00b7" + ALLOCATION_METRIC);
+            return metric.path("score").asDouble(Double.NaN);
+        }
+
+        private boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+
+        private String formatScore() {
+            return String.format("%.3f +/- %.3f %s", score, error, unit);
+        }
+    }
+}
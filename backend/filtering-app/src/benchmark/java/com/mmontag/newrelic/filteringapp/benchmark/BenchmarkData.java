@@ -0,0 +1,103 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * Generates benchmark datasets shaped like {@code data.txt}, by randomly recombining its first, last and company names.
+ */
+public final class BenchmarkData {
+
+    private static final long SEED = 42L;
+
+    private static final int INSERT_BATCH_SIZE = 10_000;
+
+    private final List<String> firstNames = new ArrayList<>();
+
+    private final List<String> lastNames = new ArrayList<>();
+
+    private final List<String> companyNames = new ArrayList<>();
+
+    public BenchmarkData() throws IOException {
+        var resource = new ClassPathResource("data.txt");
+
+        try (var reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                var first_last_company = line.split("__");
+                firstNames.add(first_last_company[0]);
+                lastNames.add(first_last_company[1]);
+                companyNames.add(first_last_company[2]);
+            }
+        }
+    }
+
+    /**
+     * Generates {@code rowCount} detached customers. The same row count always produces the same data.
+     */
+    public List<Customer> customers(int rowCount) {
+        return customers(rowCount, 0);
+    }
+
+    /**
+     * Generates {@code rowCount} detached customers, each of whose names is null with probability {@code nullDensity}. The same
+     * row count and density always produce the same data (and a density of 0, that of {@link #customers(int)}).
+     */
+    public List<Customer> customers(int rowCount, double nullDensity) {
+        var random = new Random(SEED);
+        var output = new ArrayList<Customer>(rowCount);
+
+        for (int i = 0; i < rowCount; ++i) {
+            output.add(new Customer(pick(firstNames, random, nullDensity), pick(lastNames, random, nullDensity), pick(companyNames, random, nullDensity)));
+        }
+
+        return output;
+    }
+
+    /**
+     * Replaces the contents of the customers table with {@code rowCount} generated rows, using JDBC batches rather than JPA so
+     * that multi-million row setups stay fast.
+     */
+    public void replaceTable(JdbcTemplate jdbcTemplate, int rowCount) {
+        replaceTable(jdbcTemplate, rowCount, 0);
+    }
+
+    /**
+     * Like {@link #replaceTable(JdbcTemplate, int)}, with names null with probability {@code nullDensity}.
+     */
+    public void replaceTable(JdbcTemplate jdbcTemplate, int rowCount, double nullDensity) {
+        jdbcTemplate.execute("DELETE FROM customers");
+
+        var rows = customers(rowCount, nullDensity);
+        var batch = new ArrayList<Object[]>(INSERT_BATCH_SIZE);
+
+        for (int i = 0; i < rows.size(); ++i) {
+            var customer = rows.get(i);
+            batch.add(new Object[] { i + 1L, customer.getFirstName(), customer.getLastName(), customer.getCompanyName() });
+
+            if (batch.size() == INSERT_BATCH_SIZE || i == rows.size() - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO customers (id, first_name, last_name, company_name) VALUES (?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+    }
+
+    // Draws nothing extra for a density of 0, so that the data without nulls stays the same.
+    private static String pick(List<String> values, Random random, double nullDensity) {
+        if (nullDensity > 0 && random.nextDouble() < nullDensity) {
+            return null;
+        }
+
+        return values.get(random.nextInt(values.size()));
+    }
+}
@@ -0,0 +1,87 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.SortingService;
+import com.mmontag.newrelic.filteringapp.services.SortingService.NullOrderingBehavior;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+
+/**
+ * {@link SortingService#sort} under a mix of requests, as the controller sees them: every invocation sorts by the next field,
+ * direction and null-ordering combination in turn, over both key-extractor and comparator fields. Small inputs expose the
+ * per-request cost of getting a comparator; large ones show how well the comparator chains inline once their call sites have
+ * seen every combination.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class ComparatorCompositionBenchmark {
+
+    private static final String[] KEY_FIELDS = { "firstName", "lastName", "companyName" };
+
+    private static final String[] COMPARATOR_FIELDS = { "firstNameByComparator", "lastNameByComparator", "companyNameByComparator" };
+
+    private static final NullOrderingBehavior[] NULL_BEHAVIORS = { NullOrderingBehavior.NULLS_FIRST, NullOrderingBehavior.NULLS_LAST };
+
+    @Param({ "50", "10000" })
+    int rowCount;
+
+    List<Customer> input;
+
+    SortingService<Customer> sortingService;
+
+    int invocation;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        input = new BenchmarkData().customers(rowCount);
+
+        sortingService = new SortingService<>();
+        sortingService.registerField("firstName", (Customer c) -> c.getFirstName().toUpperCase());
+        sortingService.registerField("lastName", (Customer c) -> c.getLastName().toUpperCase());
+        sortingService.registerField("companyName", (Customer c) -> c.getCompanyName().toUpperCase());
+        sortingService.registerField("firstNameByComparator", Comparator.comparing((Customer c) -> c.getFirstName().toUpperCase()));
+        sortingService.registerField("lastNameByComparator", Comparator.comparing((Customer c) -> c.getLastName().toUpperCase()));
+        sortingService.registerField("companyNameByComparator", Comparator.comparing((Customer c) -> c.getCompanyName().toUpperCase()));
+    }
+
+    @Benchmark
+    public List<Customer> keyFields() throws SortingException {
+        return sortNext(KEY_FIELDS);
+    }
+
+    @Benchmark
+    public List<Customer> comparatorFields() throws SortingException {
+        return sortNext(COMPARATOR_FIELDS);
+    }
+
+    private List<Customer> sortNext(String[] fields) throws SortingException {
+        var i = invocation++;
+        var field = fields[i % fields.length];
+        var sortDirection = SortDirection.values()[(i / fields.length) % 2];
+        var nullBehavior = NULL_BEHAVIORS[(i / (2 * fields.length)) % 2];
+
+        return sortingService.sort(new ArrayList<>(input), field, sortDirection, nullBehavior);
+    }
+}
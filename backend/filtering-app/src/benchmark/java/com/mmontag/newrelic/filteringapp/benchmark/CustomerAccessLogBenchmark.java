@@ -0,0 +1,107 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mmontag.newrelic.filteringapp.services.CustomerAccessLog;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Request-thread cost of logging a /customers request, from several request threads at once: the synchronous, formatted
+ * {@code log.info} the controller used to make, against buffering an entry for the {@link CustomerAccessLog}. Logs go through
+ * Spring Boot's console pattern to a discarding stream, so I/O isn't counted, only formatting, encoding and the appender's lock.
+ * <pre/>
+ * Requests are logged far faster than any real load here, so the access log's buffer fills up; the share of entries it dropped is
+ * printed after each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Threads(4)
+@Fork(1)
+public class CustomerAccessLogBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger("com.mmontag.newrelic.filteringapp.services.controllers.customer.CustomerController");
+
+    @Param({ "1.0", "0.1" })
+    double sampleRate;
+
+    SimpleMeterRegistry meterRegistry;
+
+    CustomerAccessLog accessLog;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        var context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+
+        var encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} %5p %pid --- [%15.15t] %-40.40logger{39} : %m%n");
+        encoder.start();
+
+        var appender = new OutputStreamAppender<ILoggingEvent>();
+        appender.setContext(context);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(OutputStream.nullOutputStream());
+        appender.start();
+
+        var root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(ch.qos.logback.classic.Level.INFO);
+        root.addAppender(appender);
+
+        meterRegistry = new SimpleMeterRegistry();
+        accessLog = new CustomerAccessLog(true, sampleRate, 8192, 256, meterRegistry);
+        invoke(accessLog, "start");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        invoke(accessLog, "stop");
+
+        var logged = meterRegistry.get("customer.access.log.entries").tag("result", "logged").counter().count();
+        var dropped = meterRegistry.get("customer.access.log.entries").tag("result", "dropped").counter().count();
+        System.out.printf("%naccess log: %.0f logged, %.0f dropped (%.1f%%)%n", logged, dropped, 100 * dropped / Math.max(1, logged + dropped));
+    }
+
+    @Benchmark
+    public void synchronousInfo() {
+        log.info("GET -> /customers (params: [limit={}, sortField={}, sortDirection={}, cursor={}, company={}, filter={}])", 50, "lastName", "desc", null, "Wayback", null);
+    }
+
+    @Benchmark
+    public void accessLog() {
+        accessLog.record("GET", "/customers", "limit=50&sortBy=lastName&sortDirection=desc&company=Wayback", 200, 1_234_567, 50);
+    }
+
+    // The lifecycle methods are package-private, for Spring.
+    private static void invoke(CustomerAccessLog accessLog, String method) throws Exception {
+        var lifecycle = CustomerAccessLog.class.getDeclaredMethod(method);
+        lifecycle.setAccessible(true);
+        lifecycle.invoke(accessLog);
+    }
+}
@@ -0,0 +1,132 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.CustomerAutocompleteIndex;
+import com.mmontag.newrelic.filteringapp.services.CustomerReadModelLoader;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
+import com.mmontag.newrelic.filteringapp.services.controllers.customer.CustomerSortParser;
+
+/**
+ * Per-keystroke latency of {@link CustomerAutocompleteIndex#complete}, cycling through the 1-5 character prefixes of real names as
+ * they'd be typed, in id order or sorted by lastName. The index is built straight from generated customers rather than from the
+ * database, so that tens of millions of rows fit in the heap; its size is printed once it's built.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms3g", "-Xmx3g" })
+public class CustomerAutocompleteBenchmark {
+
+    private static final int TYPED_NAMES = 200;
+
+    private static final int MAX_PREFIX_LENGTH = 5;
+
+    @Param({ "1000000", "10000000" })
+    int rowCount;
+
+    @Param({ "", "lastName" })
+    String sortBy;
+
+    @Param({ "10" })
+    int limit;
+
+    ConfigurableApplicationContext context;
+
+    CustomerAutocompleteIndex index;
+
+    List<SortSpec> sortSpecs;
+
+    String[] prefixes;
+
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(FilteringAppApplication.class)
+            .web(WebApplicationType.NONE)
+            .properties("logging.level.root=WARN", "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_ON_EXIT=FALSE")
+            // As arguments rather than (default) properties, so that they override application.properties. Loads the seed data
+            // synchronously, so that its rebuild of the index can't race with the one below. The index is the only read model, so
+            // that rebuilding them builds just the index (and its ordinals).
+            .run("--db-load-util.async=false", "--customer-sorted-views.fields=", "--customer-search-index.enabled=false",
+                "--customer-company-dictionary.enabled=false", "--customer-filter-index.enabled=false", "--customer-column-store.enabled=false");
+
+        var generated = new BenchmarkData().customers(rowCount);
+        prefixes = typedPrefixes(generated);
+
+        index = context.getBean(CustomerAutocompleteIndex.class);
+        context.getBean(CustomerReadModelLoader.class).rebuild(new Iterator<>() {
+
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < generated.size();
+            }
+
+            @Override
+            public Customer next() {
+                var customer = generated.set(i, null);
+                return new Customer(++i, customer.getFirstName(), customer.getLastName(), customer.getCompanyName());
+            }
+        });
+
+        sortSpecs = context.getBean(CustomerSortParser.class).parse(sortBy.isEmpty() ? null : sortBy, null);
+        System.out.printf("%nautocomplete index: %d customers, %d MB (%.1f bytes per name)%n", rowCount, index.memoryBytes() >> 20, index.memoryBytes() / (3.0 * rowCount));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Customer> keystroke() throws SortingException {
+        next = (next + 1) % prefixes.length;
+        return index.complete(prefixes[next], sortSpecs, limit);
+    }
+
+    // Every prefix of a random sample of first and last names, in the order they'd be typed.
+    private static String[] typedPrefixes(List<Customer> customers) {
+        var random = new Random(7L);
+        var output = new ArrayList<String>();
+
+        for (int i = 0; i < TYPED_NAMES; ++i) {
+            var customer = customers.get(random.nextInt(customers.size()));
+            var name = i % 2 == 0 ? customer.getFirstName() : customer.getLastName();
+
+            for (int length = 1; length <= Math.min(MAX_PREFIX_LENGTH, name.length()); ++length) {
+                output.add(name.substring(0, length));
+            }
+        }
+
+        return output.toArray(new String[0]);
+    }
+}
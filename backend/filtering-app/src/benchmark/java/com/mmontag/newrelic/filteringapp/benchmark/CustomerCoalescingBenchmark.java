@@ -0,0 +1,186 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bursts of duplicate requests, with and without request coalescing ({@code coalescing}): each iteration sends {@value #REQUESTS}
+ * name searches ({@code GET /customers/search/{needle}?limit=50}), keeping {@value #CONCURRENCY} of them in flight, where each
+ * distinct needle is requested {@code duplication} times in a row (as a type-ahead fanning out would). The query cache and search
+ * index are disabled, so that every executed request scans the customers table. The score is the time to complete all
+ * requests; secondary results are:
+ * <ul>
+ * <li>{@code requestsPerSecond}, the throughput.</li>
+ * <li>{@code p99Millis}, the 99th percentile latency.</li>
+ * <li>{@code executedRequests}, the requests which actually ran (rather than sharing the response of one in flight), i.e. the
+ * database load.</li>
+ * <li>{@code errors}, the requests which failed or didn't get a 200.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class CustomerCoalescingBenchmark {
+
+    private static final int REQUESTS = 2_000;
+
+    private static final int CONCURRENCY = 64;
+
+    private static final int PAGE_SIZE = 50;
+
+    private static final int NEEDLE_LENGTH = 3;
+
+    @Param({ "10000" })
+    int rowCount;
+
+    @Param({ "1", "8", "32" })
+    int duplication;
+
+    @Param({ "false", "true" })
+    boolean coalescing;
+
+    ConfigurableApplicationContext context;
+
+    MeterRegistry meterRegistry;
+
+    HttpClient client;
+
+    List<URI> uris;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Load {
+
+        public double requestsPerSecond;
+
+        public double p99Millis;
+
+        public double executedRequests;
+
+        public double errors;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requestsPerSecond = 0;
+            p99Millis = 0;
+            executedRequests = 0;
+            errors = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(FilteringAppApplication.class)
+            .web(WebApplicationType.SERVLET)
+            .properties("logging.level.root=WARN")
+            // As arguments rather than (default) properties, so that they override application.properties. H2 re-serves results of
+            // repeated identical queries against unchanged tables; turn that off so each executed request is measured.
+            .run("--server.port=0", "--db-load-util.async=false", "--customer-query-cache.enabled=false", "--customer-sorted-views.fields=",
+                "--customer-search-index.enabled=false", "--customer-company-dictionary.enabled=false", "--customer-filter-index.enabled=false",
+                "--customer-request-coalescer.enabled=" + coalescing, "--spring.datasource.url=jdbc:h2:mem:coalescing;QUERY_CACHE_SIZE=0;DB_CLOSE_DELAY=-1");
+
+        var data = new BenchmarkData();
+        data.replaceTable(context.getBean(JdbcTemplate.class), rowCount);
+        meterRegistry = context.getBean(MeterRegistry.class);
+
+        var base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/customers/search/";
+        var needles = data.customers(rowCount).stream()
+            .map(Customer::getLastName)
+            .filter(name -> name.length() >= NEEDLE_LENGTH && name.chars().limit(NEEDLE_LENGTH).allMatch(Character::isLetter))
+            .map(name -> name.substring(0, NEEDLE_LENGTH).toLowerCase())
+            .distinct()
+            .collect(Collectors.toList());
+
+        uris = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; ++i) {
+            uris.add(URI.create(base + needles.get((i / duplication) % needles.size()) + "?limit=" + PAGE_SIZE));
+        }
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int load(Load load) throws InterruptedException {
+        var inFlight = new Semaphore(CONCURRENCY);
+        var latencies = new long[REQUESTS];
+        var errors = new AtomicInteger();
+        var executedBefore = executedRequests();
+        var start = System.nanoTime();
+
+        for (int i = 0; i < REQUESTS; ++i) {
+            inFlight.acquire();
+
+            var request = i;
+            var sent = System.nanoTime();
+
+            client.sendAsync(HttpRequest.newBuilder(uris.get(i)).build(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, e) -> {
+                    latencies[request] = System.nanoTime() - sent;
+
+                    if (e != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+
+                    inFlight.release();
+                });
+        }
+
+        inFlight.acquire(CONCURRENCY);
+
+        var elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+
+        load.requestsPerSecond = REQUESTS / (elapsed / 1e9);
+        load.p99Millis = latencies[(int) Math.ceil(0.99 * REQUESTS) - 1] / 1e6;
+        // Without coalescing, every request runs.
+        load.executedRequests = coalescing ? executedRequests() - executedBefore : REQUESTS;
+        load.errors = errors.get();
+
+        return errors.get();
+    }
+
+    private double executedRequests() {
+        return meterRegistry.get("customer.request.coalescer.requests").tag("result", "executed").counter().count();
+    }
+}
@@ -0,0 +1,233 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * Request handling on Tomcat's platform thread pool ({@code threads=platform}) against one virtual thread per request
+ * ({@code threads=virtual}, i.e. {@code spring.threads.virtual.enabled=true}), with {@code clients} concurrent clients: each iteration
+ * sends {@value #REQUESTS} name searches ({@code GET /customers/search/{needle}?limit=20}, each a search index lookup followed by a
+ * JDBC query for the matching rows), keeping {@code clients} of them in flight at all times. The query cache is disabled, so that
+ * every request reaches the database. The score is the time to complete all requests; secondary results are:
+ * <ul>
+ * <li>{@code requestsPerSecond}, the throughput.</li>
+ * <li>{@code p50Millis}, {@code p99Millis} and {@code p999Millis}, latency percentiles (from sending a request to having read
+ * its whole response).</li>
+ * <li>{@code errors}, the requests which failed or didn't get a 200.</li>
+ * </ul>
+ * Ten thousand connections on each side don't fit in one process's file descriptor limit, so the server runs in a JVM of its own,
+ * started with the benchmark's own java.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 2)
+@Fork(value = 1, jvmArgs = { "-Xms1g", "-Xmx1g" })
+public class CustomerConcurrencyBenchmark {
+
+    private static final int REQUESTS = 20_000;
+
+    private static final int PAGE_SIZE = 20;
+
+    // Short enough to match plenty of names, so that every search runs a JDBC query for a full page.
+    private static final int NEEDLE_LENGTH = 3;
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(5);
+
+    @Param({ "100000" })
+    int rowCount;
+
+    @Param({ "platform", "virtual" })
+    String threads;
+
+    @Param({ "10000" })
+    int clients;
+
+    Process server;
+
+    Path seedFile;
+
+    Path serverLog;
+
+    HttpClient client;
+
+    List<URI> uris;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Load {
+
+        public double requestsPerSecond;
+
+        public double p50Millis;
+
+        public double p99Millis;
+
+        public double p999Millis;
+
+        public double errors;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requestsPerSecond = 0;
+            p50Millis = 0;
+            p99Millis = 0;
+            p999Millis = 0;
+            errors = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        var customers = new BenchmarkData().customers(rowCount);
+
+        seedFile = Files.createTempFile("customers", ".txt");
+        Files.write(seedFile, customers.stream()
+            .map(c -> c.getFirstName() + "__" + c.getLastName() + "__" + c.getCompanyName())
+            .collect(Collectors.toList()), StandardCharsets.UTF_8);
+
+        int port;
+        try (var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        serverLog = Files.createTempFile("server", ".log");
+        server = new ProcessBuilder(ProcessHandle.current().info().command().orElse("java"),
+                "-Xms2g", "-Xmx2g", "-Dspring.devtools.restart.enabled=false", "-cp", System.getProperty("java.class.path"), FilteringAppApplication.class.getName(),
+                "--server.port=" + port, "--logging.level.root=WARN",
+                "--spring.threads.virtual.enabled=" + "virtual".equals(threads), "--customer-query-cache.enabled=false",
+                // Loaded before the server reports ready, so that the search index is built by the time requests arrive.
+                "--db-load-util.source=file:" + seedFile, "--db-load-util.async=false",
+                "--server.tomcat.max-connections=" + (clients + 1_000), "--server.tomcat.accept-count=" + clients)
+            .redirectErrorStream(true)
+            .redirectOutput(serverLog.toFile())
+            .start();
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(30)).build();
+
+        try {
+            awaitReadiness(URI.create("http://localhost:" + port + "/actuator/health/readiness"));
+        } catch (Exception e) {
+            tearDown();
+            throw e;
+        }
+
+        var base = "http://localhost:" + port + "/customers/search/";
+        uris = customers.stream()
+            .map(Customer::getLastName)
+            .filter(name -> name.length() >= NEEDLE_LENGTH)
+            .map(name -> name.substring(0, NEEDLE_LENGTH).toLowerCase())
+            .distinct()
+            .filter(needle -> needle.chars().allMatch(Character::isLetter))
+            .map(needle -> URI.create(base + needle + "?limit=" + PAGE_SIZE))
+            .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.destroy();
+        server.waitFor(30, TimeUnit.SECONDS);
+        Files.deleteIfExists(seedFile);
+        Files.deleteIfExists(serverLog);
+    }
+
+    @Benchmark
+    public int load(Load load) throws InterruptedException {
+        var inFlight = new Semaphore(clients);
+        var latencies = new long[REQUESTS];
+        var errors = new AtomicInteger();
+        var start = System.nanoTime();
+
+        for (int i = 0; i < REQUESTS; ++i) {
+            inFlight.acquire();
+
+            var request = i;
+            var sent = System.nanoTime();
+
+            client.sendAsync(HttpRequest.newBuilder(uris.get(i % uris.size())).build(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, e) -> {
+                    latencies[request] = System.nanoTime() - sent;
+
+                    if (e != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+
+                    inFlight.release();
+                });
+        }
+
+        inFlight.acquire(clients);
+
+        var elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+
+        load.requestsPerSecond = REQUESTS / (elapsed / 1e9);
+        load.p50Millis = percentile(latencies, 0.5);
+        load.p99Millis = percentile(latencies, 0.99);
+        load.p999Millis = percentile(latencies, 0.999);
+        load.errors = errors.get();
+
+        return errors.get();
+    }
+
+    // Polls the readiness probe, which only reports UP once the customers have been loaded (and indexed).
+    private void awaitReadiness(URI readiness) throws IOException, InterruptedException {
+        var deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+
+        while (System.nanoTime() < deadline) {
+            if (!server.isAlive()) {
+                throw new IllegalStateException("Server exited with " + server.exitValue() + ":\n" + Files.readString(serverLog));
+            }
+
+            try {
+                if (client.send(HttpRequest.newBuilder(readiness).build(), HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet.
+            }
+
+            Thread.sleep(250);
+        }
+
+        throw new IllegalStateException("Server wasn't ready after " + STARTUP_TIMEOUT + ":\n" + Files.readString(serverLog));
+    }
+
+    private static double percentile(long[] sortedNanos, double fraction) {
+        return sortedNanos[(int) Math.ceil(fraction * sortedNanos.length) - 1] / 1e6;
+    }
+}
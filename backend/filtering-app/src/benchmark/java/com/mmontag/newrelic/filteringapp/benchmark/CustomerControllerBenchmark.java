@@ -0,0 +1,110 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+import com.mmontag.newrelic.filteringapp.events.CustomerDataLoadedEvent;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.controllers.customer.CustomerController;
+
+/**
+ * Regression suite for the {@link CustomerController} hot paths, as configured by default (indexes, sorted views and all), but
+ * with the response cache off so that every call does the work:
+ * <ul>
+ * <li>{@code sortedPage}, the first page of {@code GET /customers?sortBy=..&sortDirection=..}.</li>
+ * <li>{@code filteredPage}, the same, restricted by a filter matching about one customer in ten: the matches are sorted in memory
+ * (top-K), then fetched.</li>
+ * <li>{@code search}, {@code GET /customers/search/{needle}}: the search index lookup, then the fetch of the matches.</li>
+ * </ul>
+ * Across dataset size, sort field, direction and the share of null names. Run with the gc profiler (the profile's default) to
+ * also get allocations per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms3g", "-Xmx3g" })
+public class CustomerControllerBenchmark {
+
+    private static final String FILTER = "firstName^=A OR lastName^=Be";
+
+    private static final String NEEDLE = "an";
+
+    @Param({ "100000", "1000000" })
+    int rowCount;
+
+    @Param({ "firstName", "lastName", "companyName" })
+    String field;
+
+    @Param({ "asc", "desc" })
+    String direction;
+
+    @Param({ "0", "0.1", "0.5" })
+    double nullDensity;
+
+    @Param({ "50" })
+    int limit;
+
+    ConfigurableApplicationContext context;
+
+    CustomerController controller;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(FilteringAppApplication.class)
+            .web(WebApplicationType.NONE)
+            // H2 re-serves results of repeated identical queries against unchanged tables; turn that off so each call is measured.
+            .properties("logging.level.root=WARN", "spring.datasource.url=jdbc:h2:mem:benchmark;QUERY_CACHE_SIZE=0;DB_CLOSE_ON_EXIT=FALSE")
+            // As arguments rather than (default) properties, so that they override application.properties. Loads the seed data
+            // synchronously, so that it can't race with replaceTable below, and measures the requests themselves rather than the
+            // response cache in front of them.
+            .run("--db-load-util.async=false", "--customer-query-cache.enabled=false");
+
+        new BenchmarkData().replaceTable(context.getBean(JdbcTemplate.class), rowCount, nullDensity);
+
+        // Rebuilds every in-memory read model from the new table, as after the startup load.
+        context.publishEvent(new CustomerDataLoadedEvent(rowCount));
+
+        controller = context.getBean(CustomerController.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Customer> sortedPage() {
+        return controller.getCustomers(limit, field, direction, null, null, null).getBody();
+    }
+
+    @Benchmark
+    public List<Customer> filteredPage() {
+        return controller.getCustomers(limit, field, direction, null, null, FILTER).getBody();
+    }
+
+    @Benchmark
+    public List<Customer> search() {
+        return controller.searchWithinNames(NEEDLE, limit, null).getBody();
+    }
+}
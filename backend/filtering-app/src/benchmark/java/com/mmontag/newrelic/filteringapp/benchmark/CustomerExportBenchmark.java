@@ -0,0 +1,129 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+
+/**
+ * Exporting the whole table over HTTP with {@code GET /customers}: streamed ({@code path=stream}, no limit param) against the
+ * materialized list ({@code path=list}, {@code limit=0}), with the server running in the benchmark's JVM. The score is the time
+ * to read the whole response; secondary results are:
+ * <ul>
+ * <li>{@code ttfbMillis}, the time to the first byte of the body.</li>
+ * <li>{@code peakHeapMb}, the peak heap use while serving the request, above the live heap before it. A small, fixed young
+ * generation keeps garbage from inflating it, so that it mostly reflects what the request holds on to.</li>
+ * </ul>
+ * A single measured export per fork, after one warm-up export, since auxiliary counters are summed over iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g", "-Xmn64m", "-XX:+UseSerialGC" })
+public class CustomerExportBenchmark {
+
+    @Param({ "100000", "1000000" })
+    int rowCount;
+
+    @Param({ "list", "stream" })
+    String path;
+
+    ConfigurableApplicationContext context;
+
+    URL url;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Export {
+
+        public double ttfbMillis;
+
+        public double peakHeapMb;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            ttfbMillis = 0;
+            peakHeapMb = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(FilteringAppApplication.class)
+            // H2 re-serves results of repeated identical queries against unchanged tables; turn that off so each export is measured.
+            .properties("logging.level.root=WARN", "spring.datasource.url=jdbc:h2:mem:benchmark;QUERY_CACHE_SIZE=0;DB_CLOSE_ON_EXIT=FALSE")
+            // As arguments rather than (default) properties, so that they override application.properties. Only the database path
+            // is exercised, so none of the in-memory read models are needed.
+            .run("--server.port=0", "--db-load-util.async=false", "--customer-query-cache.enabled=false", "--customer-sorted-views.fields=",
+                "--customer-search-index.enabled=false", "--customer-company-dictionary.enabled=false", "--customer-filter-index.enabled=false");
+
+        new BenchmarkData().replaceTable(context.getBean(JdbcTemplate.class), rowCount);
+
+        var port = context.getEnvironment().getProperty("local.server.port");
+        url = new URL("http://localhost:" + port + "/customers" + ("list".equals(path) ? "?limit=0" : ""));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long export(Export export) throws IOException {
+        var heapPools = heapPools();
+        System.gc();
+        var heapBefore = heapPools.stream().mapToLong(pool -> pool.getUsage().getUsed()).sum();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        var start = System.nanoTime();
+        var connection = (HttpURLConnection) url.openConnection();
+        var bytes = 0L;
+
+        try (var input = connection.getInputStream()) {
+            var buffer = new byte[64 * 1024];
+            var read = input.read(buffer);
+            export.ttfbMillis = (System.nanoTime() - start) / 1e6;
+
+            while (read >= 0) {
+                bytes += read;
+                read = input.read(buffer);
+            }
+        }
+
+        var peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        export.peakHeapMb = (peakHeap - heapBefore) / 1e6;
+
+        return bytes;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream().filter(pool -> pool.getType() == MemoryType.HEAP).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,112 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilterIndex;
+import com.mmontag.newrelic.filteringapp.services.CustomerReadModelLoader;
+
+/**
+ * Filter evaluation with the {@link CustomerFilterIndex}, against testing every customer with the filter (the fallback until the
+ * index is built), for predicates ranging from highly selective to matching nearly everyone.
+ * <pre/>
+ * The index is fed the generated customers directly, as writes, rather than through the database, so that 10M rows fit. They
+ * replace the seed data, whose ids they reuse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms6g", "-Xmx6g" })
+public class CustomerFilterBenchmark {
+
+    @Param({ "1000000", "10000000" })
+    int rowCount;
+
+    @Param({
+        "company=Twimm AND firstName^=Ab",
+        "firstName^=Ab",
+        "lastName~uck",
+        "(firstName^=A OR lastName^=B) AND NOT company~soft",
+        "NOT lastName~uck"
+    })
+    String filter;
+
+    @Param({ "100" })
+    int limit;
+
+    ConfigurableApplicationContext context;
+
+    CustomerFilterIndex filterIndex;
+
+    CustomerFilter parsedFilter;
+
+    List<Customer> customers;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(FilteringAppApplication.class)
+            .web(WebApplicationType.NONE)
+            .properties("logging.level.root=WARN", "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_ON_EXIT=FALSE")
+            .run("--db-load-util.async=false", "--customer-sorted-views.fields=", "--customer-search-index.enabled=false", "--customer-company-dictionary.enabled=false",
+                "--customer-autocomplete-index.enabled=false");
+
+        filterIndex = context.getBean(CustomerFilterIndex.class);
+        var loader = context.getBean(CustomerReadModelLoader.class);
+        parsedFilter = CustomerFilter.parse(filter);
+
+        var generated = new BenchmarkData().customers(rowCount);
+        customers = new ArrayList<>(rowCount);
+
+        for (int i = 0; i < generated.size(); ++i) {
+            var customer = generated.get(i);
+            customers.add(new Customer(i + 1L, customer.getFirstName(), customer.getLastName(), customer.getCompanyName()));
+            loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, customers.get(i)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // Evaluates the filter to its full set of matches.
+    @Benchmark
+    public int indexCount() {
+        return filterIndex.count(parsedFilter);
+    }
+
+    // Evaluates the filter, then reads the ids of the first page of matches.
+    @Benchmark
+    public List<Long> indexFirstPage() {
+        return filterIndex.search(parsedFilter, null, limit);
+    }
+
+    @Benchmark
+    public long scanCount() {
+        return customers.stream().filter(parsedFilter).count();
+    }
+}
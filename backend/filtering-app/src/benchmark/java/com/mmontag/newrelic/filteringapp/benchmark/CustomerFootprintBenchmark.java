@@ -0,0 +1,150 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.CustomerColumnStore;
+import com.mmontag.newrelic.filteringapp.services.CustomerReadModelLoader;
+
+/**
+ * Memory held per customer with the whole table in memory, as managed JPA entities (what a persistence context holding the full
+ * dataset costs) versus as a {@link CustomerColumnStore}. Reported as secondary results, alongside the time it takes to build each:
+ * <ul>
+ * <li>{@code heapBytesPerCustomer}, the retained heap per customer: for entities, live heap after a full GC once they're loaded,
+ * minus before loading them; for the column store, the size of its arrays.</li>
+ * <li>{@code offHeapBytesPerCustomer}, the column store's direct buffers per customer.</li>
+ * <li>{@code fullGcMillis}, how much longer a full GC takes while the dataset is held than after it's dropped, as a proxy for
+ * old-generation pause times.</li>
+ * </ul>
+ * A single measurement per fork, since auxiliary counters are summed over iterations; the serial collector keeps heap usage
+ * after a full GC exact.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g", "-XX:+UseSerialGC" })
+public class CustomerFootprintBenchmark {
+
+    @Param({ "100000", "1000000" })
+    int rowCount;
+
+    ConfigurableApplicationContext context;
+
+    EntityManagerFactory entityManagerFactory;
+
+    // What the benchmark holds on to, so that it stays live until its footprint has been measured.
+    Object retained;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+
+        public double heapBytesPerCustomer;
+
+        public double offHeapBytesPerCustomer;
+
+        public double fullGcMillis;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(FilteringAppApplication.class)
+            .web(WebApplicationType.NONE)
+            .properties("logging.level.root=WARN", "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_ON_EXIT=FALSE")
+            // As arguments rather than (default) properties, so that they override application.properties. Loads the seed data
+            // synchronously, so that it can't race with replaceTable below.
+            // The column store is the only read model, so that rebuilding them builds just the store (and its ordinals).
+            .run("--db-load-util.async=false", "--customer-column-store.enabled=true", "--customer-sorted-views.fields=", "--customer-search-index.enabled=false",
+                "--customer-filter-index.enabled=false", "--customer-company-dictionary.enabled=false", "--customer-autocomplete-index.enabled=false");
+
+        new BenchmarkData().replaceTable(context.getBean(JdbcTemplate.class), rowCount);
+
+        entityManagerFactory = context.getBean(EntityManagerFactory.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void entities(Footprint footprint) {
+        var entityManager = entityManagerFactory.createEntityManager();
+
+        measure(footprint, () -> entityManager.createQuery("SELECT c FROM Customer c", Customer.class).getResultList(), entityManager::close);
+    }
+
+    @Benchmark
+    public void columnStore(Footprint footprint) {
+        var columnStore = context.getBean(CustomerColumnStore.class);
+
+        measure(footprint, () -> {
+            context.getBean(CustomerReadModelLoader.class).rebuild();
+            return columnStore;
+        }, () -> {});
+
+        // Its heap is exactly its (primitive) arrays plus the ordinals' ids, which is more accurate than the difference in live heap,
+        // given how much H2's own heap use drifts when the table is read in full.
+        footprint.heapBytesPerCustomer = (double) columnStore.heapBytes() / rowCount + Long.BYTES;
+        footprint.offHeapBytesPerCustomer = (double) columnStore.offHeapBytes() / rowCount;
+    }
+
+    // Builds the dataset's representation, measuring the live heap it adds and how much longer it makes full GCs.
+    private void measure(Footprint footprint, Supplier<Object> build, Runnable release) {
+        fullGc();
+        var heapBefore = usedHeapBytes();
+
+        retained = build.get();
+
+        // The first full GC after building also compacts away the garbage the build left behind, so it isn't timed.
+        fullGc();
+        var gcMillisWith = fullGc();
+        var heapWith = usedHeapBytes();
+
+        retained = null;
+        release.run();
+
+        fullGc();
+        var gcMillisWithout = fullGc();
+
+        footprint.fullGcMillis = gcMillisWith - gcMillisWithout;
+        footprint.heapBytesPerCustomer = (double) (heapWith - heapBefore) / rowCount;
+    }
+
+    // Runs a full GC, returning how long it took.
+    private static double fullGc() {
+        var start = System.nanoTime();
+        System.gc();
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    private static long usedHeapBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
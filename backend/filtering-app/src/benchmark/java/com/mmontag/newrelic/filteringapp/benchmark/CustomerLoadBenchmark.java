@@ -0,0 +1,178 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * The servlet stack ({@code stack=servlet}) against the reactive one ({@code stack=reactive}) under concurrent load: each
+ * iteration sends {@value #REQUESTS} requests for a sorted, limited page of a company's customers
+ * ({@code GET /customers?company=...&sortBy=lastName&limit=50}), keeping {@code concurrency} of them in flight at all times. Both
+ * stacks answer from the database, with the query cache and in-memory read models disabled. The score is the time to complete
+ * all requests; secondary results are:
+ * <ul>
+ * <li>{@code requestsPerSecond}, the throughput.</li>
+ * <li>{@code p50Millis}, {@code p99Millis} and {@code p999Millis}, latency percentiles (from sending a request to having read
+ * its whole response).</li>
+ * <li>{@code errors}, the requests which failed or didn't get a 200.</li>
+ * </ul>
+ * The client shares the server's JVM (and CPUs), so absolute numbers understate what either stack can do on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class CustomerLoadBenchmark {
+
+    private static final int REQUESTS = 2_000;
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({ "10000" })
+    int rowCount;
+
+    @Param({ "servlet", "reactive" })
+    String stack;
+
+    @Param({ "64", "512" })
+    int concurrency;
+
+    ConfigurableApplicationContext context;
+
+    HttpClient client;
+
+    List<URI> uris;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Load {
+
+        public double requestsPerSecond;
+
+        public double p50Millis;
+
+        public double p99Millis;
+
+        public double p999Millis;
+
+        public double errors;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requestsPerSecond = 0;
+            p50Millis = 0;
+            p99Millis = 0;
+            p999Millis = 0;
+            errors = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        var reactive = "reactive".equals(stack);
+
+        context = new SpringApplicationBuilder(FilteringAppApplication.class)
+            .profiles(reactive ? new String[] { "reactive" } : new String[0])
+            .web(reactive ? WebApplicationType.REACTIVE : WebApplicationType.SERVLET)
+            .properties("logging.level.root=WARN")
+            // As arguments rather than (default) properties, so that they override application(-reactive).properties. H2 re-serves
+            // results of repeated identical queries against unchanged tables; turn that off so each request is measured.
+            .run("--server.port=0", "--db-load-util.async=false", "--customer-query-cache.enabled=false", "--customer-sorted-views.fields=",
+                "--customer-search-index.enabled=false", "--customer-company-dictionary.enabled=false", "--customer-filter-index.enabled=false",
+                "--spring.datasource.url=jdbc:h2:mem:load;QUERY_CACHE_SIZE=0;DB_CLOSE_DELAY=-1",
+                "--reactive-customer-repository.url=r2dbc:h2:mem:///load?options=QUERY_CACHE_SIZE=0;DB_CLOSE_DELAY=-1");
+
+        var data = new BenchmarkData();
+        data.replaceTable(context.getBean(JdbcTemplate.class), rowCount);
+
+        var base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/customers?sortBy=lastName&limit=" + PAGE_SIZE + "&company=";
+        uris = data.customers(rowCount).stream()
+            .map(Customer::getCompanyName)
+            .distinct()
+            .map(company -> URI.create(base + URLEncoder.encode(company, StandardCharsets.UTF_8)))
+            .collect(Collectors.toList());
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int load(Load load) throws InterruptedException {
+        var inFlight = new Semaphore(concurrency);
+        var latencies = new long[REQUESTS];
+        var errors = new AtomicInteger();
+        var start = System.nanoTime();
+
+        for (int i = 0; i < REQUESTS; ++i) {
+            inFlight.acquire();
+
+            var request = i;
+            var sent = System.nanoTime();
+
+            client.sendAsync(HttpRequest.newBuilder(uris.get(i % uris.size())).build(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, e) -> {
+                    latencies[request] = System.nanoTime() - sent;
+
+                    if (e != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+
+                    inFlight.release();
+                });
+        }
+
+        inFlight.acquire(concurrency);
+
+        var elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+
+        load.requestsPerSecond = REQUESTS / (elapsed / 1e9);
+        load.p50Millis = percentile(latencies, 0.5);
+        load.p99Millis = percentile(latencies, 0.99);
+        load.p999Millis = percentile(latencies, 0.999);
+        load.errors = errors.get();
+
+        return errors.get();
+    }
+
+    private static double percentile(long[] sortedNanos, double fraction) {
+        return sortedNanos[(int) Math.ceil(fraction * sortedNanos.length) - 1] / 1e6;
+    }
+}
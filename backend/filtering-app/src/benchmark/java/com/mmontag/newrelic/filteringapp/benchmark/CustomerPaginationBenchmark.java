@@ -0,0 +1,118 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+import com.mmontag.newrelic.filteringapp.repository.Keyset;
+
+/**
+ * Latency of fetching page N of customers sorted by last name (either way), comparing keyset (seek) pagination against OFFSET
+ * pagination.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g" })
+public class CustomerPaginationBenchmark {
+
+    private static final String OFFSET_QUERY = "SELECT c FROM Customer c ORDER BY UPPER(c.lastName) %s NULLS LAST, c.id ASC";
+
+    @Param({ "1000000" })
+    int rowCount;
+
+    @Param({ "20" })
+    int pageSize;
+
+    @Param({ "0", "500", "5000", "25000" })
+    int pageNumber;
+
+    @Param({ "ASC", "DESC" })
+    Sort.Direction direction;
+
+    ConfigurableApplicationContext context;
+
+    EntityManagerFactory entityManagerFactory;
+
+    CustomerRepository customers;
+
+    Sort sort;
+
+    Keyset pageStart;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(FilteringAppApplication.class)
+            .web(WebApplicationType.NONE)
+            // H2 re-serves results of repeated identical queries against unchanged tables; turn that off so each call is measured.
+            .properties("logging.level.root=WARN", "spring.datasource.url=jdbc:h2:mem:benchmark;QUERY_CACHE_SIZE=0;DB_CLOSE_ON_EXIT=FALSE")
+            // As arguments rather than (default) properties, so that they override application.properties. Loads the seed data
+            // synchronously, so that it can't race with replaceTable below.
+            .run("--db-load-util.async=false");
+
+        new BenchmarkData().replaceTable(context.getBean(JdbcTemplate.class), rowCount);
+
+        entityManagerFactory = context.getBean(EntityManagerFactory.class);
+        customers = context.getBean(CustomerRepository.class);
+        sort = Sort.by(new Sort.Order(direction, "lastName", Sort.NullHandling.NULLS_LAST).ignoreCase());
+
+        // The keyset for page N is the last row of page N - 1, as a client would have received it.
+        if (pageNumber > 0) {
+            var previousPage = offsetPage(pageNumber - 1);
+            pageStart = Keyset.of(previousPage.get(previousPage.size() - 1), sort);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Customer> keyset() {
+        return customers.findAllOrdered(sort, pageStart, pageSize);
+    }
+
+    @Benchmark
+    public List<Customer> offset() {
+        return offsetPage(pageNumber);
+    }
+
+    private List<Customer> offsetPage(int page) {
+        var entityManager = entityManagerFactory.createEntityManager();
+
+        try {
+            return entityManager.createQuery(String.format(OFFSET_QUERY, direction), Customer.class)
+                .setFirstResult(page * pageSize)
+                .setMaxResults(pageSize)
+                .getResultList();
+        } finally {
+            entityManager.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+import com.mmontag.newrelic.filteringapp.services.CustomerReadModelLoader;
+import com.mmontag.newrelic.filteringapp.services.CustomerSearchIndex;
+import com.mmontag.newrelic.filteringapp.services.controllers.customer.CustomerController;
+
+/**
+ * Latency distribution of {@code /customers/search/{needle}?limit=..}, comparing the trigram index ({@link CustomerSearchIndex})
+ * against the JPA derived query it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms6g", "-Xmx6g" })
+public class CustomerSearchBenchmark {
+
+    private static final EnumSet<CustomerSearchIndex.Field> NAME_FIELDS = EnumSet.of(CustomerSearchIndex.Field.FIRST_NAME, CustomerSearchIndex.Field.LAST_NAME);
+
+    @Param({ "1000000" })
+    int rowCount;
+
+    @Param({ "100" })
+    int limit;
+
+    @Param({ "an", "mit", "nders" })
+    String needle;
+
+    ConfigurableApplicationContext context;
+
+    CustomerController controller;
+
+    CustomerRepository customers;
+
+    CustomerSearchIndex searchIndex;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(FilteringAppApplication.class)
+            .web(WebApplicationType.NONE)
+            // H2 re-serves results of repeated identical queries against unchanged tables; turn that off so each call is measured.
+            .properties("logging.level.root=WARN", "spring.datasource.url=jdbc:h2:mem:benchmark;QUERY_CACHE_SIZE=0;DB_CLOSE_ON_EXIT=FALSE")
+            // As arguments rather than (default) properties, so that they override application.properties. Loads the seed data
+            // synchronously, so that it can't race with replaceTable below, and measures the queries themselves rather than the response cache in front of them.
+            .run("--db-load-util.async=false", "--customer-query-cache.enabled=false");
+
+        new BenchmarkData().replaceTable(context.getBean(JdbcTemplate.class), rowCount);
+
+        controller = context.getBean(CustomerController.class);
+        customers = context.getBean(CustomerRepository.class);
+        searchIndex = context.getBean(CustomerSearchIndex.class);
+        context.getBean(CustomerReadModelLoader.class).rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Customer> derivedQuery() {
+        var matches = customers.findByFirstNameContainsIgnoringCaseOrLastNameContainsIgnoringCase(needle, needle);
+        return matches.subList(0, Math.min(limit, matches.size()));
+    }
+
+    @Benchmark
+    public List<Long> indexLookup() {
+        return searchIndex.search(needle, NAME_FIELDS, null, limit);
+    }
+
+    @Benchmark
+    public List<Customer> indexedEndpoint() {
+        return controller.searchWithinNames(needle, limit, null).getBody();
+    }
+}
@@ -0,0 +1,75 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CustomerBinaryWriter;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CustomerJsonWriter;
+
+/**
+ * Serializing a response's list of customers as JSON: with Jackson, the way Spring MVC's converter does, against the
+ * {@link CustomerJsonWriter}, both to an output stream which discards what it's given; and, for comparison, in the binary format
+ * of the {@link CustomerBinaryWriter}. Run with the gc profiler (the profile's default) to compare allocations per response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class CustomerSerializationBenchmark {
+
+    @Param({ "100", "100000", "1000000" })
+    int rowCount;
+
+    List<Customer> customers;
+
+    ObjectWriter jackson;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        customers = new ArrayList<>(rowCount);
+        var id = 0L;
+
+        for (var customer : new BenchmarkData().customers(rowCount)) {
+            customers.add(new Customer(++id, customer.getFirstName(), customer.getLastName(), customer.getCompanyName()));
+        }
+
+        var objectMapper = new ObjectMapper();
+        jackson = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Customer.class));
+    }
+
+    @Benchmark
+    public void jackson() throws IOException {
+        jackson.writeValue(OutputStream.nullOutputStream(), customers);
+    }
+
+    @Benchmark
+    public void customerJsonWriter() throws IOException {
+        CustomerJsonWriter.writeArray(OutputStream.nullOutputStream(), customers);
+    }
+
+    @Benchmark
+    public void customerBinaryWriter() throws IOException {
+        CustomerBinaryWriter.writeBody(OutputStream.nullOutputStream(), customers);
+    }
+}
@@ -0,0 +1,98 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+import com.mmontag.newrelic.filteringapp.services.CustomerReadModelLoader;
+import com.mmontag.newrelic.filteringapp.services.SortingService;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+import com.mmontag.newrelic.filteringapp.services.controllers.customer.CustomerController;
+
+/**
+ * Latency of {@code GET /customers?limit=..&sortBy=lastName} as the table grows, comparing the paths used by
+ * {@link CustomerController} (ordered by the database, or walked from a sorted view when {@code sortedViews} is true) against the
+ * previous in-memory path (findAll, sort everything, keep the first N).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms4g", "-Xmx4g" })
+public class CustomerSortPathBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    int rowCount;
+
+    @Param({ "20" })
+    int limit;
+
+    @Param({ "false", "true" })
+    boolean sortedViews;
+
+    ConfigurableApplicationContext context;
+
+    CustomerController controller;
+
+    CustomerRepository customers;
+
+    SortingService<Customer> sortingService;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(FilteringAppApplication.class)
+            .web(WebApplicationType.NONE)
+            // H2 re-serves results of repeated identical queries against unchanged tables; turn that off so each call is measured.
+            .properties("logging.level.root=WARN", "spring.datasource.url=jdbc:h2:mem:benchmark;QUERY_CACHE_SIZE=0;DB_CLOSE_ON_EXIT=FALSE")
+            // As arguments rather than (default) properties, so that they override application.properties. Loads the seed data
+            // synchronously, so that it can't race with replaceTable below, and measures the query itself rather than the response
+            // cache in front of it.
+            .run("--db-load-util.async=false", "--customer-query-cache.enabled=false", "--customer-sorted-views.fields=" + (sortedViews ? "lastName" : ""));
+
+        new BenchmarkData().replaceTable(context.getBean(JdbcTemplate.class), rowCount);
+        context.getBean(CustomerReadModelLoader.class).rebuild();
+
+        controller = context.getBean(CustomerController.class);
+        customers = context.getBean(CustomerRepository.class);
+        sortingService = context.getBean(SortingService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Customer> controllerPath() {
+        return controller.getCustomers(limit, "lastName", "asc", null, null, null).getBody();
+    }
+
+    @Benchmark
+    public List<Customer> inMemoryPath() throws SortingException {
+        var sorted = sortingService.sort(customers.findAll(), "lastName", SortDirection.ASCENDING);
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+}
@@ -0,0 +1,173 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdInputStream;
+import com.mmontag.newrelic.filteringapp.FilteringAppApplication;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CustomerBinaryReader;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CustomerBinaryWriter;
+
+/**
+ * A bulk client exporting the whole table with {@code GET /customers}, in each response format ({@code json},
+ * {@code ndjson} or {@code binary}, see {@link CustomerBinaryWriter}) and content encoding ({@code identity}, {@code gzip} or
+ * {@code zstd}), with the server running in the benchmark's JVM. The score is the end-to-end time to get the customers: sending
+ * the request, receiving the whole body, then decoding it (decompressing and parsing, with Jackson or the
+ * {@link CustomerBinaryReader}). Secondary results are:
+ * <ul>
+ * <li>{@code wireMb}, the size of the body as sent.</li>
+ * <li>{@code transferMillis}, the time to receive the whole body, which over loopback is mostly the server's time to serialize
+ * and compress it. Over a real network, each MB on the wire adds about 8ms per Gbit/s on top.</li>
+ * <li>{@code decodeMillis}, the client's time to decompress and parse it.</li>
+ * </ul>
+ * A single measured export per fork, after one warm-up export, since auxiliary counters are summed over iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class CustomerWireFormatBenchmark {
+
+    @Param({ "1000000" })
+    int rowCount;
+
+    @Param({ "json", "ndjson", "binary" })
+    String format;
+
+    @Param({ "identity", "gzip", "zstd" })
+    String encoding;
+
+    ConfigurableApplicationContext context;
+
+    URL url;
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Export {
+
+        public double wireMb;
+
+        public double transferMillis;
+
+        public double decodeMillis;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            wireMb = 0;
+            transferMillis = 0;
+            decodeMillis = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(FilteringAppApplication.class)
+            .properties("logging.level.root=WARN", "spring.datasource.url=jdbc:h2:mem:benchmark;QUERY_CACHE_SIZE=0;DB_CLOSE_ON_EXIT=FALSE")
+            // As in CustomerExportBenchmark: only the database path is exercised, so none of the in-memory read models are needed.
+            .run("--server.port=0", "--db-load-util.async=false", "--customer-query-cache.enabled=false", "--customer-sorted-views.fields=",
+                "--customer-search-index.enabled=false", "--customer-company-dictionary.enabled=false", "--customer-filter-index.enabled=false",
+                "--customer-access-log.enabled=false");
+
+        new BenchmarkData().replaceTable(context.getBean(JdbcTemplate.class), rowCount);
+
+        url = new URL("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/customers");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int export(Export export) throws IOException {
+        var start = System.nanoTime();
+        var connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("Accept", accept());
+        connection.setRequestProperty("Accept-Encoding", encoding);
+
+        byte[] body;
+        try (var input = connection.getInputStream()) {
+            body = input.readAllBytes();
+        }
+
+        var received = System.nanoTime();
+        var customers = decode(decompress(connection.getHeaderField("Content-Encoding"), new ByteArrayInputStream(body)));
+
+        export.wireMb = body.length / 1e6;
+        export.transferMillis = (received - start) / 1e6;
+        export.decodeMillis = (System.nanoTime() - received) / 1e6;
+
+        if (customers != rowCount) {
+            throw new IllegalStateException("Expected " + rowCount + " customers, got " + customers);
+        }
+
+        return customers;
+    }
+
+    private String accept() {
+        switch (format) {
+            case "ndjson":
+                return MediaType.APPLICATION_NDJSON_VALUE;
+            case "binary":
+                return CustomerBinaryWriter.MEDIA_TYPE_VALUE;
+            default:
+                return MediaType.APPLICATION_JSON_VALUE;
+        }
+    }
+
+    private static InputStream decompress(String contentEncoding, InputStream body) throws IOException {
+        if ("gzip".equals(contentEncoding)) {
+            return new GZIPInputStream(body, 64 * 1024);
+        }
+
+        if ("zstd".equals(contentEncoding)) {
+            return new ZstdInputStream(body);
+        }
+
+        return body;
+    }
+
+    // The number of customers parsed.
+    private int decode(InputStream body) throws IOException {
+        switch (format) {
+            case "binary":
+                return CustomerBinaryReader.readAll(body).size();
+            case "ndjson":
+                return objectMapper.readerFor(Customer.class).<Customer>readValues(body).readAll().size();
+            default:
+                List<Customer> customers = objectMapper.readValue(body, objectMapper.getTypeFactory().constructCollectionType(List.class, Customer.class));
+                return customers.size();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.ParallelSorter;
+import com.mmontag.newrelic.filteringapp.services.SortingService;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+
+/**
+ * Full sorts by last name with {@link SortingService} across input sizes and {@link ParallelSorter} pool sizes, to locate the
+ * size at which sorting in parallel starts paying off (i.e. {@code sorting-service.parallel_threshold}) on a given machine. A pool
+ * size of 1 is the sequential baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class ParallelSortBenchmark {
+
+    @Param({ "10000", "50000", "100000", "250000", "1000000" })
+    int rowCount;
+
+    @Param({ "1", "4", "16" })
+    int poolSize;
+
+    List<Customer> input;
+
+    ParallelSorter parallelSorter;
+
+    SortingService<Customer> sortingService;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        input = new BenchmarkData().customers(rowCount);
+
+        // A threshold of 0 sorts every input in parallel, so that the crossover shows up in the results.
+        parallelSorter = new ParallelSorter(0, poolSize);
+
+        sortingService = new SortingService<>();
+        sortingService.registerField("lastName", (Customer c) -> c.getLastName().toUpperCase());
+        sortingService.setParallelSorter(parallelSorter);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parallelSorter.shutdown();
+    }
+
+    @Benchmark
+    public List<Customer> sort() throws SortingException {
+        return sortingService.sort(new ArrayList<>(input), "lastName", SortDirection.ASCENDING);
+    }
+}
@@ -0,0 +1,79 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.SortingService;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+
+/**
+ * Cost of producing the first {@code limit} customers by last name with {@link SortingService}: a full sort followed by a
+ * truncation, versus a top-K selection. Also compares a full sort on a field registered by key extractor (keys extracted once per
+ * element) with one registered by comparator (keys extracted twice per comparison).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class SortingServiceBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    int rowCount;
+
+    @Param({ "50" })
+    int limit;
+
+    List<Customer> input;
+
+    SortingService<Customer> sortingService;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        input = new BenchmarkData().customers(rowCount);
+
+        sortingService = new SortingService<>();
+        sortingService.registerField("lastName", (Customer c) -> c.getLastName().toUpperCase());
+        sortingService.registerField("lastNameByComparator", Comparator.comparing((Customer c) -> c.getLastName().toUpperCase()));
+    }
+
+    @Benchmark
+    public List<Customer> fullSort() throws SortingException {
+        var sorted = sortingService.sort(new ArrayList<>(input), "lastName", SortDirection.ASCENDING);
+        return sorted.subList(0, limit);
+    }
+
+    @Benchmark
+    public List<Customer> fullSortByComparator() throws SortingException {
+        var sorted = sortingService.sort(new ArrayList<>(input), "lastNameByComparator", SortDirection.ASCENDING);
+        return sorted.subList(0, limit);
+    }
+
+    @Benchmark
+    public List<Customer> sortTopKByComparator() throws SortingException {
+        return sortingService.sortTopK(input, "lastNameByComparator", limit, SortDirection.ASCENDING);
+    }
+
+    @Benchmark
+    public List<Customer> sortTopK() throws SortingException {
+        return sortingService.sortTopK(input, "lastName", limit, SortDirection.ASCENDING);
+    }
+}
@@ -0,0 +1,89 @@
+package com.mmontag.newrelic.filteringapp.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.SortingService;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
+
+/**
+ * Regression suite for {@link SortingService}: full sorts and top-K selections of the fields the controller registers (keyed the
+ * same way, by upper-cased name), across dataset size, field, direction and the share of null names. Fields differ in how many
+ * distinct names they have, and so in how often comparisons tie. Run with the gc profiler (the profile's default) to also get
+ * allocations per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class SortingServiceSweepBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    int rowCount;
+
+    @Param({ "firstName", "lastName", "companyName" })
+    String field;
+
+    @Param({ "ASCENDING", "DESCENDING" })
+    SortDirection direction;
+
+    @Param({ "0", "0.1", "0.5" })
+    double nullDensity;
+
+    @Param({ "50" })
+    int limit;
+
+    List<Customer> input;
+
+    List<SortSpec> sortSpecs;
+
+    SortingService<Customer> sortingService;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        input = new BenchmarkData().customers(rowCount, nullDensity);
+        sortSpecs = List.of(new SortSpec(field, direction, null));
+
+        sortingService = new SortingService<>();
+        sortingService.registerField("firstName", upperCased(Customer::getFirstName));
+        sortingService.registerField("lastName", upperCased(Customer::getLastName));
+        sortingService.registerField("companyName", upperCased(Customer::getCompanyName));
+    }
+
+    @Benchmark
+    public List<Customer> sort() throws SortingException {
+        return sortingService.sort(new ArrayList<>(input), sortSpecs);
+    }
+
+    @Benchmark
+    public List<Customer> sortTopK() throws SortingException {
+        return sortingService.sortTopK(input, sortSpecs, limit);
+    }
+
+    private static Function<Customer, String> upperCased(Function<Customer, String> getter) {
+        return c -> {
+            var value = getter.apply(c);
+            return value == null ? null : value.toUpperCase();
+        };
+    }
+}
@@ -4,11 +4,30 @@ import java.io.IOException;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 
-@SpringBootApplication
+// JPA stays the system of record in both web stacks, but Boot backs off configuring a DataSource as soon as there's an R2DBC
+// ConnectionFactory bean, so the reactive stack's connections are managed by ReactiveCustomerRepository itself.
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
 public class FilteringAppApplication {
 
 	public static void main(String[] args) throws IOException {
 		SpringApplication.run(FilteringAppApplication.class, args);
 	}
+
+	// With Tomcat on the classpath (for the servlet stack), Boot would run the reactive stack on Tomcat as well; serve it from
+	// Netty's event loops instead.
+	@Configuration
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+	static class ReactiveServerConfiguration {
+
+		@Bean
+		NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+			return new NettyReactiveWebServerFactory();
+		}
+	}
 }
@@ -0,0 +1,13 @@
+package com.mmontag.newrelic.filteringapp.events;
+
+import lombok.Value;
+
+/**
+ * Published once the startup bulk load of the customers table has completed. The load bypasses JPA (and therefore
+ * {@link CustomerWriteEvent}s), so in-memory structures derived from the table should (re)build themselves from it on this event.
+ */
+@Value
+public class CustomerDataLoadedEvent {
+
+    long rowCount;
+}
@@ -0,0 +1,22 @@
+package com.mmontag.newrelic.filteringapp.events;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+import lombok.Value;
+
+/**
+ * Published whenever a {@link Customer} is inserted, updated or deleted through JPA, so that in-memory structures derived from
+ * the customers table (indexes, caches etc.) can stay in sync with it.
+ */
+@Value
+public class CustomerWriteEvent {
+
+    public enum Type {
+        SAVED,
+        DELETED
+    }
+
+    Type type;
+
+    Customer customer;
+}
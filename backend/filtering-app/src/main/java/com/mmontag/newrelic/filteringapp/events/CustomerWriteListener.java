@@ -0,0 +1,34 @@
+package com.mmontag.newrelic.filteringapp.events;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * JPA entity listener which republishes {@link Customer} lifecycle callbacks as {@link CustomerWriteEvent}s. Instantiated (and
+ * autowired) by Hibernate through Spring's bean container.
+ * <pre/>
+ * NOTE: The callbacks fire at flush time, i.e. before the transaction commits, so consumers should listen with
+ * {@code @TransactionalEventListener} to avoid acting on writes which are later rolled back.
+ */
+public class CustomerWriteListener {
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    @PostUpdate
+    void saved(Customer customer) {
+        eventPublisher.publishEvent(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, customer));
+    }
+
+    @PostRemove
+    void deleted(Customer customer) {
+        eventPublisher.publishEvent(new CustomerWriteEvent(CustomerWriteEvent.Type.DELETED, customer));
+    }
+}
@@ -0,0 +1,14 @@
+package com.mmontag.newrelic.filteringapp.model;
+
+import lombok.Value;
+
+/**
+ * A distinct company name, with the number of customers who belong to it.
+ */
+@Value
+public class CompanyCount {
+
+    String companyName;
+
+    long customerCount;
+}
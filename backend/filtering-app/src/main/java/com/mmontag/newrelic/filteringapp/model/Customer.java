@@ -1,13 +1,16 @@
 package com.mmontag.newrelic.filteringapp.model;
 
-import javax.persistence.Column;
-import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
-import javax.persistence.Id;
-import javax.persistence.Table;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteListener;
 
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -20,9 +23,18 @@ import lombok.Setter;
 @Setter
 @Entity
 @Table(name="customers")
+@EntityListeners(CustomerWriteListener.class)
 public class Customer {
+
+    // Ids come from a pooled sequence: each NEXT VALUE reserves the ID_ALLOCATION_SIZE ids up to and including it, so Hibernate
+    // only hits the sequence once per block, and bulk loads (see DBLoadUtil) can reserve blocks of their own.
+    public static final String ID_SEQUENCE = "customers_id_seq";
+
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     @Setter(AccessLevel.NONE)
     private long id;
 
@@ -45,4 +57,10 @@ public class Customer {
         this.lastName = lastName;
         this.companyName = companyName;
     }
+
+    // For read models which materialize (detached) customers without going through JPA, see CustomerColumnStore.
+    public Customer(long id, String firstName, String lastName, String companyName) {
+        this(firstName, lastName, companyName);
+        this.id = id;
+    }
 }
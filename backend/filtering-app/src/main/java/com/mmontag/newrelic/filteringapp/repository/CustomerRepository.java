@@ -4,13 +4,21 @@ import java.util.List;
 
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import com.mmontag.newrelic.filteringapp.model.CompanyCount;
 import com.mmontag.newrelic.filteringapp.model.Customer;
 
 @Primary
-public interface CustomerRepository extends JpaRepository<Customer, Long> {
+public interface CustomerRepository extends JpaRepository<Customer, Long>, CustomerRepositoryCustom {
 
     public List<Customer> findByCompanyName(String companyName);
+
+    // Distinct (non-null) company names with their customer counts, ordered by name; grouped by the database rather than by
+    // loading the whole table.
+    @Query("SELECT new com.mmontag.newrelic.filteringapp.model.CompanyCount(c.companyName, COUNT(c)) FROM Customer c"
+        + " WHERE c.companyName IS NOT NULL GROUP BY c.companyName ORDER BY c.companyName")
+    public List<CompanyCount> countByCompanyName();
     
     public List<Customer> findByFirstNameContainsIgnoringCaseOrLastNameContainsIgnoringCase(String firstName, String lastName);
 }
@@ -0,0 +1,57 @@
+package com.mmontag.newrelic.filteringapp.repository;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Sort;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * Hand-written query methods mixed into {@link CustomerRepository}, for queries which can't be expressed as derived queries.
+ */
+public interface CustomerRepositoryCustom {
+
+    /**
+     * Fetches customers ordered (and optionally limited) by the database, rather than materializing the whole table.
+     * <pre/>
+     * Unlike Spring Data's built-in {@code findAll(Sort)}, this honors each order's {@link Sort.NullHandling} hint as well as its
+     * ignore-case flag. Ties are always broken by ascending id, so the resulting order is deterministic.
+     * @param sort The ordering to apply; {@link Sort#unsorted()} is allowed.
+     * @param limit The maximum number of rows to return. {@code null} or non-positive values mean "no limit".
+     * @throws IllegalArgumentException if the sort references a property which doesn't exist on {@link Customer} (surfaced as an
+     *         {@code InvalidDataAccessApiUsageException} by the repository proxy's exception translation).
+     */
+    public default List<Customer> findAllOrdered(Sort sort, Integer limit) {
+        return findAllOrdered(sort, null, limit);
+    }
+
+    /**
+     * Like {@link #findAllOrdered(Sort, Integer)}, but starting strictly after the given {@link Keyset}. The keyset is turned into a
+     * seek predicate ({@code WHERE (key, id) > (?, ?)}) rather than an OFFSET, so deep pages cost the same as the first one.
+     * <pre/>
+     * Keyset pagination needs a total order, so every order in the sort must use explicit {@code NULLS_FIRST}/{@code NULLS_LAST}
+     * null handling when {@code after} is given.
+     * @param after The last row of the previous page, or {@code null} for the first page.
+     */
+    public List<Customer> findAllOrdered(Sort sort, Keyset after, Integer limit);
+
+    /**
+     * Like {@link #findAllOrdered(Sort, Integer)} without a limit, but producing the customers lazily, {@code fetchSize} rows at a
+     * time, so that the whole result never has to be held in memory. The stream holds resources (e.g. a database connection) until
+     * it's closed, so callers must close it, e.g. with try-with-resources.
+     * @param fetchSize How many rows to fetch per round trip.
+     */
+    public Stream<Customer> streamAllOrdered(Sort sort, int fetchSize);
+
+    /**
+     * Keyset-paginated equivalent of {@code findByFirstNameContainsIgnoringCaseOrLastNameContainsIgnoringCase}, i.e. customers
+     * whose first or last name contains {@code needle}, ignoring case.
+     */
+    public List<Customer> findByNameContainingOrdered(String needle, Sort sort, Keyset after, Integer limit);
+
+    /**
+     * Keyset-paginated equivalent of {@code findByCompanyName}, i.e. customers whose company name is exactly {@code companyName}.
+     */
+    public List<Customer> findByCompanyNameOrdered(String companyName, Sort sort, Keyset after, Integer limit);
+}
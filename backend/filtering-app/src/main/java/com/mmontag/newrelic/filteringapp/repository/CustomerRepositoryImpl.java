@@ -0,0 +1,110 @@
+package com.mmontag.newrelic.filteringapp.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * Implementation of {@link CustomerRepositoryCustom}; picked up by Spring Data via the "Impl" naming convention. Runs the
+ * {@link OrderedQuery}s as native queries, which unlike JPQL can order by the indexed, upper-cased name columns.
+ */
+public class CustomerRepositoryImpl implements CustomerRepositoryCustom {
+
+    private static final String SELECT = "SELECT id, first_name, last_name, company_name FROM customers";
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @PersistenceUnit
+    EntityManagerFactory entityManagerFactory;
+
+    @Override
+    public List<Customer> findAllOrdered(Sort sort, Keyset after, Integer limit) {
+        return query(null, null, sort, after, limit);
+    }
+
+    // Scrolls through a single query's results over a forward-only cursor, in a stateless session: unlike the shared entity
+    // manager's persistence context (which, with open-in-view, lives as long as the request), it doesn't keep hold of every entity
+    // it has returned. The session, and with it the connection, are released when the stream is closed.
+    @Override
+    public Stream<Customer> streamAllOrdered(Sort sort, int fetchSize) {
+        var parameters = new HashMap<String, Object>();
+        var sql = new OrderedQuery(SELECT).render(null, null, sort == null ? Sort.unsorted() : sort, null, parameters);
+        var session = openStatelessSession();
+
+        try {
+            var query = session.createNativeQuery(sql, Customer.class).setFetchSize(fetchSize);
+            parameters.forEach(query::setParameter);
+
+            return query.stream().onClose(session::close);
+
+        } catch (RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public List<Customer> findByNameContainingOrdered(String needle, Sort sort, Keyset after, Integer limit) {
+        return query(needle == null ? "" : needle, null, sort, after, limit);
+    }
+
+    @Override
+    public List<Customer> findByCompanyNameOrdered(String companyName, Sort sort, Keyset after, Integer limit) {
+        return query(null, companyName, sort, after, limit);
+    }
+
+    // Within a transaction, the session reads over the transaction's own connection (once pending changes are flushed), so that it
+    // sees the transaction's writes; otherwise it takes a connection of its own.
+    private StatelessSession openStatelessSession() {
+        var sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return sessionFactory.openStatelessSession();
+        }
+
+        var session = entityManager.unwrap(Session.class);
+        session.flush();
+
+        return session.doReturningWork(sessionFactory::openStatelessSession);
+    }
+
+    // Runs the query's parts in turn, until the limit is reached.
+    private List<Customer> query(String needle, String companyName, Sort sort, Keyset after, Integer limit) {
+        var parts = new OrderedQuery(SELECT).renderParts(needle, companyName, sort == null ? Sort.unsorted() : sort, after);
+        var max = limit != null && limit > 0 ? limit : Integer.MAX_VALUE;
+        var session = entityManager.unwrap(Session.class);
+        var output = new ArrayList<Customer>();
+
+        for (var part : parts) {
+            if (output.size() == max) {
+                break;
+            }
+
+            var query = session.createNativeQuery(part.getSql(), Customer.class);
+            part.getParameters().forEach(query::setParameter);
+
+            if (max < Integer.MAX_VALUE) {
+                query.setMaxResults(max - output.size());
+            }
+
+            output.addAll(query.getResultList());
+        }
+
+        return output;
+    }
+}
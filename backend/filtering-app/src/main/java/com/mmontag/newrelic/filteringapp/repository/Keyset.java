@@ -0,0 +1,30 @@
+package com.mmontag.newrelic.filteringapp.repository;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Sort;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+import lombok.Value;
+
+/**
+ * The position of the last row of a page, for keyset ("seek") pagination: the row's values for each property of the page's
+ * {@link Sort}, in order, plus its id (which is always the final tiebreaker).
+ */
+@Value
+public class Keyset {
+
+    List<Object> values;
+
+    long id;
+
+    public static Keyset of(Customer last, Sort sort) {
+        var wrapper = new BeanWrapperImpl(last);
+        var values = sort.stream().map(order -> wrapper.getPropertyValue(order.getProperty())).collect(Collectors.toList());
+
+        return new Keyset(values, last.getId());
+    }
+}
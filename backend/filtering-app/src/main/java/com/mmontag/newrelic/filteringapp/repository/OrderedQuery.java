@@ -0,0 +1,291 @@
+package com.mmontag.newrelic.filteringapp.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.domain.Sort;
+
+import lombok.Value;
+
+/**
+ * Renders the SQL queries behind {@link CustomerRepositoryCustom}: optional name-search and company conditions, a seek predicate
+ * for the keyset, and an ORDER BY which always ends with an id tiebreaker. Shared by the JPA and R2DBC repositories, which only
+ * differ in their SELECT; parameters are named ({@code :name}) in both.
+ * <pre/>
+ * Case-insensitive orders go by the upper-cased copies of the name columns ({@code import.sql}), which are indexed together with
+ * the id, since H2 can't index {@code UPPER(column)}. An index only serves an ORDER BY whose null ordering matches its own, so
+ * {@link #renderParts} splits a page query in two: the customers whose leading sort column is null, and those whose isn't, in the
+ * order the null handling puts them. Neither part has nulls to place, and the keyset seeks into just one of them, with a range on
+ * the column which H2 starts its index walk at.
+ */
+final class OrderedQuery {
+
+    static final String ID_PROPERTY = "id";
+
+    private static final char LIKE_ESCAPE_CHARACTER = '\\';
+
+    // Customer property -> column. Anything else is rejected, since the column names are concatenated into the SQL.
+    private static final Map<String, String> COLUMNS = Map.of(
+        ID_PROPERTY, "id",
+        "firstName", "first_name",
+        "lastName", "last_name",
+        "companyName", "company_name"
+    );
+
+    // Customer property -> its upper-cased, indexed copy.
+    private static final Map<String, String> UPPER_CASED_COLUMNS = Map.of(
+        "firstName", "first_name_key",
+        "lastName", "last_name_key",
+        "companyName", "company_name_key"
+    );
+
+    /**
+     * A rendered query, with the values of its parameters.
+     */
+    @Value
+    static class Part {
+
+        String sql;
+
+        Map<String, Object> parameters;
+    }
+
+    private final String select;
+
+    OrderedQuery(String select) {
+        this.select = select;
+    }
+
+    /**
+     * Renders the query for the given conditions and ordering, collecting the values of its parameters.
+     * @param needle If not {@code null}, only customers whose first or last name contains it (ignoring case) match.
+     * @param companyName If not {@code null}, only customers whose company name is exactly this match.
+     * @param after If not {@code null}, only customers strictly after this keyset (in the sort's order) match.
+     */
+    String render(String needle, String companyName, Sort sort, Keyset after, Map<String, Object> parameters) {
+        return render(needle, companyName, sort, after, null, parameters);
+    }
+
+    /**
+     * Like {@link #render(String, String, Sort, Keyset, Map)}, but split into parts (see above) for pages: running them in turn,
+     * each limited to what the ones before left of the limit, gives the query's first rows.
+     */
+    List<Part> renderParts(String needle, String companyName, Sort sort, Keyset after) {
+        var leading = sort.stream().findFirst().orElse(null);
+
+        if (leading == null || ID_PROPERTY.equals(leading.getProperty())) {
+            var parameters = new HashMap<String, Object>();
+            return List.of(new Part(render(needle, companyName, sort, after, null, parameters), parameters));
+        }
+
+        checkKeyset(sort, after);
+
+        // Like H2, NATIVE sorts nulls as the lowest values.
+        var nullsFirst = leading.getNullHandling() == Sort.NullHandling.NATIVE ? leading.isAscending() : leading.getNullHandling() == Sort.NullHandling.NULLS_FIRST;
+        var leadingNulls = nullsFirst ? List.of(true, false) : List.of(false, true);
+
+        // Starts at the part the keyset is in; any after it come after the keyset in full.
+        if (after != null) {
+            leadingNulls = leadingNulls.subList(leadingNulls.indexOf(after.getValues().get(0) == null), leadingNulls.size());
+        }
+
+        var output = new ArrayList<Part>(leadingNulls.size());
+
+        for (int i = 0; i < leadingNulls.size(); ++i) {
+            var parameters = new HashMap<String, Object>();
+            output.add(new Part(render(needle, companyName, sort, i == 0 ? after : null, leadingNulls.get(i), parameters), parameters));
+        }
+
+        return output;
+    }
+
+    // Renders the query, only for the customers whose leading sort column is (or isn't) null if leadingNull is given.
+    private String render(String needle, String companyName, Sort sort, Keyset after, Boolean leadingNull, Map<String, Object> parameters) {
+        var query = new StringBuilder(select);
+        var conditions = new ArrayList<String>();
+        var leading = leadingNull == null ? null : sort.iterator().next();
+
+        if (needle != null) {
+            conditions.add("(UPPER(" + column("firstName") + ") LIKE UPPER(:needle) ESCAPE '\\' OR UPPER(" + column("lastName") + ") LIKE UPPER(:needle) ESCAPE '\\')");
+            parameters.put("needle", "%" + escapeLike(needle) + "%");
+        }
+
+        if (companyName != null) {
+            conditions.add(column("companyName") + " = :companyName");
+            parameters.put("companyName", companyName);
+        }
+
+        if (leading != null) {
+            conditions.add(expression(leading) + (leadingNull ? " IS NULL" : " IS NOT NULL"));
+        }
+
+        if (after != null) {
+            conditions.add(seekCondition(sort, after, parameters));
+
+            // Redundant with the seek condition, but unlike its alternatives, a range H2 can look up in the index.
+            if (Boolean.FALSE.equals(leadingNull)) {
+                conditions.add(expression(leading) + (leading.isAscending() ? " >= " : " <= ") + parameterExpression(leading, "k0"));
+            }
+        }
+
+        if (!conditions.isEmpty()) {
+            query.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+
+        appendOrderBy(query, sort, leading);
+
+        return query.toString();
+    }
+
+    // Renders the ORDER BY clause for a Sort, always ending with an id tiebreaker. The leading order's nulls aren't placed if its
+    // column is known to be all (or no) nulls, so that its index applies.
+    private void appendOrderBy(StringBuilder query, Sort sort, Sort.Order uniformlyNull) {
+        var separator = " ORDER BY ";
+
+        for (var order : sort) {
+            query.append(separator)
+                .append(expression(order))
+                .append(order.isAscending() ? " ASC" : " DESC");
+
+            var nullHandling = order == uniformlyNull ? Sort.NullHandling.NATIVE : order.getNullHandling();
+
+            if (nullHandling == Sort.NullHandling.NULLS_FIRST) {
+                query.append(" NULLS FIRST");
+            } else if (nullHandling == Sort.NullHandling.NULLS_LAST) {
+                query.append(" NULLS LAST");
+            }
+
+            separator = ", ";
+        }
+
+        if (!isOrderedById(sort)) {
+            query.append(separator).append(column(ID_PROPERTY)).append(" ASC");
+        }
+    }
+
+    // Renders "the row comes strictly after the keyset" as the lexicographic expansion of (k1, k2, ..., id) > (v1, v2, ..., id0):
+    //   (k1 > v1) OR (k1 = v1 AND k2 > v2) OR ... OR (k1 = v1 AND k2 = v2 AND ... AND id > id0)
+    // with ">" flipped for descending orders, and nulls placed according to each order's null handling.
+    private String seekCondition(Sort sort, Keyset after, Map<String, Object> parameters) {
+        checkKeyset(sort, after);
+
+        var orders = sort.toList();
+        var alternatives = new ArrayList<String>();
+        var equalPrefix = new ArrayList<String>();
+
+        for (int i = 0; i < orders.size(); ++i) {
+            var order = orders.get(i);
+            var value = after.getValues().get(i);
+            var parameter = "k" + i;
+
+            if (value != null) {
+                parameters.put(parameter, value);
+            }
+
+            var greater = greaterThan(order, value, parameter);
+            if (greater != null) {
+                alternatives.add(conjunction(equalPrefix, greater));
+            }
+
+            equalPrefix.add(equalTo(order, value, parameter));
+        }
+
+        // If the sort already contains the id, rows equal on every sort key can only be the keyset row itself.
+        if (!isOrderedById(sort)) {
+            parameters.put("lastId", after.getId());
+            alternatives.add(conjunction(equalPrefix, column(ID_PROPERTY) + " > :lastId"));
+        }
+
+        return alternatives.isEmpty() ? "1 = 0" : "(" + String.join(" OR ", alternatives) + ")";
+    }
+
+    private static void checkKeyset(Sort sort, Keyset after) {
+        if (after != null && sort.toList().size() != after.getValues().size()) {
+            throw new IllegalArgumentException("Keyset has " + after.getValues().size() + " values, but the sort has " + sort.toList().size() + " orders.");
+        }
+    }
+
+    // Returns the condition for "the row's value comes after the given value" in this order, or null if nothing can (i.e. the
+    // value is null, and nulls go last).
+    private String greaterThan(Sort.Order order, Object value, String parameter) {
+        var path = expression(order);
+        var nullsLast = nullsLast(order);
+
+        if (value == null) {
+            return nullsLast ? null : path + " IS NOT NULL";
+        }
+
+        var comparison = expression(order) + (order.isAscending() ? " > " : " < ") + parameterExpression(order, parameter);
+
+        return nullsLast ? "(" + comparison + " OR " + path + " IS NULL)" : comparison;
+    }
+
+    private String equalTo(Sort.Order order, Object value, String parameter) {
+        if (value == null) {
+            return expression(order) + " IS NULL";
+        }
+
+        return expression(order) + " = " + parameterExpression(order, parameter);
+    }
+
+    private boolean nullsLast(Sort.Order order) {
+        if (order.getNullHandling() == Sort.NullHandling.NATIVE) {
+            throw new IllegalArgumentException("Keyset pagination requires explicit null handling, but \"" + order.getProperty() + "\" uses NATIVE.");
+        }
+
+        return order.getNullHandling() == Sort.NullHandling.NULLS_LAST;
+    }
+
+    // The column an order sorts by: for case-insensitive orders, the property's upper-cased copy (or failing that, the property
+    // upper-cased on the fly).
+    private static String expression(Sort.Order order) {
+        var column = column(order.getProperty());
+
+        if (!order.isIgnoreCase()) {
+            return column;
+        }
+
+        return UPPER_CASED_COLUMNS.getOrDefault(order.getProperty(), "UPPER(" + column + ")");
+    }
+
+    private static String column(String property) {
+        var column = COLUMNS.get(property);
+
+        if (column == null) {
+            throw new IllegalArgumentException("Unknown property \"" + property + "\".");
+        }
+
+        return column;
+    }
+
+    // Case-insensitive keys are upper-cased by the database on both sides, so the comparison can't disagree with the ORDER BY.
+    private static String parameterExpression(Sort.Order order, String parameter) {
+        return order.isIgnoreCase() ? "UPPER(:" + parameter + ")" : ":" + parameter;
+    }
+
+    private boolean isOrderedById(Sort sort) {
+        return sort.getOrderFor(ID_PROPERTY) != null;
+    }
+
+    private static String conjunction(List<String> prefix, String last) {
+        var terms = new ArrayList<String>(prefix);
+        terms.add(last);
+
+        return terms.size() == 1 ? last : "(" + String.join(" AND ", terms) + ")";
+    }
+
+    private static String escapeLike(String value) {
+        var escaped = new StringBuilder(value.length());
+
+        for (var c : value.toCharArray()) {
+            if (c == LIKE_ESCAPE_CHARACTER || c == '%' || c == '_') {
+                escaped.append(LIKE_ESCAPE_CHARACTER);
+            }
+            escaped.append(c);
+        }
+
+        return escaped.toString();
+    }
+}
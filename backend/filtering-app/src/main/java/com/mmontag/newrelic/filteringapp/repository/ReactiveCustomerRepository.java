@@ -0,0 +1,118 @@
+package com.mmontag.newrelic.filteringapp.repository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Sort;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Readable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Reactive counterpart of {@link CustomerRepositoryCustom}'s keyset-paginated queries, for the reactive web stack: the same
+ * queries (rendered by {@link OrderedQuery}, as SQL), run over R2DBC, with results emitted as a {@link Flux} which only pulls rows
+ * as fast as they're consumed.
+ * <pre/>
+ * Only created for reactive web applications (see application-reactive.properties). Reads go to the same database JPA writes to,
+ * so {@code reactive-customer-repository.url} has to name the database of {@code spring.datasource.url}. The connection factory is
+ * the repository's own rather than a ConnectionFactory bean, whose presence would stop Boot from configuring the DataSource.
+ * <pre/>
+ * r2dbc-h2 runs the embedded database's work on whichever thread subscribes, so queries are subscribed to on a scheduler of
+ * {@code reactive-customer-repository.max_concurrency} threads, keeping them off the server's event loops and bounding how many run
+ * at once. Each query opens its own (in-process) session, rather than borrowing one from a pool: r2dbc-pool hands a released
+ * connection to the next waiting query on the releasing thread, which under load left the requests of one event loop waiting until
+ * the load subsided.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCustomerRepository {
+
+    private static final String SELECT = "SELECT id, first_name, last_name, company_name FROM customers";
+
+    @Value("${reactive-customer-repository.url}")
+    String url;
+
+    @Value("${reactive-customer-repository.username:sa}")
+    String username;
+
+    @Value("${reactive-customer-repository.password:}")
+    String password;
+
+    @Value("${reactive-customer-repository.max_concurrency:10}")
+    int maxConcurrency;
+
+    private Scheduler scheduler;
+
+    private DatabaseClient client;
+
+    @PostConstruct
+    void connect() {
+        var options = ConnectionFactoryOptions.parse(url).mutate()
+            .option(ConnectionFactoryOptions.USER, username)
+            .option(ConnectionFactoryOptions.PASSWORD, password)
+            .build();
+
+        scheduler = Schedulers.newBoundedElastic(maxConcurrency, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "reactive-customer-repository");
+        client = DatabaseClient.create(ConnectionFactories.get(options));
+    }
+
+    @PreDestroy
+    void close() {
+        scheduler.dispose();
+    }
+
+    /**
+     * @see CustomerRepositoryCustom#findAllOrdered(Sort, Keyset, Integer)
+     */
+    public Flux<Customer> findAllOrdered(Sort sort, Keyset after, Integer limit) {
+        return query(null, null, sort, after, limit);
+    }
+
+    /**
+     * @see CustomerRepositoryCustom#findByNameContainingOrdered(String, Sort, Keyset, Integer)
+     */
+    public Flux<Customer> findByNameContainingOrdered(String needle, Sort sort, Keyset after, Integer limit) {
+        return query(needle == null ? "" : needle, null, sort, after, limit);
+    }
+
+    /**
+     * @see CustomerRepositoryCustom#findByCompanyNameOrdered(String, Sort, Keyset, Integer)
+     */
+    public Flux<Customer> findByCompanyNameOrdered(String companyName, Sort sort, Keyset after, Integer limit) {
+        return query(null, companyName, sort, after, limit);
+    }
+
+    // Deferred, so that invalid arguments surface as an error signal on subscription, like a failing query would. The query's parts
+    // run in turn, each only once the one before has completed, and none once the limit is reached.
+    private Flux<Customer> query(String needle, String companyName, Sort sort, Keyset after, Integer limit) {
+        var limited = limit != null && limit > 0;
+        var customers = Flux.defer(() -> Flux.fromIterable(new OrderedQuery(SELECT).renderParts(needle, companyName, sort == null ? Sort.unsorted() : sort, after)))
+            .concatMap(part -> query(part, limited ? limit : null));
+
+        return (limited ? customers.take(limit) : customers).subscribeOn(scheduler);
+    }
+
+    private Flux<Customer> query(OrderedQuery.Part part, Integer limit) {
+        var spec = client.sql(limit == null ? part.getSql() : part.getSql() + " LIMIT " + limit);
+
+        for (var parameter : part.getParameters().entrySet()) {
+            spec = spec.bind(parameter.getKey(), parameter.getValue());
+        }
+
+        return spec.map(ReactiveCustomerRepository::toCustomer).all();
+    }
+
+    private static Customer toCustomer(Readable row) {
+        return new Customer(row.get("id", Number.class).longValue(), row.get("first_name", String.class), row.get("last_name", String.class), row.get("company_name", String.class));
+    }
+}
@@ -0,0 +1,235 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Access log of customer requests, written off the request thread: a request only captures its fields (its raw query string,
+ * status, latency and result size) into a bounded buffer, and a single background thread drains
+ * the buffer in batches, formats the entries and writes them to the {@code customer.access} logger, one logfmt line each, with
+ * the query parameters decoded into fields of their own, e.g.
+ * <pre>
+ * time=2022-09-01T12:00:00.123Z method=GET path=/customers status=200 latency_ms=1.234 result_size=10 limit=10 sortBy=lastName
+ * </pre>
+ * When the buffer is full, entries are dropped rather than blocking the request. With a sample rate below 1, only that fraction
+ * of successful requests is logged; failed ones (status 400 and up) always are. The logger's level still applies, so
+ * {@code logging.level.customer.access=OFF} turns it off entirely.
+ * <pre/>
+ * Exported as the {@code customer.access.log.entries} counter, tagged with whether each entry was {@code logged} or
+ * {@code dropped}.
+ */
+@Component
+public class CustomerAccessLog {
+
+    private static final Logger log = LoggerFactory.getLogger("customer.access");
+
+    private final boolean enabled;
+
+    private final double sampleRate;
+
+    private final int batchSize;
+
+    private final ArrayBlockingQueue<Entry> buffer;
+
+    private final Counter logged;
+
+    private final Counter dropped;
+
+    private Thread writer;
+
+    private volatile boolean running;
+
+    public CustomerAccessLog(@Value("${customer-access-log.enabled:true}") boolean enabled, @Value("${customer-access-log.sample_rate:1.0}") double sampleRate,
+            @Value("${customer-access-log.buffer_size:8192}") int bufferSize, @Value("${customer-access-log.batch_size:256}") int batchSize, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.batchSize = batchSize;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.logged = entryCounter(meterRegistry, "logged");
+        this.dropped = entryCounter(meterRegistry, "dropped");
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        writer = new Thread(this::writeEntries, "customer-access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Writes whatever is still buffered before shutting down.
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Buffers an entry for the request, unless it's sampled out. Never blocks.
+     *
+     * @param query The request's raw (still URL-encoded) query string, or null.
+     * @param resultSize The number of customers (or companies) returned, or a negative number when unknown (e.g. streamed responses).
+     */
+    public void record(String method, String path, String query, int status, long latencyNanos, int resultSize) {
+        if (!enabled || !log.isInfoEnabled() || (status < 400 && sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+
+        if (!buffer.offer(new Entry(System.currentTimeMillis(), method, path, query, status, latencyNanos, resultSize))) {
+            dropped.increment();
+        }
+    }
+
+    // Runs on the writer thread until stopped, then writes the rest of the buffer.
+    private void writeEntries() {
+        var batch = new ArrayList<Entry>(batchSize);
+        var line = new StringBuilder(256);
+
+        while (running) {
+            try {
+                var first = buffer.poll(1, TimeUnit.SECONDS);
+
+                if (first != null) {
+                    batch.add(first);
+                    buffer.drainTo(batch, batchSize - 1);
+                    write(batch, line);
+                }
+            } catch (InterruptedException e) {
+                // Stopping; running is already false.
+            } catch (RuntimeException e) {
+                log.warn("Failed to write access log entries", e);
+                batch.clear();
+            }
+        }
+
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            write(batch, line);
+        }
+    }
+
+    private void write(List<Entry> batch, StringBuilder line) {
+        for (var entry : batch) {
+            line.setLength(0);
+            entry.format(line);
+            log.info(line.toString());
+        }
+
+        logged.increment(batch.size());
+        batch.clear();
+    }
+
+    private static Counter entryCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("customer.access.log.entries")
+            .description("Customer access log entries, by whether they were logged or dropped because the buffer was full")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    // One request, as captured on the request thread; formatted on the writer thread.
+    private static final class Entry {
+
+        private final long timestamp;
+
+        private final String method;
+
+        private final String path;
+
+        private final String query;
+
+        private final int status;
+
+        private final long latencyNanos;
+
+        private final int resultSize;
+
+        private Entry(long timestamp, String method, String path, String query, int status, long latencyNanos, int resultSize) {
+            this.timestamp = timestamp;
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.status = status;
+            this.latencyNanos = latencyNanos;
+            this.resultSize = resultSize;
+        }
+
+        private void format(StringBuilder line) {
+            line.append("time=").append(Instant.ofEpochMilli(timestamp));
+            line.append(" method=").append(method);
+            appendField(line, "path", path);
+            line.append(" status=").append(status);
+            line.append(" latency_ms=").append(String.format(Locale.ROOT, "%.3f", latencyNanos / 1e6));
+
+            if (resultSize >= 0) {
+                line.append(" result_size=").append(resultSize);
+            }
+
+            if (query != null && !query.isEmpty()) {
+                for (var parameter : query.split("&")) {
+                    var separator = parameter.indexOf('=');
+                    appendField(line, decode(separator < 0 ? parameter : parameter.substring(0, separator)), separator < 0 ? "" : decode(parameter.substring(separator + 1)));
+                }
+            }
+        }
+
+        // Malformed encodings are logged as they were sent.
+        private static String decode(String value) {
+            try {
+                return URLDecoder.decode(value, StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                return value;
+            }
+        }
+
+        // Names are reduced to letters, digits, dots, dashes and underscores. Values with spaces, control characters, quotes or equals
+        // signs (or empty ones) are quoted, with quotes and backslashes escaped and control characters replaced by spaces, so that
+        // clients can't forge fields or lines.
+        private static void appendField(StringBuilder line, String name, String value) {
+            line.append(' ');
+
+            for (int i = 0; i < name.length(); ++i) {
+                var c = name.charAt(i);
+                line.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_' ? c : '_');
+            }
+
+            line.append('=');
+
+            if (!value.isEmpty() && value.chars().noneMatch(c -> c <= ' ' || c == '"' || c == '=' || c == '\\')) {
+                line.append(value);
+                return;
+            }
+
+            line.append('"');
+
+            for (int i = 0; i < value.length(); ++i) {
+                var c = value.charAt(i);
+
+                if (c == '"' || c == '\\') {
+                    line.append('\\');
+                }
+
+                line.append(c < ' ' ? ' ' : c);
+            }
+
+            line.append('"');
+        }
+    }
+}
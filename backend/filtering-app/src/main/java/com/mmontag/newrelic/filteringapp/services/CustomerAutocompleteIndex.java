@@ -0,0 +1,733 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.SortingService.NullOrderingBehavior;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory prefix index over customers' upper-cased first, last and company names, answering "some name starts with, ignoring
+ * case" lookups (search-as-you-type) without the database: the customers it returns are rebuilt from the index itself. A
+ * {@link CustomerReadModel}, built and kept in sync by the {@link CustomerReadModelLoader}.
+ * <pre/>
+ * Every distinct name is a term in one dictionary, sorted by upper-cased name, and its code is its index there, so the terms
+ * starting with a prefix are one range of codes, found by two binary searches. For each field, customers (by ordinal, in id
+ * order) are grouped by the code of their name, in one flat array: a prefix's matches in that field are then a single slice of
+ * it, made up of one id-ordered run per term. Per customer, only its id and the codes of its names are kept, so memory is a few
+ * ints per customer plus the distinct names, however many customers share them.
+ * <pre/>
+ * The arrays are immutable once built. Customers written afterwards are kept aside (and their indexed entries masked) until there
+ * are enough of them to be worth merging in, which rebuilds the arrays from the index's own contents.
+ */
+@Slf4j
+@Component
+public class CustomerAutocompleteIndex implements CustomerReadModel {
+
+    // The indexed names, and the registered SortingService fields they're sorted by.
+    private static final List<Function<Customer, String>> FIELDS = List.of(Customer::getFirstName, Customer::getLastName, Customer::getCompanyName);
+
+    private static final List<String> FIELD_NAMES = List.of("firstName", "lastName", "companyName");
+
+    private static final int NO_CODE = -1;
+
+    // Customers written since the last build are merged in once they're this many, or a sixteenth of the index, whichever's more.
+    private static final int MIN_MERGE_THRESHOLD = 1024;
+
+    @Autowired
+    CustomerOrdinals ordinals;
+
+    @Autowired
+    SortingService<Customer> sortingService;
+
+    @Value("${customer-autocomplete-index.enabled:true}")
+    boolean enabled;
+
+    private Index index = new Index(null);
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Whether the index has been built, and can serve lookups.
+     */
+    public boolean isReady() {
+        return enabled && ordinals.isReady();
+    }
+
+    @Override
+    public Rebuild rebuild(CustomerOrdinals.Registry ordinals) {
+        return new Index(new Builder());
+    }
+
+    @Override
+    public void put(int ordinal, Customer customer) {
+        index.put(ordinal, customer);
+    }
+
+    @Override
+    public void delete(int ordinal) {
+        index.delete(ordinal);
+    }
+
+    /**
+     * Finds the first {@code limit} customers whose first, last or company name starts with the prefix, ignoring case.
+     * @param sortSpecs The order to return them in, of registered SortingService fields; empty for ascending id order.
+     * @throws SortingException If the sort specs aren't valid for the SortingService.
+     */
+    public List<Customer> complete(String prefix, List<SortSpec> sortSpecs, int limit) throws SortingException {
+        var upperCasedPrefix = prefix.toUpperCase();
+
+        ordinals.readLock().lock();
+
+        try {
+            var candidates = new ArrayList<Customer>();
+
+            var snapshot = index.snapshot;
+
+            // The first `limit` of the indexed matches and of the written ones; the first `limit` overall are among them.
+            for (var ordinal : snapshot.first(upperCasedPrefix, index.staleOrdinals, ordinalOrder(sortSpecs), limit)) {
+                candidates.add(snapshot.customerAt(ordinal));
+            }
+
+            for (var customer : index.written.values()) {
+                if (matches(customer, upperCasedPrefix)) {
+                    candidates.add(customer);
+                }
+            }
+
+            // In id order first, since the written ones can come before indexed ones: sortTopK is stable, so that's then how
+            // customers tied on the sort specs are ordered, as they are among the indexed ones.
+            candidates.sort((c1, c2) -> Long.compare(c1.getId(), c2.getId()));
+
+            if (sortSpecs.isEmpty()) {
+                return candidates.size() > limit ? new ArrayList<>(candidates.subList(0, limit)) : candidates;
+            }
+
+            return sortingService.sortTopK(candidates, sortSpecs, limit);
+
+        } finally {
+            ordinals.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The approximate heap held by the index: its arrays, plus the distinct names.
+     */
+    public long memoryBytes() {
+        ordinals.readLock().lock();
+
+        try {
+            return index.snapshot.memoryBytes();
+        } finally {
+            ordinals.readLock().unlock();
+        }
+    }
+
+    // Orders indexed customers (by ordinal) the way the SortingService would order them by the given specs: the registered name
+    // comparators compare upper-cased names, whose order is that of their terms' ranks. Returns null for ascending id order, which
+    // is ordinal order. Specs which can't be expressed over ranks (other fields, CUSTOM null ordering) are rejected.
+    private OrdinalOrder ordinalOrder(List<SortSpec> sortSpecs) throws SortingException {
+        if (sortSpecs.isEmpty()) {
+            return null;
+        }
+
+        var fields = new int[sortSpecs.size()];
+        var descending = new boolean[sortSpecs.size()];
+        var nullsFirst = new boolean[sortSpecs.size()];
+
+        for (int i = 0; i < fields.length; ++i) {
+            var spec = sortSpecs.get(i);
+            var nullBehavior = sortingService.resolveNullBehavior(spec.getField(), spec.getNullBehavior());
+
+            fields[i] = FIELD_NAMES.indexOf(spec.getField());
+
+            if (fields[i] < 0 || nullBehavior == NullOrderingBehavior.CUSTOM) {
+                throw new SortingException("Autocompletions can't be sorted by " + spec.getField() + " with " + nullBehavior + " null ordering.");
+            }
+
+            descending[i] = sortingService.resolveSortDirection(spec.getField(), spec.getDirection()) == SortDirection.DESCENDING;
+            nullsFirst[i] = nullBehavior == NullOrderingBehavior.NULLS_FIRST;
+        }
+
+        return new OrdinalOrder(fields, descending, nullsFirst);
+    }
+
+    private static boolean matches(Customer customer, String upperCasedPrefix) {
+        for (var field : FIELDS) {
+            var value = field.apply(customer);
+
+            if (value != null && value.toUpperCase().startsWith(upperCasedPrefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // The snapshot, and the customers written since it was built: the installed ones, or new ones being filled by a rebuild.
+    private final class Index implements Rebuild {
+
+        private Snapshot snapshot = new Builder().build();
+
+        // The snapshot being built by a rebuild, until it's built.
+        private Builder builder;
+
+        // Indexed customers which have since been deleted or updated, by ordinal.
+        private final BitSet staleOrdinals = new BitSet();
+
+        // The current version of every customer written since the last build, by id.
+        private final TreeMap<Long, Customer> written = new TreeMap<>();
+
+        private Index(Builder builder) {
+            this.builder = builder;
+        }
+
+        // Customers put by a rebuild (in id order) go into the snapshot being built; after that, they're written ones. The index
+        // keeps its own ordinals, which are compacted by every merge, rather than the CustomerOrdinals'.
+        @Override
+        public void put(int ordinal, Customer customer) {
+            if (builder != null) {
+                builder.add(customer);
+                return;
+            }
+
+            markStale(customer.getId());
+
+            // A detached copy, since the entity itself can change after the event.
+            written.put(customer.getId(), new Customer(customer.getId(), customer.getFirstName(), customer.getLastName(), customer.getCompanyName()));
+
+            if (written.size() >= Math.max(MIN_MERGE_THRESHOLD, snapshot.size / 16)) {
+                merge();
+            }
+        }
+
+        // By the installed ordinals, which are the rebuilt ones by the time a rebuild deletes any.
+        @Override
+        public void delete(int ordinal) {
+            var id = ordinals.idOf(ordinal);
+
+            markStale(id);
+            written.remove(id);
+        }
+
+        @Override
+        public void built() {
+            snapshot = builder.build();
+            builder = null;
+
+            log.info("Indexed {} customers ({} distinct names) for autocomplete", snapshot.size, snapshot.values.length);
+        }
+
+        @Override
+        public void install() {
+            index = this;
+        }
+
+        // Rebuilds the arrays with the customers written since the last build merged in (both sides are in id order).
+        private void merge() {
+            var start = System.nanoTime();
+            var builder = new Builder();
+            var pending = written.values().iterator();
+            var next = pending.hasNext() ? pending.next() : null;
+
+            for (int ordinal = 0; ordinal < snapshot.size; ++ordinal) {
+                if (staleOrdinals.get(ordinal)) {
+                    continue;
+                }
+
+                for (; next != null && next.getId() < snapshot.ids[ordinal]; next = pending.hasNext() ? pending.next() : null) {
+                    builder.add(next);
+                }
+
+                builder.add(snapshot.customerAt(ordinal));
+            }
+
+            for (; next != null; next = pending.hasNext() ? pending.next() : null) {
+                builder.add(next);
+            }
+
+            var merged = written.size();
+            snapshot = builder.build();
+            staleOrdinals.clear();
+            written.clear();
+
+            log.info("Merged {} written customers into the autocomplete index in {} ms", merged, (System.nanoTime() - start) / 1_000_000);
+        }
+
+        private void markStale(long id) {
+            var ordinal = snapshot.ordinalOf(id);
+
+            if (ordinal >= 0) {
+                staleOrdinals.set(ordinal);
+            }
+        }
+    }
+
+    // Compares two indexed customers of a snapshot, by ordinal: by the ranks of their names in each field in turn, then by ordinal.
+    private static final class OrdinalOrder {
+
+        private final int[] fields;
+
+        private final boolean[] descending;
+
+        private final boolean[] nullsFirst;
+
+        private OrdinalOrder(int[] fields, boolean[] descending, boolean[] nullsFirst) {
+            this.fields = fields;
+            this.descending = descending;
+            this.nullsFirst = nullsFirst;
+        }
+
+        private int compare(Snapshot snapshot, int ordinal1, int ordinal2) {
+            for (int i = 0; i < fields.length; ++i) {
+                var rank1 = snapshot.rankOf(fields[i], ordinal1);
+                var rank2 = snapshot.rankOf(fields[i], ordinal2);
+
+                if (rank1 == rank2) {
+                    continue;
+                } else if (rank1 == NO_CODE || rank2 == NO_CODE) {
+                    return (rank1 == NO_CODE) == nullsFirst[i] ? -1 : 1;
+                }
+
+                return descending[i] ? Integer.compare(rank2, rank1) : Integer.compare(rank1, rank2);
+            }
+
+            return Integer.compare(ordinal1, ordinal2);
+        }
+    }
+
+    // The immutable arrays of one build of the index.
+    private static final class Snapshot {
+
+        // Every distinct name, sorted by its upper-cased key (then by itself); a name's code is its index here.
+        private final String[] values;
+
+        // values[code].toUpperCase(), ascending.
+        private final String[] keys;
+
+        // The first code with the same key, so that names which only differ in case rank equally, as they compare in the
+        // SortingService.
+        private final int[] ranks;
+
+        // Ascending; a customer's ordinal is its index here.
+        private final long[] ids;
+
+        private final int size;
+
+        // codes[field][ordinal]: the code of the customer's name in that field, or NO_CODE if it has none.
+        private final int[][] codes;
+
+        // ordinalsByCode[field]: ordinals grouped by their code in that field, ascending within each code; the ordinals with code
+        // c are those from offsets[field][c] to offsets[field][c + 1].
+        private final int[][] ordinalsByCode;
+
+        private final int[][] offsets;
+
+        private Snapshot(String[] values, String[] keys, int[] ranks, long[] ids, int size, int[][] codes, int[][] ordinalsByCode, int[][] offsets) {
+            this.values = values;
+            this.keys = keys;
+            this.ranks = ranks;
+            this.ids = ids;
+            this.size = size;
+            this.codes = codes;
+            this.ordinalsByCode = ordinalsByCode;
+            this.offsets = offsets;
+        }
+
+        // Returns the ordinals of the first `limit` live customers with a name starting with the prefix, in the given order (or in
+        // ordinal order, if null).
+        private List<Integer> first(String upperCasedPrefix, BitSet staleOrdinals, OrdinalOrder order, int limit) {
+            var fromCode = lowerBound(upperCasedPrefix);
+            var toCode = lowerBound(upperCasedPrefix + Character.MAX_VALUE);
+
+            if (fromCode == toCode || limit <= 0) {
+                return List.of();
+            }
+
+            if (order == null) {
+                return firstByOrdinal(fromCode, toCode, staleOrdinals, limit);
+            }
+
+            if (walkCost(fromCode, toCode, order, limit) < heapCost(fromCode, toCode)) {
+                var output = firstByWalk(fromCode, toCode, staleOrdinals, order, limit);
+
+                if (output != null) {
+                    return output;
+                }
+            }
+
+            return firstByOrder(fromCode, toCode, staleOrdinals, order, limit);
+        }
+
+        // Merges the per-term runs (each ascending) of every field, stopping at the limit.
+        private List<Integer> firstByOrdinal(int fromCode, int toCode, BitSet staleOrdinals, int limit) {
+            // Each run's next position, by run; runs are ordered in the heap by the ordinal at that position.
+            var runs = new PriorityQueue<int[]>((run1, run2) -> Integer.compare(ordinalsByCode[run1[0]][run1[1]], ordinalsByCode[run2[0]][run2[1]]));
+
+            for (int field = 0; field < codes.length; ++field) {
+                for (int code = fromCode; code < toCode; ++code) {
+                    if (offsets[field][code] < offsets[field][code + 1]) {
+                        runs.add(new int[] { field, offsets[field][code], offsets[field][code + 1] });
+                    }
+                }
+            }
+
+            var output = new ArrayList<Integer>(limit);
+            var last = -1;
+
+            while (!runs.isEmpty() && output.size() < limit) {
+                var run = runs.poll();
+                var ordinal = ordinalsByCode[run[0]][run[1]];
+
+                // The same customer can match through several of its names.
+                if (ordinal != last && !staleOrdinals.get(ordinal)) {
+                    output.add(ordinal);
+                }
+
+                last = ordinal;
+
+                if (++run[1] < run[2]) {
+                    runs.add(run);
+                }
+            }
+
+            return output;
+        }
+
+        // Roughly how many customers firstByWalk steps through: until `limit` matches through the other fields, found at about
+        // size / (their matches) intervals, or until past the first `limit` matches through the sort field itself, which are a
+        // known range of its ordinals.
+        private long walkCost(int fromCode, int toCode, OrdinalOrder order, int limit) {
+            var field = order.fields[0];
+            var ordinals = ordinalsByCode[field].length;
+            long otherMatches = heapCost(fromCode, toCode) - (offsets[field][toCode] - offsets[field][fromCode]);
+            var cost = otherMatches > 0 ? limit * (long) size / otherMatches : Long.MAX_VALUE;
+
+            if (offsets[field][toCode] - offsets[field][fromCode] >= limit) {
+                cost = Math.min(cost, order.descending[0] ? ordinals - offsets[field][toCode] + limit : offsets[field][fromCode] + limit);
+            }
+
+            return cost;
+        }
+
+        // How many customers firstByOrder steps through: one per match (and field it matches through).
+        private long heapCost(int fromCode, int toCode) {
+            long matches = 0;
+
+            for (int field = 0; field < codes.length; ++field) {
+                matches += offsets[field][toCode] - offsets[field][fromCode];
+            }
+
+            return matches;
+        }
+
+        // Top-k selection for common prefixes, using the first sort field's ordinalsByCode, which are its customers in that name's
+        // order: those matching through that name are one range of it, already in order, and the rest are found by walking it
+        // from the start until there are `limit` of them, or until past the `limit`th of the range. Customers tied with the last
+        // one taken on that field are taken too, and the other sort fields then order them all. Returns null if that doesn't
+        // settle the first `limit`, which customers without the name might be among.
+        private List<Integer> firstByWalk(int fromCode, int toCode, BitSet staleOrdinals, OrdinalOrder order, int limit) {
+            var field = order.fields[0];
+            var descending = order.descending[0];
+            var ordinals = ordinalsByCode[field];
+            var output = new ArrayList<Integer>(2 * limit);
+
+            if (order.nullsFirst[0] && ordinals.length < size) {
+                return null;
+            }
+
+            var from = offsets[field][fromCode];
+            var to = offsets[field][toCode];
+            var rangeTaken = 0;
+            var rangeLastRank = NO_CODE;
+
+            for (int step = 0; step < to - from; ++step) {
+                var ordinal = ordinals[descending ? to - 1 - step : from + step];
+                var rank = rankOf(field, ordinal);
+
+                if (rangeTaken >= limit && rank != rangeLastRank) {
+                    break;
+                }
+
+                if (!staleOrdinals.get(ordinal)) {
+                    output.add(ordinal);
+                    ++rangeTaken;
+                    rangeLastRank = rank;
+                }
+            }
+
+            var walkTaken = 0;
+            var walkLastRank = NO_CODE;
+
+            for (int step = 0; step < ordinals.length; ++step) {
+                var ordinal = ordinals[descending ? ordinals.length - 1 - step : step];
+                var rank = rankOf(field, ordinal);
+
+                if (walkTaken >= limit && rank != walkLastRank) {
+                    break;
+                } else if (rangeTaken >= limit && (descending ? rank < rangeLastRank : rank > rangeLastRank)) {
+                    break;
+                }
+
+                var code = codes[field][ordinal];
+
+                if (code >= fromCode && code < toCode) {
+                    continue;
+                }
+
+                if (!staleOrdinals.get(ordinal) && matches(ordinal, fromCode, toCode)) {
+                    output.add(ordinal);
+                    ++walkTaken;
+                    walkLastRank = rank;
+                }
+            }
+
+            if (output.size() < limit && ordinals.length < size) {
+                return null;
+            }
+
+            output.sort((ordinal1, ordinal2) -> order.compare(this, ordinal1, ordinal2));
+            return output.size() > limit ? new ArrayList<>(output.subList(0, limit)) : output;
+        }
+
+        private boolean matches(int ordinal, int fromCode, int toCode) {
+            for (int field = 0; field < codes.length; ++field) {
+                var code = codes[field][ordinal];
+
+                if (code >= fromCode && code < toCode) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        // Top-k selection over every match, with a bounded heap whose head is the worst of the best `limit` so far.
+        private List<Integer> firstByOrder(int fromCode, int toCode, BitSet staleOrdinals, OrdinalOrder order, int limit) {
+            var best = new PriorityQueue<Integer>((ordinal1, ordinal2) -> order.compare(this, ordinal2, ordinal1));
+
+            for (int field = 0; field < codes.length; ++field) {
+                for (int i = offsets[field][fromCode]; i < offsets[field][toCode]; ++i) {
+                    var ordinal = ordinalsByCode[field][i];
+
+                    if (staleOrdinals.get(ordinal) || matchesEarlierField(field, ordinal, fromCode, toCode)) {
+                        continue;
+                    }
+
+                    if (best.size() < limit) {
+                        best.add(ordinal);
+                    } else if (order.compare(this, ordinal, best.peek()) < 0) {
+                        best.poll();
+                        best.add(ordinal);
+                    }
+                }
+            }
+
+            var output = new ArrayList<Integer>(best);
+            output.sort((ordinal1, ordinal2) -> order.compare(this, ordinal1, ordinal2));
+            return output;
+        }
+
+        // Whether the customer was already visited through one of its other names.
+        private boolean matchesEarlierField(int field, int ordinal, int fromCode, int toCode) {
+            for (int earlier = 0; earlier < field; ++earlier) {
+                var code = codes[earlier][ordinal];
+
+                if (code >= fromCode && code < toCode) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private Customer customerAt(int ordinal) {
+            return new Customer(ids[ordinal], valueOf(codes[0][ordinal]), valueOf(codes[1][ordinal]), valueOf(codes[2][ordinal]));
+        }
+
+        private String valueOf(int code) {
+            return code == NO_CODE ? null : values[code];
+        }
+
+        private int rankOf(int field, int ordinal) {
+            var code = codes[field][ordinal];
+            return code == NO_CODE ? NO_CODE : ranks[code];
+        }
+
+        private int ordinalOf(long id) {
+            var ordinal = Arrays.binarySearch(ids, 0, size, id);
+            return ordinal >= 0 ? ordinal : -1;
+        }
+
+        // Returns the first code whose key isn't less than the given string.
+        private int lowerBound(String key) {
+            var low = 0;
+            var high = keys.length;
+
+            while (low < high) {
+                var middle = (low + high) >>> 1;
+
+                if (keys[middle].compareTo(key) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        private long memoryBytes() {
+            // Array headers are ignored. Per customer: its id, and per field its code and its place in ordinalsByCode. Per name: its
+            // references, rank and offsets, and its String(s), at ~40 bytes on top of one byte per (Latin-1) character.
+            var bytes = 8L * size + 2 * 4L * codes.length * size + (4L * 3 + 4L * codes.length) * values.length;
+
+            for (int code = 0; code < values.length; ++code) {
+                bytes += 40 + values[code].length();
+
+                if (keys[code] != values[code]) {
+                    bytes += 40 + keys[code].length();
+                }
+            }
+
+            return bytes;
+        }
+    }
+
+    // Accumulates customers (in id order) with provisional codes in order of first appearance, then sorts the names and remaps.
+    private static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final HashMap<String, Integer> provisionalCodes = new HashMap<>();
+
+        private final ArrayList<String> values = new ArrayList<>();
+
+        private final ArrayList<String> keys = new ArrayList<>();
+
+        private long[] ids = new long[INITIAL_CAPACITY];
+
+        private final int[][] codes = new int[FIELDS.size()][INITIAL_CAPACITY];
+
+        private int size;
+
+        private void add(Customer customer) {
+            if (size > 0 && customer.getId() <= ids[size - 1]) {
+                throw new IllegalArgumentException("Customers must be indexed in ascending id order, but " + customer.getId() + " came after " + ids[size - 1] + ".");
+            }
+
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+
+                for (int field = 0; field < codes.length; ++field) {
+                    codes[field] = Arrays.copyOf(codes[field], size * 2);
+                }
+            }
+
+            ids[size] = customer.getId();
+
+            for (int field = 0; field < codes.length; ++field) {
+                codes[field][size] = provisionalCode(FIELDS.get(field).apply(customer));
+            }
+
+            ++size;
+        }
+
+        private int provisionalCode(String value) {
+            if (value == null) {
+                return NO_CODE;
+            }
+
+            var code = provisionalCodes.get(value);
+
+            if (code == null) {
+                var key = value.toUpperCase();
+                code = values.size();
+                provisionalCodes.put(value, code);
+                values.add(value);
+                keys.add(key.equals(value) ? value : key);
+            }
+
+            return code;
+        }
+
+        private Snapshot build() {
+            // Sorting the provisional codes by name gives each name's final code.
+            var byTerm = new Integer[values.size()];
+            Arrays.setAll(byTerm, code -> code);
+            Arrays.sort(byTerm, (code1, code2) -> {
+                var byKey = keys.get(code1).compareTo(keys.get(code2));
+                return byKey != 0 ? byKey : values.get(code1).compareTo(values.get(code2));
+            });
+
+            var finalCodes = new int[byTerm.length];
+            var sortedValues = new String[byTerm.length];
+            var sortedKeys = new String[byTerm.length];
+            var ranks = new int[byTerm.length];
+
+            for (int code = 0; code < byTerm.length; ++code) {
+                finalCodes[byTerm[code]] = code;
+                sortedValues[code] = values.get(byTerm[code]);
+                sortedKeys[code] = keys.get(byTerm[code]);
+                ranks[code] = code > 0 && sortedKeys[code].equals(sortedKeys[code - 1]) ? ranks[code - 1] : code;
+            }
+
+            var finalIds = Arrays.copyOf(ids, size);
+            var finalCodesByField = new int[codes.length][];
+            var ordinalsByCode = new int[codes.length][];
+            var offsets = new int[codes.length][];
+
+            for (int field = 0; field < codes.length; ++field) {
+                var fieldCodes = new int[size];
+                var fieldOffsets = new int[byTerm.length + 1];
+
+                for (int ordinal = 0; ordinal < size; ++ordinal) {
+                    var code = codes[field][ordinal] == NO_CODE ? NO_CODE : finalCodes[codes[field][ordinal]];
+                    fieldCodes[ordinal] = code;
+
+                    if (code != NO_CODE) {
+                        ++fieldOffsets[code + 1];
+                    }
+                }
+
+                for (int code = 0; code < byTerm.length; ++code) {
+                    fieldOffsets[code + 1] += fieldOffsets[code];
+                }
+
+                // A counting sort by code, which keeps each code's ordinals ascending.
+                var fieldOrdinals = new int[fieldOffsets[byTerm.length]];
+                var positions = Arrays.copyOf(fieldOffsets, byTerm.length);
+
+                for (int ordinal = 0; ordinal < size; ++ordinal) {
+                    if (fieldCodes[ordinal] != NO_CODE) {
+                        fieldOrdinals[positions[fieldCodes[ordinal]]++] = ordinal;
+                    }
+                }
+
+                finalCodesByField[field] = fieldCodes;
+                ordinalsByCode[field] = fieldOrdinals;
+                offsets[field] = fieldOffsets;
+            }
+
+            return new Snapshot(sortedValues, sortedKeys, ranks, finalIds, size, finalCodesByField, ordinalsByCode, offsets);
+        }
+    }
+}
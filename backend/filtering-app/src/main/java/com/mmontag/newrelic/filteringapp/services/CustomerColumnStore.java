@@ -0,0 +1,760 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepositoryCustom;
+import com.mmontag.newrelic.filteringapp.repository.Keyset;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compact, read-only copy of the customers table, answering {@link CustomerRepositoryCustom} queries without going through JPA.
+ * Rows are {@link CustomerOrdinals}, whose ids they share, and each name column is kept as length-prefixed UTF-8 in an off-heap
+ * ({@code allocateDirect}) arena, addressed by an {@code int[]} of offsets. That's ~20 bytes of heap per customer (the id
+ * included), against several hundred for a managed entity. Ordering, seeking and limiting all work on row numbers; only the
+ * customers actually returned are materialized (as detached {@link Customer}s).
+ * <pre/>
+ * A {@link CustomerReadModel}, built and kept in sync by the {@link CustomerReadModelLoader}. Updated values are appended to the
+ * arenas, so the space of their old values is only reclaimed by the next rebuild.
+ * <pre/>
+ * Orders the same way {@code CustomerRepositoryImpl} has H2 order: by the sort's properties (ignoring case by upper-casing both
+ * sides), then by ascending id.
+ */
+@Slf4j
+@Component
+public class CustomerColumnStore implements CustomerRepositoryCustom, CustomerReadModel {
+
+    public enum Column {
+        FIRST_NAME("firstName", Customer::getFirstName),
+        LAST_NAME("lastName", Customer::getLastName),
+        COMPANY_NAME("companyName", Customer::getCompanyName);
+
+        private final String property;
+
+        private final Function<Customer, String> getter;
+
+        Column(String property, Function<Customer, String> getter) {
+            this.property = property;
+            this.getter = getter;
+        }
+    }
+
+    private static final String ID_PROPERTY = "id";
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int INITIAL_ARENA_BYTES = 1 << 16;
+
+    // Values are stored as an unsigned 16-bit byte length, followed by the bytes.
+    private static final int LENGTH_PREFIX_BYTES = Character.BYTES;
+
+    private static final int NULL_OFFSET = -1;
+
+    @Autowired
+    CustomerOrdinals ordinals;
+
+    @Autowired(required = false)
+    MeterRegistry meterRegistry;
+
+    @Value("${customer-column-store.enabled:false}")
+    boolean enabled;
+
+    private Values values = new Values();
+
+    @PostConstruct
+    void registerGauges() {
+        if (meterRegistry == null) {
+            return;
+        }
+
+        Gauge.builder("customer.column.store.memory", () -> withReadLock(this::heapBytes))
+            .description("Estimated memory used by the customer column store")
+            .baseUnit("bytes")
+            .tag("area", "heap")
+            .register(meterRegistry);
+
+        Gauge.builder("customer.column.store.memory", () -> withReadLock(this::offHeapBytes))
+            .description("Estimated memory used by the customer column store")
+            .baseUnit("bytes")
+            .tag("area", "offheap")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Whether the store has been built, and can serve queries. Until then, callers should go to the database.
+     */
+    public boolean isReady() {
+        return enabled && ordinals.isReady();
+    }
+
+    @Override
+    public List<Customer> findAllOrdered(Sort sort, Keyset after, Integer limit) {
+        return query(null, null, sort, after, limit);
+    }
+
+    // Orders the row numbers up front (an int[] of them, plus half as much again while sorting), then materializes fetchSize
+    // customers at a time as the stream is consumed, skipping any deleted in the meantime. A rebuild reassigns the row numbers, so
+    // the stream fails if one happens before it's fully consumed.
+    @Override
+    public Stream<Customer> streamAllOrdered(Sort sort, int fetchSize) {
+        var order = new RowOrder(sort == null ? Sort.unsorted() : sort);
+        int[] rows;
+        int generation;
+
+        ordinals.readLock().lock();
+
+        try {
+            rows = sortAll(order, row -> true);
+            generation = ordinals.generation();
+        } finally {
+            ordinals.readLock().unlock();
+        }
+
+        return IntStream.range(0, (rows.length + fetchSize - 1) / fetchSize)
+            .mapToObj(batch -> materialize(rows, batch * fetchSize, Math.min(rows.length, (batch + 1) * fetchSize), generation))
+            .flatMap(List::stream);
+    }
+
+    @Override
+    public List<Customer> findByNameContainingOrdered(String needle, Sort sort, Keyset after, Integer limit) {
+        return query(needle == null ? "" : needle, null, sort, after, limit);
+    }
+
+    @Override
+    public List<Customer> findByCompanyNameOrdered(String companyName, Sort sort, Keyset after, Integer limit) {
+        return query(null, companyName, sort, after, limit);
+    }
+
+    /**
+     * Fetches customers by id, in the order of the given ids, skipping any which don't exist.
+     */
+    public List<Customer> findAllById(List<Long> ids) {
+        ordinals.readLock().lock();
+
+        try {
+            var output = new ArrayList<Customer>(ids.size());
+
+            for (var id : ids) {
+                var row = ordinals.ordinalOf(id);
+                if (row >= 0 && ordinals.isLive(row)) {
+                    output.add(materialize(row));
+                }
+            }
+
+            return output;
+
+        } finally {
+            ordinals.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return An estimate of the heap used by the store's arrays of offsets (the ids being the {@link CustomerOrdinals}').
+     */
+    public long heapBytes() {
+        return values.heapBytes();
+    }
+
+    /**
+     * @return The off-heap bytes allocated for the store's value arenas.
+     */
+    public long offHeapBytes() {
+        return values.offHeapBytes();
+    }
+
+    private List<Customer> query(String needle, String companyName, Sort sort, Keyset after, Integer limit) {
+        sort = sort == null ? Sort.unsorted() : sort;
+
+        var order = new RowOrder(sort);
+        var seek = after == null ? null : order.encode(after);
+        var upperNeedle = needle == null ? null : needle.toUpperCase();
+        var upperNeedleBytes = upperNeedle == null ? null : upperNeedle.getBytes(StandardCharsets.UTF_8);
+        var companyNameBytes = companyName == null ? null : companyName.getBytes(StandardCharsets.UTF_8);
+        var max = limit == null || limit <= 0 ? Integer.MAX_VALUE : limit;
+
+        ordinals.readLock().lock();
+
+        try {
+            IntPredicate matches = row -> (seek == null || order.compareToKeyset(row, seek) > 0)
+                && (upperNeedle == null || nameContains(row, upperNeedle, upperNeedleBytes))
+                && (companyNameBytes == null || valueEquals(Column.COMPANY_NAME, row, companyNameBytes));
+
+            int[] rows;
+
+            if (order.isIdAscending() && ordinals.isIdOrdered()) {
+                rows = firstInRowOrder(after == null ? 0 : ordinals.upperBound(after.getId()), matches, max);
+            } else {
+                rows = max < ordinals.size() ? topK(order, matches, max) : sortAll(order, matches);
+            }
+
+            var output = new ArrayList<Customer>(rows.length);
+            for (var row : rows) {
+                output.add(materialize(row));
+            }
+
+            return output;
+
+        } finally {
+            ordinals.readLock().unlock();
+        }
+    }
+
+    // Returns the first (up to) max matching live rows from the given row on, in row order: which, while the ordinals are in id
+    // order, is the id order, so a page only walks as far as its last match rather than ranking every row.
+    private int[] firstInRowOrder(int from, IntPredicate matches, int max) {
+        var output = new int[Math.min(max, INITIAL_CAPACITY)];
+        var size = 0;
+        var rows = ordinals.liveOrdinals().getIntIterator();
+        rows.advanceIfNeeded(from);
+
+        while (rows.hasNext() && size < max) {
+            var row = rows.next();
+
+            if (!matches.test(row)) {
+                continue;
+            }
+
+            if (size == output.length) {
+                output = Arrays.copyOf(output, (int) Math.min((long) max, 2L * size));
+            }
+
+            output[size++] = row;
+        }
+
+        return size == output.length ? output : Arrays.copyOf(output, size);
+    }
+
+    // Returns the first k matching live rows in order, using a bounded max-heap of row numbers; O(n log k), without boxing.
+    private int[] topK(RowOrder order, IntPredicate matches, int k) {
+        var heap = new int[k];
+        var heapSize = 0;
+
+        for (var rows = ordinals.liveOrdinals().getIntIterator(); rows.hasNext();) {
+            var row = rows.next();
+
+            if (!matches.test(row)) {
+                continue;
+            }
+
+            if (heapSize < k) {
+                heap[heapSize] = row;
+                siftUp(heap, heapSize++, order);
+            } else if (order.compare(row, heap[0]) < 0) {
+                heap[0] = row;
+                siftDown(heap, heapSize, order);
+            }
+        }
+
+        var output = Arrays.copyOf(heap, heapSize);
+
+        // Pops the heap from the back, so that the output ends up in ascending order.
+        for (int end = heapSize - 1; end > 0; --end) {
+            output[end] = heap[0];
+            heap[0] = heap[end];
+            siftDown(heap, end, order);
+        }
+
+        if (heapSize > 0) {
+            output[0] = heap[0];
+        }
+
+        return output;
+    }
+
+    private int[] sortAll(RowOrder order, IntPredicate matches) {
+        var rows = new int[ordinals.liveOrdinals().getCardinality()];
+        var size = 0;
+
+        for (var live = ordinals.liveOrdinals().getIntIterator(); live.hasNext();) {
+            var row = live.next();
+
+            if (matches.test(row)) {
+                rows[size++] = row;
+            }
+        }
+
+        IntSorter.sort(rows, 0, size, order::compare);
+        return size == rows.length ? rows : Arrays.copyOf(rows, size);
+    }
+
+    private static void siftUp(int[] heap, int index, RowOrder order) {
+        while (index > 0) {
+            var parent = (index - 1) >>> 1;
+
+            if (order.compare(heap[index], heap[parent]) <= 0) {
+                return;
+            }
+
+            swap(heap, index, parent);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int heapSize, RowOrder order) {
+        var index = 0;
+
+        while (true) {
+            var largest = index;
+            var left = 2 * index + 1;
+            var right = left + 1;
+
+            if (left < heapSize && order.compare(heap[left], heap[largest]) > 0) {
+                largest = left;
+            }
+
+            if (right < heapSize && order.compare(heap[right], heap[largest]) > 0) {
+                largest = right;
+            }
+
+            if (largest == index) {
+                return;
+            }
+
+            swap(heap, index, largest);
+            index = largest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        var tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    private boolean nameContains(int row, String upperNeedle, byte[] upperNeedleBytes) {
+        return valueContains(Column.FIRST_NAME, row, upperNeedle, upperNeedleBytes) || valueContains(Column.LAST_NAME, row, upperNeedle, upperNeedleBytes);
+    }
+
+    // Searches the stored bytes in place, upper-casing them as it goes, for as long as the value is ASCII. Otherwise it's decoded
+    // and upper-cased like the database would, since that can change its length (ß becoming SS) or map it onto ASCII.
+    private boolean valueContains(Column column, int row, String upperNeedle, byte[] upperNeedleBytes) {
+        var offset = values.offsetsByColumn.get(column)[row];
+
+        if (offset == NULL_OFFSET) {
+            return false;
+        }
+
+        var arena = values.arenasByColumn.get(column);
+        var start = offset + LENGTH_PREFIX_BYTES;
+        var length = (int) arena.getChar(offset);
+
+        for (int i = 0; i < length; ++i) {
+            if (arena.get(start + i) < 0) {
+                return decode(arena, offset).toUpperCase().contains(upperNeedle);
+            }
+        }
+
+        for (int i = 0; i <= length - upperNeedleBytes.length; ++i) {
+            var j = 0;
+
+            while (j < upperNeedleBytes.length && upperAscii(arena.get(start + i + j)) == upperNeedleBytes[j]) {
+                ++j;
+            }
+
+            if (j == upperNeedleBytes.length) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Compares the stored bytes in place, without decoding the value.
+    private boolean valueEquals(Column column, int row, byte[] bytes) {
+        var offset = values.offsetsByColumn.get(column)[row];
+
+        if (offset == NULL_OFFSET) {
+            return false;
+        }
+
+        var arena = values.arenasByColumn.get(column);
+
+        if (arena.getChar(offset) != bytes.length) {
+            return false;
+        }
+
+        for (int i = 0; i < bytes.length; ++i) {
+            if (arena.get(offset + LENGTH_PREFIX_BYTES + i) != bytes[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private List<Customer> materialize(int[] rows, int from, int to, int generation) {
+        var output = new ArrayList<Customer>(to - from);
+
+        ordinals.readLock().lock();
+
+        try {
+            if (ordinals.generation() != generation) {
+                throw new IllegalStateException("The column store was rebuilt while streaming customers.");
+            }
+
+            for (int i = from; i < to; ++i) {
+                if (ordinals.isLive(rows[i])) {
+                    output.add(materialize(rows[i]));
+                }
+            }
+        } finally {
+            ordinals.readLock().unlock();
+        }
+
+        return output;
+    }
+
+    private Customer materialize(int row) {
+        return new Customer(ordinals.idOf(row), read(Column.FIRST_NAME, row), read(Column.LAST_NAME, row), read(Column.COMPANY_NAME, row));
+    }
+
+    private String read(Column column, int row) {
+        return decode(values.arenasByColumn.get(column), values.offsetsByColumn.get(column)[row]);
+    }
+
+    @Override
+    public Rebuild rebuild(CustomerOrdinals.Registry ordinals) {
+        return new Values();
+    }
+
+    @Override
+    public void put(int row, Customer customer) {
+        values.put(row, customer);
+    }
+
+    @Override
+    public void delete(int row) {
+        values.delete(row);
+    }
+
+    private long withReadLock(LongSupplier supplier) {
+        ordinals.readLock().lock();
+
+        try {
+            return supplier.getAsLong();
+        } finally {
+            ordinals.readLock().unlock();
+        }
+    }
+
+    private static String decode(ByteBuffer arena, int offset) {
+        if (offset == NULL_OFFSET) {
+            return null;
+        }
+
+        var bytes = new byte[arena.getChar(offset)];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = arena.get(offset + LENGTH_PREFIX_BYTES + i);
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Compares two stored values like H2 compares the strings (optionally upper-cased), byte by byte for as long as both are
+    // ASCII. Past the first non-ASCII byte they're decoded instead, since UTF-8 byte order and String.compareTo (and upper-casing)
+    // only agree on ASCII. Anything after an ASCII difference can't change the outcome, and a longer value is always greater than
+    // its (ASCII) prefix.
+    private static int compareValues(ByteBuffer arena1, int offset1, ByteBuffer arena2, int offset2, boolean ignoreCase) {
+        var length1 = (int) arena1.getChar(offset1);
+        var length2 = (int) arena2.getChar(offset2);
+        var common = Math.min(length1, length2);
+
+        for (int i = 0; i < common; ++i) {
+            var b1 = arena1.get(offset1 + LENGTH_PREFIX_BYTES + i);
+            var b2 = arena2.get(offset2 + LENGTH_PREFIX_BYTES + i);
+
+            if (b1 < 0 || b2 < 0) {
+                return compareDecoded(arena1, offset1, arena2, offset2, ignoreCase);
+            }
+
+            var c1 = ignoreCase ? upperAscii(b1) : b1;
+            var c2 = ignoreCase ? upperAscii(b2) : b2;
+
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+
+        return length1 - length2;
+    }
+
+    private static int compareDecoded(ByteBuffer arena1, int offset1, ByteBuffer arena2, int offset2, boolean ignoreCase) {
+        var value1 = decode(arena1, offset1);
+        var value2 = decode(arena2, offset2);
+
+        return ignoreCase ? value1.toUpperCase().compareTo(value2.toUpperCase()) : value1.compareTo(value2);
+    }
+
+    private static int upperAscii(byte b) {
+        return b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b;
+    }
+
+    // The row ordering for a Sort: each order in turn (a null column meaning the id), then ascending id.
+    private final class RowOrder {
+
+        private final Column[] columns;
+
+        private final boolean[] descending;
+
+        private final boolean[] nullsFirst;
+
+        private final boolean[] ignoreCase;
+
+        // Whether the sort has explicit null handling throughout, as keyset seeks require.
+        private final boolean seekable;
+
+        private RowOrder(Sort sort) {
+            var orders = sort.toList();
+            columns = new Column[orders.size()];
+            descending = new boolean[orders.size()];
+            nullsFirst = new boolean[orders.size()];
+            ignoreCase = new boolean[orders.size()];
+
+            var explicitNullHandling = true;
+
+            for (int i = 0; i < orders.size(); ++i) {
+                var order = orders.get(i);
+                columns[i] = column(order.getProperty());
+                descending[i] = order.isDescending();
+                ignoreCase[i] = order.isIgnoreCase();
+
+                // Like H2, NATIVE sorts nulls as the lowest values.
+                nullsFirst[i] = order.getNullHandling() == Sort.NullHandling.NATIVE ? order.isAscending() : order.getNullHandling() == Sort.NullHandling.NULLS_FIRST;
+                explicitNullHandling &= order.getNullHandling() != Sort.NullHandling.NATIVE;
+            }
+
+            seekable = explicitNullHandling;
+        }
+
+        // Whether rows are in this order when they're in id order, i.e. the sort starts with ascending id (or is unsorted).
+        boolean isIdAscending() {
+            return columns.length == 0 || columns[0] == null && !descending[0];
+        }
+
+        int compare(int row1, int row2) {
+            for (int i = 0; i < columns.length; ++i) {
+                int result;
+
+                if (columns[i] == null) {
+                    result = descending[i] ? Long.compare(ordinals.idOf(row2), ordinals.idOf(row1)) : Long.compare(ordinals.idOf(row1), ordinals.idOf(row2));
+                } else {
+                    var arena = values.arenasByColumn.get(columns[i]);
+                    var offsets = values.offsetsByColumn.get(columns[i]);
+                    result = compareOffsets(i, arena, offsets[row1], arena, offsets[row2]);
+                }
+
+                if (result != 0) {
+                    return result;
+                }
+            }
+
+            return Long.compare(ordinals.idOf(row1), ordinals.idOf(row2));
+        }
+
+        int compareToKeyset(int row, EncodedKeyset keyset) {
+            for (int i = 0; i < columns.length; ++i) {
+                int result;
+
+                if (columns[i] == null) {
+                    var id = ((Number) keyset.keyset.getValues().get(i)).longValue();
+                    result = descending[i] ? Long.compare(id, ordinals.idOf(row)) : Long.compare(ordinals.idOf(row), id);
+                } else {
+                    result = compareOffsets(i, values.arenasByColumn.get(columns[i]), values.offsetsByColumn.get(columns[i])[row], keyset.arena, keyset.offsets[i]);
+                }
+
+                if (result != 0) {
+                    return result;
+                }
+            }
+
+            return Long.compare(ordinals.idOf(row), keyset.keyset.getId());
+        }
+
+        // Encodes the keyset's values into an arena of their own, so rows can be compared against them without decoding.
+        EncodedKeyset encode(Keyset keyset) {
+            if (!seekable) {
+                throw new IllegalArgumentException("Keyset pagination requires explicit null handling.");
+            }
+
+            if (keyset.getValues().size() != columns.length) {
+                throw new IllegalArgumentException("Keyset has " + keyset.getValues().size() + " values, but the sort has " + columns.length + " orders.");
+            }
+
+            var encoded = new byte[columns.length][];
+            var bytes = 0;
+
+            for (int i = 0; i < columns.length; ++i) {
+                var value = keyset.getValues().get(i);
+
+                if (columns[i] != null && value != null) {
+                    encoded[i] = value.toString().getBytes(StandardCharsets.UTF_8);
+                    bytes += LENGTH_PREFIX_BYTES + encoded[i].length;
+                }
+            }
+
+            var arena = ByteBuffer.allocate(bytes);
+            var offsets = new int[columns.length];
+
+            for (int i = 0; i < columns.length; ++i) {
+                offsets[i] = encoded[i] == null ? NULL_OFFSET : arena.position();
+
+                if (encoded[i] != null) {
+                    arena.putChar((char) encoded[i].length);
+                    arena.put(encoded[i]);
+                }
+            }
+
+            return new EncodedKeyset(keyset, arena, offsets);
+        }
+
+        private int compareOffsets(int order, ByteBuffer arena1, int offset1, ByteBuffer arena2, int offset2) {
+            if (offset1 == NULL_OFFSET || offset2 == NULL_OFFSET) {
+                if (offset1 == offset2) {
+                    return 0;
+                }
+
+                // Null placement doesn't flip with the direction.
+                return (offset1 == NULL_OFFSET) == nullsFirst[order] ? -1 : 1;
+            }
+
+            var result = compareValues(arena1, offset1, arena2, offset2, ignoreCase[order]);
+            return descending[order] ? -result : result;
+        }
+
+        private Column column(String property) {
+            if (ID_PROPERTY.equals(property)) {
+                return null;
+            }
+
+            for (var column : Column.values()) {
+                if (column.property.equals(property)) {
+                    return column;
+                }
+            }
+
+            throw new IllegalArgumentException("Illegal sort property: " + property + " - Reason: not a Customer attribute.");
+        }
+    }
+
+    private static final class EncodedKeyset {
+
+        private final Keyset keyset;
+
+        private final ByteBuffer arena;
+
+        private final int[] offsets;
+
+        private EncodedKeyset(Keyset keyset, ByteBuffer arena, int[] offsets) {
+            this.keyset = keyset;
+            this.arena = arena;
+            this.offsets = offsets;
+        }
+    }
+
+    // The offsets and arenas of every column: the installed ones, or new ones being filled by a rebuild.
+    private final class Values implements Rebuild {
+
+        private final EnumMap<Column, int[]> offsetsByColumn = new EnumMap<>(Column.class);
+
+        private final EnumMap<Column, ByteBuffer> arenasByColumn = new EnumMap<>(Column.class);
+
+        private Values() {
+            for (var column : Column.values()) {
+                offsetsByColumn.put(column, new int[INITIAL_CAPACITY]);
+                arenasByColumn.put(column, ByteBuffer.allocateDirect(INITIAL_ARENA_BYTES));
+            }
+        }
+
+        @Override
+        public void put(int row, Customer customer) {
+            var capacity = offsetsByColumn.get(Column.FIRST_NAME).length;
+
+            if (row >= capacity) {
+                var grown = Math.max(row + 1, capacity * 2);
+                offsetsByColumn.replaceAll((column, offsets) -> Arrays.copyOf(offsets, grown));
+            }
+
+            for (var column : Column.values()) {
+                offsetsByColumn.get(column)[row] = append(column, column.getter.apply(customer));
+            }
+        }
+
+        // Deleted rows are skipped as the ordinals' deleted ones; their values stay in the arenas until the next rebuild.
+        @Override
+        public void delete(int row) {}
+
+        @Override
+        public void install() {
+            values = this;
+            log.info("Stored {} customers in columns (~{} KB heap, ~{} KB off-heap)", ordinals.liveOrdinals().getCardinality(), heapBytes() / 1024, offHeapBytes() / 1024);
+        }
+
+        // Appends a value to the column's arena (growing it if needed), and returns its offset.
+        private int append(Column column, String value) {
+            if (value == null) {
+                return NULL_OFFSET;
+            }
+
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+
+            if (bytes.length > Character.MAX_VALUE) {
+                throw new IllegalArgumentException("Illegal " + column.property + " value - Reason: longer than " + (int) Character.MAX_VALUE + " bytes.");
+            }
+
+            var arena = arenasByColumn.get(column);
+
+            if (arena.remaining() < LENGTH_PREFIX_BYTES + bytes.length) {
+                var capacity = Math.max(arena.capacity() * 2L, (long) arena.position() + LENGTH_PREFIX_BYTES + bytes.length);
+
+                if (capacity > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("The " + column.property + " arena is full.");
+                }
+
+                var grown = ByteBuffer.allocateDirect((int) capacity);
+                arena.flip();
+                grown.put(arena);
+                arena = grown;
+                arenasByColumn.put(column, arena);
+            }
+
+            var offset = arena.position();
+            arena.putChar((char) bytes.length);
+            arena.put(bytes);
+
+            return offset;
+        }
+
+        private long heapBytes() {
+            return offsetsByColumn.values().stream().mapToLong(offsets -> (long) offsets.length * Integer.BYTES).sum();
+        }
+
+        private long offHeapBytes() {
+            return arenasByColumn.values().stream().mapToLong(ByteBuffer::capacity).sum();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.mmontag.newrelic.filteringapp.model.CompanyCount;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Dictionary encoding of customers' company names: every distinct name gets an int code, and every code a {@link RoaringBitmap}
+ * of the customers (by ordinal) who belong to it, plus a running count. Codes are kept in a map sorted by name, so listing the
+ * distinct companies with their counts, in name order, is O(distinct), and filtering by company a walk of one bitmap, instead of a
+ * scan of the table. Compressed bitmaps keep memory proportional to the customers, however many companies there are. A
+ * {@link CustomerReadModel}, built and kept in sync by the {@link CustomerReadModelLoader}.
+ * <pre/>
+ * Bitmaps are of {@link CustomerOrdinals}, which are in ascending id order, so that a bitmap walk yields ids in ascending order
+ * (matching the database's ordering for keyset pagination). Company names match exactly, as in
+ * {@code CustomerRepository#findByCompanyName}; customers without one aren't in any bitmap. Codes aren't reused when a company
+ * loses its last customer (it's just no longer listed) until the next rebuild.
+ */
+@Slf4j
+@Component
+public class CustomerCompanyDictionary implements CustomerReadModel {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int NO_CODE = -1;
+
+    @Autowired
+    CustomerOrdinals ordinals;
+
+    @Value("${customer-company-dictionary.enabled:true}")
+    boolean enabled;
+
+    private Dictionary dictionary = new Dictionary();
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Whether the dictionary has been built, and can serve lookups. Until then, callers should fall back to the database.
+     */
+    public boolean isReady() {
+        return enabled && ordinals.isReady();
+    }
+
+    /**
+     * @return Every company name which has at least one customer, with its customer count, ordered by name.
+     */
+    public List<CompanyCount> companies() {
+        var output = new ArrayList<CompanyCount>();
+
+        ordinals.readLock().lock();
+
+        try {
+            var counts = dictionary.countsByCode;
+
+            dictionary.codesByCompany.forEach((companyName, code) -> {
+                if (counts[code] > 0) {
+                    output.add(new CompanyCount(companyName, counts[code]));
+                }
+            });
+        } finally {
+            ordinals.readLock().unlock();
+        }
+
+        return output;
+    }
+
+    /**
+     * Finds the ids of customers whose company name is exactly {@code companyName}.
+     * @param afterId Only ids strictly greater than this are returned; {@code null} to start from the beginning.
+     * @param limit The maximum number of ids to return. {@code null} or non-positive values mean "no limit".
+     * @return Matching ids, in ascending order.
+     */
+    public List<Long> idsOf(String companyName, Long afterId, Integer limit) {
+        var max = limit == null || limit <= 0 ? Integer.MAX_VALUE : limit;
+        var output = new ArrayList<Long>();
+
+        ordinals.readLock().lock();
+
+        try {
+            var code = companyName == null ? null : dictionary.codesByCompany.get(companyName);
+
+            if (code == null) {
+                return output;
+            }
+
+            var members = dictionary.ordinalsByCode.get(code);
+
+            if (!ordinals.isIdOrdered()) {
+                members.stream().mapToLong(ordinals::idOf).filter(id -> afterId == null || id > afterId).sorted().limit(max).forEach(output::add);
+                return output;
+            }
+
+            var matching = members.getIntIterator();
+
+            if (afterId != null) {
+                matching.advanceIfNeeded(ordinals.upperBound(afterId));
+            }
+
+            while (matching.hasNext() && output.size() < max) {
+                output.add(ordinals.idOf(matching.next()));
+            }
+
+            return output;
+
+        } finally {
+            ordinals.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Rebuild rebuild(CustomerOrdinals.Registry ordinals) {
+        return new Dictionary();
+    }
+
+    @Override
+    public void put(int ordinal, Customer customer) {
+        dictionary.put(ordinal, customer);
+    }
+
+    @Override
+    public void delete(int ordinal) {
+        dictionary.delete(ordinal);
+    }
+
+    // The codes, bitmaps and counts: the installed ones, or new ones being filled by a rebuild.
+    private final class Dictionary implements Rebuild {
+
+        private final TreeMap<String, Integer> codesByCompany = new TreeMap<>();
+
+        private final ArrayList<RoaringBitmap> ordinalsByCode = new ArrayList<>();
+
+        private int[] countsByCode = new int[INITIAL_CAPACITY];
+
+        // NO_CODE for customers without a company name, and for deleted ones.
+        private int[] codesByOrdinal = new int[INITIAL_CAPACITY];
+
+        private Dictionary() {
+            Arrays.fill(codesByOrdinal, NO_CODE);
+        }
+
+        @Override
+        public void put(int ordinal, Customer customer) {
+            if (ordinal >= codesByOrdinal.length) {
+                var capacity = Math.max(ordinal + 1, codesByOrdinal.length * 2);
+                var from = codesByOrdinal.length;
+                codesByOrdinal = Arrays.copyOf(codesByOrdinal, capacity);
+                Arrays.fill(codesByOrdinal, from, capacity, NO_CODE);
+            }
+
+            unassign(ordinal);
+
+            if (customer.getCompanyName() != null) {
+                var code = codeOf(customer.getCompanyName());
+                codesByOrdinal[ordinal] = code;
+                ordinalsByCode.get(code).add(ordinal);
+                ++countsByCode[code];
+            }
+        }
+
+        @Override
+        public void delete(int ordinal) {
+            unassign(ordinal);
+        }
+
+        // Switches bitmaps to run-length encoding wherever that's smaller.
+        @Override
+        public void built() {
+            ordinalsByCode.forEach(RoaringBitmap::runOptimize);
+        }
+
+        @Override
+        public void install() {
+            dictionary = this;
+
+            var bitmapBytes = ordinalsByCode.stream().mapToLong(RoaringBitmap::getLongSizeInBytes).sum();
+            log.info("Encoded {} distinct companies of {} customers (~{} KB of bitmaps)", codesByCompany.size(), ordinals.liveOrdinals().getCardinality(), bitmapBytes / 1024);
+        }
+
+        // Removes the customer at the ordinal from its company's bitmap (if any).
+        private void unassign(int ordinal) {
+            var code = codesByOrdinal[ordinal];
+
+            if (code != NO_CODE) {
+                ordinalsByCode.get(code).remove(ordinal);
+                --countsByCode[code];
+                codesByOrdinal[ordinal] = NO_CODE;
+            }
+        }
+
+        // Returns the company's code, assigning the next one if it's new.
+        private int codeOf(String companyName) {
+            var code = codesByCompany.get(companyName);
+
+            if (code != null) {
+                return code;
+            }
+
+            code = ordinalsByCode.size();
+            codesByCompany.put(companyName, code);
+            ordinalsByCode.add(new RoaringBitmap());
+
+            if (code >= countsByCode.length) {
+                countsByCode = Arrays.copyOf(countsByCode, countsByCode.length * 2);
+            }
+
+            return code;
+        }
+    }
+}
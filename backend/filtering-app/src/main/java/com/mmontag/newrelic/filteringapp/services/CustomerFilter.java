@@ -0,0 +1,343 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+
+/**
+ * A parsed customer filter expression, e.g. {@code firstName^=Ab AND (company=Twimm OR NOT lastName~uck)}. Conditions compare a
+ * field against a value, ignoring case (like sorting and searching do), with one of the {@link Operator}s; customers without a
+ * value for the field never match a condition. Conditions combine with {@code AND}, {@code OR} and {@code NOT} (in decreasing
+ * order of precedence: {@code NOT}, {@code AND}, {@code OR}), and parentheses.
+ * <pre/>
+ * Values run until the next whitespace or parenthesis, unless double-quoted ({@code company="Skiba Inc"}, with {@code \"} and
+ * {@code \\} as escapes). Keywords are case-insensitive.
+ * <pre/>
+ * Filters are evaluated against a {@link CustomerFilterIndex}, or else tested customer by customer (as a {@link Predicate}).
+ * Equal expressions parse to equal filters, so filters can be used in cache keys.
+ */
+public abstract class CustomerFilter implements Predicate<Customer> {
+
+    public enum Field {
+        FIRST_NAME(Customer::getFirstName, "firstName"),
+        LAST_NAME(Customer::getLastName, "lastName"),
+        COMPANY_NAME(Customer::getCompanyName, "companyName", "company");
+
+        private final Function<Customer, String> getter;
+
+        private final List<String> names;
+
+        Field(Function<Customer, String> getter, String... names) {
+            this.getter = getter;
+            this.names = Arrays.asList(names);
+        }
+
+        String get(Customer customer) {
+            return getter.apply(customer);
+        }
+    }
+
+    public enum Operator {
+        EQUALS("="),
+        STARTS_WITH("^="),
+        CONTAINS("~");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean matches(String upperValue, String upperOperand) {
+            switch (this) {
+                case EQUALS:
+                    return upperValue.equals(upperOperand);
+                case STARTS_WITH:
+                    return upperValue.startsWith(upperOperand);
+                default:
+                    return upperValue.contains(upperOperand);
+            }
+        }
+    }
+
+    // Guards against pathological expressions, since filters come straight from the query string.
+    private static final int MAX_LENGTH = 2000;
+
+    private static final int MAX_DEPTH = 32;
+
+    /**
+     * Parses a filter expression.
+     * @throws IllegalArgumentException if the expression is malformed, too long, or references an unknown field.
+     */
+    public static CustomerFilter parse(String expression) {
+        if (expression == null || expression.isBlank()) {
+            throw new IllegalArgumentException("Illegal filter - Reason: empty.");
+        }
+
+        if (expression.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("Illegal filter - Reason: longer than " + MAX_LENGTH + " characters.");
+        }
+
+        return new Parser(expression).parse();
+    }
+
+    // Evaluates the filter to the set of matching ordinals of the given index. Called with the index's read lock held.
+    abstract RoaringBitmap evaluate(CustomerFilterIndex index);
+
+    /**
+     * A single {@code field operator value} comparison. The value is kept upper-cased.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    public static class Condition extends CustomerFilter {
+
+        Field field;
+
+        Operator operator;
+
+        String value;
+
+        @Override
+        public boolean test(Customer customer) {
+            var fieldValue = field.get(customer);
+            return fieldValue != null && operator.matches(fieldValue.toUpperCase(), value);
+        }
+
+        @Override
+        RoaringBitmap evaluate(CustomerFilterIndex index) {
+            return index.matching(this);
+        }
+    }
+
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    public static class And extends CustomerFilter {
+
+        List<CustomerFilter> operands;
+
+        @Override
+        public boolean test(Customer customer) {
+            return operands.stream().allMatch(operand -> operand.test(customer));
+        }
+
+        @Override
+        RoaringBitmap evaluate(CustomerFilterIndex index) {
+            return index.intersect(operands);
+        }
+    }
+
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    public static class Or extends CustomerFilter {
+
+        List<CustomerFilter> operands;
+
+        @Override
+        public boolean test(Customer customer) {
+            return operands.stream().anyMatch(operand -> operand.test(customer));
+        }
+
+        @Override
+        RoaringBitmap evaluate(CustomerFilterIndex index) {
+            return index.union(operands);
+        }
+    }
+
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    public static class Not extends CustomerFilter {
+
+        CustomerFilter operand;
+
+        @Override
+        public boolean test(Customer customer) {
+            return !operand.test(customer);
+        }
+
+        @Override
+        RoaringBitmap evaluate(CustomerFilterIndex index) {
+            return index.complement(operand);
+        }
+    }
+
+    // Recursive descent parser over the grammar:
+    //   expression := term ("OR" term)*
+    //   term       := factor ("AND" factor)*
+    //   factor     := "NOT" factor | "(" expression ")" | field operator value
+    private static final class Parser {
+
+        private final String input;
+
+        private int position;
+
+        private int depth;
+
+        private Parser(String input) {
+            this.input = input;
+        }
+
+        private CustomerFilter parse() {
+            var filter = expression();
+            skipWhitespace();
+
+            if (position < input.length()) {
+                throw error("unexpected \"" + input.charAt(position) + "\"");
+            }
+
+            return filter;
+        }
+
+        private CustomerFilter expression() {
+            var operands = new ArrayList<CustomerFilter>();
+            operands.add(term());
+
+            while (keyword("OR")) {
+                operands.add(term());
+            }
+
+            return operands.size() == 1 ? operands.get(0) : new Or(List.copyOf(operands));
+        }
+
+        private CustomerFilter term() {
+            var operands = new ArrayList<CustomerFilter>();
+            operands.add(factor());
+
+            while (keyword("AND")) {
+                operands.add(factor());
+            }
+
+            return operands.size() == 1 ? operands.get(0) : new And(List.copyOf(operands));
+        }
+
+        private CustomerFilter factor() {
+            if (++depth > MAX_DEPTH) {
+                throw error("nested deeper than " + MAX_DEPTH + " levels");
+            }
+
+            try {
+                if (keyword("NOT")) {
+                    return new Not(factor());
+                }
+
+                skipWhitespace();
+
+                if (peek() == '(') {
+                    ++position;
+                    var filter = expression();
+                    skipWhitespace();
+
+                    if (peek() != ')') {
+                        throw error("expected \")\"");
+                    }
+
+                    ++position;
+                    return filter;
+                }
+
+                return condition();
+
+            } finally {
+                --depth;
+            }
+        }
+
+        private Condition condition() {
+            var start = position;
+            while (position < input.length() && Character.isLetter(input.charAt(position))) {
+                ++position;
+            }
+
+            var name = input.substring(start, position);
+            var field = Arrays.stream(Field.values())
+                .filter(f -> f.names.contains(name))
+                .findFirst()
+                .orElseThrow(() -> error(name.isEmpty() ? "expected a field" : "unknown field \"" + name + "\""));
+
+            skipWhitespace();
+
+            var operator = Arrays.stream(Operator.values())
+                // Longest symbols first, so that "^=" isn't mistaken for anything shorter.
+                .sorted((o1, o2) -> o2.symbol.length() - o1.symbol.length())
+                .filter(o -> input.startsWith(o.symbol, position))
+                .findFirst()
+                .orElseThrow(() -> error("expected one of =, ^=, ~ after \"" + name + "\""));
+
+            position += operator.symbol.length();
+            skipWhitespace();
+
+            return new Condition(field, operator, value().toUpperCase());
+        }
+
+        private String value() {
+            if (peek() != '"') {
+                var start = position;
+                while (position < input.length() && !Character.isWhitespace(input.charAt(position)) && input.charAt(position) != '(' && input.charAt(position) != ')') {
+                    ++position;
+                }
+
+                if (start == position) {
+                    throw error("expected a value");
+                }
+
+                return input.substring(start, position);
+            }
+
+            var value = new StringBuilder();
+            ++position;
+
+            while (position < input.length()) {
+                var c = input.charAt(position++);
+
+                if (c == '"') {
+                    return value.toString();
+                }
+
+                if (c == '\\' && position < input.length()) {
+                    c = input.charAt(position++);
+                }
+
+                value.append(c);
+            }
+
+            throw error("unterminated quoted value");
+        }
+
+        // Consumes the keyword if it's next, as a whole word.
+        private boolean keyword(String keyword) {
+            skipWhitespace();
+
+            var end = position + keyword.length();
+
+            if (!input.regionMatches(true, position, keyword, 0, keyword.length())
+                || (end < input.length() && !Character.isWhitespace(input.charAt(end)) && input.charAt(end) != '(')) {
+                return false;
+            }
+
+            position = end;
+            return true;
+        }
+
+        private char peek() {
+            return position < input.length() ? input.charAt(position) : 0;
+        }
+
+        private void skipWhitespace() {
+            while (position < input.length() && Character.isWhitespace(input.charAt(position))) {
+                ++position;
+            }
+        }
+
+        private IllegalArgumentException error(String reason) {
+            return new IllegalArgumentException("Illegal filter: " + input + " - Reason: " + reason + " at position " + position + ".");
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter.Condition;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter.Field;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter.Not;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bitmap indexes over customer ordinals, evaluating {@link CustomerFilter}s with compressed bitmap operations rather than by
+ * testing every customer. For each {@link Field}, every distinct (upper-cased) value maps to a {@link RoaringBitmap} of the
+ * ordinals having it, in a sorted map: equality is one lookup, prefixes a range of the map, and "contains" a scan of the distinct
+ * values only. {@code AND}s intersect (smallest first, subtracting negated operands), {@code OR}s union, and {@code NOT}s
+ * subtract from the {@link CustomerOrdinals}' bitmap of live customers. A {@link CustomerReadModel}, built and kept in sync by the
+ * {@link CustomerReadModelLoader}.
+ * <pre/>
+ * The ordinals are in ascending id order, so matches come out in ascending id order without sorting.
+ * <pre/>
+ * NOTE: Bitmaps produced while evaluating may be the index's own, so they're only ever combined into new ones, never modified.
+ */
+@Slf4j
+@Component
+public class CustomerFilterIndex implements CustomerReadModel {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    @Autowired
+    CustomerOrdinals ordinals;
+
+    @Value("${customer-filter-index.enabled:true}")
+    boolean enabled;
+
+    private Bitmaps bitmaps = new Bitmaps();
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Whether the index has been built, and can evaluate filters. Until then, callers should test customers one by one.
+     */
+    public boolean isReady() {
+        return enabled && ordinals.isReady();
+    }
+
+    /**
+     * Finds the ids of customers matching the filter.
+     * @param afterId Only ids strictly greater than this are returned; {@code null} to start from the beginning.
+     * @param limit The maximum number of ids to return. {@code null} or non-positive values mean "no limit".
+     * @return Matching ids, in ascending order.
+     */
+    public List<Long> search(CustomerFilter filter, Long afterId, Integer limit) {
+        var max = limit == null || limit <= 0 ? Integer.MAX_VALUE : limit;
+
+        ordinals.readLock().lock();
+
+        try {
+            var matches = filter.evaluate(this);
+
+            if (!ordinals.isIdOrdered()) {
+                var output = new ArrayList<Long>();
+                matches.forEach((int ordinal) -> {
+                    if (afterId == null || ordinals.idOf(ordinal) > afterId) {
+                        output.add(ordinals.idOf(ordinal));
+                    }
+                });
+
+                output.sort(null);
+                return output.size() > max ? new ArrayList<>(output.subList(0, max)) : output;
+            }
+
+            var output = new ArrayList<Long>(Math.min(max, matches.getCardinality()));
+            var matching = matches.getIntIterator();
+
+            if (afterId != null) {
+                matching.advanceIfNeeded(ordinals.upperBound(afterId));
+            }
+
+            while (matching.hasNext() && output.size() < max) {
+                output.add(ordinals.idOf(matching.next()));
+            }
+
+            return output;
+
+        } finally {
+            ordinals.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of customers matching the filter.
+     */
+    public int count(CustomerFilter filter) {
+        ordinals.readLock().lock();
+
+        try {
+            return filter.evaluate(this).getCardinality();
+        } finally {
+            ordinals.readLock().unlock();
+        }
+    }
+
+    RoaringBitmap matching(Condition condition) {
+        var byValue = bitmaps.byField.get(condition.getField());
+        var value = condition.getValue();
+
+        switch (condition.getOperator()) {
+            case EQUALS:
+                var bitmap = byValue.get(value);
+                return bitmap == null ? new RoaringBitmap() : bitmap;
+
+            case STARTS_WITH:
+                var withPrefix = new ArrayList<RoaringBitmap>();
+                for (var entry : byValue.tailMap(value, true).entrySet()) {
+                    if (!entry.getKey().startsWith(value)) {
+                        break;
+                    }
+                    withPrefix.add(entry.getValue());
+                }
+                return or(withPrefix);
+
+            default:
+                var containing = new ArrayList<RoaringBitmap>();
+                byValue.forEach((key, ordinals) -> {
+                    if (key.contains(value)) {
+                        containing.add(ordinals);
+                    }
+                });
+                return or(containing);
+        }
+    }
+
+    // Intersects the smallest operands first, so intermediate results shrink as fast as possible; negated operands are subtracted
+    // last, rather than complemented.
+    RoaringBitmap intersect(List<CustomerFilter> operands) {
+        var included = new ArrayList<RoaringBitmap>();
+        var excluded = new ArrayList<CustomerFilter>();
+
+        for (var operand : operands) {
+            if (operand instanceof Not) {
+                excluded.add(((Not) operand).getOperand());
+            } else {
+                included.add(operand.evaluate(this));
+            }
+        }
+
+        included.sort(Comparator.comparingInt(RoaringBitmap::getCardinality));
+
+        var output = included.isEmpty() ? ordinals.liveOrdinals() : included.get(0);
+        for (int i = 1; i < included.size() && !output.isEmpty(); ++i) {
+            output = RoaringBitmap.and(output, included.get(i));
+        }
+
+        for (int i = 0; i < excluded.size() && !output.isEmpty(); ++i) {
+            output = RoaringBitmap.andNot(output, excluded.get(i).evaluate(this));
+        }
+
+        return output;
+    }
+
+    RoaringBitmap union(List<CustomerFilter> operands) {
+        var evaluated = new ArrayList<RoaringBitmap>(operands.size());
+        operands.forEach(operand -> evaluated.add(operand.evaluate(this)));
+
+        return or(evaluated);
+    }
+
+    RoaringBitmap complement(CustomerFilter operand) {
+        return RoaringBitmap.andNot(ordinals.liveOrdinals(), operand.evaluate(this));
+    }
+
+    // Many operands are unioned container by container (cheaper than pairwise unions), a few pairwise.
+    private static RoaringBitmap or(List<RoaringBitmap> bitmaps) {
+        switch (bitmaps.size()) {
+            case 0:
+                return new RoaringBitmap();
+            case 1:
+                return bitmaps.get(0);
+            case 2:
+                return RoaringBitmap.or(bitmaps.get(0), bitmaps.get(1));
+            default:
+                return FastAggregation.or(bitmaps.toArray(new RoaringBitmap[0]));
+        }
+    }
+
+    @Override
+    public Rebuild rebuild(CustomerOrdinals.Registry ordinals) {
+        return new Bitmaps();
+    }
+
+    @Override
+    public void put(int ordinal, Customer customer) {
+        bitmaps.put(ordinal, customer);
+    }
+
+    @Override
+    public void delete(int ordinal) {
+        bitmaps.delete(ordinal);
+    }
+
+    // The bitmaps by value of every field: the installed ones, or new ones being filled by a rebuild.
+    private final class Bitmaps implements Rebuild {
+
+        private final EnumMap<Field, TreeMap<String, RoaringBitmap>> byField = new EnumMap<>(Field.class);
+
+        // Each ordinal's current (upper-cased) value per field, as the instance keying its bitmap, to find it again on update /
+        // delete.
+        private final EnumMap<Field, String[]> valuesByField = new EnumMap<>(Field.class);
+
+        private Bitmaps() {
+            for (var field : Field.values()) {
+                byField.put(field, new TreeMap<>());
+                valuesByField.put(field, new String[INITIAL_CAPACITY]);
+            }
+        }
+
+        @Override
+        public void put(int ordinal, Customer customer) {
+            var capacity = valuesByField.get(Field.FIRST_NAME).length;
+
+            if (ordinal >= capacity) {
+                var grown = Math.max(ordinal + 1, capacity * 2);
+                valuesByField.replaceAll((field, values) -> Arrays.copyOf(values, grown));
+            }
+
+            for (var field : Field.values()) {
+                var value = field.get(customer);
+                setValue(field, ordinal, value == null ? null : value.toUpperCase());
+            }
+        }
+
+        // Deleted customers keep their ordinal, without any values.
+        @Override
+        public void delete(int ordinal) {
+            for (var field : Field.values()) {
+                setValue(field, ordinal, null);
+            }
+        }
+
+        // Moves the ordinal from its current value's bitmap to the new value's, dropping bitmaps which become empty.
+        private void setValue(Field field, int ordinal, String upperValue) {
+            var byValue = byField.get(field);
+            var values = valuesByField.get(field);
+            var current = values[ordinal];
+
+            if (current == null ? upperValue == null : current.equals(upperValue)) {
+                return;
+            }
+
+            if (current != null) {
+                var ordinals = byValue.get(current);
+                ordinals.remove(ordinal);
+
+                if (ordinals.isEmpty()) {
+                    byValue.remove(current);
+                }
+            }
+
+            values[ordinal] = null;
+
+            if (upperValue != null) {
+                // Keyed by the first instance of each value, which every ordinal having it then shares.
+                var entry = byValue.ceilingEntry(upperValue);
+
+                if (entry == null || !entry.getKey().equals(upperValue)) {
+                    byValue.put(upperValue, RoaringBitmap.bitmapOf(ordinal));
+                    values[ordinal] = upperValue;
+                } else {
+                    entry.getValue().add(ordinal);
+                    values[ordinal] = entry.getKey();
+                }
+            }
+        }
+
+        // Switches bitmaps to run-length encoding wherever that's smaller.
+        @Override
+        public void built() {
+            byField.values().forEach(byValue -> byValue.values().forEach(RoaringBitmap::runOptimize));
+        }
+
+        @Override
+        public void install() {
+            bitmaps = this;
+            log.info("Indexed {} customers for filtering (~{} KB of bitmaps)", ordinals.liveOrdinals().getCardinality(), bitmapBytes() / 1024);
+        }
+
+        private long bitmapBytes() {
+            return byField.values().stream()
+                .flatMap(byValue -> byValue.values().stream())
+                .mapToLong(RoaringBitmap::getLongSizeInBytes)
+                .sum();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timers for the in-memory stages of customer requests, so that where a request's time goes can be read off
+ * {@code /actuator/prometheus} rather than a profiler. Database fetches are timed by Spring Data's own repository metrics
+ * ({@code spring.data.repository.invocations}), and whole requests by {@code http.server.requests}; percentile histograms for
+ * all of them are turned on in application.properties.
+ * <ul>
+ * <li>{@code customer.sort}, in-memory sorts, tagged with the fields and directions sorted by, whether it was a full sort or a
+ * top-K selection, and the input size, bucketed by order of magnitude to bound the number of series.</li>
+ * <li>{@code customer.truncation}, cutting a list down to the requested limit.</li>
+ * <li>{@code customer.serialization}, writing response bodies, tagged with whether the response was {@code materialized}
+ * (serialized in one go) or {@code streamed} (the time spent serializing, excluding reading), and its format: {@code json},
+ * {@code ndjson} or {@code binary}.</li>
+ * </ul>
+ */
+@Component
+public class CustomerMetrics {
+
+    // Upper bounds of the input_size buckets, with their tag values.
+    private static final int[] INPUT_SIZE_BOUNDS = { 1_000, 10_000, 100_000, 1_000_000 };
+
+    private static final String[] INPUT_SIZE_BUCKETS = { "<1k", "<10k", "<100k", "<1M", ">=1M" };
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer truncation;
+
+    public CustomerMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.truncation = Timer.builder("customer.truncation")
+            .description("Time to cut lists of customers down to the requested limit")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @param topK Whether only the first few are selected, rather than the whole input sorted.
+     */
+    public Timer sortTimer(List<SortSpec> sortSpecs, boolean topK, int inputSize) {
+        return Timer.builder("customer.sort")
+            .description("Time to sort customers in memory")
+            .tag("field", sortSpecs.stream().map(SortSpec::getField).collect(Collectors.joining(",")))
+            .tag("direction", sortSpecs.stream().map(spec -> spec.getDirection() == null ? "default" : spec.getDirection().name().toLowerCase(Locale.ROOT)).collect(Collectors.joining(",")))
+            .tag("algorithm", topK ? "top_k" : "full")
+            .tag("input_size", inputSizeBucket(inputSize))
+            .register(meterRegistry);
+    }
+
+    public Timer truncationTimer() {
+        return truncation;
+    }
+
+    /**
+     * @param streamed Whether the response was serialized as it was read, rather than from a materialized body.
+     * @param format   json, ndjson or binary.
+     */
+    public Timer serializationTimer(boolean streamed, String format) {
+        return Timer.builder("customer.serialization")
+            .description("Time to serialize response bodies")
+            .tag("response", streamed ? "streamed" : "materialized")
+            .tag("format", format)
+            .register(meterRegistry);
+    }
+
+    static String inputSizeBucket(int inputSize) {
+        for (int i = 0; i < INPUT_SIZE_BOUNDS.length; ++i) {
+            if (inputSize < INPUT_SIZE_BOUNDS[i]) {
+                return INPUT_SIZE_BUCKETS[i];
+            }
+        }
+
+        return INPUT_SIZE_BUCKETS[INPUT_SIZE_BOUNDS.length];
+    }
+}
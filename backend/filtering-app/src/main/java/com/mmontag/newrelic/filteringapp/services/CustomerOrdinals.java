@@ -0,0 +1,216 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+/**
+ * The registry of customer ordinals shared by every {@link CustomerReadModel}: each customer id gets a dense int ordinal the first
+ * time it's seen, which the read models index their own arrays and bitmaps by, and which it keeps until the next rebuild (a
+ * customer saved again after being deleted gets its ordinal back). Also holds the lock guarding the read models: the
+ * {@link CustomerReadModelLoader} writes to them under its write lock, and they read under its read lock.
+ * <pre/>
+ * Ordinals are assigned in ascending id order by a rebuild, so that bitmap walks yield ids in ascending order (matching the
+ * database's ordering for keyset pagination) without sorting, and ids are found by binary search. Customers inserted afterwards
+ * with a smaller id than the newest one (e.g. concurrent transactions committing out of order) end the id-ordered prefix: they,
+ * and every ordinal after them, are found through a hash map instead, and read models have to sort what they return until the
+ * next rebuild.
+ * <pre/>
+ * A rebuild assigns its ordinals in a {@link Registry} of its own, without the lock, and installs it in place of the current one
+ * (along with the read models built on it) under the write lock.
+ */
+@Component
+public class CustomerOrdinals {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Registry registry = new Registry();
+
+    // Bumped whenever a rebuilt registry is installed.
+    private int generation;
+
+    private volatile boolean ready;
+
+    /**
+     * @return Whether the read models have been built, and can serve reads. Until then, callers should fall back to the database.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return The lock to hold while reading the registry or any read model.
+     */
+    public Lock readLock() {
+        return lock.readLock();
+    }
+
+    Lock writeLock() {
+        return lock.writeLock();
+    }
+
+    /**
+     * @return The number of ordinals assigned, deleted customers' included; ordinals range from 0 to this, exclusive.
+     */
+    public int size() {
+        return registry.size();
+    }
+
+    public long idOf(int ordinal) {
+        return registry.idOf(ordinal);
+    }
+
+    /**
+     * @return The ordinal assigned to the id, deleted or not, or -1 if none was.
+     */
+    public int ordinalOf(long id) {
+        return registry.ordinalOf(id);
+    }
+
+    public boolean isLive(int ordinal) {
+        return registry.isLive(ordinal);
+    }
+
+    /**
+     * @return The ordinals of the customers which aren't deleted. NOTE: The registry's own bitmap, so not to be modified.
+     */
+    public RoaringBitmap liveOrdinals() {
+        return registry.liveOrdinals();
+    }
+
+    /**
+     * @return Whether every ordinal's id is greater than the previous one's, i.e. ordinal order is id order.
+     */
+    public boolean isIdOrdered() {
+        return registry.isIdOrdered();
+    }
+
+    /**
+     * @return The number of times a rebuilt registry has been installed. Ordinals held across a change of generation may since
+     *         have been assigned to other customers.
+     */
+    public int generation() {
+        return generation;
+    }
+
+    /**
+     * @return The first ordinal whose id is greater than the given id. Only meaningful while {@link #isIdOrdered()}.
+     */
+    public int upperBound(long id) {
+        return registry.upperBound(id);
+    }
+
+    int assign(long id) {
+        return registry.assign(id);
+    }
+
+    int delete(long id) {
+        return registry.delete(id);
+    }
+
+    void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    // Replaces the registry with a rebuilt one; called under the write lock.
+    void install(Registry rebuilt) {
+        registry = rebuilt;
+        ++generation;
+    }
+
+    /**
+     * The ordinals themselves: the installed ones, or those being assigned by a rebuild.
+     */
+    public static final class Registry {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] idsByOrdinal = new long[INITIAL_CAPACITY];
+
+        private int size;
+
+        // The number of ordinals whose ids are in ascending order; the ordinals of any past them are in unorderedOrdinalsById.
+        private int orderedSize;
+
+        private final HashMap<Long, Integer> unorderedOrdinalsById = new HashMap<>();
+
+        private final RoaringBitmap liveOrdinals = new RoaringBitmap();
+
+        Registry() {}
+
+        public int size() {
+            return size;
+        }
+
+        public long idOf(int ordinal) {
+            return idsByOrdinal[ordinal];
+        }
+
+        public int ordinalOf(long id) {
+            var ordinal = Arrays.binarySearch(idsByOrdinal, 0, orderedSize, id);
+
+            if (ordinal >= 0) {
+                return ordinal;
+            }
+
+            var unordered = unorderedOrdinalsById.get(id);
+            return unordered == null ? -1 : unordered;
+        }
+
+        public boolean isLive(int ordinal) {
+            return liveOrdinals.contains(ordinal);
+        }
+
+        public RoaringBitmap liveOrdinals() {
+            return liveOrdinals;
+        }
+
+        public boolean isIdOrdered() {
+            return orderedSize == size;
+        }
+
+        public int upperBound(long id) {
+            var ordinal = Arrays.binarySearch(idsByOrdinal, 0, size, id);
+            return ordinal >= 0 ? ordinal + 1 : -(ordinal + 1);
+        }
+
+        // Returns the id's ordinal (assigning the next one if it's new), marking it live.
+        int assign(long id) {
+            var ordinal = ordinalOf(id);
+
+            if (ordinal < 0) {
+                ordinal = size++;
+
+                if (ordinal >= idsByOrdinal.length) {
+                    idsByOrdinal = Arrays.copyOf(idsByOrdinal, idsByOrdinal.length * 2);
+                }
+
+                idsByOrdinal[ordinal] = id;
+
+                if (orderedSize == ordinal && (ordinal == 0 || idsByOrdinal[ordinal - 1] < id)) {
+                    ++orderedSize;
+                } else {
+                    unorderedOrdinalsById.put(id, ordinal);
+                }
+            }
+
+            liveOrdinals.add(ordinal);
+            return ordinal;
+        }
+
+        // Returns the id's ordinal, marking it deleted, or -1 if it had none or was already deleted.
+        int delete(long id) {
+            var ordinal = ordinalOf(id);
+            return ordinal >= 0 && liveOrdinals.checkedRemove(ordinal) ? ordinal : -1;
+        }
+
+        // Switches the live bitmap to run-length encoding wherever that's smaller.
+        void optimize() {
+            liveOrdinals.runOptimize();
+        }
+    }
+}
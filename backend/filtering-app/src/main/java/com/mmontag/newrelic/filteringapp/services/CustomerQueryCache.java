@@ -0,0 +1,149 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mmontag.newrelic.filteringapp.events.CustomerDataLoadedEvent;
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Read-through cache of customer query responses, keyed by the queries' (normalized) parameters. Bounded by the total number of
+ * customers held across all cached responses, with W-TinyLFU eviction and a TTL.
+ * <pre/>
+ * Every key includes the data version current when its query started. The version is bumped on any committed customer write (and
+ * on the startup bulk load), so a response can never be served for a version other than the one it was computed against, even if
+ * its query raced with the write.
+ * <pre/>
+ * Concurrent misses for the same key share a single query. The query runs on the thread which missed first, outside of the cache's
+ * locks (the cache only holds its pending result), so that a blocking query can't pin a virtual thread to its carrier. The others
+ * wait for it for up to the configured max wait, then run the query themselves (uncached).
+ * <pre/>
+ * Exported as the {@code customerQueries} cache metrics (hits, misses, evictions, size), plus the {@code customer.query.cache.load}
+ * timer for cache misses.
+ */
+@Component
+public class CustomerQueryCache {
+
+    private static final String CACHE_NAME = "customerQueries";
+
+    private final boolean enabled;
+
+    private final long maxCustomers;
+
+    private final Duration maxWait;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final AsyncCache<List<Object>, ResponseEntity<List<Customer>>> cache;
+
+    private final Timer loadTimer;
+
+    public CustomerQueryCache(@Value("${customer-query-cache.enabled:true}") boolean enabled,
+                              @Value("${customer-query-cache.max_customers:100000}") long maxCustomers,
+                              @Value("${customer-query-cache.ttl:10m}") Duration ttl,
+                              @Value("${customer-query-cache.max_wait:10s}") Duration maxWait,
+                              MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxCustomers = maxCustomers;
+        this.maxWait = maxWait;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxCustomers)
+            .weigher((List<Object> key, ResponseEntity<List<Customer>> response) -> response.getBody() == null ? 1 : 1 + response.getBody().size())
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .buildAsync();
+        this.loadTimer = Timer.builder("customer.query.cache.load")
+            .description("Time spent computing customer query responses on cache misses")
+            .register(meterRegistry);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached response for the query identified by the given parameters, running (and caching) the query on a miss.
+     * Queries which throw are not cached.
+     */
+    public ResponseEntity<List<Customer>> get(List<?> parameters, Supplier<ResponseEntity<List<Customer>>> query) {
+        if (!enabled) {
+            return query.get();
+        }
+
+        var key = new ArrayList<Object>(parameters.size() + 1);
+        key.add(version.get());
+        key.addAll(parameters);
+
+        var pending = new CompletableFuture<ResponseEntity<List<Customer>>>();
+        var response = cache.get(key, (k, executor) -> pending);
+
+        if (response == pending) {
+            try {
+                pending.complete(loadTimer.record(query));
+            } catch (RuntimeException | Error e) {
+                // Failed futures are removed from the cache, so the next get retries the query.
+                pending.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return SharedResponses.join(response, maxWait);
+        } catch (TimeoutException e) {
+            return loadTimer.record(query);
+        }
+    }
+
+    /**
+     * @return Whether the cache is enabled, and a response of (up to) the given number of customers fits in it. A null size means
+     *         unlimited, which is given the benefit of the doubt: such a response is only dropped once it turns out not to fit.
+     */
+    public boolean canHold(Integer customers) {
+        return enabled && (customers == null ? maxCustomers > 0 : 1L + customers <= maxCustomers);
+    }
+
+    public long size() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    // Runs any pending maintenance (e.g. evictions) right away, rather than on the cache's next few operations.
+    void cleanUp() {
+        cache.synchronous().cleanUp();
+    }
+
+    public void invalidateAll() {
+        version.incrementAndGet();
+        cache.synchronous().invalidateAll();
+    }
+
+    // Ordered last, so that a query re-run right after the bump sees other listeners' updates (e.g. the search index's).
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCustomerWrite(CustomerWriteEvent event) {
+        invalidateAll();
+    }
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener(CustomerDataLoadedEvent.class)
+    public void onCustomerDataLoaded() {
+        invalidateAll();
+    }
+}
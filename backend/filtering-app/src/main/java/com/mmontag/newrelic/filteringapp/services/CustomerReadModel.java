@@ -0,0 +1,55 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * An in-memory structure derived from the customers table, indexed by the {@link CustomerOrdinals}. Rather than each reading the
+ * table and following its writes itself, read models subscribe (as beans) to the {@link CustomerReadModelLoader}, which calls them
+ * under the ordinals' write lock, in one pass over the table for all of them. A rebuild fills new structures without the lock,
+ * while the current ones keep serving reads and taking writes, and then swaps them in.
+ */
+public interface CustomerReadModel {
+
+    /**
+     * @return Whether the read model is in use; disabled ones aren't built or kept in sync.
+     */
+    boolean isEnabled();
+
+    /**
+     * Starts a rebuild into new, empty structures, which replace the current ones once installed.
+     * @param ordinals The registry whose ordinals the customers are put at, which is installed along with the structures.
+     */
+    Rebuild rebuild(CustomerOrdinals.Registry ordinals);
+
+    /**
+     * Adds a customer at its ordinal, or updates the one already there.
+     */
+    void put(int ordinal, Customer customer);
+
+    /**
+     * Removes the customer at the ordinal, which the {@link CustomerOrdinals} no longer lists as live.
+     */
+    void delete(int ordinal);
+
+    /**
+     * A read model's structures being rebuilt. Every customer is put, in ascending id order, and then they're built, without the
+     * lock; under the write lock, the customers written in the meantime are put or deleted again (with the rebuilt ordinals
+     * installed), and the structures installed.
+     */
+    interface Rebuild {
+
+        void put(int ordinal, Customer customer);
+
+        void delete(int ordinal);
+
+        /**
+         * Called once every customer has been put, e.g. to compact what was built.
+         */
+        default void built() {}
+
+        /**
+         * Swaps the rebuilt structures in for the read model's current ones, e.g. logging what was built.
+         */
+        void install();
+    }
+}
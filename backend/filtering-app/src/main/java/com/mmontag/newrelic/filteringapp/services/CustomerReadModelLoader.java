@@ -0,0 +1,235 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.mmontag.newrelic.filteringapp.events.CustomerDataLoadedEvent;
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+import com.mmontag.newrelic.filteringapp.repository.Keyset;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds every enabled {@link CustomerReadModel} from the database once the startup data load completes
+ * ({@link CustomerDataLoadedEvent}), in a single pass over the customers table, and keeps them in sync afterwards via
+ * {@link CustomerWriteEvent}s. Ordinals are assigned by the {@link CustomerOrdinals}, and the read models written under its write
+ * lock.
+ * <pre/>
+ * A rebuild reads the table and builds new ordinals and read models without the lock, so that writes and reads carry on against
+ * the current ones meanwhile (which, until the first build, are empty and not ready). Writes in the meantime are recorded, and
+ * applied to the new ones too once they're built, under the write lock, as they're swapped in.
+ * <pre/>
+ * Runs ahead of other listeners to the same events, so that caches invalidated by a write don't refill from stale read models.
+ */
+@Slf4j
+@Component
+public class CustomerReadModelLoader {
+
+    private static final int REBUILD_BATCH_SIZE = 10_000;
+
+    @Autowired
+    CustomerRepository customers;
+
+    @Autowired
+    CustomerOrdinals ordinals;
+
+    @Autowired(required = false)
+    List<CustomerReadModel> readModels = List.of();
+
+    // One rebuild at a time. A lock rather than synchronized, so that a rebuild on a virtual thread doesn't pin its carrier.
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    // The writes since the running rebuild started, or null if there's none; guarded by the write lock.
+    private List<CustomerWriteEvent> pendingWrites;
+
+    /**
+     * (Re)builds the enabled read models from the database, paging through the customers table in id order.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(CustomerDataLoadedEvent.class)
+    public void rebuild() {
+        rebuild(customersInIdOrder());
+    }
+
+    /**
+     * (Re)builds the enabled read models from the given customers, which must come in ascending id order, rather than from the
+     * database (e.g. from generated customers, in benchmarks).
+     */
+    public void rebuild(Iterator<Customer> customersInIdOrder) {
+        var enabled = enabledReadModels();
+
+        if (enabled.isEmpty()) {
+            return;
+        }
+
+        var start = System.nanoTime();
+        rebuildLock.lock();
+
+        try {
+            var registry = new CustomerOrdinals.Registry();
+            var rebuilds = enabled.stream().map(readModel -> readModel.rebuild(registry)).collect(Collectors.toList());
+
+            // Writes from here on are applied to the rebuilt read models too, whether or not the pages read below include them:
+            // applying a customer's latest state again changes nothing.
+            setPendingWrites(new ArrayList<>());
+
+            try {
+                var batch = new ArrayList<Customer>(REBUILD_BATCH_SIZE);
+                var batchOrdinals = new int[REBUILD_BATCH_SIZE];
+
+                while (customersInIdOrder.hasNext()) {
+                    batch.clear();
+
+                    while (batch.size() < REBUILD_BATCH_SIZE && customersInIdOrder.hasNext()) {
+                        batch.add(customersInIdOrder.next());
+                    }
+
+                    for (int i = 0; i < batch.size(); ++i) {
+                        batchOrdinals[i] = registry.assign(batch.get(i).getId());
+                    }
+
+                    // Read model by read model, rather than customer by customer, so each works on its own structures for a while.
+                    for (var rebuild : rebuilds) {
+                        for (int i = 0; i < batch.size(); ++i) {
+                            rebuild.put(batchOrdinals[i], batch.get(i));
+                        }
+                    }
+                }
+
+                registry.optimize();
+                rebuilds.forEach(CustomerReadModel.Rebuild::built);
+
+                ordinals.writeLock().lock();
+
+                try {
+                    ordinals.install(registry);
+
+                    for (var event : pendingWrites) {
+                        apply(event, rebuilds);
+                    }
+
+                    rebuilds.forEach(CustomerReadModel.Rebuild::install);
+                    ordinals.setReady(true);
+
+                } finally {
+                    ordinals.writeLock().unlock();
+                }
+            } finally {
+                setPendingWrites(null);
+            }
+        } finally {
+            rebuildLock.unlock();
+        }
+
+        log.info("Loaded {} customers into {} read models in {} ms", ordinals.liveOrdinals().getCardinality(), enabled.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCustomerWrite(CustomerWriteEvent event) {
+        var enabled = enabledReadModels();
+
+        if (enabled.isEmpty()) {
+            return;
+        }
+
+        ordinals.writeLock().lock();
+
+        try {
+            var customer = event.getCustomer();
+
+            if (event.getType() == CustomerWriteEvent.Type.DELETED) {
+                var ordinal = ordinals.delete(customer.getId());
+
+                if (ordinal >= 0) {
+                    enabled.forEach(readModel -> readModel.delete(ordinal));
+                }
+            } else {
+                var ordinal = ordinals.assign(customer.getId());
+                enabled.forEach(readModel -> readModel.put(ordinal, customer));
+            }
+
+            if (pendingWrites != null) {
+                // A detached copy, since the entity itself can change after the event.
+                var copy = new Customer(customer.getId(), customer.getFirstName(), customer.getLastName(), customer.getCompanyName());
+                pendingWrites.add(new CustomerWriteEvent(event.getType(), copy));
+            }
+        } finally {
+            ordinals.writeLock().unlock();
+        }
+    }
+
+    // Applies a write recorded during a rebuild to the rebuilt read models, at the rebuilt ordinals (installed by then).
+    private void apply(CustomerWriteEvent event, List<CustomerReadModel.Rebuild> rebuilds) {
+        var customer = event.getCustomer();
+
+        if (event.getType() == CustomerWriteEvent.Type.DELETED) {
+            var ordinal = ordinals.delete(customer.getId());
+
+            if (ordinal >= 0) {
+                rebuilds.forEach(rebuild -> rebuild.delete(ordinal));
+            }
+        } else {
+            var ordinal = ordinals.assign(customer.getId());
+            rebuilds.forEach(rebuild -> rebuild.put(ordinal, customer));
+        }
+    }
+
+    private void setPendingWrites(List<CustomerWriteEvent> pendingWrites) {
+        ordinals.writeLock().lock();
+
+        try {
+            this.pendingWrites = pendingWrites;
+        } finally {
+            ordinals.writeLock().unlock();
+        }
+    }
+
+    // The customers table in id order, read a page of REBUILD_BATCH_SIZE at a time (the first once it's needed).
+    private Iterator<Customer> customersInIdOrder() {
+        return new Iterator<>() {
+
+            private List<Customer> page;
+
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (page == null || (next == page.size() && page.size() == REBUILD_BATCH_SIZE)) {
+                    var after = page == null ? null : Keyset.of(page.get(page.size() - 1), Sort.unsorted());
+                    page = customers.findAllOrdered(Sort.unsorted(), after, REBUILD_BATCH_SIZE);
+                    next = 0;
+                }
+
+                return next < page.size();
+            }
+
+            @Override
+            public Customer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return page.get(next++);
+            }
+        };
+    }
+
+    private List<CustomerReadModel> enabledReadModels() {
+        return readModels.stream().filter(CustomerReadModel::isEnabled).collect(Collectors.toList());
+    }
+}
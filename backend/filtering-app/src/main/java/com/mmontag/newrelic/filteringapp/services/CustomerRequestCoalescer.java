@@ -0,0 +1,128 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.mmontag.newrelic.filteringapp.events.CustomerDataLoadedEvent;
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Single-flight execution of customer requests: while a request is being handled, identical requests (those with equal
+ * normalized parameters) wait for its response and share it, rather than each running the same queries and sorts. Unlike the
+ * {@link CustomerQueryCache}, nothing is kept once the request completes, so it also dedupes bursts while the cache is disabled,
+ * and of responses the cache doesn't keep.
+ * <pre/>
+ * A request only ever joins one which started after the last committed customer write (or the startup bulk load): writes forget
+ * the requests in flight, so that requests arriving after a write run again, as they would have without coalescing. Nor does it wait
+ * for one longer than the configured max wait, after which it runs itself after all.
+ * <pre/>
+ * Exported as the {@code customer.request.coalescer.requests} counter, tagged with whether each request was {@code executed} or
+ * {@code coalesced} onto one in flight, the {@code customer.request.coalescer.timeouts} counter of coalesced requests which gave up
+ * waiting, and the {@code customer.request.coalescer.in_flight} gauge.
+ */
+@Component
+public class CustomerRequestCoalescer {
+
+    private final boolean enabled;
+
+    private final Duration maxWait;
+
+    private final Map<List<?>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter executed;
+
+    private final Counter coalesced;
+
+    private final Counter timeouts;
+
+    public CustomerRequestCoalescer(@Value("${customer-request-coalescer.enabled:true}") boolean enabled,
+                                    @Value("${customer-request-coalescer.max_wait:10s}") Duration maxWait,
+                                    MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxWait = maxWait;
+        this.executed = requestCounter(meterRegistry, "executed");
+        this.coalesced = requestCounter(meterRegistry, "coalesced");
+        this.timeouts = Counter.builder("customer.request.coalescer.timeouts")
+            .description("Coalesced customer requests which gave up waiting for the identical request in flight, and ran themselves")
+            .register(meterRegistry);
+
+        Gauge.builder("customer.request.coalescer.in_flight", inFlight, Map::size)
+            .description("Distinct customer requests currently being handled")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Runs the request identified by the given parameters, unless an identical one is already running, in which case this waits for
+     * (and returns) its response instead, for up to the max wait. Failures are shared the same way, but not remembered: the next
+     * request runs again.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(List<?> parameters, Supplier<T> request) {
+        if (!enabled) {
+            return request.get();
+        }
+
+        var pending = new CompletableFuture<Object>();
+        var running = inFlight.putIfAbsent(parameters, pending);
+
+        if (running != null) {
+            coalesced.increment();
+
+            try {
+                return (T) SharedResponses.join(running, maxWait);
+            } catch (TimeoutException e) {
+                timeouts.increment();
+                return request.get();
+            }
+        }
+
+        executed.increment();
+
+        try {
+            var response = request.get();
+            pending.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(parameters, pending);
+        }
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("customer.request.coalescer.requests")
+            .description("Customer requests, by whether they ran or shared the response of an identical request in flight")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    // Requests already in flight still complete (for their own callers), but nothing joins them any more.
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCustomerWrite(CustomerWriteEvent event) {
+        inFlight.clear();
+    }
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener(CustomerDataLoadedEvent.class)
+    public void onCustomerDataLoaded() {
+        inFlight.clear();
+    }
+}
@@ -0,0 +1,186 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory trigram index over customers' first, last and company names, answering "contains, ignoring case" searches without
+ * a table scan. A {@link CustomerReadModel}, built and kept in sync by the {@link CustomerReadModelLoader}.
+ * <pre/>
+ * Indexes customers by their {@link CustomerOrdinals}, which are in ascending id order, so searches return ids in ascending order
+ * (matching the database's ordering for keyset pagination) without sorting.
+ */
+@Slf4j
+@Component
+public class CustomerSearchIndex implements CustomerReadModel {
+
+    public enum Field {
+        FIRST_NAME(Customer::getFirstName),
+        LAST_NAME(Customer::getLastName),
+        COMPANY_NAME(Customer::getCompanyName);
+
+        private final Function<Customer, String> getter;
+
+        Field(Function<Customer, String> getter) {
+            this.getter = getter;
+        }
+    }
+
+    @Autowired
+    CustomerOrdinals ordinals;
+
+    @Value("${customer-search-index.enabled:true}")
+    boolean enabled;
+
+    private Indexes indexes = new Indexes();
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Whether the index has been built, and can serve searches. Until then, callers should fall back to the database.
+     */
+    public boolean isReady() {
+        return enabled && ordinals.isReady();
+    }
+
+    /**
+     * Finds the ids of customers for which any of the given fields contains the needle, ignoring case.
+     * @param afterId Only ids strictly greater than this are returned; {@code null} to start from the beginning.
+     * @param limit The maximum number of ids to return. {@code null} or non-positive values mean "no limit".
+     * @return Matching ids, in ascending order.
+     */
+    public List<Long> search(String needle, Set<Field> fields, Long afterId, Integer limit) {
+        var max = limit == null || limit <= 0 ? Integer.MAX_VALUE : limit;
+        var output = new ArrayList<Long>();
+
+        ordinals.readLock().lock();
+
+        try {
+            if (!ordinals.isIdOrdered()) {
+                return searchUnordered(needle, fields, afterId, max);
+            }
+
+            var fromOrdinal = afterId == null ? 0 : ordinals.upperBound(afterId);
+            var matches = new ArrayList<NGramIndex.Matches>();
+            for (var field : fields) {
+                matches.add(indexes.byField.get(field).find(needle, fromOrdinal, ordinals.size()));
+            }
+
+            // Merges the per-field matches (each ascending) into their ascending, de-duplicated union, stopping at the limit.
+            var heads = new int[matches.size()];
+            for (int i = 0; i < heads.length; ++i) {
+                heads[i] = matches.get(i).next();
+            }
+
+            while (output.size() < max) {
+                var next = NGramIndex.Matches.EXHAUSTED;
+                for (var head : heads) {
+                    if (head != NGramIndex.Matches.EXHAUSTED && (next == NGramIndex.Matches.EXHAUSTED || head < next)) {
+                        next = head;
+                    }
+                }
+
+                if (next == NGramIndex.Matches.EXHAUSTED) {
+                    break;
+                }
+
+                for (int i = 0; i < heads.length; ++i) {
+                    if (heads[i] == next) {
+                        heads[i] = matches.get(i).next();
+                    }
+                }
+
+                if (ordinals.isLive(next)) {
+                    output.add(ordinals.idOf(next));
+                }
+            }
+
+            return output;
+
+        } finally {
+            ordinals.readLock().unlock();
+        }
+    }
+
+    // Slow path for when ordinals aren't in id order: checks every live ordinal, then sorts.
+    private List<Long> searchUnordered(String needle, Set<Field> fields, Long afterId, int max) {
+        var output = new ArrayList<Long>();
+
+        for (var ordinal : ordinals.liveOrdinals()) {
+            var id = ordinals.idOf(ordinal);
+
+            if (afterId != null && id <= afterId) {
+                continue;
+            }
+
+            for (var field : fields) {
+                if (indexes.byField.get(field).contains(ordinal, needle)) {
+                    output.add(id);
+                    break;
+                }
+            }
+        }
+
+        output.sort(null);
+        return output.size() > max ? new ArrayList<>(output.subList(0, max)) : output;
+    }
+
+    @Override
+    public Rebuild rebuild(CustomerOrdinals.Registry ordinals) {
+        return new Indexes();
+    }
+
+    @Override
+    public void put(int ordinal, Customer customer) {
+        indexes.put(ordinal, customer);
+    }
+
+    @Override
+    public void delete(int ordinal) {
+        indexes.delete(ordinal);
+    }
+
+    // An n-gram index per field: the installed ones, or new ones being filled by a rebuild.
+    private final class Indexes implements Rebuild {
+
+        private final EnumMap<Field, NGramIndex> byField = new EnumMap<>(Field.class);
+
+        private Indexes() {
+            for (var field : Field.values()) {
+                byField.put(field, new NGramIndex());
+            }
+        }
+
+        @Override
+        public void put(int ordinal, Customer customer) {
+            for (var field : Field.values()) {
+                byField.get(field).put(ordinal, field.getter.apply(customer));
+            }
+        }
+
+        @Override
+        public void delete(int ordinal) {
+            byField.values().forEach(index -> index.remove(ordinal));
+        }
+
+        @Override
+        public void install() {
+            indexes = this;
+            log.info("Indexed {} customers for search", ordinals.liveOrdinals().getCardinality());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+
+import jakarta.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link SortedView}s of customers for each of the sort fields listed in {@code customer-sorted-views.fields}, so that limited
+ * single-field sorts are a walk of the first N entries of a view rather than a query. A {@link CustomerReadModel}, built and kept
+ * in sync by the {@link CustomerReadModelLoader}; enabled when any fields are listed.
+ * <pre/>
+ * Each view's estimated heap usage is exported as the {@code customer.sorted.view.memory} gauge (tagged by field), and logged
+ * after every rebuild, to help decide which fields are worth a view. None are listed by default.
+ */
+@Slf4j
+@Component
+public class CustomerSortedViews implements CustomerReadModel {
+
+    @Autowired
+    CustomerOrdinals ordinals;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    SortingService<Customer> sortingService;
+
+    @Value("${customer-sorted-views.fields:}")
+    List<String> fields;
+
+    private Views views;
+
+    /**
+     * Creates the configured views, empty until the first rebuild.
+     * @throws IllegalArgumentException if a configured field isn't registered by key extractor.
+     */
+    @PostConstruct
+    void createViews() {
+        views = new Views(ordinals::idOf);
+
+        for (var field : fields) {
+            Gauge.builder("customer.sorted.view.memory", () -> estimateMemoryBytes(field))
+                .description("Estimated heap used by the sorted view of customers by a field")
+                .baseUnit("bytes")
+                .tag("field", field)
+                .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return !views.byField.isEmpty();
+    }
+
+    /**
+     * @return Whether the sort field has a view which has been built, and can serve walks. Until then, callers should fall back to
+     *         the database.
+     */
+    public boolean isReady(String field) {
+        return ordinals.isReady() && views.byField.containsKey(field);
+    }
+
+    /**
+     * Returns the ids of the first {@code limit} customers in the spec's order (which must be fully resolved), starting strictly
+     * after the given position.
+     * @param afterKey The sort key of the last customer of the previous page, i.e. its field value as the field's key extractor
+     *        would return it.
+     * @param afterId The id of the last customer of the previous page, or {@code null} for the first page.
+     */
+    public List<Long> first(SortSpec sortSpec, int limit, Object afterKey, Long afterId) {
+        ordinals.readLock().lock();
+
+        try {
+            return views.byField.get(sortSpec.getField()).first(limit, sortSpec.getDirection(), sortSpec.getNullBehavior(), afterKey, afterId);
+        } finally {
+            ordinals.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Rebuild rebuild(CustomerOrdinals.Registry ordinals) {
+        return new Views(ordinals::idOf);
+    }
+
+    @Override
+    public void put(int ordinal, Customer customer) {
+        views.put(ordinal, customer);
+    }
+
+    @Override
+    public void delete(int ordinal) {
+        views.delete(ordinal);
+    }
+
+    private long estimateMemoryBytes(String field) {
+        ordinals.readLock().lock();
+
+        try {
+            return views.byField.get(field).estimateMemoryBytes();
+        } finally {
+            ordinals.readLock().unlock();
+        }
+    }
+
+    // A view per configured field: the installed ones, or new ones being filled by a rebuild.
+    private final class Views implements Rebuild {
+
+        private final HashMap<String, SortedView<Customer>> byField = new HashMap<>();
+
+        private Views(IntToLongFunction idOf) {
+            for (var field : fields) {
+                try {
+                    byField.put(field, sortingService.createSortedView(field, idOf));
+                } catch (SortingException e) {
+                    throw new IllegalArgumentException("Illegal customer-sorted-views.fields entry: " + field + " - Reason: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        @Override
+        public void put(int ordinal, Customer customer) {
+            byField.values().forEach(view -> view.put(ordinal, customer));
+        }
+
+        @Override
+        public void delete(int ordinal) {
+            byField.values().forEach(view -> view.remove(ordinal));
+        }
+
+        @Override
+        public void built() {
+            byField.values().forEach(SortedView::build);
+            byField.forEach((field, view) -> log.info("Built sorted view by {} of {} customers (~{} KB)", field, view.size(), view.estimateMemoryBytes() / 1024));
+        }
+
+        @Override
+        public void install() {
+            views = this;
+        }
+    }
+}
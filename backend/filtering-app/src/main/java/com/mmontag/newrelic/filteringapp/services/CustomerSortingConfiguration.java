@@ -0,0 +1,40 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.function.Function;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * The one {@link SortingService} of customers, with the sortable customer fields registered, shared by everything which sorts
+ * customers: both web stacks' controllers (and their sort parser), the sorted views and the autocomplete index.
+ */
+@Configuration
+public class CustomerSortingConfiguration {
+
+    @Bean
+    public SortingService<Customer> customerSortingService() {
+        return createCustomerSortingService();
+    }
+
+    /**
+     * A new sorting service with the customer fields registered, each ordered by its upper-cased value.
+     */
+    public static SortingService<Customer> createCustomerSortingService() {
+        return new SortingService<Customer>()
+            .registerField("firstName", upperCased(Customer::getFirstName))
+            .registerField("lastName", upperCased(Customer::getLastName))
+            .registerField("companyName", upperCased(Customer::getCompanyName));
+    }
+
+    // Null-safe, so that sort keys are computed without relying on exceptions for customers with missing names; null keys are then
+    // ordered by the SortingService's null-ordering behavior.
+    private static Function<Customer, String> upperCased(Function<Customer, String> getter) {
+        return c -> {
+            var value = getter.apply(c);
+            return value == null ? null : value.toUpperCase();
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+/**
+ * Sorts int arrays (of ordinals, row numbers etc.) by a comparator, which {@code java.util.Arrays} can only do for boxed values.
+ * A stable merge sort, needing a buffer of half the range, with insertion sort for short runs.
+ */
+final class IntSorter {
+
+    @FunctionalInterface
+    interface IntComparator {
+
+        int compare(int value1, int value2);
+    }
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private IntSorter() {
+    }
+
+    /**
+     * Sorts {@code values[from, to)} in place.
+     */
+    static void sort(int[] values, int from, int to, IntComparator comparator) {
+        if (to - from > 1) {
+            sort(values, from, to, new int[(to - from) / 2 + 1], comparator);
+        }
+    }
+
+    private static void sort(int[] values, int from, int to, int[] buffer, IntComparator comparator) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(values, from, to, comparator);
+            return;
+        }
+
+        var mid = (from + to) >>> 1;
+        sort(values, from, mid, buffer, comparator);
+        sort(values, mid, to, buffer, comparator);
+
+        // Already in order (e.g. input that was nearly sorted), so there's nothing to merge.
+        if (comparator.compare(values[mid - 1], values[mid]) <= 0) {
+            return;
+        }
+
+        // Merges the left half (moved aside) with the right half (in place), front to back.
+        var leftSize = mid - from;
+        System.arraycopy(values, from, buffer, 0, leftSize);
+
+        int left = 0;
+        int right = mid;
+        int output = from;
+
+        while (left < leftSize && right < to) {
+            values[output++] = comparator.compare(values[right], buffer[left]) < 0 ? values[right++] : buffer[left++];
+        }
+
+        System.arraycopy(buffer, left, values, output, leftSize - left);
+    }
+
+    private static void insertionSort(int[] values, int from, int to, IntComparator comparator) {
+        for (int i = from + 1; i < to; ++i) {
+            var value = values[i];
+            var j = i - 1;
+
+            for (; j >= from && comparator.compare(values[j], value) > 0; --j) {
+                values[j + 1] = values[j];
+            }
+
+            values[j + 1] = value;
+        }
+    }
+}
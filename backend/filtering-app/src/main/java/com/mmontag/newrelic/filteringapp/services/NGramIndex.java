@@ -0,0 +1,255 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A trigram index over a single string-valued field, answering "contains, ignoring case" queries.
+ * <pre/>
+ * Values are addressed by ordinal (a dense, caller-assigned int). Every trigram of every (upper-cased) value maps to a sorted
+ * posting list of the ordinals containing it, so a needle of length >= 3 is answered by intersecting the posting lists of its
+ * trigrams and verifying the surviving candidates against the stored values. Shorter needles have no trigrams, and fall back to
+ * scanning the stored values.
+ * <pre/>
+ * NOTE: This class is not thread-safe; callers are expected to guard it with a read/write lock.
+ */
+public class NGramIndex {
+
+    static final int GRAM_LENGTH = 3;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Lazily produces matching ordinals in ascending order.
+     */
+    public interface Matches {
+
+        int EXHAUSTED = -1;
+
+        /**
+         * @return The next matching ordinal, or {@link #EXHAUSTED}.
+         */
+        int next();
+    }
+
+    private final HashMap<Long, PostingList> postingsByGram = new HashMap<>();
+
+    private String[] values = new String[INITIAL_CAPACITY];
+
+    /**
+     * Indexes (or re-indexes) the value at the given ordinal. {@code null} values are stored, but never match.
+     */
+    public void put(int ordinal, String value) {
+        remove(ordinal);
+
+        if (ordinal >= values.length) {
+            values = Arrays.copyOf(values, Math.max(ordinal + 1, values.length * 2));
+        }
+
+        if (value == null) {
+            return;
+        }
+
+        var normalized = normalize(value);
+        values[ordinal] = normalized;
+
+        for (var gram : grams(normalized)) {
+            postingsByGram.computeIfAbsent(gram, g -> new PostingList()).add(ordinal);
+        }
+    }
+
+    public void remove(int ordinal) {
+        if (ordinal >= values.length || values[ordinal] == null) {
+            return;
+        }
+
+        for (var gram : grams(values[ordinal])) {
+            var postings = postingsByGram.get(gram);
+            postings.remove(ordinal);
+
+            if (postings.size == 0) {
+                postingsByGram.remove(gram);
+            }
+        }
+
+        values[ordinal] = null;
+    }
+
+    /**
+     * @return Whether the value at the given ordinal contains the needle, ignoring case.
+     */
+    public boolean contains(int ordinal, String needle) {
+        return matches(ordinal, normalize(needle));
+    }
+
+    /**
+     * Finds the ordinals in {@code [fromOrdinal, toOrdinal)} whose values contain the needle, ignoring case.
+     */
+    public Matches find(String needle, int fromOrdinal, int toOrdinal) {
+        var normalized = normalize(needle);
+
+        if (normalized.length() < GRAM_LENGTH) {
+            return scan(normalized, fromOrdinal, toOrdinal);
+        }
+
+        var postings = new ArrayList<PostingList>();
+        for (var gram : grams(normalized)) {
+            var gramPostings = postingsByGram.get(gram);
+
+            if (gramPostings == null) {
+                return () -> Matches.EXHAUSTED;
+            }
+
+            postings.add(gramPostings);
+        }
+
+        return intersect(normalized, postings, fromOrdinal, toOrdinal);
+    }
+
+    /**
+     * @return The number of distinct trigrams currently indexed.
+     */
+    public int gramCount() {
+        return postingsByGram.size();
+    }
+
+    // Walks the shortest posting list, galloping through the others to confirm each candidate, then verifies the candidate
+    // against its value (having every trigram of the needle doesn't guarantee containing the needle).
+    private Matches intersect(String needle, List<PostingList> postings, int fromOrdinal, int toOrdinal) {
+        postings.sort(Comparator.comparingInt(list -> list.size));
+
+        var positions = new int[postings.size()];
+        for (int i = 0; i < postings.size(); ++i) {
+            positions[i] = postings.get(i).lowerBound(fromOrdinal, 0);
+        }
+
+        return () -> {
+            var driver = postings.get(0);
+
+            candidates:
+            while (positions[0] < driver.size) {
+                var candidate = driver.ordinals[positions[0]++];
+
+                if (candidate >= toOrdinal) {
+                    positions[0] = driver.size;
+                    break;
+                }
+
+                for (int i = 1; i < postings.size(); ++i) {
+                    var other = postings.get(i);
+                    positions[i] = other.lowerBound(candidate, positions[i]);
+
+                    if (positions[i] >= other.size || other.ordinals[positions[i]] != candidate) {
+                        continue candidates;
+                    }
+                }
+
+                if (matches(candidate, needle)) {
+                    return candidate;
+                }
+            }
+
+            return Matches.EXHAUSTED;
+        };
+    }
+
+    private Matches scan(String needle, int fromOrdinal, int toOrdinal) {
+        var position = new int[] { fromOrdinal };
+        var end = Math.min(toOrdinal, values.length);
+
+        return () -> {
+            while (position[0] < end) {
+                var candidate = position[0]++;
+
+                if (matches(candidate, needle)) {
+                    return candidate;
+                }
+            }
+
+            return Matches.EXHAUSTED;
+        };
+    }
+
+    private boolean matches(int ordinal, String normalizedNeedle) {
+        return ordinal < values.length && values[ordinal] != null && values[ordinal].contains(normalizedNeedle);
+    }
+
+    private static String normalize(String value) {
+        return value.toUpperCase();
+    }
+
+    // Packs each distinct trigram of the value into a long (three 16-bit chars), preserving first-seen order.
+    private static Set<Long> grams(String value) {
+        var grams = new LinkedHashSet<Long>();
+
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); ++i) {
+            grams.add(((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2));
+        }
+
+        return grams;
+    }
+
+    // A sorted, growable list of ordinals. Appends (the common case, since ordinals are handed out in increasing order) are O(1).
+    private static final class PostingList {
+
+        private int[] ordinals = new int[4];
+
+        private int size;
+
+        void add(int ordinal) {
+            var index = size == 0 || ordinals[size - 1] < ordinal ? size : lowerBound(ordinal, 0);
+
+            if (index < size && ordinals[index] == ordinal) {
+                return;
+            }
+
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+
+            System.arraycopy(ordinals, index, ordinals, index + 1, size - index);
+            ordinals[index] = ordinal;
+            ++size;
+        }
+
+        void remove(int ordinal) {
+            var index = lowerBound(ordinal, 0);
+
+            if (index < size && ordinals[index] == ordinal) {
+                System.arraycopy(ordinals, index + 1, ordinals, index, size - index - 1);
+                --size;
+            }
+        }
+
+        // Returns the index of the first ordinal >= target, searching from the given index. Gallops forward before binary
+        // searching, so that repeated probes with increasing targets (as in an intersection) stay cheap.
+        int lowerBound(int target, int from) {
+            var low = from;
+            var step = 1;
+
+            while (low + step < size && ordinals[low + step] < target) {
+                low += step;
+                step <<= 1;
+            }
+
+            var high = Math.min(low + step, size);
+
+            while (low < high) {
+                var middle = (low + high) >>> 1;
+
+                if (ordinals[middle] < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stable fork-join merge sort for large arrays, run on its own bounded {@link ForkJoinPool} so that big sorts neither compete with
+ * other users of the common pool nor take over every core serving requests.
+ * <pre/>
+ * Arrays shorter than the threshold (or any array, if the pool size is 1) are sorted sequentially with {@link Arrays#sort}.
+ */
+@Component
+public class ParallelSorter {
+
+    // Leaves below this size are sorted sequentially; splitting further costs more in task overhead than it gains.
+    private static final int MIN_LEAF_SIZE = 8192;
+
+    private final int threshold;
+
+    private final int poolSize;
+
+    private final ForkJoinPool pool;
+
+    public ParallelSorter(@Value("${sorting-service.parallel_threshold:100000}") int threshold, @Value("${sorting-service.parallel_pool_size:4}") int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Illegal pool size: " + poolSize + " - Reason: must be at least 1.");
+        }
+
+        this.threshold = threshold;
+        this.poolSize = poolSize;
+        this.pool = poolSize > 1 ? new ForkJoinPool(poolSize, ParallelSorter::newWorkerThread, null, false) : null;
+    }
+
+    /**
+     * Sorts the array in place. Like {@link Arrays#sort(Object[], Comparator)}, this is stable: elements which compare as equal
+     * keep their relative order.
+     */
+    public <E> void sort(E[] array, Comparator<? super E> comparator) {
+        if (pool == null || array.length < Math.max(threshold, 2 * MIN_LEAF_SIZE)) {
+            Arrays.sort(array, comparator);
+            return;
+        }
+
+        var leafSize = Math.max(MIN_LEAF_SIZE, array.length / (4 * poolSize));
+        pool.invoke(new MergeSortTask<>(array, Arrays.copyOf(array, array.length), 0, array.length, comparator, leafSize));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ForkJoinWorkerThread newWorkerThread(ForkJoinPool pool) {
+        var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("sorting-service-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    private static final class MergeSortTask<E> extends RecursiveAction {
+
+        private final E[] array;
+
+        // Scratch space for merges; tasks only ever touch their own [from, to) range of it.
+        private final E[] buffer;
+
+        private final int from;
+
+        private final int to;
+
+        private final Comparator<? super E> comparator;
+
+        private final int leafSize;
+
+        private MergeSortTask(E[] array, E[] buffer, int from, int to, Comparator<? super E> comparator, int leafSize) {
+            this.array = array;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                Arrays.sort(array, from, to, comparator);
+                return;
+            }
+
+            var middle = (from + to) >>> 1;
+            invokeAll(new MergeSortTask<>(array, buffer, from, middle, comparator, leafSize),
+                new MergeSortTask<>(array, buffer, middle, to, comparator, leafSize));
+
+            merge(middle);
+        }
+
+        // Merges the sorted halves [from, middle) and [middle, to), taking from the left half on ties to keep the sort stable.
+        private void merge(int middle) {
+            if (comparator.compare(array[middle - 1], array[middle]) <= 0) {
+                return;
+            }
+
+            System.arraycopy(array, from, buffer, from, middle - from);
+
+            int left = from, right = middle, out = from;
+
+            while (left < middle && right < to) {
+                array[out++] = comparator.compare(buffer[left], array[right]) <= 0 ? buffer[left++] : array[right++];
+            }
+
+            System.arraycopy(buffer, left, array, out, middle - left);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Waiting for a response computed (and shared) by another request's thread, as the {@link CustomerQueryCache} and the
+ * {@link CustomerRequestCoalescer} have requests do.
+ */
+final class SharedResponses {
+
+    private SharedResponses() {
+    }
+
+    /**
+     * Waits for the shared response for at most maxWait, rethrowing its failure as computing it would have, e.g. as a bad request.
+     *
+     * @throws TimeoutException If it isn't ready in time, so that the caller can compute its own rather than wait on indefinitely.
+     */
+    static <T> T join(CompletableFuture<T> response, Duration maxWait) throws TimeoutException {
+        try {
+            return response.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+}
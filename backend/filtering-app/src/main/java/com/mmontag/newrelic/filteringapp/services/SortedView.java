@@ -0,0 +1,358 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntToLongFunction;
+
+import com.mmontag.newrelic.filteringapp.services.SortingService.NullOrderingBehavior;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+
+/**
+ * A live, pre-sorted index of elements by one sort key, kept up to date element by element. The first {@code n} ids in either
+ * direction (optionally starting after a given position) are then a walk of O(n + log size), instead of a sort of every element.
+ * <pre/>
+ * Ids are ordered by key, in the requested direction, with ties always broken by ascending id; elements with a {@code null} key
+ * go first or last. This is the same total order {@code CustomerRepository#findAllOrdered} produces, so a page read from a view
+ * can be continued from the database and vice versa.
+ * <pre/>
+ * Elements are identified by their ordinal (e.g. their {@link CustomerOrdinals}), and the view is primitive arrays of them: one
+ * of the ordinals with a key, sorted by (key, id), and one of those without, sorted by id, plus each ordinal's key. Equal keys
+ * are shared (keys which fall out of use are only dropped by {@link #clear()}), so that's ~8 bytes per element, plus the distinct
+ * keys. Puts and removals shift the sorted arrays, which makes them O(size) (a memory move); a view is filled in bulk, and sorted
+ * once, by {@link #build()}.
+ * <pre/>
+ * Created by {@link SortingService#createSortedView}. NOTE: Not thread-safe; callers are expected to guard it with a lock.
+ */
+public class SortedView<T> {
+
+    // Rough per-object sizes on a 64-bit JVM with compressed oops, used for estimateMemoryBytes().
+    private static final int REFERENCE_BYTES = 4;
+
+    // HashMap node, plus its share of the table at the default load factor.
+    private static final int KEY_MAP_ENTRY_BYTES = 32 + 6;
+
+    // String object plus its byte[] header, on top of one byte per (Latin-1) character.
+    private static final int STRING_BYTES = 40;
+
+    private static final int OTHER_KEY_BYTES = 16;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // The key of ordinals which aren't in the view (as null is a key).
+    private static final Object ABSENT = new Object();
+
+    private final Function<? super T, ?> keyExtractor;
+
+    private final IntToLongFunction idOf;
+
+    private final Comparator<Object> keyComparator;
+
+    // Each ordinal's current key, or ABSENT.
+    private Object[] keysByOrdinal = new Object[0];
+
+    // Ordinals with a non-null key, ordered by (key, id).
+    private int[] keyed = new int[0];
+
+    private int keyedSize;
+
+    // Ordinals with a null key, ordered by id.
+    private int[] nullKeyed = new int[0];
+
+    private int nullKeyedSize;
+
+    // One instance of every key put since the view was cleared, so that equal keys are only held once.
+    private final HashMap<Object, Object> canonicalKeys = new HashMap<>();
+
+    private long keyBytes;
+
+    // False from clear() until build(), while puts are only recorded.
+    private boolean built;
+
+    SortedView(Function<? super T, ?> keyExtractor, IntToLongFunction idOf, Comparator<Object> keyComparator) {
+        this.keyExtractor = keyExtractor;
+        this.idOf = idOf;
+        this.keyComparator = keyComparator;
+        clear();
+    }
+
+    /**
+     * Adds the element at the ordinal, or moves it to its new position if its key changed since it was added.
+     */
+    public void put(int ordinal, T element) {
+        var key = canonical(keyExtractor.apply(element));
+
+        if (ordinal >= keysByOrdinal.length) {
+            var capacity = keysByOrdinal.length;
+            keysByOrdinal = Arrays.copyOf(keysByOrdinal, Math.max(ordinal + 1, capacity * 2));
+            Arrays.fill(keysByOrdinal, capacity, keysByOrdinal.length, ABSENT);
+        }
+
+        var oldKey = keysByOrdinal[ordinal];
+
+        if (oldKey != ABSENT) {
+            if (oldKey == null ? key == null : key != null && keyComparator.compare(oldKey, key) == 0) {
+                return;
+            }
+
+            remove(ordinal);
+        }
+
+        keysByOrdinal[ordinal] = key;
+
+        if (!built) {
+            return;
+        }
+
+        if (key == null) {
+            var index = idLowerBound(idOf.applyAsLong(ordinal));
+            nullKeyed = insert(nullKeyed, nullKeyedSize++, index, ordinal);
+        } else {
+            var index = lowerBound(key, idOf.applyAsLong(ordinal), 0, keyedSize);
+            keyed = insert(keyed, keyedSize++, index, ordinal);
+        }
+    }
+
+    public void remove(int ordinal) {
+        if (ordinal >= keysByOrdinal.length || keysByOrdinal[ordinal] == ABSENT) {
+            return;
+        }
+
+        var key = keysByOrdinal[ordinal];
+
+        // The key stays until the ordinal is out of the sorted arrays, as the binary searches may compare against it.
+        if (built) {
+            if (key == null) {
+                var index = idLowerBound(idOf.applyAsLong(ordinal));
+                System.arraycopy(nullKeyed, index + 1, nullKeyed, index, --nullKeyedSize - index);
+            } else {
+                var index = lowerBound(key, idOf.applyAsLong(ordinal), 0, keyedSize);
+                System.arraycopy(keyed, index + 1, keyed, index, --keyedSize - index);
+            }
+        }
+
+        keysByOrdinal[ordinal] = ABSENT;
+    }
+
+    /**
+     * Empties the view, which then records puts until the next {@link #build()}.
+     */
+    public void clear() {
+        keysByOrdinal = new Object[INITIAL_CAPACITY];
+        Arrays.fill(keysByOrdinal, ABSENT);
+        keyed = new int[0];
+        keyedSize = 0;
+        nullKeyed = new int[0];
+        nullKeyedSize = 0;
+        canonicalKeys.clear();
+        keyBytes = 0;
+        built = false;
+    }
+
+    /**
+     * Sorts the elements put since the view was created or cleared. From then on, puts and removals keep it sorted.
+     */
+    public void build() {
+        var keyedCount = 0;
+        var nullKeyedCount = 0;
+
+        for (var key : keysByOrdinal) {
+            if (key != ABSENT) {
+                if (key == null) {
+                    ++nullKeyedCount;
+                } else {
+                    ++keyedCount;
+                }
+            }
+        }
+
+        keyed = new int[keyedCount];
+        nullKeyed = new int[nullKeyedCount];
+        keyedSize = 0;
+        nullKeyedSize = 0;
+
+        for (int ordinal = 0; ordinal < keysByOrdinal.length; ++ordinal) {
+            if (keysByOrdinal[ordinal] != ABSENT) {
+                if (keysByOrdinal[ordinal] == null) {
+                    nullKeyed[nullKeyedSize++] = ordinal;
+                } else {
+                    keyed[keyedSize++] = ordinal;
+                }
+            }
+        }
+
+        IntSorter.sort(keyed, 0, keyedSize, this::compareOrdinals);
+        IntSorter.sort(nullKeyed, 0, nullKeyedSize, (ordinal1, ordinal2) -> Long.compare(idOf.applyAsLong(ordinal1), idOf.applyAsLong(ordinal2)));
+        built = true;
+    }
+
+    public int size() {
+        return keyedSize + nullKeyedSize;
+    }
+
+    /**
+     * Returns the first {@code n} ids in the given order, starting strictly after the position of ({@code afterKey},
+     * {@code afterId}) if {@code afterId} is given. The position doesn't have to belong to an element still in the view.
+     * @param afterKey The sort key of the last element of the previous page ({@code null} if it had none).
+     * @param afterId The id of the last element of the previous page, or {@code null} to start from the beginning.
+     * @throws IllegalArgumentException for {@link NullOrderingBehavior#CUSTOM}, which the view can't apply.
+     * @throws IllegalStateException if the view hasn't been built since it was last cleared.
+     */
+    public List<Long> first(int n, SortDirection sortDirection, NullOrderingBehavior nullBehavior, Object afterKey, Long afterId) {
+        if (nullBehavior != NullOrderingBehavior.NULLS_FIRST && nullBehavior != NullOrderingBehavior.NULLS_LAST) {
+            throw new IllegalArgumentException("Illegal null behavior: " + nullBehavior + " - Reason: sorted views only support NULLS_FIRST and NULLS_LAST.");
+        }
+
+        if (!built) {
+            throw new IllegalStateException("The sorted view hasn't been built.");
+        }
+
+        var output = new ArrayList<Long>(Math.min(n, size()));
+        var afterNullKey = afterId != null && afterKey == null;
+
+        if (nullBehavior == NullOrderingBehavior.NULLS_FIRST) {
+            if (afterId == null || afterNullKey) {
+                addIds(nullKeyed, afterId == null ? 0 : idLowerBound(afterId + 1), nullKeyedSize, output, n);
+            }
+
+            addKeyed(sortDirection, afterKey, afterNullKey ? null : afterId, output, n);
+
+        } else {
+            if (!afterNullKey) {
+                addKeyed(sortDirection, afterKey, afterId, output, n);
+            }
+
+            addIds(nullKeyed, afterNullKey ? idLowerBound(afterId + 1) : 0, nullKeyedSize, output, n);
+        }
+
+        return output;
+    }
+
+    /**
+     * @return A rough estimate of the heap used by the view (its own arrays and distinct keys, not the elements themselves).
+     */
+    public long estimateMemoryBytes() {
+        return (long) keysByOrdinal.length * REFERENCE_BYTES
+            + (long) (keyed.length + nullKeyed.length) * Integer.BYTES
+            + (long) canonicalKeys.size() * KEY_MAP_ENTRY_BYTES
+            + keyBytes;
+    }
+
+    // Adds ids of elements with a non-null key, starting after (afterKey, afterId) if afterId is given.
+    private void addKeyed(SortDirection sortDirection, Object afterKey, Long afterId, List<Long> output, int n) {
+        if (sortDirection != SortDirection.DESCENDING) {
+            addIds(keyed, afterId == null ? 0 : lowerBound(afterKey, afterId + 1, 0, keyedSize), keyedSize, output, n);
+            return;
+        }
+
+        // Descending by key, but still ascending by id among equal keys: first the rest of the cursor's key, then key by key.
+        var end = keyedSize;
+
+        if (afterId != null) {
+            end = lowerBound(afterKey, Long.MIN_VALUE, 0, keyedSize);
+            addIds(keyed, lowerBound(afterKey, afterId + 1, end, keyedSize), upperBound(afterKey, end, keyedSize), output, n);
+        }
+
+        while (end > 0 && output.size() < n) {
+            var start = lowerBound(keysByOrdinal[keyed[end - 1]], Long.MIN_VALUE, 0, end);
+            addIds(keyed, start, end, output, n);
+            end = start;
+        }
+    }
+
+    private void addIds(int[] ordinals, int from, int to, List<Long> output, int n) {
+        for (int i = from; i < to && output.size() < n; ++i) {
+            output.add(idOf.applyAsLong(ordinals[i]));
+        }
+    }
+
+    // Returns the index of the first keyed ordinal in [from, to) at or after (key, id).
+    private int lowerBound(Object key, long id, int from, int to) {
+        var low = from;
+        var high = to;
+
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            var ordinal = keyed[mid];
+            var byKey = keyComparator.compare(keysByOrdinal[ordinal], key);
+
+            if (byKey < 0 || (byKey == 0 && idOf.applyAsLong(ordinal) < id)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    // Returns the index of the first keyed ordinal in [from, to) whose key is greater than the given one.
+    private int upperBound(Object key, int from, int to) {
+        var low = from;
+        var high = to;
+
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+
+            if (keyComparator.compare(keysByOrdinal[keyed[mid]], key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    // Returns the index of the first null-keyed ordinal whose id is at least the given one.
+    private int idLowerBound(long id) {
+        var low = 0;
+        var high = nullKeyedSize;
+
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+
+            if (idOf.applyAsLong(nullKeyed[mid]) < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private int compareOrdinals(int ordinal1, int ordinal2) {
+        var byKey = keyComparator.compare(keysByOrdinal[ordinal1], keysByOrdinal[ordinal2]);
+        return byKey != 0 ? byKey : Long.compare(idOf.applyAsLong(ordinal1), idOf.applyAsLong(ordinal2));
+    }
+
+    private Object canonical(Object key) {
+        if (key == null) {
+            return null;
+        }
+
+        var existing = canonicalKeys.putIfAbsent(key, key);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        keyBytes += key instanceof String ? STRING_BYTES + ((String) key).length() : OTHER_KEY_BYTES;
+        return key;
+    }
+
+    // Inserts the value at the index of the array's first size values, growing it if needed.
+    private static int[] insert(int[] array, int size, int index, int value) {
+        if (size == array.length) {
+            array = Arrays.copyOf(array, Math.max(16, size + (size >> 1)));
+        }
+
+        System.arraycopy(array, index, array, index + 1, size - index);
+        array[index] = value;
+        return array;
+    }
+}
@@ -1,22 +1,30 @@
 package com.mmontag.newrelic.filteringapp.services;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.IntToLongFunction;
 
 import javax.lang.model.SourceVersion;
 
-import org.springframework.beans.factory.config.ConfigurableBeanFactory;
-import org.springframework.context.annotation.Scope;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.lang.NonNull;
-import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import com.mmontag.newrelic.filteringapp.exception.SortingException;
 
-@Component
-@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+import lombok.Setter;
+import lombok.Value;
+
+/**
+ * Sorts elements by registered fields. The customer fields' instance is the {@link CustomerSortingConfiguration}'s bean.
+ */
 public class SortingService<T> {
 
     public enum SortDirection {
@@ -29,17 +37,50 @@ public class SortingService<T> {
         NULLS_LAST,
         CUSTOM
     }
+
+    /**
+     * One key of a (possibly composite) sort. {@code null} direction and/or null behavior use the field's defaults.
+     */
+    @Value
+    public static class SortSpec {
+
+        String field;
+
+        SortDirection direction;
+
+        NullOrderingBehavior nullBehavior;
+    }
     
     private SortDirection DEFAULT_SORT_DIRECTION = SortDirection.ASCENDING;
 
     private NullOrderingBehavior DEFAULT_NULL_BEHAVIOR = NullOrderingBehavior.NULLS_LAST;
 
+    // Key comparators are the same for every field (natural ordering of the keys), so they're precomposed once and shared.
+    private static final ComposedComparators<Object> KEY_COMPARATORS = new ComposedComparators<>(SortingService::compareKeys);
+
     private final HashMap<String, Comparator<T>> comparatorsByField = new HashMap<>();
 
+    // The registered comparators, precomposed for every direction / null-ordering combination at registration time. Fields
+    // registered with a null comparator have no entry.
+    private final HashMap<String, ComposedComparators<T>> composedComparatorsByField = new HashMap<>();
+
+    // Key extractors for fields registered via a Function rather than a Comparator. Sorts on these fields extract each element's
+    // key once up front (decorate-sort-undecorate), instead of twice per comparison.
+    private final HashMap<String, Function<? super T, ?>> keyExtractorsByField = new HashMap<>();
+
     private final HashMap<String, SortDirection> defaultSortDirectionsByField = new HashMap<>();
 
     private final HashMap<String, NullOrderingBehavior> defaultNullBehaviorsByField = new HashMap<>();
 
+    // Compiled orderings by (resolved) sort specs, so that repeated sorts don't rebuild their comparator chains. Cleared whenever a
+    // field is (re)registered.
+    private final ConcurrentHashMap<List<SortSpec>, Ordering> orderingsBySpecs = new ConcurrentHashMap<>();
+
+    // Optional; without one (e.g. when constructed outside of Spring), every sort is sequential.
+    @Setter
+    @Autowired(required = false)
+    private ParallelSorter parallelSorter;
+
     public boolean isSortableBy(String fieldName) {
         return comparatorsByField.containsKey(fieldName);
     }
@@ -47,6 +88,14 @@ public class SortingService<T> {
     public SortingService<T> registerField(String fieldName, Comparator<T> comparator, SortDirection defaultSortDirection, NullOrderingBehavior defaultNullBehavior) {
         if (isValidFieldName(fieldName)) {
             comparatorsByField.put(fieldName, comparator);
+            keyExtractorsByField.remove(fieldName);
+
+            if (comparator == null) {
+                composedComparatorsByField.remove(fieldName);
+            } else {
+                composedComparatorsByField.put(fieldName, new ComposedComparators<>(comparator));
+            }
+            orderingsBySpecs.clear();
             
             if (defaultSortDirection != null && defaultSortDirection != DEFAULT_SORT_DIRECTION) {
                 defaultSortDirectionsByField.put(fieldName, defaultSortDirection);
@@ -75,8 +124,19 @@ public class SortingService<T> {
         return registerField(fieldName, comparator, DEFAULT_SORT_DIRECTION, DEFAULT_NULL_BEHAVIOR);
     }
 
+    /**
+     * Registers a field by key extractor. Sorts on such fields evaluate the extractor once per element (rather than twice per
+     * comparison), and apply the null-ordering behavior to null keys as well as to null elements.
+     */
     public <R extends Comparable<? super R>> SortingService<T> registerField(String fieldName, Function<? super T, ? extends R> fieldExtractor, SortDirection defaultSortDirection, NullOrderingBehavior defaultNullBehavior) {
-        return registerField(fieldName, fieldExtractor == null ? null : Comparator.comparing(fieldExtractor), defaultSortDirection, defaultNullBehavior);
+        registerField(fieldName, fieldExtractor == null ? null : Comparator.comparing(fieldExtractor), defaultSortDirection, defaultNullBehavior);
+
+        if (fieldExtractor != null) {
+            keyExtractorsByField.put(fieldName, fieldExtractor);
+            orderingsBySpecs.clear();
+        }
+
+        return this;
     }
 
     public <R extends Comparable<? super R>> SortingService<T> registerField(String fieldName, Function<? super T, ? extends R> fieldExtractor, SortDirection defaultSortDirection) {
@@ -88,7 +148,7 @@ public class SortingService<T> {
     }
 
     public <R extends Comparable<? super R>> SortingService<T> registerField(String fieldName, Function<? super T, ? extends R> fieldExtractor) {
-        return registerField(fieldName, fieldExtractor == null ? null : Comparator.comparing(fieldExtractor));
+        return registerField(fieldName, fieldExtractor, DEFAULT_SORT_DIRECTION, DEFAULT_NULL_BEHAVIOR);
     }
 
     /**
@@ -98,23 +158,29 @@ public class SortingService<T> {
      * Passing in {@code null} for the sortDirection and/or nullBehavior args will use default values (field-level, if registered,
      * otherwise instance-level).
      * <pre/>
+     * Inputs of at least {@code sorting-service.parallel_threshold} elements are sorted in parallel, see {@link ParallelSorter}.
+     * <pre/>
      * NOTE: THIS IS AN IN-PLACE SORT, which returns the ref to the input list for a more fluent API that allows chained sorts. 
      * @return The input list, sorted in-place.
      * @throws SortingException
      */
     public List<T> sort(List<T> input, String sortField, SortDirection sortDirection, NullOrderingBehavior nullBehavior) throws SortingException {
-        if (sortDirection == null) {
-            sortDirection = DEFAULT_SORT_DIRECTION;
-        }
-
-        if (!comparatorsByField.containsKey(sortField)) {
-            throw new SortingException("sortField argument: \"" + sortField + "\" is not a supported fieldName.");
-        }
+        return sort(input, List.of(new SortSpec(sortField, sortDirection, nullBehavior)));
+    }
 
-        var comparator = composeComparator(sortField, sortDirection, nullBehavior);
+    /**
+     * Sorts a given list of elements by several fields at once: by the first spec, then, among elements equal on it, by the second,
+     * and so on. Every field must be registered, and may appear at most once.
+     * <pre/>
+     * NOTE: THIS IS AN IN-PLACE SORT, like {@code SortingService#sort(List, String, SortDirection, NullOrderingBehavior)}.
+     * @return The input list, sorted in-place.
+     * @throws SortingException
+     */
+    public List<T> sort(List<T> input, List<SortSpec> sortSpecs) throws SortingException {
+        var ordering = compile(sortSpecs);
 
-        if (comparator != null && !CollectionUtils.isEmpty(input)) {
-            input.sort(comparator);
+        if (!CollectionUtils.isEmpty(input)) {
+            ordering.sort(input);
         }
 
         return input;
@@ -125,36 +191,116 @@ public class SortingService<T> {
     }
 
     public List<T> sort(List<T> input, String sortField, NullOrderingBehavior nullBehavior) throws SortingException {
-        return sort(input, sortField, null, null);
+        return sort(input, sortField, null, nullBehavior);
     }
 
     public List<T> sort(List<T> input, String sortField) throws SortingException {
         return sort(input, sortField, null, null);
     }
 
-    private Comparator<T> composeComparator(String fieldName, SortDirection sortDirection, NullOrderingBehavior nullBehavior) {
-        var comparator = comparatorsByField.get(fieldName);
+    /**
+     * Returns the first {@code k} elements of the given list, in the order {@code SortingService#sort(...)} would put them, without
+     * sorting the rest. Runs in O(n log k) using a bounded max-heap, rather than the O(n log n) of a full sort followed by a
+     * truncation. Like {@code sort}, this is stable: elements which compare as equal keep their input order.
+     * <pre/>
+     * Unlike {@code sort}, this is NOT an in-place sort; the input list is left untouched.
+     * @return A new list holding the first {@code min(k, input.size())} elements, in sorted order.
+     * @throws SortingException
+     */
+    public List<T> sortTopK(List<T> input, String sortField, int k, SortDirection sortDirection, NullOrderingBehavior nullBehavior) throws SortingException {
+        return sortTopK(input, List.of(new SortSpec(sortField, sortDirection, nullBehavior)), k);
+    }
 
-        if (comparator == null) {
-            return comparator;
+    /**
+     * The composite-sort counterpart of {@code SortingService#sortTopK(List, String, int, SortDirection, NullOrderingBehavior)}.
+     * @return A new list holding the first {@code min(k, input.size())} elements, in sorted order.
+     * @throws SortingException
+     */
+    public List<T> sortTopK(List<T> input, List<SortSpec> sortSpecs, int k) throws SortingException {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must be non-negative, but was " + k);
+        }
+
+        var ordering = compile(sortSpecs);
+
+        if (CollectionUtils.isEmpty(input) || k == 0) {
+            return new ArrayList<>();
+        }
+
+        if (k >= input.size()) {
+            var output = new ArrayList<>(input);
+            ordering.sort(output);
+            return output;
         }
 
-        if (sortDirection == null) {
-            sortDirection = defaultSortDirectionsByField.getOrDefault(fieldName, DEFAULT_SORT_DIRECTION);
+        return ordering.topK(input instanceof RandomAccess ? input : new ArrayList<>(input), k);
+    }
+
+    public List<T> sortTopK(List<T> input, String sortField, int k, SortDirection sortDirection) throws SortingException {
+        return sortTopK(input, sortField, k, sortDirection, null);
+    }
+
+    public List<T> sortTopK(List<T> input, String sortField, int k) throws SortingException {
+        return sortTopK(input, sortField, k, null, null);
+    }
+
+    /**
+     * Creates an (empty) {@link SortedView} of elements by a field, which orders them like {@code SortingService#sort(...)} would,
+     * breaking ties by id. The field must be registered by key extractor.
+     * @param idOf Maps the ordinals elements are put at to their ids.
+     * @throws SortingException
+     */
+    public SortedView<T> createSortedView(String sortField, IntToLongFunction idOf) throws SortingException {
+        var keyExtractor = keyExtractorsByField.get(sortField);
+
+        if (keyExtractor == null) {
+            throw new SortingException("sortField argument: \"" + sortField + "\" is not a fieldName registered by key extractor.");
         }
 
-        comparator = addSortDirection(comparator, sortDirection);
+        return new SortedView<>(keyExtractor, idOf, SortingService::compareKeys);
+    }
 
-        if (nullBehavior == null) {
-            nullBehavior = defaultNullBehaviorsByField.getOrDefault(fieldName, DEFAULT_NULL_BEHAVIOR);
+    /**
+     * Resolves the sort direction that {@code SortingService#sort(...)} would use for a field, given the (possibly {@code null})
+     * requested direction. Useful for callers which delegate ordering elsewhere (e.g. to a database) but want identical defaults.
+     */
+    public SortDirection resolveSortDirection(String fieldName, SortDirection sortDirection) {
+        if (sortDirection != null) {
+            return sortDirection;
         }
 
-        comparator = addNullBehavior(comparator, nullBehavior);
+        return defaultSortDirectionsByField.getOrDefault(fieldName, DEFAULT_SORT_DIRECTION);
+    }
+
+    /**
+     * Resolves the null-ordering behavior that {@code SortingService#sort(...)} would use for a field, given the (possibly
+     * {@code null}) requested behavior.
+     */
+    public NullOrderingBehavior resolveNullBehavior(String fieldName, NullOrderingBehavior nullBehavior) {
+        if (nullBehavior != null) {
+            return nullBehavior;
+        }
 
-        return comparator;
+        return defaultNullBehaviorsByField.getOrDefault(fieldName, DEFAULT_NULL_BEHAVIOR);
     }
 
-    private Comparator<T> addSortDirection(@NonNull Comparator<T> comparator, SortDirection sortDirection) {
+    // Looks up the comparator for the keys produced by a field's key extractor. Keys are Comparable by construction (see the
+    // Function overloads of registerField), so the base ordering is their natural ordering.
+    private Comparator<Object> composeKeyComparator(String fieldName, SortDirection sortDirection, NullOrderingBehavior nullBehavior) {
+        return KEY_COMPARATORS.get(resolveSortDirection(fieldName, sortDirection), resolveNullBehavior(fieldName, nullBehavior));
+    }
+
+    private Comparator<T> composeComparator(String fieldName, SortDirection sortDirection, NullOrderingBehavior nullBehavior) {
+        var composed = composedComparatorsByField.get(fieldName);
+
+        if (composed == null) {
+            return null;
+        }
+
+        return composed.get(resolveSortDirection(fieldName, sortDirection), resolveNullBehavior(fieldName, nullBehavior));
+    }
+
+    private static <C> Comparator<C> addSortDirection(@NonNull Comparator<C> comparator, SortDirection sortDirection) {
         if (sortDirection == SortDirection.DESCENDING) {
             return comparator.reversed();
         } else {
@@ -162,7 +308,7 @@ public class SortingService<T> {
         }
     }
 
-    private Comparator<T> addNullBehavior(@NonNull Comparator<T> comparator, NullOrderingBehavior nullBehavior) {
+    private static <C> Comparator<C> addNullBehavior(@NonNull Comparator<C> comparator, NullOrderingBehavior nullBehavior) {
         if (nullBehavior == NullOrderingBehavior.NULLS_FIRST) {
             return Comparator.nullsFirst(comparator);
         } else if (nullBehavior == NullOrderingBehavior.NULLS_LAST) {
@@ -172,6 +318,288 @@ public class SortingService<T> {
         }
     }
 
+    // Validates the specs, resolves their defaults, and returns the (cached) ordering for them.
+    private Ordering compile(List<SortSpec> sortSpecs) throws SortingException {
+        if (CollectionUtils.isEmpty(sortSpecs)) {
+            throw new SortingException("At least one sortField is required.");
+        }
+
+        var resolvedSpecs = new ArrayList<SortSpec>(sortSpecs.size());
+
+        for (var spec : sortSpecs) {
+            var field = spec.getField();
+
+            if (!comparatorsByField.containsKey(field)) {
+                throw new SortingException("sortField argument: \"" + field + "\" is not a supported fieldName.");
+            }
+
+            if (resolvedSpecs.stream().anyMatch(resolved -> Objects.equals(resolved.getField(), field))) {
+                throw new SortingException("sortField argument: \"" + field + "\" appears more than once.");
+            }
+
+            resolvedSpecs.add(new SortSpec(field, resolveSortDirection(field, spec.getDirection()), resolveNullBehavior(field, spec.getNullBehavior())));
+        }
+
+        return orderingsBySpecs.computeIfAbsent(resolvedSpecs, Ordering::new);
+    }
+
+    // Both Arrays.sort and ParallelSorter are stable, just like List.sort.
+    private <E> void sortArray(E[] array, Comparator<? super E> comparator) {
+        if (parallelSorter == null) {
+            Arrays.sort(array, comparator);
+        } else {
+            parallelSorter.sort(array, comparator);
+        }
+    }
+
+    private static <C> Comparator<C> thenComparing(Comparator<C> first, Comparator<C> next) {
+        return first == null ? next : first.thenComparing(next);
+    }
+
+    // Strings (by far the most common keys) get a direct, non-virtual call to String.compareTo, which the JIT can inline regardless
+    // of what other key types it has seen here.
+    @SuppressWarnings("unchecked")
+    private static int compareKeys(Object key1, Object key2) {
+        if (key1 instanceof String && key2 instanceof String) {
+            return ((String) key1).compareTo((String) key2);
+        }
+
+        return ((Comparable<Object>) key1).compareTo(key2);
+    }
+
+    private static <T> List<T> select(List<T> elements, int[] indexes) {
+        var output = new ArrayList<T>(indexes.length);
+
+        for (var index : indexes) {
+            output.add(elements.get(index));
+        }
+
+        return output;
+    }
+
+    // Returns the indexes of the k smallest values in ascending order, keeping them in a bounded max-heap ordered by (value, index)
+    // so that ties resolve the same way a stable sort would: a later value only displaces the heap's maximum if strictly smaller.
+    private static <V> int[] selectTopK(List<V> values, Comparator<? super V> comparator, int k) {
+        var heap = new int[k];
+        var size = 0;
+
+        for (int index = 0; index < values.size(); ++index) {
+            if (size < k) {
+                heap[size] = index;
+                siftUp(heap, size++, values, comparator);
+            } else if (comparator.compare(values.get(index), values.get(heap[0])) < 0) {
+                heap[0] = index;
+                siftDown(heap, size, values, comparator);
+            }
+        }
+
+        // Repeatedly moving the maximum to the end leaves the heap array in ascending order.
+        for (var end = size - 1; end > 0; --end) {
+            swap(heap, 0, end);
+            siftDown(heap, end, values, comparator);
+        }
+
+        return size == k ? heap : Arrays.copyOf(heap, size);
+    }
+
+    private static <V> void siftUp(int[] heap, int position, List<V> values, Comparator<? super V> comparator) {
+        while (position > 0) {
+            var parent = (position - 1) >>> 1;
+
+            if (compareIndexes(heap[position], heap[parent], values, comparator) <= 0) {
+                return;
+            }
+
+            swap(heap, position, parent);
+            position = parent;
+        }
+    }
+
+    private static <V> void siftDown(int[] heap, int size, List<V> values, Comparator<? super V> comparator) {
+        var position = 0;
+
+        while (true) {
+            var largest = position;
+            var left = 2 * position + 1;
+            var right = left + 1;
+
+            if (left < size && compareIndexes(heap[left], heap[largest], values, comparator) > 0) {
+                largest = left;
+            }
+
+            if (right < size && compareIndexes(heap[right], heap[largest], values, comparator) > 0) {
+                largest = right;
+            }
+
+            if (largest == position) {
+                return;
+            }
+
+            swap(heap, position, largest);
+            position = largest;
+        }
+    }
+
+    private static <V> int compareIndexes(int i, int j, List<V> values, Comparator<? super V> comparator) {
+        var compared = comparator.compare(values.get(i), values.get(j));
+        return compared != 0 ? compared : Integer.compare(i, j);
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        var temp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = temp;
+    }
+
+    // A compiled, possibly composite, ordering. Fields registered by key extractor are sorted by decorate-sort-undecorate: each
+    // element's keys are extracted exactly once, the (keys, element) pairs are sorted, and the elements written back in order.
+    // Fields registered by comparator compare the elements themselves; if no field has a key extractor, nothing is decorated.
+    private final class Ordering {
+
+        private final List<Function<? super T, ?>> keyExtractors = new ArrayList<>();
+
+        // Set if any field has a key extractor, otherwise elementComparator is. Both stay null if no field has a comparator.
+        private Comparator<KeyedElement<T>> decoratedComparator;
+
+        private Comparator<T> elementComparator;
+
+        private Ordering(List<SortSpec> resolvedSpecs) {
+            for (var spec : resolvedSpecs) {
+                var keyExtractor = keyExtractorsByField.get(spec.getField());
+
+                if (keyExtractor != null) {
+                    keyExtractors.add(keyExtractor);
+                }
+            }
+
+            // With several key extractors, each element's key is an Object[] holding one key per extractor.
+            var composite = keyExtractors.size() > 1;
+            var nextKeyIndex = 0;
+
+            for (var spec : resolvedSpecs) {
+                if (keyExtractorsByField.containsKey(spec.getField())) {
+                    var keyComparator = composeKeyComparator(spec.getField(), spec.getDirection(), spec.getNullBehavior());
+                    var keyIndex = nextKeyIndex++;
+
+                    Comparator<KeyedElement<T>> byKey = composite
+                        ? (a, b) -> keyComparator.compare(((Object[]) a.key)[keyIndex], ((Object[]) b.key)[keyIndex])
+                        : (a, b) -> keyComparator.compare(a.key, b.key);
+                    decoratedComparator = thenComparing(decoratedComparator, byKey);
+                    continue;
+                }
+
+                var comparator = composeComparator(spec.getField(), spec.getDirection(), spec.getNullBehavior());
+
+                if (comparator == null) {
+                    continue;
+                }
+
+                if (keyExtractors.isEmpty()) {
+                    elementComparator = thenComparing(elementComparator, comparator);
+                } else {
+                    decoratedComparator = thenComparing(decoratedComparator, (a, b) -> comparator.compare(a.element, b.element));
+                }
+            }
+        }
+
+        void sort(List<T> input) {
+            if (decoratedComparator != null) {
+                var decorated = decorate(input);
+                sortArray(decorated, decoratedComparator);
+
+                var iterator = input.listIterator();
+                for (var keyedElement : decorated) {
+                    iterator.next();
+                    iterator.set(keyedElement.element);
+                }
+
+            } else if (elementComparator != null && parallelSorter == null) {
+                input.sort(elementComparator);
+
+            } else if (elementComparator != null) {
+                @SuppressWarnings("unchecked")
+                var sorted = (T[]) input.toArray();
+                sortArray(sorted, elementComparator);
+
+                var iterator = input.listIterator();
+                for (var element : sorted) {
+                    iterator.next();
+                    iterator.set(element);
+                }
+            }
+        }
+
+        // Expects a RandomAccess list.
+        List<T> topK(List<T> elements, int k) {
+            if (decoratedComparator != null) {
+                return select(elements, selectTopK(Arrays.asList(decorate(elements)), decoratedComparator, k));
+            } else if (elementComparator != null) {
+                return select(elements, selectTopK(elements, elementComparator, k));
+            } else {
+                return new ArrayList<>(elements.subList(0, k));
+            }
+        }
+
+        private KeyedElement<T>[] decorate(List<T> input) {
+            @SuppressWarnings("unchecked")
+            KeyedElement<T>[] decorated = new KeyedElement[input.size()];
+            var i = 0;
+
+            for (var element : input) {
+                decorated[i++] = new KeyedElement<>(extractKey(element), element);
+            }
+
+            return decorated;
+        }
+
+        // Null elements get null keys, rather than being handed to the extractors.
+        private Object extractKey(T element) {
+            if (keyExtractors.size() == 1) {
+                return element == null ? null : keyExtractors.get(0).apply(element);
+            }
+
+            var keys = new Object[keyExtractors.size()];
+
+            if (element != null) {
+                for (int i = 0; i < keys.length; ++i) {
+                    keys[i] = keyExtractors.get(i).apply(element);
+                }
+            }
+
+            return keys;
+        }
+    }
+
+    // A comparator, wrapped for every direction / null-ordering combination.
+    private static final class ComposedComparators<C> {
+
+        private final List<Comparator<C>> comparators = new ArrayList<>();
+
+        private ComposedComparators(Comparator<C> comparator) {
+            for (var sortDirection : SortDirection.values()) {
+                for (var nullBehavior : NullOrderingBehavior.values()) {
+                    comparators.add(addNullBehavior(addSortDirection(comparator, sortDirection), nullBehavior));
+                }
+            }
+        }
+
+        private Comparator<C> get(SortDirection sortDirection, NullOrderingBehavior nullBehavior) {
+            return comparators.get(sortDirection.ordinal() * NullOrderingBehavior.values().length + nullBehavior.ordinal());
+        }
+    }
+
+    private static final class KeyedElement<T> {
+
+        private final Object key;
+
+        private final T element;
+
+        private KeyedElement(Object key, T element) {
+            this.key = key;
+            this.element = element;
+        }
+    }
+
     private static boolean isValidFieldName(String fieldName) {
         return fieldName == null || SourceVersion.isIdentifier(fieldName);
     }
@@ -1,72 +1,468 @@
 package com.mmontag.newrelic.filteringapp.services.controllers.customer;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-
-import javax.annotation.PostConstruct;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.CompanyCount;
 import com.mmontag.newrelic.filteringapp.model.Customer;
 import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepositoryCustom;
+import com.mmontag.newrelic.filteringapp.repository.Keyset;
+import com.mmontag.newrelic.filteringapp.services.CustomerAutocompleteIndex;
+import com.mmontag.newrelic.filteringapp.services.CustomerColumnStore;
+import com.mmontag.newrelic.filteringapp.services.CustomerCompanyDictionary;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilterIndex;
+import com.mmontag.newrelic.filteringapp.services.CustomerMetrics;
+import com.mmontag.newrelic.filteringapp.services.CustomerQueryCache;
+import com.mmontag.newrelic.filteringapp.services.CustomerRequestCoalescer;
+import com.mmontag.newrelic.filteringapp.services.CustomerSearchIndex;
+import com.mmontag.newrelic.filteringapp.services.CustomerSortedViews;
 import com.mmontag.newrelic.filteringapp.services.SortingService;
-import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
 import com.mmontag.newrelic.filteringapp.services.controllers.util.ControllerUtils;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CursorCodec;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CustomerBinaryWriter;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CustomerJsonWriter;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CustomerWriter;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.JacksonCustomerWriter;
+import com.mmontag.newrelic.filteringapp.util.DBLoadUtil;
 
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-@CrossOrigin(methods = RequestMethod.GET)
+@CrossOrigin(methods = RequestMethod.GET, exposedHeaders = { CustomerController.NEXT_CURSOR_HEADER, CustomerController.PARTIAL_RESULTS_HEADER })
 @Component
 @RestController
 @RequestMapping(path="/customers")
+@Profile("!reactive")
 public class CustomerController implements ControllerUtils {
-    
-    private static final Pattern ASCENDING_PARAM_REGEX = Pattern.compile("(?i)^(1|a(sc(ending)?)?)$");
 
-    private static final Pattern DESCENDING_PARAM_REGEX = Pattern.compile("(?i)^(-1|d(esc(ending)?)?)$");
+    // Response header carrying the cursor for the next page, present whenever a limited page came back full.
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    // Response header flagging results served from a partially loaded dataset (see customer-controller.serve_partial_results).
+    public static final String PARTIAL_RESULTS_HEADER = "X-Partial-Results";
+
+    // The fields searched by the /search/{needle} endpoint.
+    private static final Set<CustomerSearchIndex.Field> NAME_FIELDS = EnumSet.of(CustomerSearchIndex.Field.FIRST_NAME, CustomerSearchIndex.Field.LAST_NAME);
+
+    // Max number of ids per "WHERE id IN (...)" query when fetching search results.
+    private static final int FETCH_BATCH_SIZE = 1000;
+
+    // Rows read per round trip when streaming unlimited responses.
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    // The formats unlimited responses can be streamed in, the first being the default.
+    private static final List<MediaType> STREAM_TYPES = List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON, CustomerBinaryWriter.MEDIA_TYPE);
+
+    // Customers returned per autocompletion when the request has no limit, and at most.
+    private static final int DEFAULT_AUTOCOMPLETE_LIMIT = 10;
+
+    private static final int MAX_AUTOCOMPLETE_LIMIT = 100;
 
     @Autowired
     CustomerRepository customers;
 
+    @Autowired
+    CustomerSortParser sortParser;
+
     @Autowired
     SortingService<Customer> sortingService;
 
-    @PostConstruct
-    void setupSortingService() {
-        sortingService.registerField("firstName", nullChecked(c -> c.getFirstName().toUpperCase()));
-        sortingService.registerField("lastName", nullChecked(c -> c.getLastName().toUpperCase()));
-        sortingService.registerField("companyName", nullChecked(c -> c.getCompanyName().toUpperCase()));
-    }
+    @Autowired
+    CustomerSearchIndex searchIndex;
+
+    @Autowired
+    CustomerSortedViews sortedViews;
+
+    @Autowired
+    CustomerColumnStore columnStore;
+
+    @Autowired
+    CustomerCompanyDictionary companyDictionary;
+
+    @Autowired
+    CustomerFilterIndex filterIndex;
+
+    @Autowired
+    CustomerAutocompleteIndex autocompleteIndex;
+
+    @Autowired
+    DBLoadUtil dbLoadUtil;
+
+    @Autowired
+    CustomerQueryCache queryCache;
+
+    @Autowired
+    CustomerRequestCoalescer requestCoalescer;
+
+    @Autowired
+    CustomerMetrics metrics;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${customer-controller.serve_partial_results:false}")
+    boolean servePartialResults;
 
     @GetMapping
-    public List<Customer> getCustomers(@RequestParam(required=false) Integer limit, @RequestParam(required=false) String sortBy, @RequestParam(required=false) String sortDirection) {
-        log.info("GET -> /customers (params: [limit={}, sortField={}, sortDirection={}])", limit, sortBy, sortDirection);
-        return firstN(limit, applySort(customers.findAll(), sortBy, sortDirection));
+    public ResponseEntity<List<Customer>> getCustomers(@RequestParam(required=false) Integer limit, @RequestParam(required=false) String sortBy, @RequestParam(required=false) String sortDirection, @RequestParam(required=false) String cursor, @RequestParam(required=false) String company, @RequestParam(required=false) String filter) {
+        var sortSpecs = sortParser.parse(sortBy, sortDirection);
+
+        if (filter != null) {
+            if (company != null) {
+                throw badRequest("The company and filter params can't be combined; use company=... within the filter instead.");
+            }
+
+            var parsedFilter = parseFilter(filter);
+            return whenLoaded(Arrays.asList("filter", parsedFilter, sortSpecs, pageSize(limit), cursor), limit, () -> findFilteredCustomers(parsedFilter, limit, sortBy, sortSpecs, cursor));
+        }
+
+        if (company != null) {
+            return whenLoaded(Arrays.asList("company", company, sortSpecs, pageSize(limit), cursor), limit, () -> findCustomersOfCompany(company, limit, sortBy, sortSpecs, cursor));
+        }
+
+        return whenLoaded(Arrays.asList("customers", sortSpecs, pageSize(limit), cursor), limit, () -> findCustomers(limit, sortBy, sortSpecs, cursor));
+    }
+
+    /**
+     * Unlimited requests for the whole table (no limit, cursor, company or filter) are streamed rather than materialized: customers
+     * are serialized as they're read, {@value #STREAM_FETCH_SIZE} rows at a time, so memory use stays flat however large the table
+     * is. The response is a JSON array, or newline-delimited JSON if the client prefers {@code application/x-ndjson}, or the
+     * compact {@link CustomerBinaryWriter} format if it prefers {@value CustomerBinaryWriter#MEDIA_TYPE_VALUE} (as materialized
+     * responses are, see CustomerResponseFormatsConfiguration). Streamed responses bypass the query cache; a non-positive limit
+     * still gets the materialized response from getCustomers.
+     */
+    @GetMapping(params={ "!limit", "!cursor", "!company", "!filter" })
+    public ResponseEntity<StreamingResponseBody> streamCustomers(@RequestParam(required=false) String sortBy, @RequestParam(required=false) String sortDirection, @RequestHeader(name=HttpHeaders.ACCEPT, required=false) String accept) {
+        var sortSpecs = sortParser.parse(sortBy, sortDirection);
+        var contentType = preferredType(accept, STREAM_TYPES);
+        var response = ResponseEntity.ok().contentType(contentType);
+
+        if (!dbLoadUtil.isLoaded()) {
+            if (!servePartialResults) {
+                throw stillLoading();
+            }
+
+            response.header(PARTIAL_RESULTS_HEADER, Boolean.TRUE.toString());
+        }
+
+        return response.body(output -> {
+            try (var stream = streamAll(sortSpecs)) {
+                writeCustomers(output, stream, contentType);
+            }
+        });
+    }
+
+    @GetMapping(path="/companies")
+    public ResponseEntity<List<CompanyCount>> getCompanies() {
+        return dbLoadUtil.isLoaded() ? findCompanies() : whileLoading(this::findCompanies);
     }
 
     @GetMapping(path="/search/{needle}")
-    public List<Customer> searchWithinNames(@PathVariable String needle, @RequestParam(required=false) Integer limit) {
-        log.info("/search/{}", needle);
-        return firstN(limit, whereNameContains(needle));
+    public ResponseEntity<List<Customer>> searchWithinNames(@PathVariable String needle, @RequestParam(required=false) Integer limit, @RequestParam(required=false) String cursor) {
+        return whenLoaded(Arrays.asList("search", needle.toUpperCase(), pageSize(limit), cursor), limit, () -> findByNameContaining(needle, limit, cursor));
     }
 
     @GetMapping(path="/search", params="limit")
-    public List<Customer> searchWithinNames(@RequestParam(required=false) Integer limit) {
-        log.info("/search?limit={}", limit);
-        return firstN(limit, customers.findAll());
+    public ResponseEntity<List<Customer>> searchWithinNames(@RequestParam(required=false) Integer limit, @RequestParam(required=false) String cursor) {
+        return whenLoaded(Arrays.asList("all", pageSize(limit), cursor), limit, () -> keysetPage(Sort.unsorted(), limit, cursor, after -> readSource(Sort.unsorted(), limit).findAllOrdered(Sort.unsorted(), after, limit)));
+    }
+
+    /**
+     * Search-as-you-type: the first customers with a first, last or company name starting with the prefix, ignoring case, in id
+     * order or sorted by sortBy/sortDirection. Served from the {@link CustomerAutocompleteIndex} alone, so it responds 503 (rather
+     * than falling back to the database) until the index has been built.
+     */
+    @GetMapping(path="/autocomplete")
+    public ResponseEntity<List<Customer>> autocomplete(@RequestParam String prefix, @RequestParam(required=false) Integer limit, @RequestParam(required=false) String sortBy, @RequestParam(required=false) String sortDirection) {
+        if (prefix.isBlank()) {
+            throw badRequest("The prefix param must not be blank.");
+        }
+
+        if (!dbLoadUtil.isLoaded()) {
+            throw stillLoading();
+        }
+
+        if (!autocompleteIndex.isReady()) {
+            log.warn("The autocomplete index isn't available.");
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "The autocomplete index isn't available.");
+        }
+
+        try {
+            var pageSize = isPaged(limit, null) ? Math.min(limit, MAX_AUTOCOMPLETE_LIMIT) : DEFAULT_AUTOCOMPLETE_LIMIT;
+            return ResponseEntity.ok(autocompleteIndex.complete(prefix, sortParser.parse(sortBy, sortDirection), pageSize));
+        } catch (SortingException e) {
+            throw badRequest(e.getMessage());
+        }
+    }
+
+    private ResponseEntity<List<Customer>> findCustomers(Integer limit, String sortBy, List<SortSpec> sortSpecs, String cursor) {
+        var sort = Sort.unsorted();
+
+        if (!sortSpecs.isEmpty()) {
+            sort = sortParser.toDatabaseSort(sortSpecs);
+
+            if (sort == null) {
+                if (cursor != null) {
+                    throw badRequest("Cursors are not supported when sorting by " + sortBy);
+                }
+
+                return ResponseEntity.ok(applySort(customers.findAll(), sortSpecs, limit));
+            }
+
+            // A limited single-field sort is just a walk of the field's sorted view, if it has one.
+            if (sortSpecs.size() == 1 && isPaged(limit, null) && sortedViews.isReady(sortSpecs.get(0).getField())) {
+                var sortSpec = sortSpecs.get(0);
+                return keysetPage(sort, limit, cursor, after -> findAllByIdInOrder(after == null
+                    ? sortedViews.first(sortSpec, limit, null, null)
+                    : sortedViews.first(sortSpec, limit, CustomerSortParser.sortKey(after.getValues().get(0)), after.getId())));
+            }
+        }
+
+        var databaseSort = sort;
+        return keysetPage(databaseSort, limit, cursor, after -> readSource(databaseSort, limit).findAllOrdered(databaseSort, after, limit));
+    }
+
+    // Like findCustomers, restricted to customers whose company name is exactly the given one. Unsorted pages come straight from
+    // the company dictionary's bitmap (already in id order); sorted ones from the database (or column store), filtered by company.
+    private ResponseEntity<List<Customer>> findCustomersOfCompany(String company, Integer limit, String sortBy, List<SortSpec> sortSpecs, String cursor) {
+        if (sortSpecs.isEmpty()) {
+            if (companyDictionary.isReady()) {
+                return keysetPage(Sort.unsorted(), limit, cursor, after -> findAllByIdInOrder(companyDictionary.idsOf(company, after == null ? null : after.getId(), limit)));
+            }
+
+            return keysetPage(Sort.unsorted(), limit, cursor, after -> readSource(Sort.unsorted(), limit).findByCompanyNameOrdered(company, Sort.unsorted(), after, limit));
+        }
+
+        var sort = sortParser.toDatabaseSort(sortSpecs);
+
+        if (sort == null) {
+            if (cursor != null) {
+                throw badRequest("Cursors are not supported when sorting by " + sortBy);
+            }
+
+            var members = companyDictionary.isReady() ? findAllByIdInOrder(companyDictionary.idsOf(company, null, null)) : customers.findByCompanyName(company);
+            return ResponseEntity.ok(applySort(members, sortSpecs, limit));
+        }
+
+        return keysetPage(sort, limit, cursor, after -> readSource(sort, limit).findByCompanyNameOrdered(company, sort, after, limit));
+    }
+
+    // Unsorted pages of matches come straight from the filter index (already in id order). Sorted requests sort only the matches,
+    // in memory; since the sort isn't applied by a keyset query, those can't be continued with a cursor. Until the index is built,
+    // every customer is tested against the filter instead.
+    private ResponseEntity<List<Customer>> findFilteredCustomers(CustomerFilter filter, Integer limit, String sortBy, List<SortSpec> sortSpecs, String cursor) {
+        if (sortSpecs.isEmpty()) {
+            return keysetPage(Sort.unsorted(), limit, cursor, after -> filterIndex.isReady()
+                ? findAllByIdInOrder(filterIndex.search(filter, after == null ? null : after.getId(), limit))
+                : scanFilter(filter, after, limit));
+        }
+
+        if (cursor != null) {
+            throw badRequest("Cursors are not supported when filtering and sorting by " + sortBy);
+        }
+
+        var matches = filterIndex.isReady() ? findAllByIdInOrder(filterIndex.search(filter, null, null)) : scanFilter(filter, null, null);
+        return ResponseEntity.ok(applySort(matches, sortSpecs, limit));
+    }
+
+    // Tests every customer (in id order) against the filter, for when the filter index isn't available.
+    private List<Customer> scanFilter(CustomerFilter filter, Keyset after, Integer limit) {
+        return readSource(Sort.unsorted(), null).findAllOrdered(Sort.unsorted(), null, null).stream()
+            .filter(c -> after == null || c.getId() > after.getId())
+            .filter(filter)
+            .limit(isPaged(limit, null) ? limit : Long.MAX_VALUE)
+            .collect(Collectors.toList());
+    }
+
+    // All customers in the requested order: straight from the database (or column store) when it can apply the sort, otherwise
+    // sorted in memory, as in findCustomers.
+    private Stream<Customer> streamAll(List<SortSpec> sortSpecs) {
+        var sort = sortParser.toDatabaseSort(sortSpecs);
+
+        if (sort == null) {
+            return applySort(customers.findAll(), sortSpecs, null).stream();
+        }
+
+        return readSource(sort, null).streamAllOrdered(sort, STREAM_FETCH_SIZE);
+    }
+
+    // Serializes customers one by one with the CustomerWriter for the content type (for JSON, exactly as Spring would have
+    // serialized the whole list). Flushing is left to the writer's and the response's buffers, rather than done per customer. If
+    // reading fails part way, the response has already been committed, so the client sees a truncated body (and the connection
+    // aborted). Only the time spent writing is recorded as serialization, not that spent reading in between.
+    private void writeCustomers(OutputStream output, Stream<Customer> customers, MediaType contentType) throws IOException {
+        var binary = contentType.equalsTypeAndSubtype(CustomerBinaryWriter.MEDIA_TYPE);
+        var ndjson = contentType.equalsTypeAndSubtype(MediaType.APPLICATION_NDJSON);
+        var serializationNanos = 0L;
+
+        try (var writer = binary ? new CustomerBinaryWriter(output) : jsonWriter(output, ndjson)) {
+            for (var iterator = customers.iterator(); iterator.hasNext();) {
+                var customer = iterator.next();
+                var start = System.nanoTime();
+                writer.write(customer);
+                serializationNanos += System.nanoTime() - start;
+            }
+        } finally {
+            metrics.serializationTimer(true, binary ? "binary" : ndjson ? "ndjson" : "json").record(serializationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // JSON as Spring would have written it with the same ObjectMapper: by the CustomerJsonWriter, unless the mapper has been
+    // configured to write customers differently.
+    private CustomerWriter jsonWriter(OutputStream output, boolean ndjson) throws IOException {
+        return CustomerJsonWriter.writesLike(objectMapper) ? new CustomerJsonWriter(output, ndjson) : new JacksonCustomerWriter(output, ndjson, objectMapper);
+    }
+
+    // The offered type the client prefers: the first of its accepted types (by specificity and quality, skipping q=0) which is
+    // compatible with any of the offered types decides, in the order offered, so a wildcard means the first. That's also the
+    // default, for requests without an Accept header or with one that matches nothing offered.
+    static MediaType preferredType(String accept, List<MediaType> offered) {
+        try {
+            var accepted = MediaType.parseMediaTypes(accept);
+            MimeTypeUtils.sortBySpecificity(accepted);
+
+            for (var type : accepted) {
+                if (type.getQualityValue() == 0) {
+                    continue;
+                }
+
+                for (var candidate : offered) {
+                    if (type.isCompatibleWith(candidate)) {
+                        return candidate;
+                    }
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            log.warn("Ignoring malformed Accept header: {}", accept);
+        }
+
+        return offered.get(0);
+    }
+
+    // Whether the client prefers newline-delimited JSON to JSON, as per preferredType.
+    static boolean acceptsNdjson(String accept) {
+        return preferredType(accept, List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON)).equals(MediaType.APPLICATION_NDJSON);
+    }
+
+    private ResponseEntity<List<CompanyCount>> findCompanies() {
+        return ResponseEntity.ok(companyDictionary.isReady() ? companyDictionary.companies() : customers.countByCompanyName());
+    }
+
+    private ResponseEntity<List<Customer>> findByNameContaining(String needle, Integer limit, String cursor) {
+        if (searchIndex.isReady()) {
+            return keysetPage(Sort.unsorted(), limit, cursor, after -> findAllByIdInOrder(searchIndex.search(needle, NAME_FIELDS, after == null ? null : after.getId(), limit)));
+        }
+
+        if (!isPaged(limit, cursor)) {
+            return ResponseEntity.ok(whereNameContains(needle));
+        }
+
+        return keysetPage(Sort.unsorted(), limit, cursor, after -> readSource(Sort.unsorted(), limit).findByNameContainingOrdered(needle, Sort.unsorted(), after, limit));
+    }
+
+    // Serves a request through the query cache (keyed by its normalized parameters) once the startup data load has completed, and
+    // as per whileLoading until then. The cache already has identical requests in flight share one response; those it's disabled
+    // for, or whose pages it couldn't hold, go through the request coalescer instead.
+    private ResponseEntity<List<Customer>> whenLoaded(List<?> cacheKey, Integer limit, Supplier<ResponseEntity<List<Customer>>> handler) {
+        if (!dbLoadUtil.isLoaded()) {
+            return whileLoading(handler);
+        }
+
+        return queryCache.canHold(pageSize(limit)) ? queryCache.get(cacheKey, handler) : requestCoalescer.execute(cacheKey, handler);
+    }
+
+    // Serves a request while the startup data load is still in progress: responds 503, or (if partial results are enabled) serves
+    // whatever has been loaded so far, uncached and flagged with the PARTIAL_RESULTS_HEADER.
+    private <T> ResponseEntity<List<T>> whileLoading(Supplier<ResponseEntity<List<T>>> handler) {
+        if (!servePartialResults) {
+            throw stillLoading();
+        }
+
+        var response = handler.get();
+
+        return ResponseEntity.status(response.getStatusCode())
+            .headers(response.getHeaders())
+            .header(PARTIAL_RESULTS_HEADER, Boolean.TRUE.toString())
+            .body(response.getBody());
+    }
+
+    // Runs a keyset-paginated query starting after the request's cursor (if any). When a limited page comes back full, the cursor
+    // for the page after it is returned in the NEXT_CURSOR_HEADER response header.
+    private ResponseEntity<List<Customer>> keysetPage(Sort sort, Integer limit, String cursor, Function<Keyset, List<Customer>> query) {
+        Keyset after;
+
+        try {
+            after = CursorCodec.decode(cursor, sort);
+        } catch (IllegalArgumentException e) {
+            throw badRequest(e.getMessage());
+        }
+
+        var page = query.apply(after);
+        var response = ResponseEntity.ok();
+
+        if (isPaged(limit, null) && page.size() == limit) {
+            var last = page.get(page.size() - 1);
+            response.header(NEXT_CURSOR_HEADER, CursorCodec.encode(sort, Keyset.of(last, sort)));
+        }
+
+        return response.body(page);
+    }
+
+    // Normalizes the limit param: every non-positive limit means "no limit".
+    private Integer pageSize(Integer limit) {
+        return isPaged(limit, null) ? limit : null;
+    }
+
+    private boolean isPaged(Integer limit, String cursor) {
+        return (limit != null && limit > 0) || cursor != null;
+    }
+
+    private ResponseStatusException stillLoading() {
+        log.warn("Customer data is still loading ({} rows so far).", dbLoadUtil.getLoadedRows());
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Customer data is still loading.");
+    }
+
+    private ResponseStatusException badRequest(String reason) {
+        log.error(reason);
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, reason);
     }
     
     // Returns the first N elements of a list, with safeguards in place to prevent indexing/null pointer exceptions and odd behavior.
@@ -74,56 +470,70 @@ public class CustomerController implements ControllerUtils {
         if (input == null || input.isEmpty() || n == null || n <= 0 || n >= input.size()) {
             return input;
         } else {
-            return input.stream().limit(n).collect(Collectors.toList()); 
+            return metrics.truncationTimer().record(() -> input.stream().limit(n).collect(Collectors.toList()));
         }
     }
 
-    // Applies a sorting strategy to the given list of customers based on the value of the sortBy and sortDirection parameter.
-    // If the sortBy parameter is invalid, it is simply ignored. Note that this is an in-place sort.
-    private List<Customer> applySort(List<Customer> input, String sortField, String sortDirectionAsString) {
-        if (!sortingService.isSortableBy(sortField)) {
-            return input;
-        }
+    // Applies a sorting strategy to the given list of customers based on the parsed sortBy and sortDirection parameters, and returns
+    // the first N. When a limit is given, only the first N are sorted (top-K selection); otherwise this is an in-place sort of the
+    // whole list. Sorts are timed as customer.sort.
+    private List<Customer> applySort(List<Customer> input, List<SortSpec> sortSpecs, Integer limit) {
+        var topK = limit != null && limit > 0;
+        var start = System.nanoTime();
 
         try {
-            var sortDirection = parseSortDirection(sortDirectionAsString);
-            return sortingService.sort(input, sortField, sortDirection);
+            var sorted = topK ? sortingService.sortTopK(input, sortSpecs, limit) : sortingService.sort(input, sortSpecs);
+            metrics.sortTimer(sortSpecs, topK, input.size()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return sorted;
 
         } catch (SortingException e) {
             log.error(e.getMessage());
-            return input;
+            return firstN(limit, input);
         }
     }
 
-    // A shorthand/convenience method for a JPA method, which searches the first and last name fields for a substring (case-insensitive)
-    private List<Customer> whereNameContains(String needle) {
-        return customers.findByFirstNameContainsIgnoringCaseOrLastNameContainsIgnoringCase(needle, needle);
+    // Where ordered (and keyset-paginated) reads go: the column store once it's built, which answers them without materializing
+    // entities, otherwise the database. Sorted pages stay on the database though, which seeks them through its (key, id) indexes,
+    // where the column store would have to rank every row for each page; it only walks straight to the page in id order.
+    private CustomerRepositoryCustom readSource(Sort sort, Integer limit) {
+        return columnStore.isReady() && (sort.isUnsorted() || !isPaged(limit, null)) ? columnStore : customers;
     }
 
-    // Translates values for the /search endpoint's sortDirection param to SortingService.SortDirection's enum values.
-    // Note that SortingService.sort DOES accept null values, so we can return null from this method. 
-    private SortDirection parseSortDirection(String sortDirectionAsString) {
-        if (sortDirectionAsString == null) {
-            return null;
+    // Fetches customers by ids, from the column store if it's built, otherwise from the database in batches (to keep the IN lists
+    // bounded). Returns them in the order of the given ids (as the search index or a sorted view produced them), skipping any
+    // which no longer exist.
+    private List<Customer> findAllByIdInOrder(List<Long> ids) {
+        if (columnStore.isReady()) {
+            return columnStore.findAllById(ids);
+        }
 
-        } else if (ASCENDING_PARAM_REGEX.matcher(sortDirectionAsString).matches()) {
-            return SortDirection.ASCENDING;
+        var fetchedById = new HashMap<Long, Customer>(ids.size() * 2);
 
-        } else if (DESCENDING_PARAM_REGEX.matcher(sortDirectionAsString).matches()) {
-            return SortDirection.DESCENDING;
+        for (int i = 0; i < ids.size(); i += FETCH_BATCH_SIZE) {
+            customers.findAllById(ids.subList(i, Math.min(i + FETCH_BATCH_SIZE, ids.size()))).forEach(c -> fetchedById.put(c.getId(), c));
+        }
 
-        } else {
-            return null;
+        var output = new ArrayList<Customer>(ids.size());
+        for (var id : ids) {
+            var customer = fetchedById.get(id);
+            if (customer != null) {
+                output.add(customer);
+            }
         }
+
+        return output;
     }
 
-    private Function<Customer, String> nullChecked(Function<Customer, String> getter) {
-        return c -> {
-            try {
-                return getter.apply(c);
-            } catch (NullPointerException | IndexOutOfBoundsException | NoSuchElementException ex) {
-                    return null;
-            }
-        };
+    // A shorthand/convenience method for a JPA method, which searches the first and last name fields for a substring (case-insensitive)
+    private List<Customer> whereNameContains(String needle) {
+        return customers.findByFirstNameContainsIgnoringCaseOrLastNameContainsIgnoringCase(needle, needle);
+    }
+
+    private CustomerFilter parseFilter(String filter) {
+        try {
+            return CustomerFilter.parse(filter);
+        } catch (IllegalArgumentException e) {
+            throw badRequest(e.getMessage());
+        }
     }
 }
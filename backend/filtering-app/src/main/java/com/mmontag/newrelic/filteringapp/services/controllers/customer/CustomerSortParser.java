@@ -0,0 +1,138 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.customer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.SortingService;
+import com.mmontag.newrelic.filteringapp.services.SortingService.NullOrderingBehavior;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
+
+/**
+ * The parsing of the sortBy/sortDirection params shared by both web stacks' customer controllers: into {@link SortSpec}s of the
+ * customer fields registered with the {@link SortingService} (see CustomerSortingConfiguration), and from those into a
+ * {@link Sort} the database can apply.
+ */
+@Component
+public class CustomerSortParser {
+
+    private static final Pattern ASCENDING_PARAM_REGEX = Pattern.compile("(?i)^(1|a(sc(ending)?)?)$");
+
+    private static final Pattern DESCENDING_PARAM_REGEX = Pattern.compile("(?i)^(-1|d(esc(ending)?)?)$");
+
+    // sortBy is a comma-separated list of fields, each optionally followed by its own direction, e.g. "lastName:desc,firstName".
+    private static final String SORT_FIELD_SEPARATOR = ",";
+
+    private static final String SORT_DIRECTION_SEPARATOR = ":";
+
+    // Sortable fields which map directly onto a Customer column (field name -> JPA property), and can therefore be ordered and
+    // limited by the database. Registered fields missing from this map fall back to an in-memory sort.
+    private static final Map<String, String> DATABASE_SORT_PROPERTIES = Map.of(
+        "firstName", "firstName",
+        "lastName", "lastName",
+        "companyName", "companyName"
+    );
+
+    @Autowired
+    SortingService<Customer> sortingService;
+
+    /**
+     * Parses the sortBy parameter into sort specs, with every direction and null-ordering resolved (so that equivalent requests
+     * produce equal specs). Fields without a direction of their own use the sortDirection parameter, or else the field's default.
+     * Fields which aren't registered, and repeats of a field, are simply ignored.
+     */
+    public List<SortSpec> parse(String sortBy, String sortDirection) {
+        var sortSpecs = new ArrayList<SortSpec>();
+
+        if (sortBy == null) {
+            return sortSpecs;
+        }
+
+        var defaultSortDirection = parseSortDirection(sortDirection);
+        var seenFields = new HashSet<String>();
+
+        for (var part : sortBy.split(SORT_FIELD_SEPARATOR)) {
+            var fieldAndDirection = part.trim().split(SORT_DIRECTION_SEPARATOR, 2);
+            var field = fieldAndDirection[0].trim();
+
+            if (!sortingService.isSortableBy(field) || !seenFields.add(field)) {
+                continue;
+            }
+
+            var direction = fieldAndDirection.length > 1 ? parseSortDirection(fieldAndDirection[1].trim()) : defaultSortDirection;
+            sortSpecs.add(new SortSpec(field, sortingService.resolveSortDirection(field, direction), sortingService.resolveNullBehavior(field, null)));
+        }
+
+        return sortSpecs;
+    }
+
+    /**
+     * Translates sort specs into a Sort which the database can apply, using the same defaults SortingService would.
+     * @return The sort, or {@code null} if any field has no backing column, or if its null-ordering can only be expressed by its
+     *         comparator (CUSTOM).
+     */
+    public Sort toDatabaseSort(List<SortSpec> sortSpecs) {
+        var orders = new ArrayList<Sort.Order>(sortSpecs.size());
+
+        for (var spec : sortSpecs) {
+            var property = DATABASE_SORT_PROPERTIES.get(spec.getField());
+            var nullHandling = toNullHandling(sortingService.resolveNullBehavior(spec.getField(), spec.getNullBehavior()));
+
+            if (property == null || nullHandling == null) {
+                return null;
+            }
+
+            var direction = sortingService.resolveSortDirection(spec.getField(), spec.getDirection()) == SortDirection.DESCENDING
+                ? Sort.Direction.DESC
+                : Sort.Direction.ASC;
+
+            // The registered comparators compare upper-cased values, so the database has to ignore case as well.
+            orders.add(new Sort.Order(direction, property, nullHandling).ignoreCase());
+        }
+
+        return Sort.by(orders);
+    }
+
+    /**
+     * @return The sort key a registered field's comparator uses for a property value, for seeking sorted views to a cursor's
+     *         position.
+     */
+    public static Object sortKey(Object value) {
+        return value == null ? null : value.toString().toUpperCase();
+    }
+
+    private Sort.NullHandling toNullHandling(NullOrderingBehavior nullBehavior) {
+        if (nullBehavior == NullOrderingBehavior.NULLS_FIRST) {
+            return Sort.NullHandling.NULLS_FIRST;
+        } else if (nullBehavior == NullOrderingBehavior.NULLS_LAST) {
+            return Sort.NullHandling.NULLS_LAST;
+        } else {
+            return null;
+        }
+    }
+
+    // Translates values for the sortDirection param to SortingService.SortDirection's enum values.
+    // Note that SortingService.sort DOES accept null values, so we can return null from this method.
+    private SortDirection parseSortDirection(String sortDirectionAsString) {
+        if (sortDirectionAsString == null) {
+            return null;
+
+        } else if (ASCENDING_PARAM_REGEX.matcher(sortDirectionAsString).matches()) {
+            return SortDirection.ASCENDING;
+
+        } else if (DESCENDING_PARAM_REGEX.matcher(sortDirectionAsString).matches()) {
+            return SortDirection.DESCENDING;
+
+        } else {
+            return null;
+        }
+    }
+}
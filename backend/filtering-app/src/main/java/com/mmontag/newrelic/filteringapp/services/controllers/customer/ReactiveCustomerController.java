@@ -0,0 +1,273 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.customer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.Keyset;
+import com.mmontag.newrelic.filteringapp.repository.ReactiveCustomerRepository;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter;
+import com.mmontag.newrelic.filteringapp.services.SortingService;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CursorCodec;
+import com.mmontag.newrelic.filteringapp.util.DBLoadUtil;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The customer endpoints on the reactive (WebFlux) stack, which replaces {@link CustomerController} when the "reactive" profile is
+ * active. Requests don't hold a thread while their query runs: results come from the {@link ReactiveCustomerRepository}, with the
+ * same parameters, keyset cursors and headers as the servlet stack. Limited pages are collected (to find the next cursor), while
+ * the whole table is written as its rows arrive, with backpressure.
+ * <pre/>
+ * Covers the database-backed reads: GET /customers (limit, sortBy, sortDirection, cursor, company, filter) and
+ * GET /customers/search/{needle}. The in-memory read models and the query cache are only wired into the servlet stack.
+ */
+@Slf4j
+@CrossOrigin(methods = RequestMethod.GET, exposedHeaders = { CustomerController.NEXT_CURSOR_HEADER, CustomerController.PARTIAL_RESULTS_HEADER })
+@RestController
+@RequestMapping(path="/customers")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCustomerController {
+
+    // Customers serialized to each buffer of a streamed response.
+    private static final int STREAM_BATCH_SIZE = 1000;
+
+    // Initial capacity of those buffers, which grow as needed: enough for a batch of customers with short names.
+    private static final int STREAM_BUFFER_BYTES = STREAM_BATCH_SIZE * 64;
+
+    @Autowired
+    ReactiveCustomerRepository customers;
+
+    @Autowired
+    CustomerSortParser sortParser;
+
+    @Autowired
+    SortingService<Customer> sortingService;
+
+    @Autowired
+    DBLoadUtil dbLoadUtil;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${customer-controller.serve_partial_results:false}")
+    boolean servePartialResults;
+
+    @GetMapping
+    public Mono<ResponseEntity<Flux<Customer>>> getCustomers(@RequestParam(required=false) Integer limit, @RequestParam(required=false) String sortBy, @RequestParam(required=false) String sortDirection, @RequestParam(required=false) String cursor, @RequestParam(required=false) String company, @RequestParam(required=false) String filter) {
+        var sortSpecs = sortParser.parse(sortBy, sortDirection);
+
+        if (filter != null) {
+            if (company != null) {
+                return Mono.error(badRequest("The company and filter params can't be combined; use company=... within the filter instead."));
+            }
+
+            CustomerFilter parsedFilter;
+
+            try {
+                parsedFilter = CustomerFilter.parse(filter);
+            } catch (IllegalArgumentException e) {
+                return Mono.error(badRequest(e.getMessage()));
+            }
+
+            return whenLoaded(findFilteredCustomers(parsedFilter, limit, sortBy, sortSpecs, cursor));
+        }
+
+        var sort = sortParser.toDatabaseSort(sortSpecs);
+
+        // As in CustomerController, sorts the database can't express are applied in memory, to every customer.
+        if (sort == null) {
+            if (cursor != null) {
+                return Mono.error(badRequest("Cursors are not supported when sorting by " + sortBy));
+            }
+
+            var all = company == null ? customers.findAllOrdered(Sort.unsorted(), null, null) : customers.findByCompanyNameOrdered(company, Sort.unsorted(), null, null);
+            return whenLoaded(all.collectList().map(list -> ResponseEntity.ok(Flux.fromIterable(applySort(list, sortSpecs, limit)))));
+        }
+
+        return whenLoaded(keysetPage(sort, limit, cursor, after -> company == null
+            ? customers.findAllOrdered(sort, after, limit)
+            : customers.findByCompanyNameOrdered(company, sort, after, limit)));
+    }
+
+    /**
+     * Unlimited requests for the whole table (no limit, cursor, company or filter) are streamed, as in CustomerController: a JSON array,
+     * or newline-delimited JSON if the client accepts {@code application/x-ndjson}. Jackson's encoder would collect a Flux into a
+     * list before writing it as a JSON array, so the array is written element by element here instead.
+     */
+    @GetMapping(params={ "!limit", "!cursor", "!company", "!filter" })
+    public Mono<ResponseEntity<Flux<DataBuffer>>> streamCustomers(@RequestParam(required=false) String sortBy, @RequestParam(required=false) String sortDirection, @RequestHeader(name=HttpHeaders.ACCEPT, required=false) String accept, ServerHttpResponse response) {
+        var sortSpecs = sortParser.parse(sortBy, sortDirection);
+        var sort = sortParser.toDatabaseSort(sortSpecs);
+        var ndjson = CustomerController.acceptsNdjson(accept);
+
+        var all = sort == null
+            ? customers.findAllOrdered(Sort.unsorted(), null, null).collectList().flatMapIterable(list -> applySort(list, sortSpecs, null))
+            : customers.findAllOrdered(sort, null, null);
+
+        var body = ResponseEntity.ok()
+            .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+            .body(writeCustomers(all, ndjson, response.bufferFactory()));
+
+        return whenLoaded(Mono.just(body));
+    }
+
+    @GetMapping(path="/search/{needle}")
+    public Mono<ResponseEntity<Flux<Customer>>> searchWithinNames(@PathVariable String needle, @RequestParam(required=false) Integer limit, @RequestParam(required=false) String cursor) {
+        return whenLoaded(keysetPage(Sort.unsorted(), limit, cursor, after -> customers.findByNameContainingOrdered(needle, Sort.unsorted(), after, limit)));
+    }
+
+    // Without the filter index (which only the servlet stack has), every customer is tested against the filter as its row arrives,
+    // in id order. As in CustomerController, sorted requests sort only the matches, in memory, so they can't be continued with a
+    // cursor.
+    private Mono<ResponseEntity<Flux<Customer>>> findFilteredCustomers(CustomerFilter filter, Integer limit, String sortBy, List<SortSpec> sortSpecs, String cursor) {
+        if (sortSpecs.isEmpty()) {
+            return keysetPage(Sort.unsorted(), limit, cursor, after -> {
+                var matches = customers.findAllOrdered(Sort.unsorted(), after, null).filter(filter);
+                return limit != null && limit > 0 ? matches.take(limit) : matches;
+            });
+        }
+
+        if (cursor != null) {
+            return Mono.error(badRequest("Cursors are not supported when filtering and sorting by " + sortBy));
+        }
+
+        return customers.findAllOrdered(Sort.unsorted(), null, null).filter(filter).collectList()
+            .map(matches -> ResponseEntity.ok(Flux.fromIterable(applySort(matches, sortSpecs, limit))));
+    }
+
+    // Serializes customers the same way Spring would have serialized the whole list (NDJSON lines are newline-terminated, as in
+    // CustomerController), STREAM_BATCH_SIZE to a buffer: one buffer, and one write, per customer would cost more than the
+    // serialization itself.
+    private Flux<DataBuffer> writeCustomers(Flux<Customer> customers, boolean ndjson, DataBufferFactory bufferFactory) {
+        var writer = objectMapper.writerFor(Customer.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        var batches = customers.buffer(STREAM_BATCH_SIZE).index().map(batch -> {
+            var buffer = bufferFactory.allocateBuffer(STREAM_BUFFER_BYTES);
+            var first = batch.getT1() == 0;
+
+            // Separators are written raw, so the generator mustn't add its own between (root-level) values.
+            try (var generator = objectMapper.getFactory().createGenerator(buffer.asOutputStream()).setRootValueSeparator(null)) {
+                for (var customer : batch.getT2()) {
+                    if (!ndjson) {
+                        generator.writeRaw(first ? '[' : ',');
+                        first = false;
+                    }
+
+                    writer.writeValue(generator, customer);
+
+                    if (ndjson) {
+                        generator.writeRaw('\n');
+                    }
+                }
+            } catch (IOException e) {
+                DataBufferUtils.release(buffer);
+                throw new UncheckedIOException(e);
+            }
+
+            return buffer;
+        });
+
+        if (ndjson) {
+            return batches;
+        }
+
+        // The opening bracket goes out with the first customer, so an empty result needs one of its own.
+        return batches.switchIfEmpty(Mono.fromSupplier(() -> bufferFactory.wrap("[".getBytes(StandardCharsets.US_ASCII))))
+            .concatWith(Mono.fromSupplier(() -> bufferFactory.wrap("]".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    // Like CustomerController.keysetPage: when a limited page comes back full, the cursor for the page after it is returned in the
+    // NEXT_CURSOR_HEADER response header. Unlimited results aren't collected, but streamed.
+    private Mono<ResponseEntity<Flux<Customer>>> keysetPage(Sort sort, Integer limit, String cursor, Function<Keyset, Flux<Customer>> query) {
+        Keyset after;
+
+        try {
+            after = CursorCodec.decode(cursor, sort);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(badRequest(e.getMessage()));
+        }
+
+        if (limit == null || limit <= 0) {
+            return Mono.just(ResponseEntity.ok(query.apply(after)));
+        }
+
+        return query.apply(after).collectList().map(page -> {
+            var response = ResponseEntity.ok();
+
+            if (page.size() == limit) {
+                response.header(CustomerController.NEXT_CURSOR_HEADER, CursorCodec.encode(sort, Keyset.of(page.get(page.size() - 1), sort)));
+            }
+
+            return response.body(Flux.fromIterable(page));
+        });
+    }
+
+    // Until the startup data load has completed, responds 503, or (if partial results are enabled) serves whatever has been loaded
+    // so far, flagged with the PARTIAL_RESULTS_HEADER.
+    private <T> Mono<ResponseEntity<T>> whenLoaded(Mono<ResponseEntity<T>> response) {
+        if (dbLoadUtil.isLoaded()) {
+            return response;
+        }
+
+        if (!servePartialResults) {
+            log.warn("Customer data is still loading ({} rows so far).", dbLoadUtil.getLoadedRows());
+            return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Customer data is still loading."));
+        }
+
+        return response.map(r -> ResponseEntity.status(r.getStatusCode())
+            .headers(r.getHeaders())
+            .header(CustomerController.PARTIAL_RESULTS_HEADER, Boolean.TRUE.toString())
+            .body(r.getBody()));
+    }
+
+    // As CustomerController.applySort: the first N by top-K selection when limited, otherwise a sort of the whole list.
+    private List<Customer> applySort(List<Customer> input, List<SortSpec> sortSpecs, Integer limit) {
+        try {
+            if (limit != null && limit > 0) {
+                return sortingService.sortTopK(input, sortSpecs, limit);
+            }
+
+            return sortingService.sort(input, sortSpecs);
+
+        } catch (SortingException e) {
+            log.error(e.getMessage());
+            return limit != null && limit > 0 && limit < input.size() ? input.subList(0, limit) : input;
+        }
+    }
+
+    private ResponseStatusException badRequest(String reason) {
+        log.error(reason);
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, reason);
+    }
+}
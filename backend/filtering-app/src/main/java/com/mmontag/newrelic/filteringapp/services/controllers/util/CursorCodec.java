@@ -0,0 +1,68 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.data.domain.Sort;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmontag.newrelic.filteringapp.repository.Keyset;
+
+/**
+ * Encodes {@link Keyset}s as opaque, URL-safe cursor tokens for clients to hand back when requesting the next page.
+ * <pre/>
+ * Each token is tied to the ordering it was produced under, so that a cursor can't be replayed against a differently-sorted
+ * request (where its position would be meaningless).
+ */
+public final class CursorCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<>() {};
+
+    private static final String SORT = "s";
+
+    private static final String VALUES = "v";
+
+    private static final String ID = "i";
+
+    private CursorCodec() {}
+
+    public static String encode(Sort sort, Keyset keyset) {
+        try {
+            var payload = Map.of(SORT, sort.toString(), VALUES, keyset.getValues(), ID, keyset.getId());
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(payload));
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode cursor", e);
+        }
+    }
+
+    /**
+     * @return The decoded keyset, or {@code null} if the cursor is {@code null}.
+     * @throws IllegalArgumentException if the cursor is malformed, or was produced under a different ordering.
+     */
+    @SuppressWarnings("unchecked")
+    public static Keyset decode(String cursor, Sort sort) {
+        if (cursor == null) {
+            return null;
+        }
+
+        try {
+            var payload = MAPPER.readValue(Base64.getUrlDecoder().decode(cursor), PAYLOAD_TYPE);
+
+            if (!Objects.equals(sort.toString(), payload.get(SORT))) {
+                throw new IllegalArgumentException("Cursor does not match the requested ordering.");
+            }
+
+            return new Keyset((List<Object>) payload.get(VALUES), ((Number) payload.get(ID)).longValue());
+
+        } catch (IOException | ClassCastException | NullPointerException e) {
+            throw new IllegalArgumentException("Malformed cursor.", e);
+        }
+    }
+}
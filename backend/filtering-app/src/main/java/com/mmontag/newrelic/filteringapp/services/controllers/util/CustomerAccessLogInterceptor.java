@@ -0,0 +1,81 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import java.util.Collection;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import com.mmontag.newrelic.filteringapp.services.CustomerAccessLog;
+import com.mmontag.newrelic.filteringapp.services.controllers.customer.CustomerController;
+
+/**
+ * Feeds the {@link CustomerAccessLog} from the servlet stack's /customers endpoints: the start time is taken before the handler
+ * runs, the result size from the response body (when it's a list) as it's written, and the entry recorded once the request
+ * completes, so its latency includes serialization. Streamed responses complete (and are recorded) after their last customer is
+ * written, without a result size.
+ */
+@ControllerAdvice(assignableTypes = CustomerController.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class CustomerAccessLogInterceptor implements HandlerInterceptor, ResponseBodyAdvice<Object>, WebMvcConfigurer {
+
+    private static final String START_ATTRIBUTE = CustomerAccessLogInterceptor.class.getName() + ".start";
+
+    private static final String RESULT_SIZE_ATTRIBUTE = CustomerAccessLogInterceptor.class.getName() + ".resultSize";
+
+    @Autowired
+    CustomerAccessLog accessLog;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).addPathPatterns("/customers", "/customers/**");
+    }
+
+    // Also called again for the async dispatch that completes a streamed response, which keeps the original start time.
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(START_ATTRIBUTE) == null) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        var start = (Long) request.getAttribute(START_ATTRIBUTE);
+
+        if (start != null) {
+            var resultSize = (Integer) request.getAttribute(RESULT_SIZE_ATTRIBUTE);
+            accessLog.record(request.getMethod(), request.getRequestURI(), request.getQueryString(), response.getStatus(), System.nanoTime() - start, resultSize == null ? -1 : resultSize);
+        }
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType, Class<? extends HttpMessageConverter<?>> selectedConverterType,
+            ServerHttpRequest request, ServerHttpResponse response) {
+        if (body instanceof Collection && request instanceof ServletServerHttpRequest) {
+            ((ServletServerHttpRequest) request).getServletRequest().setAttribute(RESULT_SIZE_ATTRIBUTE, ((Collection<?>) body).size());
+        }
+
+        return body;
+    }
+}
@@ -0,0 +1,54 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import com.mmontag.newrelic.filteringapp.services.CustomerAccessLog;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Feeds the {@link CustomerAccessLog} from the reactive stack's /customers endpoints, as {@link CustomerAccessLogInterceptor}
+ * does for the servlet stack, once each response has been written. Result sizes aren't known here, so they're left out. Requests
+ * cancelled by the client aren't logged.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class CustomerAccessLogWebFilter implements WebFilter {
+
+    @Autowired
+    CustomerAccessLog accessLog;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var path = exchange.getRequest().getPath().value();
+
+        if (!path.equals("/customers") && !path.startsWith("/customers/")) {
+            return chain.filter(exchange);
+        }
+
+        var start = System.nanoTime();
+
+        return chain.filter(exchange)
+            .doOnSuccess(done -> record(exchange, start, null))
+            .doOnError(e -> record(exchange, start, e));
+    }
+
+    // Errors haven't been turned into responses yet, so their status is taken from the error itself.
+    private void record(ServerWebExchange exchange, long start, Throwable error) {
+        var request = exchange.getRequest();
+        var status = exchange.getResponse().getStatusCode();
+
+        if (error != null) {
+            status = error instanceof ResponseStatusException ? ((ResponseStatusException) error).getStatusCode() : HttpStatus.INTERNAL_SERVER_ERROR;
+        }
+
+        accessLog.record(request.getMethod().name(), request.getPath().value(), request.getURI().getRawQuery(), status == null ? 200 : status.value(), System.nanoTime() - start, -1);
+    }
+}
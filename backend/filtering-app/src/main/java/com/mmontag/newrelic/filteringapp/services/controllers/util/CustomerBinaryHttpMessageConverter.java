@@ -0,0 +1,76 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.CustomerMetrics;
+
+/**
+ * Writes lists of customers in the {@link CustomerBinaryWriter}'s format, for clients which accept
+ * {@value CustomerBinaryWriter#MEDIA_TYPE_VALUE}. Write-only, and timed as {@code customer.serialization} like the JSON
+ * converter. Deliberately not a bean: it's added after Spring Boot's converters (see CustomerResponseFormatsConfiguration), so
+ * that JSON stays the default for clients accepting anything.
+ */
+public class CustomerBinaryHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    private final CustomerMetrics metrics;
+
+    public CustomerBinaryHttpMessageConverter(CustomerMetrics metrics) {
+        super(CustomerBinaryWriter.MEDIA_TYPE);
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Collection.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    // By the declared type of the body, e.g. a controller's List<Customer> return type.
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return supports(clazz) && type != null && ResolvableType.forType(type).asCollection().resolveGeneric() == Customer.class && canWrite(mediaType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
+        var start = System.nanoTime();
+
+        try {
+            CustomerBinaryWriter.writeBody(outputMessage.getBody(), (Collection<Customer>) object);
+        } finally {
+            metrics.serializationTimer(false, "binary").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("Customer binary bodies can't be read.", inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("Customer binary bodies can't be read.", inputMessage);
+    }
+}
@@ -0,0 +1,270 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * Writes customers as JSON, byte for byte as Jackson's default ObjectMapper would ({@code {"id":1,"firstName":...,"lastName":...,
+ * "companyName":...}}, with nulls, non-ASCII characters as UTF-8, and control characters and surrogates escaped), as a JSON array
+ * or as newline-delimited JSON. Field names are pre-encoded, and values encoded straight into the buffer.
+ * <pre/>
+ * Only for ObjectMappers it {@link #writesLike writes like}: customers are otherwise written by the mapper itself (see
+ * {@link JacksonCustomerWriter}).
+ */
+public final class CustomerJsonWriter extends CustomerWriter {
+
+    private static final byte[] ID = ascii("{\"id\":");
+
+    private static final byte[] FIRST_NAME = ascii(",\"firstName\":");
+
+    private static final byte[] LAST_NAME = ascii(",\"lastName\":");
+
+    private static final byte[] COMPANY_NAME = ascii(",\"companyName\":");
+
+    private static final byte[] NULL = ascii("null");
+
+    private static final byte[] MIN_LONG = ascii(Long.toString(Long.MIN_VALUE));
+
+    private static final byte[] HEX_DIGITS = ascii("0123456789ABCDEF");
+
+    // The longest a single character can be written as: a unicode escape.
+    private static final int MAX_CHAR_BYTES = 6;
+
+    // Escapes for the ASCII characters that need one: 0 for none, the character to put after the backslash for short escapes,
+    // or -1 for unicode escapes.
+    private static final int[] ESCAPES = new int[128];
+
+    static {
+        for (int c = 0; c < 0x20; ++c) {
+            ESCAPES[c] = -1;
+        }
+
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\r'] = 'r';
+    }
+
+    // Customers covering every case the writer handles differently: nulls, escapes, non-ASCII characters (of every UTF-8 length,
+    // and outside the BMP), and ids of every sign and length.
+    private static final List<Customer> SAMPLES = List.of(
+        new Customer(0L, "Anna", "Smith", "Wayback"),
+        new Customer(Long.MAX_VALUE, "\" \\ /", "\b\t\n\f\r\u0000\u001F\u007F", null),
+        new Customer(-42L, "\u00EB\u07FF", "\u0800\u682A\uFFFF", "\uD83D\uDE00"),
+        new Customer(Long.MIN_VALUE, null, "", ""));
+
+    private final boolean ndjson;
+
+    private boolean first = true;
+
+    public CustomerJsonWriter(OutputStream output, boolean ndjson) {
+        super(output);
+        this.ndjson = ndjson;
+    }
+
+    /**
+     * Writes the customers as a JSON array.
+     */
+    public static void writeArray(OutputStream output, Iterable<Customer> customers) throws IOException {
+        try (var writer = new CustomerJsonWriter(output, false)) {
+            writer.writeAll(customers);
+        }
+    }
+
+    /**
+     * Whether the ObjectMapper writes customers exactly as this writer does, found by writing a few customers which cover every
+     * case the writer handles both ways. Anything which changes how the mapper writes customers (a naming strategy, inclusion
+     * rules, indentation, escaping non-ASCII characters, mix-ins or new annotations on Customer, custom serializers...) makes them
+     * differ.
+     */
+    public static boolean writesLike(ObjectMapper objectMapper) {
+        var output = new ByteArrayOutputStream();
+
+        try {
+            writeArray(output, SAMPLES);
+            return Arrays.equals(objectMapper.writeValueAsBytes(SAMPLES), output.toByteArray());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void write(Customer customer) throws IOException {
+        // The separator, the id and the closing brace, with the newline.
+        ensureCapacity(ID.length + MIN_LONG.length + 3);
+
+        if (!ndjson) {
+            buffer[position++] = (byte) (first ? '[' : ',');
+        }
+
+        first = false;
+        writeBytes(ID);
+        writeLong(customer.getId());
+        writeField(FIRST_NAME, customer.getFirstName());
+        writeField(LAST_NAME, customer.getLastName());
+        writeField(COMPANY_NAME, customer.getCompanyName());
+        ensureCapacity(2);
+        buffer[position++] = '}';
+
+        if (ndjson) {
+            buffer[position++] = '\n';
+        }
+    }
+
+    // Ends the array (an empty one, if nothing was written).
+    @Override
+    void writeEnd() throws IOException {
+        if (!ndjson) {
+            ensureCapacity(2);
+
+            if (first) {
+                buffer[position++] = '[';
+            }
+
+            buffer[position++] = ']';
+        }
+    }
+
+    private void writeField(byte[] name, String value) throws IOException {
+        ensureCapacity(name.length + NULL.length);
+        writeBytes(name);
+        writeString(value);
+    }
+
+    // Digits are written backwards from the end of the number, so that nothing is allocated.
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+
+        var end = position + digits(value);
+        position = end;
+
+        // Most ids fit in an int, and int division is much cheaper.
+        while (value > Integer.MAX_VALUE) {
+            buffer[--end] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+
+        var remaining = (int) value;
+
+        do {
+            buffer[--end] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+    }
+
+    private static int digits(long value) {
+        var digits = 1;
+
+        for (var bound = 10L; digits < 19 && value >= bound; bound *= 10) {
+            ++digits;
+        }
+
+        return digits;
+    }
+
+    // Quoted, as UTF-8. When the whole string is sure to fit in the buffer, room is only made once, and plain ASCII characters are
+    // copied in a tight loop, with the buffer and position in locals.
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeBytes(NULL);
+            return;
+        }
+
+        var length = value.length();
+
+        if ((long) length * MAX_CHAR_BYTES + 2 > buffer.length) {
+            writeLongString(value);
+            return;
+        }
+
+        ensureCapacity(length * MAX_CHAR_BYTES + 2);
+        var buffer = this.buffer;
+        var position = this.position;
+        buffer[position++] = '"';
+
+        for (int i = 0; i < length; ++i) {
+            var c = value.charAt(i);
+
+            if (c < 0x80 && ESCAPES[c] == 0) {
+                buffer[position++] = (byte) c;
+            } else {
+                position = writeChar(buffer, position, c);
+            }
+        }
+
+        buffer[position++] = '"';
+        this.position = position;
+    }
+
+    // Strings which might not fit in the buffer make room for each character.
+    private void writeLongString(String value) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = '"';
+
+        for (int i = 0; i < value.length(); ++i) {
+            ensureCapacity(MAX_CHAR_BYTES + 1);
+            position = writeChar(buffer, position, value.charAt(i));
+        }
+
+        buffer[position++] = '"';
+    }
+
+    // Writes the character at the position, returning the position after it.
+    private static int writeChar(byte[] buffer, int position, char c) {
+        if (c < 0x80) {
+            var escape = ESCAPES[c];
+
+            if (escape == 0) {
+                buffer[position++] = (byte) c;
+            } else {
+                position = writeEscape(buffer, position, c, escape);
+            }
+        } else if (c < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            // As Jackson does: characters outside the BMP are written as their escaped surrogate pair, rather than 4 bytes of UTF-8
+            // (which unpaired surrogates couldn't be written as at all).
+            position = writeEscape(buffer, position, c, -1);
+        } else {
+            buffer[position++] = (byte) (0xE0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+
+        return position;
+    }
+
+    private static int writeEscape(byte[] buffer, int position, char c, int escape) {
+        buffer[position++] = '\\';
+
+        if (escape > 0) {
+            buffer[position++] = (byte) escape;
+            return position;
+        }
+
+        buffer[position++] = 'u';
+        buffer[position++] = HEX_DIGITS[(c >> 12) & 0xF];
+        buffer[position++] = HEX_DIGITS[(c >> 8) & 0xF];
+        buffer[position++] = HEX_DIGITS[(c >> 4) & 0xF];
+        buffer[position++] = HEX_DIGITS[c & 0xF];
+        return position;
+    }
+}
@@ -0,0 +1,52 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import jakarta.servlet.DispatcherType;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.mmontag.newrelic.filteringapp.services.CustomerMetrics;
+
+/**
+ * The response formats of the servlet stack beyond JSON, for bulk clients of {@code /customers}: the compact
+ * {@link CustomerBinaryWriter} format for clients which prefer {@value CustomerBinaryWriter#MEDIA_TYPE_VALUE}, and zstd or
+ * gzip compression ({@code customer-response-compression.enabled}, see {@link CustomerCompressionFilter}).
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class CustomerResponseFormatsConfiguration implements WebMvcConfigurer {
+
+    private final CustomerMetrics metrics;
+
+    public CustomerResponseFormatsConfiguration(CustomerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Last, so that JSON is still what's written for requests which accept anything.
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new CustomerBinaryHttpMessageConverter(metrics));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "customer-response-compression.enabled", havingValue = "true")
+    FilterRegistrationBean<CustomerCompressionFilter> customerCompressionFilter(
+            @Value("${customer-response-compression.mime_types:application/json,application/x-ndjson,application/x-customer-binary}") List<String> mimeTypes,
+            @Value("${customer-response-compression.min_response_size:2048}") long minResponseSize,
+            @Value("${customer-response-compression.zstd_level:3}") int zstdLevel,
+            @Value("${customer-response-compression.gzip_level:6}") int gzipLevel) {
+        var registration = new FilterRegistrationBean<>(new CustomerCompressionFilter(mimeTypes, minResponseSize, zstdLevel, gzipLevel));
+        registration.addUrlPatterns("/customers", "/customers/*");
+        registration.setDispatcherTypes(EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC));
+        return registration;
+    }
+}
@@ -0,0 +1,86 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * Writes customers to a response body in one of its formats ({@link CustomerJsonWriter}, {@link CustomerBinaryWriter}), without
+ * going through a general-purpose serializer (but for the {@link JacksonCustomerWriter}): each customer is encoded straight into a
+ * byte buffer, which is written out whenever it fills up, and by {@link #close()}. Buffers are pooled across responses, so
+ * writing a customer allocates nothing. The output itself is never flushed or closed. Not thread-safe: one writer per response.
+ */
+public abstract class CustomerWriter implements Closeable {
+
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    // Enough for the busiest responses' buffers to be reused, without holding on to much memory when idle.
+    private static final ArrayBlockingQueue<byte[]> BUFFER_POOL = new ArrayBlockingQueue<>(64);
+
+    private final OutputStream output;
+
+    byte[] buffer;
+
+    int position;
+
+    CustomerWriter(OutputStream output) {
+        this.output = output;
+        var pooled = BUFFER_POOL.poll();
+        this.buffer = pooled != null ? pooled : new byte[BUFFER_SIZE];
+    }
+
+    public abstract void write(Customer customer) throws IOException;
+
+    public void writeAll(Iterable<? extends Customer> customers) throws IOException {
+        for (var customer : customers) {
+            write(customer);
+        }
+    }
+
+    /**
+     * Ends the body, writes out what's left in the buffer, and returns the buffer to the pool.
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+
+        try {
+            writeEnd();
+            flushBuffer();
+        } finally {
+            BUFFER_POOL.offer(buffer);
+            buffer = null;
+        }
+    }
+
+    // Whatever the format needs after the last customer, if anything.
+    void writeEnd() throws IOException {}
+
+    final void writeBytes(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    final void ensureCapacity(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
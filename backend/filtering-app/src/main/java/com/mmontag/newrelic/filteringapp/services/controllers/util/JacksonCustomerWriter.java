@@ -0,0 +1,79 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * Writes customers as JSON with an ObjectMapper (as a JSON array, or as newline-delimited JSON), for mappers which the
+ * {@link CustomerJsonWriter} doesn't write like. The mapper's generator writes into the writer's buffer.
+ */
+public final class JacksonCustomerWriter extends CustomerWriter {
+
+    private final ObjectWriter writer;
+
+    private final JsonGenerator generator;
+
+    private final boolean ndjson;
+
+    private boolean first = true;
+
+    public JacksonCustomerWriter(OutputStream output, boolean ndjson, ObjectMapper objectMapper) throws IOException {
+        super(output);
+        this.writer = objectMapper.writerFor(Customer.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        // Separators are written raw, so the generator mustn't add its own between (root-level) values.
+        this.generator = objectMapper.getFactory().createGenerator(new BufferOutputStream(), JsonEncoding.UTF8).setRootValueSeparator(null);
+        this.ndjson = ndjson;
+    }
+
+    @Override
+    public void write(Customer customer) throws IOException {
+        if (!ndjson) {
+            generator.writeRaw(first ? '[' : ',');
+        }
+
+        first = false;
+        writer.writeValue(generator, customer);
+
+        if (ndjson) {
+            generator.writeRaw('\n');
+        }
+    }
+
+    // Ends the array (an empty one, if nothing was written), and writes out what the generator has buffered.
+    @Override
+    void writeEnd() throws IOException {
+        if (!ndjson) {
+            generator.writeRaw(first ? "[]" : "]");
+        }
+
+        generator.close();
+    }
+
+    private class BufferOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureCapacity(1);
+            buffer[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                ensureCapacity(1);
+                var n = Math.min(len, buffer.length - position);
+                System.arraycopy(b, off, buffer, position, n);
+                position += n;
+                off += n;
+                len -= n;
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.CustomerMetrics;
+
+/**
+ * Spring MVC's JSON converter, timing each response body it writes as {@code customer.serialization} (see
+ * {@link CustomerMetrics}). Being a bean of this type, it replaces the one Spring Boot would otherwise configure, with the same
+ * ObjectMapper.
+ * <pre/>
+ * Lists of customers are written by the {@link CustomerJsonWriter} rather than Jackson, to the same bytes, as long as the
+ * ObjectMapper writes customers {@link CustomerJsonWriter#writesLike like it does} (as the default one does), and the response is
+ * UTF-8.
+ */
+@Component
+public class TimedJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    private final CustomerMetrics metrics;
+
+    private final boolean customerJsonWriterApplies;
+
+    public TimedJsonHttpMessageConverter(ObjectMapper objectMapper, CustomerMetrics metrics) {
+        super(objectMapper);
+        this.metrics = metrics;
+        this.customerJsonWriterApplies = CustomerJsonWriter.writesLike(objectMapper);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
+        var start = System.nanoTime();
+
+        try {
+            if (customerJsonWriterApplies && isCustomers(object, type) && getJsonEncoding(outputMessage.getHeaders().getContentType()) == JsonEncoding.UTF8) {
+                CustomerJsonWriter.writeArray(outputMessage.getBody(), (Collection<Customer>) object);
+            } else {
+                super.writeInternal(object, type, outputMessage);
+            }
+        } finally {
+            metrics.serializationTimer(false, "json").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // By the declared type of the body, e.g. a controller's List<Customer> return type.
+    private static boolean isCustomers(Object object, Type type) {
+        return object instanceof Collection && type != null && ResolvableType.forType(type).asCollection().resolveGeneric() == Customer.class;
+    }
+}
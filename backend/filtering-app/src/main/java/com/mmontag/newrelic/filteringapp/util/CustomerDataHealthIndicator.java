@@ -0,0 +1,27 @@
+package com.mmontag.newrelic.filteringapp.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the progress of {@link DBLoadUtil}'s startup load as the {@code customerData} health indicator: OUT_OF_SERVICE while
+ * loading, DOWN if the load failed, UP once complete. Part of the readiness group, so instances only receive traffic once loaded.
+ */
+@Component
+public class CustomerDataHealthIndicator implements HealthIndicator {
+
+    @Autowired
+    DBLoadUtil dbLoadUtil;
+
+    @Override
+    public Health health() {
+        if (dbLoadUtil.getFailure() != null) {
+            return Health.down(dbLoadUtil.getFailure()).withDetail("loadedRows", dbLoadUtil.getLoadedRows()).build();
+        }
+
+        var health = dbLoadUtil.isLoaded() ? Health.up() : Health.outOfService();
+        return health.withDetail("loadedRows", dbLoadUtil.getLoadedRows()).build();
+    }
+}
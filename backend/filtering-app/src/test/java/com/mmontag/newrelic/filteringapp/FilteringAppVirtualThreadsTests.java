@@ -0,0 +1,65 @@
+package com.mmontag.newrelic.filteringapp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import com.mmontag.newrelic.filteringapp.util.DBLoadUtil;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "spring.threads.virtual.enabled=true")
+public class FilteringAppVirtualThreadsTests {
+
+    @Autowired
+    ServletWebServerApplicationContext context;
+
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    DBLoadUtil dbLoadUtil;
+
+    @BeforeEach
+    void awaitLoad() throws InterruptedException {
+        for (var deadline = System.currentTimeMillis() + 30_000; !dbLoadUtil.isLoaded() && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void test_tomcatHandlesRequestsOnVirtualThreads() throws Exception {
+        var executor = ((TomcatWebServer) context.getWebServer()).getTomcat().getConnector().getProtocolHandler().getExecutor();
+        var thread = new CompletableFuture<Thread>();
+
+        executor.execute(() -> thread.complete(Thread.currentThread()));
+
+        assertTrue(thread.get(5, TimeUnit.SECONDS).isVirtual());
+    }
+
+    @Test // streamed responses are written by the MVC async executor, which runs on virtual threads too.
+    void test_streamCustomers() {
+        var headers = new HttpHeaders();
+        headers.setAccept(List.of(MediaType.APPLICATION_NDJSON));
+
+        var response = restTemplate.exchange("/customers", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        assertTrue(dbLoadUtil.isLoaded());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(dbLoadUtil.getLoadedRows(), response.getBody().lines().count());
+    }
+}
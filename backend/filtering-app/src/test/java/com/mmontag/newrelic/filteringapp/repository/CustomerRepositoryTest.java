@@ -0,0 +1,174 @@
+package com.mmontag.newrelic.filteringapp.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Sort;
+
+import com.mmontag.newrelic.filteringapp.model.CompanyCount;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+@DataJpaTest
+public class CustomerRepositoryTest {
+
+    @Autowired
+    CustomerRepository customers;
+
+    @BeforeEach
+    void setupData() {
+        customers.saveAll(Arrays.asList(
+            new Customer("alice", "Zanzibar", "Middlish"),
+            new Customer("Don", null, "Middlish"),
+            new Customer("Tom", "thompson", "Wayback"),
+            new Customer("Edith", "Middleton", null),
+            new Customer("judy", "Clarkson", "EarlyMiddle")
+        ));
+    }
+
+    @Test
+    void test_findAllOrdered_ignoreCase_ascending_nullsLast() {
+        var sort = Sort.by(new Sort.Order(Sort.Direction.ASC, "lastName", Sort.NullHandling.NULLS_LAST).ignoreCase());
+
+        var output = customers.findAllOrdered(sort, null);
+
+        assertEquals(Arrays.asList("Clarkson", "Middleton", "thompson", "Zanzibar", null), lastNames(output));
+    }
+
+    @Test
+    void test_findAllOrdered_descending_nullsFirst_limited() {
+        var sort = Sort.by(new Sort.Order(Sort.Direction.DESC, "lastName", Sort.NullHandling.NULLS_FIRST).ignoreCase());
+
+        var output = customers.findAllOrdered(sort, 3);
+
+        assertEquals(Arrays.asList(null, "Zanzibar", "thompson"), lastNames(output));
+    }
+
+    @Test // ties on the sort property are broken by id, i.e. insertion order here.
+    void test_findAllOrdered_tiesBrokenById() {
+        var sort = Sort.by(Sort.Order.asc("companyName").nullsLast());
+
+        var output = customers.findAllOrdered(sort, 0);
+
+        assertEquals(Arrays.asList("judy", "alice", "Don", "Tom", "Edith"), firstNames(output));
+    }
+
+    @Test
+    void test_findAllOrdered_unsorted_limited() {
+        var output = customers.findAllOrdered(Sort.unsorted(), 2);
+
+        assertEquals(Arrays.asList("alice", "Don"), firstNames(output));
+    }
+
+    @Test // pages through every combination of direction and null handling, which must match the unpaged ordering.
+    void test_findAllOrdered_keysetPagination() {
+        for (var direction : Sort.Direction.values()) {
+            for (var nullHandling : Arrays.asList(Sort.NullHandling.NULLS_FIRST, Sort.NullHandling.NULLS_LAST)) {
+                var sort = Sort.by(new Sort.Order(direction, "companyName", nullHandling).ignoreCase());
+                var expected = customers.findAllOrdered(sort, null);
+
+                var output = new ArrayList<Customer>();
+                Keyset after = null;
+                List<Customer> page;
+
+                do {
+                    page = customers.findAllOrdered(sort, after, 2);
+                    output.addAll(page);
+                    after = page.isEmpty() ? null : Keyset.of(page.get(page.size() - 1), sort);
+                } while (!page.isEmpty());
+
+                assertEquals(firstNames(expected), firstNames(output), sort.toString());
+            }
+        }
+    }
+
+    @Test // pages run as one query for the customers with a last name and one for those without; a page can span both.
+    void test_findAllOrdered_pageSpansNulls() {
+        var nullsLast = Sort.by(new Sort.Order(Sort.Direction.ASC, "lastName", Sort.NullHandling.NULLS_LAST).ignoreCase());
+        var nullsFirst = Sort.by(new Sort.Order(Sort.Direction.ASC, "lastName", Sort.NullHandling.NULLS_FIRST).ignoreCase());
+        var tom = customers.findAllOrdered(nullsLast, null).get(2);
+        var don = customers.findAllOrdered(nullsFirst, null).get(0);
+
+        assertEquals(Arrays.asList("Zanzibar", null), lastNames(customers.findAllOrdered(nullsLast, Keyset.of(tom, nullsLast), 3)));
+        assertEquals(Arrays.asList("Clarkson", "Middleton"), lastNames(customers.findAllOrdered(nullsFirst, Keyset.of(don, nullsFirst), 2)));
+        assertEquals(Arrays.asList(), lastNames(customers.findAllOrdered(nullsLast, Keyset.of(don, nullsLast), 2)));
+    }
+
+    @Test
+    void test_findAllOrdered_keysetRequiresExplicitNullHandling() {
+        var sort = Sort.by("lastName");
+        var after = new Keyset(Arrays.asList("Middleton"), 1L);
+
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> customers.findAllOrdered(sort, after, 2));
+    }
+
+    @Test
+    void test_findByNameContainingOrdered() {
+        var firstPage = customers.findByNameContainingOrdered("ON", Sort.unsorted(), null, 2);
+        var secondPage = customers.findByNameContainingOrdered("ON", Sort.unsorted(), Keyset.of(firstPage.get(1), Sort.unsorted()), 2);
+
+        assertEquals(Arrays.asList("Don", "Tom"), firstNames(firstPage));
+        assertEquals(Arrays.asList("Edith", "judy"), firstNames(secondPage));
+    }
+
+    @Test // LIKE wildcards in the needle are matched literally.
+    void test_findByNameContainingOrdered_escapesWildcards() {
+        customers.save(new Customer("100%", "under_score", null));
+
+        assertEquals(Arrays.asList("100%"), firstNames(customers.findByNameContainingOrdered("0%", Sort.unsorted(), null, null)));
+        assertEquals(Arrays.asList("100%"), firstNames(customers.findByNameContainingOrdered("r_s", Sort.unsorted(), null, null)));
+        assertEquals(Arrays.asList("100%"), firstNames(customers.findByNameContainingOrdered("_", Sort.unsorted(), null, null)));
+    }
+
+    @Test // company names match exactly, unlike name searches.
+    void test_findByCompanyNameOrdered() {
+        var sort = Sort.by(new Sort.Order(Sort.Direction.DESC, "firstName", Sort.NullHandling.NULLS_LAST).ignoreCase());
+        var firstPage = customers.findByCompanyNameOrdered("Middlish", sort, null, 1);
+        var secondPage = customers.findByCompanyNameOrdered("Middlish", sort, Keyset.of(firstPage.get(0), sort), 1);
+
+        assertEquals(Arrays.asList("Don"), firstNames(firstPage));
+        assertEquals(Arrays.asList("alice"), firstNames(secondPage));
+        assertEquals(Arrays.asList(), firstNames(customers.findByCompanyNameOrdered("middlish", Sort.unsorted(), null, null)));
+    }
+
+    @Test
+    void test_countByCompanyName() {
+        var output = customers.countByCompanyName();
+
+        assertEquals(Arrays.asList("EarlyMiddle", "Middlish", "Wayback"), output.stream().map(CompanyCount::getCompanyName).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(1L, 2L, 1L), output.stream().map(CompanyCount::getCustomerCount).collect(Collectors.toList()));
+    }
+
+    @Test // streams the same rows, in the same order, as the unlimited query; fetch sizes smaller than the table included.
+    void test_streamAllOrdered() {
+        for (var sort : Arrays.asList(Sort.unsorted(), Sort.by(new Sort.Order(Sort.Direction.DESC, "lastName", Sort.NullHandling.NULLS_FIRST).ignoreCase()))) {
+            for (var fetchSize : Arrays.asList(1, 2, 100)) {
+                try (var stream = customers.streamAllOrdered(sort, fetchSize)) {
+                    assertEquals(firstNames(customers.findAllOrdered(sort, null)), firstNames(stream.collect(Collectors.toList())), sort + " fetchSize=" + fetchSize);
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_findAllOrdered_unknownProperty() {
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> customers.findAllOrdered(Sort.by("lastName; DROP TABLE customers"), null));
+    }
+
+    private List<String> firstNames(List<Customer> input) {
+        return input.stream().map(Customer::getFirstName).collect(Collectors.toList());
+    }
+
+    private List<String> lastNames(List<Customer> input) {
+        return input.stream().map(Customer::getLastName).collect(Collectors.toList());
+    }
+}
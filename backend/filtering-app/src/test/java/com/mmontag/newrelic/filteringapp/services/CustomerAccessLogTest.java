@@ -0,0 +1,84 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CustomerAccessLogTest {
+
+    ListAppender<ILoggingEvent> appender;
+
+    SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void captureLog() {
+        appender = new ListAppender<>();
+        appender.start();
+        ((Logger) LoggerFactory.getLogger("customer.access")).addAppender(appender);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void releaseLog() {
+        ((Logger) LoggerFactory.getLogger("customer.access")).detachAppender(appender);
+    }
+
+    @Test // entries are written (by the time the log is stopped) as logfmt lines, with the query decoded into fields.
+    void test_record_formatsEntries() throws InterruptedException {
+        var accessLog = new CustomerAccessLog(true, 1.0, 16, 4, meterRegistry);
+        accessLog.start();
+
+        accessLog.record("GET", "/customers", "limit=10&sortBy=lastName", 200, 1_234_567, 10);
+        accessLog.record("GET", "/customers/search/ann", "filter=firstName%5E%3DAl%20x&cursor=", 400, 500_000, -1);
+        accessLog.record("GET", "/customers", "a%20b=%22x%22%0Astatus%3D200", 200, 0, 0);
+        accessLog.stop();
+
+        var lines = lines();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).matches("time=\\S+ method=GET path=/customers status=200 latency_ms=1\\.235 result_size=10 limit=10 sortBy=lastName"), lines.get(0));
+        assertTrue(lines.get(1).endsWith(" path=/customers/search/ann status=400 latency_ms=0.500 filter=\"firstName^=Al x\" cursor=\"\""), lines.get(1));
+        assertTrue(lines.get(2).endsWith(" result_size=0 a_b=\"\\\"x\\\" status=200\""), lines.get(2));
+        assertEquals(3, meterRegistry.get("customer.access.log.entries").tag("result", "logged").counter().count());
+    }
+
+    @Test // successful requests are sampled, failed ones always logged.
+    void test_record_samplesSuccesses() throws InterruptedException {
+        var accessLog = new CustomerAccessLog(true, 0.0, 16, 4, meterRegistry);
+        accessLog.start();
+
+        accessLog.record("GET", "/customers", null, 200, 0, 1);
+        accessLog.record("GET", "/customers", null, 503, 0, -1);
+        accessLog.stop();
+
+        var lines = lines();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains(" status=503 "), lines.get(0));
+    }
+
+    @Test // when the buffer is full, entries are dropped rather than waited for.
+    void test_record_dropsWhenFull() {
+        var accessLog = new CustomerAccessLog(true, 1.0, 2, 4, meterRegistry);
+
+        for (int i = 0; i < 5; ++i) {
+            accessLog.record("GET", "/customers", null, 200, 0, 1);
+        }
+
+        assertEquals(3, meterRegistry.get("customer.access.log.entries").tag("result", "dropped").counter().count());
+    }
+
+    private List<String> lines() {
+        return appender.list.stream().map(ILoggingEvent::getFormattedMessage).collect(Collectors.toList());
+    }
+}
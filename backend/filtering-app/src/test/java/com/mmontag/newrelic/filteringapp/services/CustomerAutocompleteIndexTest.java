@@ -0,0 +1,163 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+import com.mmontag.newrelic.filteringapp.services.SortingService.NullOrderingBehavior;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class CustomerAutocompleteIndexTest {
+
+    @Mock
+    CustomerRepository _customerRepository;
+
+    @InjectMocks
+    CustomerReadModelLoader loader;
+
+    CustomerAutocompleteIndex index = new CustomerAutocompleteIndex();
+
+    SortingService<Customer> sortingService;
+
+    @BeforeEach
+    void buildIndex() {
+        var _customers = new ArrayList<Customer>();
+        _customers.add(new Customer(1L, "Anna", "Smith", "Wayback"));
+        _customers.add(new Customer(2L, "Bob", "Anderson", "Middlish"));
+        _customers.add(new Customer(3L, "Carl", "Jones", "Ansible"));
+        _customers.add(new Customer(4L, "ANNE", null, null));
+        _customers.add(new Customer(5L, "Dana", "Annis", "Andale"));
+        _customers.add(new Customer(6L, "Ed", "Brown", "Middlish"));
+
+        when(_customerRepository.findAllOrdered(any(), isNull(), any())).thenReturn(_customers);
+
+        sortingService = CustomerSortingConfiguration.createCustomerSortingService();
+        index.sortingService = sortingService;
+        loader.ordinals = index.ordinals = new CustomerOrdinals();
+        loader.readModels = List.of(index);
+        index.enabled = true;
+        loader.rebuild();
+    }
+
+    @Test // any of the three names can match, ignoring case; each customer only once, however many of its names match.
+    void test_complete_anyNameInIdOrder() throws SortingException {
+        assertTrue(index.isReady());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), ids(index.complete("an", List.of(), 10)));
+        assertEquals(List.of(1L, 4L, 5L), ids(index.complete("ANN", List.of(), 10)));
+        assertEquals(List.of(2L, 6L), ids(index.complete("mid", List.of(), 10)));
+        assertEquals(List.of(), ids(index.complete("zz", List.of(), 10)));
+    }
+
+    @Test
+    void test_complete_limit() throws SortingException {
+        assertEquals(List.of(1L, 2L), ids(index.complete("an", List.of(), 2)));
+    }
+
+    @Test // customers are rebuilt from the index, with their names as they were written.
+    void test_complete_restoresCustomers() throws SortingException {
+        var anne = index.complete("anne", List.of(), 10).get(0);
+
+        assertEquals(4L, anne.getId());
+        assertEquals("ANNE", anne.getFirstName());
+        assertEquals(null, anne.getLastName());
+
+        var bob = index.complete("bob", List.of(), 10).get(0);
+        assertEquals(List.of("Bob", "Anderson", "Middlish"), List.of(bob.getFirstName(), bob.getLastName(), bob.getCompanyName()));
+    }
+
+    @Test // sorted by a registered field before the limit is applied, with nulls placed as requested.
+    void test_complete_sortedByField() throws SortingException {
+        assertEquals(List.of(5L, 3L), ids(index.complete("an", List.of(new SortSpec("firstName", SortDirection.DESCENDING, null)), 2)));
+        assertEquals(List.of(2L, 5L, 3L, 1L, 4L), ids(index.complete("an", List.of(new SortSpec("lastName", null, null)), 10)));
+        assertEquals(List.of(4L, 2L), ids(index.complete("an", List.of(new SortSpec("lastName", null, NullOrderingBehavior.NULLS_FIRST)), 2)));
+    }
+
+    @Test // whether found by walking a field's names in order (common prefixes) or by selecting among all matches (rare ones).
+    void test_complete_sortedMatchesFullSort() throws SortingException {
+        var random = new Random(42L);
+        var names = List.of("Al", "al", "Alba", "Albert", "Bea", "Ben", "Cal", "Carla", "Ed", "Eda");
+        var _customers = new ArrayList<Customer>();
+
+        for (long id = 1; id <= 2000; ++id) {
+            _customers.add(new Customer(id, names.get(random.nextInt(names.size())), random.nextInt(10) == 0 ? null : names.get(random.nextInt(names.size())), names.get(random.nextInt(names.size()))));
+        }
+        loader.rebuild(_customers.iterator());
+
+        for (var sortSpecs : List.of(
+                List.of(new SortSpec("firstName", null, null)),
+                List.of(new SortSpec("lastName", SortDirection.DESCENDING, null), new SortSpec("companyName", null, null)),
+                List.of(new SortSpec("lastName", null, NullOrderingBehavior.NULLS_FIRST)))) {
+            for (var prefix : List.of("a", "al", "alb", "c", "eda", "q")) {
+                var matching = _customers.stream().filter(c -> Stream.of(c.getFirstName(), c.getLastName(), c.getCompanyName()).anyMatch(name -> name != null && name.toUpperCase().startsWith(prefix.toUpperCase()))).collect(Collectors.toList());
+                var expected = sortingService.sortTopK(matching, sortSpecs, 25);
+
+                assertEquals(ids(expected), ids(index.complete(prefix, sortSpecs, 25)), prefix + " " + sortSpecs);
+            }
+        }
+    }
+
+    @Test
+    void test_complete_rejectsUnsupportedSorts() {
+        assertThrows(SortingException.class, () -> index.complete("an", List.of(new SortSpec("lastName", null, NullOrderingBehavior.CUSTOM)), 10));
+    }
+
+    @Test // written customers are found (and no longer found) before they're merged into the index.
+    void test_onCustomerWrite_savesAndDeletes() throws SortingException {
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, new Customer(1L, "Zed", "Smith", "Wayback")));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, new Customer(7L, "Andy", "Zimmer", null)));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.DELETED, new Customer(3L, "Carl", "Jones", "Ansible")));
+
+        assertEquals(List.of(2L, 4L, 5L, 7L), ids(index.complete("an", List.of(), 10)));
+        assertEquals(List.of(1L), ids(index.complete("zed", List.of(), 10)));
+        assertEquals(List.of(7L, 5L), ids(index.complete("an", List.of(new SortSpec("lastName", SortDirection.DESCENDING, NullOrderingBehavior.NULLS_LAST)), 2)));
+    }
+
+    @Test // enough writes are merged into the index's arrays, with the same results as before.
+    void test_onCustomerWrite_mergesWrites() throws SortingException {
+        for (long id = 7; id < 2007; ++id) {
+            loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, new Customer(id, "Andy", "Zimmer", null)));
+        }
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.DELETED, new Customer(3L, "Carl", "Jones", "Ansible")));
+
+        assertEquals(List.of(1L, 2L, 4L, 5L, 7L), ids(index.complete("an", List.of(), 5)));
+        assertEquals(2000, index.complete("zim", List.of(), 10_000).size());
+        assertEquals(List.of(2L, 5L), ids(index.complete("an", List.of(new SortSpec("lastName", null, null)), 2)));
+    }
+
+    @Test // ties on the sort specs are in id order, whether the tied customers are indexed or written.
+    void test_onCustomerWrite_tiesInIdOrder() throws SortingException {
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, new Customer(3L, "Carl", "Annis", "Ansible")));
+
+        assertEquals(List.of(3L, 5L), ids(index.complete("ann", List.of(new SortSpec("lastName", null, null)), 2)));
+        assertEquals(List.of(2L, 3L, 5L), ids(index.complete("an", List.of(new SortSpec("lastName", SortDirection.ASCENDING, NullOrderingBehavior.NULLS_LAST)), 3)));
+    }
+
+    private static List<Long> ids(List<Customer> customers) {
+        return customers.stream().map(Customer::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,182 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Sort;
+
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+import com.mmontag.newrelic.filteringapp.repository.Keyset;
+
+// Every query is checked against the same query run by the database, which the store has to match exactly.
+@DataJpaTest
+public class CustomerColumnStoreTest {
+
+    @Autowired
+    CustomerRepository customers;
+
+    private CustomerColumnStore store;
+
+    private CustomerReadModelLoader loader;
+
+    @BeforeEach
+    void setupStore() {
+        customers.saveAll(Arrays.asList(
+            new Customer("alice", "Zanzibar", "Middlish"),
+            new Customer("Don", null, "Middlish"),
+            new Customer("Tom", "thompson", "Wayback"),
+            new Customer("Edith", "Middleton", null),
+            new Customer("judy", "Clarkson", "EarlyMiddle"),
+            new Customer("Émile", "zoë", "middlish"),
+            new Customer("Ömer", "Straße", "Wayback"),
+            new Customer("al", "STRASSE", "Early"),
+            new Customer("ALICE", "", "Wayback")
+        ));
+
+        store = new CustomerColumnStore();
+        loader = new CustomerReadModelLoader();
+        loader.customers = customers;
+        loader.ordinals = store.ordinals = new CustomerOrdinals();
+        loader.readModels = List.of(store);
+        store.enabled = true;
+        loader.rebuild();
+    }
+
+    @Test
+    void test_findAllOrdered_matchesDatabase() {
+        assertTrue(store.isReady());
+
+        for (var sort : sorts()) {
+            for (var limit : Arrays.asList(null, 0, 1, 4, 100)) {
+                assertEquals(ids(customers.findAllOrdered(sort, limit)), ids(store.findAllOrdered(sort, null, limit)), sort + " limit=" + limit);
+            }
+        }
+    }
+
+    @Test
+    void test_findAllOrdered_keysetPaginationMatchesDatabase() {
+        for (var sort : sorts()) {
+            var expected = ids(customers.findAllOrdered(sort, null));
+            var output = new ArrayList<Long>();
+            Keyset after = null;
+            List<Customer> page;
+
+            do {
+                page = store.findAllOrdered(sort, after, 2);
+                output.addAll(ids(page));
+                after = page.isEmpty() ? null : Keyset.of(page.get(page.size() - 1), sort);
+            } while (page.size() == 2);
+
+            assertEquals(expected, output, sort.toString());
+        }
+    }
+
+    @Test
+    void test_streamAllOrdered_matchesDatabase() {
+        for (var sort : sorts()) {
+            for (var fetchSize : List.of(1, 4, 100)) {
+                assertEquals(ids(customers.findAllOrdered(sort, null)), ids(store.streamAllOrdered(sort, fetchSize).collect(Collectors.toList())), sort + " fetchSize=" + fetchSize);
+            }
+        }
+    }
+
+    @Test // a rebuild reassigns row numbers, so a stream still being consumed can't carry on with the ones it sorted.
+    void test_streamAllOrdered_failsAfterRebuild() {
+        var iterator = store.streamAllOrdered(Sort.unsorted(), 1).iterator();
+        var first = iterator.next();
+        loader.rebuild();
+
+        assertEquals(customers.findAllOrdered(Sort.unsorted(), null).get(0).getId(), first.getId());
+        assertThrows(IllegalStateException.class, iterator::next);
+    }
+
+    @Test
+    void test_findByNameContainingOrdered_matchesDatabase() {
+        for (var needle : List.of("al", "SON", "ö", "", "ss", "STRASS", "mIdD", "ZO", "ß", "aliced")) {
+            var expected = ids(customers.findByNameContainingOrdered(needle, Sort.unsorted(), null, null));
+            assertEquals(expected, ids(store.findByNameContainingOrdered(needle, Sort.unsorted(), null, null)), needle);
+
+            var output = new ArrayList<Long>();
+            Keyset after = null;
+            List<Customer> page;
+
+            do {
+                page = store.findByNameContainingOrdered(needle, Sort.unsorted(), after, 1);
+                output.addAll(ids(page));
+                after = page.isEmpty() ? null : Keyset.of(page.get(0), Sort.unsorted());
+            } while (!page.isEmpty());
+
+            assertEquals(expected, output, needle);
+        }
+    }
+
+    @Test
+    void test_findByCompanyNameOrdered_matchesDatabase() {
+        for (var companyName : List.of("Middlish", "middlish", "Wayback", "Nowhere")) {
+            for (var sort : sorts()) {
+                assertEquals(ids(customers.findByCompanyNameOrdered(companyName, sort, null, null)), ids(store.findByCompanyNameOrdered(companyName, sort, null, null)), companyName + " " + sort);
+            }
+        }
+    }
+
+    @Test
+    void test_writesAreApplied() {
+        var all = customers.findAllOrdered(Sort.unsorted(), null);
+        var updated = all.get(2);
+        updated.setFirstName("Zed");
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, updated));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.DELETED, all.get(0)));
+
+        var output = store.findAllById(List.of(updated.getId(), all.get(0).getId(), all.get(1).getId()));
+
+        assertEquals(List.of(updated.getId(), all.get(1).getId()), ids(output));
+        assertEquals("Zed", output.get(0).getFirstName());
+        assertEquals("Wayback", output.get(0).getCompanyName());
+        assertEquals(all.size() - 1, store.findAllOrdered(Sort.unsorted(), null, null).size());
+        assertTrue(store.heapBytes() > 0 && store.offHeapBytes() > 0);
+    }
+
+    @Test
+    void test_invalidArguments() {
+        var nativeNulls = Sort.by(Sort.Order.asc("lastName"));
+        var after = new Keyset(List.of("x"), 1L);
+
+        assertThrows(IllegalArgumentException.class, () -> store.findAllOrdered(Sort.by("middleName"), null, null));
+        assertThrows(IllegalArgumentException.class, () -> store.findAllOrdered(nativeNulls, after, null));
+        assertThrows(IllegalArgumentException.class, () -> store.findAllOrdered(Sort.unsorted(), after, null));
+    }
+
+    // Every field in every direction, null handling and case sensitivity, plus a composite sort and the unsorted order.
+    private static List<Sort> sorts() {
+        var sorts = new ArrayList<Sort>();
+        sorts.add(Sort.unsorted());
+        sorts.add(Sort.by(new Sort.Order(Sort.Direction.ASC, "companyName", Sort.NullHandling.NULLS_FIRST).ignoreCase(), new Sort.Order(Sort.Direction.DESC, "firstName", Sort.NullHandling.NULLS_LAST)));
+
+        for (var property : List.of("firstName", "lastName", "companyName")) {
+            for (var direction : Sort.Direction.values()) {
+                for (var nullHandling : List.of(Sort.NullHandling.NULLS_FIRST, Sort.NullHandling.NULLS_LAST)) {
+                    sorts.add(Sort.by(new Sort.Order(direction, property, nullHandling)));
+                    sorts.add(Sort.by(new Sort.Order(direction, property, nullHandling).ignoreCase()));
+                }
+            }
+        }
+
+        return sorts;
+    }
+
+    private static List<Long> ids(List<Customer> customers) {
+        return customers.stream().map(Customer::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,100 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+import com.mmontag.newrelic.filteringapp.model.CompanyCount;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class CustomerCompanyDictionaryTest {
+
+    @Mock
+    CustomerRepository _customerRepository;
+
+    @InjectMocks
+    CustomerReadModelLoader loader;
+
+    CustomerCompanyDictionary dictionary = new CustomerCompanyDictionary();
+
+    @BeforeEach
+    void buildDictionary() {
+        var _customers = new ArrayList<Customer>();
+        _customers.add(customer(1L, "Middlish"));
+        _customers.add(customer(2L, "Middlish"));
+        _customers.add(customer(3L, "Wayback"));
+        _customers.add(customer(4L, null));
+        _customers.add(customer(5L, "Middlish"));
+
+        when(_customerRepository.findAllOrdered(any(), isNull(), any())).thenReturn(_customers);
+
+        loader.ordinals = dictionary.ordinals = new CustomerOrdinals();
+        loader.readModels = List.of(dictionary);
+        dictionary.enabled = true;
+        loader.rebuild();
+    }
+
+    @Test
+    void test_companies_countsInNameOrder() {
+        assertTrue(dictionary.isReady());
+        assertEquals(List.of(new CompanyCount("Middlish", 3), new CompanyCount("Wayback", 1)), dictionary.companies());
+    }
+
+    @Test
+    void test_idsOf_afterIdAndLimit() {
+        assertEquals(List.of(1L, 2L, 5L), dictionary.idsOf("Middlish", null, null));
+        assertEquals(List.of(2L), dictionary.idsOf("Middlish", 1L, 1));
+        assertEquals(List.of(5L), dictionary.idsOf("Middlish", 3L, 2));
+        assertEquals(List.of(), dictionary.idsOf("middlish", null, null));
+        assertEquals(List.of(), dictionary.idsOf(null, null, null));
+    }
+
+    @Test // moving a company's last customer elsewhere drops the company from the listing.
+    void test_onCustomerWrite_updatesAndDeletes() {
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, customer(3L, "Early Co.")));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.DELETED, customer(2L, "Middlish")));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, customer(4L, "Early Co.")));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, customer(6L, "Middlish")));
+
+        assertEquals(List.of(new CompanyCount("Early Co.", 2), new CompanyCount("Middlish", 3)), dictionary.companies());
+        assertEquals(List.of(1L, 5L, 6L), dictionary.idsOf("Middlish", null, null));
+        assertEquals(List.of(), dictionary.idsOf("Wayback", null, null));
+    }
+
+    @Test // an insert with a smaller id than the newest encoded customer forces the unordered lookup path.
+    void test_onCustomerWrite_outOfOrderInsert() {
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, customer(8L, "Wayback")));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, customer(7L, "Wayback")));
+
+        assertEquals(List.of(7L, 8L), dictionary.idsOf("Wayback", 3L, 3));
+        assertEquals(List.of(3L), dictionary.idsOf("Wayback", null, 1));
+    }
+
+    private static Customer customer(long id, String companyName) {
+        var customer = mock(Customer.class);
+
+        when(customer.getId()).thenReturn(id);
+        when(customer.getCompanyName()).thenReturn(companyName);
+
+        return customer;
+    }
+}
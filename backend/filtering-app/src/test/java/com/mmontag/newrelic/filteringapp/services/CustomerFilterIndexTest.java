@@ -0,0 +1,125 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class CustomerFilterIndexTest {
+
+    private static final List<String> EXPRESSIONS = List.of(
+        "firstName=alice",
+        "firstName^=a",
+        "lastName~SON",
+        "company^=Early",
+        "company=middlish AND lastName~o",
+        "firstName^=a OR company=wayback",
+        "NOT lastName~son",
+        "NOT company=Middlish AND NOT firstName^=e",
+        "(firstName~o OR lastName~o) AND NOT (company=Wayback OR company^=Mid)",
+        "firstName=nobody OR NOT NOT lastName=nobody"
+    );
+
+    @Mock
+    CustomerRepository _customerRepository;
+
+    @InjectMocks
+    CustomerReadModelLoader loader;
+
+    CustomerFilterIndex filterIndex = new CustomerFilterIndex();
+
+    private final List<Customer> customers = new ArrayList<>();
+
+    @BeforeEach
+    void buildIndex() {
+        customers.add(new Customer(1L, "Alice", "Zanzibar", "Middlish"));
+        customers.add(new Customer(2L, "Don", null, "Middlish"));
+        customers.add(new Customer(3L, "Tom", "Thompson", "Wayback"));
+        customers.add(new Customer(4L, "Edith", "Middleton", null));
+        customers.add(new Customer(5L, "judy", "Clarkson", "EarlyMiddle"));
+        customers.add(new Customer(6L, "ALICE", "Anderson", "Early Co."));
+
+        when(_customerRepository.findAllOrdered(any(), isNull(), any())).thenReturn(customers);
+
+        loader.ordinals = filterIndex.ordinals = new CustomerOrdinals();
+        loader.readModels = List.of(filterIndex);
+        filterIndex.enabled = true;
+        loader.rebuild();
+    }
+
+    @Test // every expression matches exactly the customers which test true against it.
+    void test_search_matchesPredicate() {
+        assertTrue(filterIndex.isReady());
+        assertMatchesPredicate();
+    }
+
+    @Test
+    void test_search_afterIdAndLimit() {
+        var filter = CustomerFilter.parse("NOT company=Wayback");
+
+        assertEquals(List.of(1L, 2L), filterIndex.search(filter, null, 2));
+        assertEquals(List.of(4L, 5L), filterIndex.search(filter, 2L, 2));
+        assertEquals(List.of(6L), filterIndex.search(filter, 5L, null));
+        assertEquals(5, filterIndex.count(filter));
+    }
+
+    @Test
+    void test_onCustomerWrite_updatesAndDeletes() {
+        write(CustomerWriteEvent.Type.SAVED, new Customer(3L, "Tom", "Jones", "Middlish"));
+        write(CustomerWriteEvent.Type.DELETED, new Customer(5L, "judy", "Clarkson", "EarlyMiddle"));
+        write(CustomerWriteEvent.Type.SAVED, new Customer(7L, "Ron", "Ericson", null));
+
+        assertEquals(List.of(1L, 2L, 3L), filterIndex.search(CustomerFilter.parse("company=middlish"), null, null));
+        assertEquals(List.of(), filterIndex.search(CustomerFilter.parse("company^=earlym"), null, null));
+        assertMatchesPredicate();
+    }
+
+    @Test // an insert with a smaller id than the newest indexed customer forces the unordered search path.
+    void test_onCustomerWrite_outOfOrderInsert() {
+        write(CustomerWriteEvent.Type.SAVED, new Customer(9L, "Ron", "Smith", "Wayback"));
+        write(CustomerWriteEvent.Type.SAVED, new Customer(8L, "Jon", "Smith", "Wayback"));
+
+        assertEquals(List.of(8L, 9L), filterIndex.search(CustomerFilter.parse("company=Wayback"), 3L, 2));
+        assertMatchesPredicate();
+    }
+
+    private void write(CustomerWriteEvent.Type type, Customer customer) {
+        customers.removeIf(c -> c.getId() == customer.getId());
+
+        if (type == CustomerWriteEvent.Type.SAVED) {
+            customers.add(customer);
+        }
+
+        loader.onCustomerWrite(new CustomerWriteEvent(type, customer));
+    }
+
+    private void assertMatchesPredicate() {
+        for (var expression : EXPRESSIONS) {
+            var filter = CustomerFilter.parse(expression);
+            var expected = customers.stream().filter(filter).map(Customer::getId).sorted().collect(Collectors.toList());
+
+            assertEquals(expected, filterIndex.search(filter, null, null), expression);
+            assertEquals(expected.size(), filterIndex.count(filter), expression);
+        }
+    }
+}
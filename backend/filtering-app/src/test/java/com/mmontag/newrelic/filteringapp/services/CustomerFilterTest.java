@@ -0,0 +1,61 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter.And;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter.Condition;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter.Field;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter.Not;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter.Operator;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter.Or;
+
+public class CustomerFilterTest {
+
+    @Test // NOT binds tighter than AND, which binds tighter than OR.
+    void test_parse_precedence() {
+        var expected = new Or(List.of(
+            new And(List.of(new Condition(Field.FIRST_NAME, Operator.STARTS_WITH, "AB"), new Not(new Condition(Field.COMPANY_NAME, Operator.EQUALS, "TWIMM")))),
+            new Condition(Field.LAST_NAME, Operator.CONTAINS, "UCK")
+        ));
+
+        assertEquals(expected, CustomerFilter.parse("firstName^=Ab AND NOT company=Twimm OR lastName~uck"));
+        assertEquals(expected, CustomerFilter.parse("  (firstName ^= ab and not companyName = TWIMM)or(lastName~UCK) "));
+    }
+
+    @Test
+    void test_parse_parenthesesAndQuotes() {
+        var expected = new And(List.of(
+            new Condition(Field.COMPANY_NAME, Operator.EQUALS, "SKIBA \"INC\" (US)"),
+            new Or(List.of(new Condition(Field.FIRST_NAME, Operator.EQUALS, "ORLANDO"), new Condition(Field.FIRST_NAME, Operator.EQUALS, "NOTT")))
+        ));
+
+        assertEquals(expected, CustomerFilter.parse("company=\"Skiba \\\"Inc\\\" (US)\" AND (firstName=Orlando OR firstName=Nott)"));
+    }
+
+    @Test
+    void test_parse_malformed() {
+        for (var expression : List.of("", " ", "firstName", "firstName=", "age=3", "firstName^a", "firstName=a AND", "(firstName=a", "firstName=a)",
+                "firstName=\"a", "firstName=a lastName=b", "NOT", "(".repeat(40) + "firstName=a" + ")".repeat(40), "firstName=" + "a".repeat(2000))) {
+            assertThrows(IllegalArgumentException.class, () -> CustomerFilter.parse(expression), expression);
+        }
+    }
+
+    @Test // conditions ignore case, and never match missing values, even when negated twice.
+    void test_test() {
+        var customer = new Customer(1L, "Abigail", null, "Twimm");
+
+        assertTrue(CustomerFilter.parse("firstName^=aB AND company=twimm").test(customer));
+        assertTrue(CustomerFilter.parse("lastName~a OR firstName~GAIL").test(customer));
+        assertTrue(CustomerFilter.parse("NOT lastName~a").test(customer));
+        assertFalse(CustomerFilter.parse("NOT NOT lastName~a").test(customer));
+        assertFalse(CustomerFilter.parse("company^=Twimmer").test(customer));
+    }
+}
@@ -0,0 +1,46 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CustomerMetricsTest {
+
+    @Test
+    void test_inputSizeBucket() {
+        assertEquals("<1k", CustomerMetrics.inputSizeBucket(0));
+        assertEquals("<1k", CustomerMetrics.inputSizeBucket(999));
+        assertEquals("<10k", CustomerMetrics.inputSizeBucket(1_000));
+        assertEquals("<1M", CustomerMetrics.inputSizeBucket(999_999));
+        assertEquals(">=1M", CustomerMetrics.inputSizeBucket(10_000_000));
+    }
+
+    @Test // the same tags give the same timer, so that sorts accumulate in one series.
+    void test_sortTimer_tags() {
+        var registry = new SimpleMeterRegistry();
+        var metrics = new CustomerMetrics(registry);
+        var sortSpecs = List.of(new SortSpec("lastName", SortDirection.DESCENDING, null), new SortSpec("firstName", null, null));
+
+        metrics.sortTimer(sortSpecs, true, 50_000).record(1, TimeUnit.MILLISECONDS);
+        metrics.sortTimer(sortSpecs, true, 60_000).record(1, TimeUnit.MILLISECONDS);
+
+        var timer = registry.get("customer.sort")
+            .tag("field", "lastName,firstName")
+            .tag("direction", "descending,default")
+            .tag("algorithm", "top_k")
+            .tag("input_size", "<100k")
+            .timer();
+
+        assertEquals(2, timer.count());
+        assertSame(timer, metrics.sortTimer(sortSpecs, true, 70_000));
+    }
+}
@@ -0,0 +1,149 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CustomerQueryCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CustomerQueryCache cache;
+
+    private AtomicInteger queries;
+
+    @BeforeEach
+    void setupCache() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new CustomerQueryCache(true, 100, Duration.ofMinutes(1), Duration.ofSeconds(10), meterRegistry);
+        queries = new AtomicInteger();
+    }
+
+    @Test
+    void test_get_hitsUntilWrite() {
+        var response = cache.get(List.of("customers", 10), query(10));
+
+        assertSame(response, cache.get(List.of("customers", 10), query(10)));
+        assertEquals(1, queries.get());
+
+        cache.get(List.of("customers", 20), query(20));
+        assertEquals(2, queries.get());
+
+        cache.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, null));
+        cache.get(List.of("customers", 10), query(10));
+        assertEquals(3, queries.get());
+
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "customerQueries").tag("result", "hit").functionCounter().count());
+        assertEquals(3L, meterRegistry.get("customer.query.cache.load").timer().count());
+    }
+
+    @Test
+    void test_get_failuresAreNotCached() {
+        assertThrows(IllegalStateException.class, () -> cache.get(List.of("boom"), () -> { throw new IllegalStateException(); }));
+
+        cache.get(List.of("boom"), query(1));
+        cache.get(List.of("boom"), query(1));
+        assertEquals(1, queries.get());
+    }
+
+    @Test // the second miss waits for the first one's query, rather than running its own.
+    void test_get_concurrentMissesShareQuery() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var first = CompletableFuture.supplyAsync(() -> cache.get(List.of("shared"), () -> {
+            started.countDown();
+            await(release);
+            return query(5).get();
+        }));
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        var second = CompletableFuture.supplyAsync(() -> cache.get(List.of("shared"), query(5)));
+
+        release.countDown();
+        assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+        assertEquals(1, queries.get());
+    }
+
+    @Test // a query stuck in flight only holds up the other misses for the max wait, after which they run it themselves.
+    void test_get_waitIsBounded() throws Exception {
+        cache = new CustomerQueryCache(true, 100, Duration.ofMinutes(1), Duration.ofMillis(50), meterRegistry);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var first = CompletableFuture.supplyAsync(() -> cache.get(List.of("shared"), () -> {
+            started.countDown();
+            await(release);
+            return query(5).get();
+        }));
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        var second = cache.get(List.of("shared"), query(5));
+
+        release.countDown();
+        assertNotSame(first.get(10, TimeUnit.SECONDS), second);
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void test_canHold() {
+        assertTrue(cache.canHold(99));
+        assertFalse(cache.canHold(100));
+        assertTrue(cache.canHold(null));
+        assertFalse(new CustomerQueryCache(false, 100, Duration.ofMinutes(1), Duration.ofSeconds(10), meterRegistry).canHold(1));
+    }
+
+    @Test // responses are weighed by their number of customers, so a few big ones can push out many small ones.
+    void test_get_boundedByCustomerCount() {
+        for (int i = 0; i < 10; ++i) {
+            cache.get(List.of("big", i), query(60));
+        }
+
+        cache.cleanUp();
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void test_get_disabledIsPassThrough() {
+        cache = new CustomerQueryCache(false, 100, Duration.ofMinutes(1), Duration.ofSeconds(10), meterRegistry);
+
+        cache.get(List.of("customers"), query(1));
+        cache.get(List.of("customers"), query(1));
+        assertEquals(2, queries.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Supplier<ResponseEntity<List<Customer>>> query(int size) {
+        return () -> {
+            queries.incrementAndGet();
+            return ResponseEntity.ok(new ArrayList<>(Collections.nCopies(size, new Customer("first", "last", "company"))));
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+import com.mmontag.newrelic.filteringapp.model.CompanyCount;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class CustomerReadModelLoaderTest {
+
+    @Mock
+    CustomerRepository _customerRepository;
+
+    @InjectMocks
+    CustomerReadModelLoader loader;
+
+    CustomerOrdinals ordinals = new CustomerOrdinals();
+
+    CustomerSearchIndex searchIndex = new CustomerSearchIndex();
+
+    CustomerCompanyDictionary dictionary = new CustomerCompanyDictionary();
+
+    CustomerFilterIndex filterIndex = new CustomerFilterIndex();
+
+    @BeforeEach
+    void buildReadModels() {
+        when(_customerRepository.findAllOrdered(any(), isNull(), any())).thenReturn(List.of(
+            new Customer(1L, "Alice", "Zanzibar", "Middlish"),
+            new Customer(2L, "Don", "Anderson", "Middlish"),
+            new Customer(3L, "Tom", "Thompson", "Wayback")));
+
+        loader.ordinals = searchIndex.ordinals = dictionary.ordinals = filterIndex.ordinals = ordinals;
+        loader.readModels = List.of(searchIndex, dictionary, filterIndex);
+        searchIndex.enabled = true;
+        dictionary.enabled = true;
+        loader.rebuild();
+    }
+
+    @Test // the enabled read models are all built from one pass over the table; disabled ones aren't built.
+    void test_rebuild_onePassForAllReadModels() {
+        verify(_customerRepository, times(1)).findAllOrdered(any(), any(), any());
+
+        assertTrue(searchIndex.isReady());
+        assertTrue(dictionary.isReady());
+        assertFalse(filterIndex.isReady());
+        assertEquals(List.of(2L, 3L), searchIndex.search("on", EnumSet.allOf(CustomerSearchIndex.Field.class), null, null));
+        assertEquals(List.of(new CompanyCount("Middlish", 2), new CompanyCount("Wayback", 1)), dictionary.companies());
+    }
+
+    @Test // ids inserted out of order are still found (without the id order), and deleted ones get their ordinal back when saved.
+    void test_onCustomerWrite_ordinals() {
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, new Customer(9L, "Jon", "Smith", "Wayback")));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, new Customer(5L, "Ron", "Smith", "Wayback")));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.DELETED, new Customer(2L, "Don", "Anderson", "Middlish")));
+
+        assertFalse(ordinals.isIdOrdered());
+        assertEquals(List.of(1, 0, 3, 4), List.of(ordinals.ordinalOf(2L), ordinals.ordinalOf(1L), ordinals.ordinalOf(9L), ordinals.ordinalOf(5L)));
+        assertEquals(-1, ordinals.ordinalOf(7L));
+        assertFalse(ordinals.isLive(1));
+        assertEquals(List.of(3L, 5L, 9L), dictionary.idsOf("Wayback", null, null));
+
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, new Customer(2L, "Don", "Anderson", "Wayback")));
+
+        assertEquals(1, ordinals.ordinalOf(2L));
+        assertTrue(ordinals.isLive(1));
+        assertEquals(List.of(2L, 3L, 5L, 9L), dictionary.idsOf("Wayback", null, null));
+        assertEquals(List.of(2L, 3L, 5L), searchIndex.search("on", EnumSet.of(CustomerSearchIndex.Field.FIRST_NAME, CustomerSearchIndex.Field.LAST_NAME), null, 3));
+    }
+
+    @Test // writes during a rebuild's scan of the table don't wait for it, reads still see them, and the rebuilt read models keep them.
+    void test_rebuild_writesDuringScan() {
+        when(_customerRepository.findAllOrdered(any(), isNull(), any())).thenAnswer(invocation -> {
+            CompletableFuture.runAsync(() -> {
+                loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, new Customer(4L, "Jon", "Smith", "Wayback")));
+                loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.DELETED, new Customer(1L, "Alice", "Zanzibar", "Middlish")));
+            }).get(5, TimeUnit.SECONDS);
+
+            assertEquals(List.of(3L, 4L), dictionary.idsOf("Wayback", null, null));
+
+            // As read before the writes.
+            return List.of(
+                new Customer(1L, "Alice", "Zanzibar", "Middlish"),
+                new Customer(2L, "Don", "Anderson", "Middlish"),
+                new Customer(3L, "Tom", "Thompson", "Wayback"));
+        });
+
+        loader.rebuild();
+
+        assertEquals(2, ordinals.generation());
+        assertEquals(List.of(new CompanyCount("Middlish", 1), new CompanyCount("Wayback", 2)), dictionary.companies());
+        assertEquals(List.of(2L, 3L, 4L), searchIndex.search("on", EnumSet.allOf(CustomerSearchIndex.Field.class), null, null));
+
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.DELETED, new Customer(4L, "Jon", "Smith", "Wayback")));
+
+        assertEquals(List.of(3L), dictionary.idsOf("Wayback", null, null));
+    }
+}
@@ -0,0 +1,174 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CustomerRequestCoalescerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CustomerRequestCoalescer coalescer;
+
+    private AtomicInteger requests;
+
+    private CountDownLatch started;
+
+    private CountDownLatch release;
+
+    @BeforeEach
+    void setupCoalescer() {
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new CustomerRequestCoalescer(true, Duration.ofSeconds(10), meterRegistry);
+        requests = new AtomicInteger();
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @Test
+    void test_execute_identicalRequestsShareResponse() throws Exception {
+        var first = CompletableFuture.supplyAsync(() -> coalescer.execute(List.of("search", "ANN"), blockingRequest()));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        var second = CompletableFuture.supplyAsync(() -> coalescer.execute(List.of("search", "ANN"), request()));
+        awaitCoalesced(1);
+
+        release.countDown();
+        assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+        assertEquals(1.0, requestCount("executed"));
+        assertEquals(1.0, requestCount("coalesced"));
+    }
+
+    @Test // nothing is kept once a request completes: a later identical request runs again.
+    void test_execute_sequentialRequestsRun() {
+        assertNotSame(coalescer.execute(List.of("search", "ANN"), request()), coalescer.execute(List.of("search", "ANN"), request()));
+        assertEquals(2, requests.get());
+        assertEquals(0, meterRegistry.get("customer.request.coalescer.in_flight").gauge().value());
+    }
+
+    @Test
+    void test_execute_differentRequestsRun() throws Exception {
+        var first = CompletableFuture.supplyAsync(() -> coalescer.execute(List.of("search", "ANN"), blockingRequest()));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        coalescer.execute(List.of("search", "BOB"), request());
+
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        assertEquals(2, requests.get());
+        assertEquals(0.0, requestCount("coalesced"));
+    }
+
+    @Test
+    void test_execute_failuresAreSharedButNotKept() throws Exception {
+        var first = CompletableFuture.supplyAsync(() -> coalescer.execute(List.of("boom"), () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException();
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        var second = CompletableFuture.supplyAsync(() -> coalescer.execute(List.of("boom"), request()));
+        awaitCoalesced(1);
+
+        release.countDown();
+        assertTrue(assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS)).getCause() instanceof IllegalStateException);
+        assertTrue(assertThrows(ExecutionException.class, () -> second.get(10, TimeUnit.SECONDS)).getCause() instanceof IllegalStateException);
+
+        coalescer.execute(List.of("boom"), request());
+        assertEquals(1, requests.get());
+    }
+
+    @Test // requests arriving after a write don't get a response computed before it.
+    void test_execute_writeForgetsRequestsInFlight() throws Exception {
+        var first = CompletableFuture.supplyAsync(() -> coalescer.execute(List.of("search", "ANN"), blockingRequest()));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        coalescer.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, null));
+        var second = coalescer.execute(List.of("search", "ANN"), request());
+
+        release.countDown();
+        assertNotSame(first.get(10, TimeUnit.SECONDS), second);
+        assertEquals(2, requests.get());
+    }
+
+    @Test // a request stuck in flight only holds up those which join it for the max wait, after which they run themselves.
+    void test_execute_waitIsBounded() throws Exception {
+        coalescer = new CustomerRequestCoalescer(true, Duration.ofMillis(50), meterRegistry);
+        var first = CompletableFuture.supplyAsync(() -> coalescer.execute(List.of("search", "ANN"), blockingRequest()));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        var second = coalescer.execute(List.of("search", "ANN"), request());
+
+        release.countDown();
+        assertNotSame(first.get(10, TimeUnit.SECONDS), second);
+        assertEquals(2, requests.get());
+        assertEquals(1.0, requestCount("coalesced"));
+        assertEquals(1.0, meterRegistry.get("customer.request.coalescer.timeouts").counter().count());
+    }
+
+    @Test
+    void test_execute_disabledIsPassThrough() {
+        coalescer = new CustomerRequestCoalescer(false, Duration.ofSeconds(10), meterRegistry);
+
+        coalescer.execute(List.of("search", "ANN"), request());
+        coalescer.execute(List.of("search", "ANN"), request());
+        assertEquals(2, requests.get());
+    }
+
+    // Waits until the given number of requests have joined one in flight (and are therefore waiting for its response).
+    private void awaitCoalesced(int count) throws InterruptedException {
+        for (int i = 0; i < 1000 && requestCount("coalesced") < count; ++i) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(count, requestCount("coalesced"));
+    }
+
+    private double requestCount(String result) {
+        return meterRegistry.get("customer.request.coalescer.requests").tag("result", result).counter().count();
+    }
+
+    // A request which doesn't complete until the release latch is counted down.
+    private Supplier<Object> blockingRequest() {
+        return () -> {
+            started.countDown();
+            await(release);
+            return request().get();
+        };
+    }
+
+    private Supplier<Object> request() {
+        return () -> {
+            requests.incrementAndGet();
+            return new Object();
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
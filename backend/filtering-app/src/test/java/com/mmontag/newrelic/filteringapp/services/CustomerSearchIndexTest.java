@@ -0,0 +1,103 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import com.mmontag.newrelic.filteringapp.events.CustomerWriteEvent;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+import com.mmontag.newrelic.filteringapp.services.CustomerSearchIndex.Field;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class CustomerSearchIndexTest {
+
+    private static final EnumSet<Field> NAME_FIELDS = EnumSet.of(Field.FIRST_NAME, Field.LAST_NAME);
+
+    @Mock
+    CustomerRepository _customerRepository;
+
+    @InjectMocks
+    CustomerReadModelLoader loader;
+
+    CustomerSearchIndex searchIndex = new CustomerSearchIndex();
+
+    @BeforeEach
+    void buildIndex() {
+        var _customers = new ArrayList<Customer>();
+        _customers.add(customer(1L, "Alice", "Zanzibar", "Middlish"));
+        _customers.add(customer(2L, "Don", "Anderson", "Middlish"));
+        _customers.add(customer(3L, "Tom", "Thompson", "Wayback"));
+        _customers.add(customer(4L, "Edith", "Middleton", "Early Co."));
+        _customers.add(customer(5L, "Judy", "Clarkson", "EarlyMiddle"));
+
+        when(_customerRepository.findAllOrdered(any(), isNull(), any())).thenReturn(_customers);
+
+        loader.ordinals = searchIndex.ordinals = new CustomerOrdinals();
+        loader.readModels = List.of(searchIndex);
+        searchIndex.enabled = true;
+        loader.rebuild();
+    }
+
+    @Test
+    void test_search_unionsFieldsInIdOrder() {
+        assertTrue(searchIndex.isReady());
+        assertEquals(List.of(2L, 3L, 4L, 5L), searchIndex.search("ON", NAME_FIELDS, null, null));
+        assertEquals(List.of(1L, 2L, 5L), searchIndex.search("middl", EnumSet.of(Field.COMPANY_NAME), null, null));
+        assertEquals(List.of(1L, 4L), searchIndex.search("i", NAME_FIELDS, null, 2));
+    }
+
+    @Test
+    void test_search_afterIdAndLimit() {
+        assertEquals(List.of(3L, 4L), searchIndex.search("on", NAME_FIELDS, 2L, 2));
+        assertEquals(List.of(5L), searchIndex.search("on", NAME_FIELDS, 4L, 2));
+        assertEquals(List.of(), searchIndex.search("on", NAME_FIELDS, 5L, 2));
+    }
+
+    @Test
+    void test_onCustomerWrite_updatesAndDeletes() {
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, customer(3L, "Tom", "Jones", "Wayback")));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.DELETED, customer(5L, "Judy", "Clarkson", "EarlyMiddle")));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, customer(6L, "Jon", "Smith", "Wayback")));
+
+        assertEquals(List.of(2L, 3L, 4L, 6L), searchIndex.search("on", NAME_FIELDS, null, null));
+        assertEquals(List.of(), searchIndex.search("thomp", NAME_FIELDS, null, null));
+    }
+
+    @Test // an insert with a smaller id than the newest indexed customer forces the unordered search path.
+    void test_onCustomerWrite_outOfOrderInsert() {
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, customer(8L, "Ron", "Smith", null)));
+        loader.onCustomerWrite(new CustomerWriteEvent(CustomerWriteEvent.Type.SAVED, customer(7L, "Jon", "Smith", null)));
+
+        assertEquals(List.of(4L, 5L, 7L), searchIndex.search("on", NAME_FIELDS, 3L, 3));
+        assertEquals(List.of(8L), searchIndex.search("ron", NAME_FIELDS, null, null));
+    }
+
+    private static Customer customer(long id, String firstName, String lastName, String companyName) {
+        var customer = mock(Customer.class);
+
+        when(customer.getId()).thenReturn(id);
+        when(customer.getFirstName()).thenReturn(firstName);
+        when(customer.getLastName()).thenReturn(lastName);
+        when(customer.getCompanyName()).thenReturn(companyName);
+
+        return customer;
+    }
+}
@@ -0,0 +1,34 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class IntSorterTest {
+
+    @Test // compared by value / 8, so equal values must keep their input order; checked against the (stable) boxed sort.
+    void test_sort_matchesStableBoxedSort() {
+        var random = new Random(42);
+
+        for (var size : new int[] { 0, 1, 2, 15, 16, 17, 100, 1000, 4097 }) {
+            var values = IntStream.range(0, size).map(i -> random.nextInt(size * 2 + 1)).toArray();
+            var expected = Arrays.stream(values).boxed().sorted(Comparator.comparingInt(value -> value / 8)).mapToInt(Integer::intValue).toArray();
+
+            IntSorter.sort(values, 0, size, (value1, value2) -> Integer.compare(value1 / 8, value2 / 8));
+            assertArrayEquals(expected, values, "size=" + size);
+        }
+    }
+
+    @Test
+    void test_sort_range() {
+        var values = new int[] { 9, 5, 4, 3, 2, 1, 0 };
+
+        IntSorter.sort(values, 1, 6, Integer::compare);
+        assertArrayEquals(new int[] { 9, 1, 2, 3, 4, 5, 0 }, values);
+    }
+}
@@ -0,0 +1,92 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class NGramIndexTest {
+
+    private static final String ALPHABET = "abcAB_";
+
+    @Test // compares every lookup against a brute-force "contains, ignoring case" over the same values, through puts and removes.
+    void test_find_matchesBruteForce() {
+        var random = new Random(7);
+        var index = new NGramIndex();
+        var values = new ArrayList<String>();
+
+        for (int ordinal = 0; ordinal < 500; ++ordinal) {
+            var value = random.nextInt(20) == 0 ? null : randomString(random, 1 + random.nextInt(8));
+            values.add(value);
+            index.put(ordinal, value);
+        }
+
+        for (int i = 0; i < 200; ++i) {
+            var ordinal = random.nextInt(values.size());
+
+            if (random.nextBoolean()) {
+                index.remove(ordinal);
+                values.set(ordinal, null);
+            } else {
+                var value = randomString(random, 1 + random.nextInt(8));
+                index.put(ordinal, value);
+                values.set(ordinal, value);
+            }
+        }
+
+        for (int i = 0; i < 300; ++i) {
+            var needle = randomString(random, random.nextInt(6));
+            var from = random.nextInt(values.size());
+
+            assertEquals(bruteForce(values, needle, from), collect(index.find(needle, from, values.size())), needle);
+        }
+    }
+
+    @Test
+    void test_find_respectsOrdinalRange() {
+        var index = new NGramIndex();
+        index.put(0, "Anderson");
+        index.put(1, "Sanders");
+        index.put(2, "Sandy");
+        index.put(3, "Landers");
+
+        assertEquals(List.of(0, 1, 3), collect(index.find("ANDER", 0, 4)));
+        assertEquals(List.of(1), collect(index.find("ander", 1, 3)));
+        assertEquals(List.of(), collect(index.find("anderz", 0, 4)));
+    }
+
+    private static List<Integer> bruteForce(List<String> values, String needle, int from) {
+        var output = new ArrayList<Integer>();
+
+        for (int ordinal = from; ordinal < values.size(); ++ordinal) {
+            if (values.get(ordinal) != null && values.get(ordinal).toUpperCase().contains(needle.toUpperCase())) {
+                output.add(ordinal);
+            }
+        }
+
+        return output;
+    }
+
+    private static List<Integer> collect(NGramIndex.Matches matches) {
+        var output = new ArrayList<Integer>();
+
+        for (var ordinal = matches.next(); ordinal != NGramIndex.Matches.EXHAUSTED; ordinal = matches.next()) {
+            output.add(ordinal);
+        }
+
+        return output;
+    }
+
+    private static String randomString(Random random, int length) {
+        var output = new StringBuilder(length);
+
+        for (int i = 0; i < length; ++i) {
+            output.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+
+        return output.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.SortingService.NullOrderingBehavior;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+
+public class ParallelSorterTest {
+
+    private final ParallelSorter parallelSorter = new ParallelSorter(0, 4);
+
+    @AfterEach
+    void shutdown() {
+        parallelSorter.shutdown();
+    }
+
+    @Test // few distinct keys means lots of ties, so comparing against Arrays.sort also checks stability across merges.
+    void test_sort_matchesSequentialSort() {
+        var random = new Random(42);
+        var input = new int[100_000][];
+        for (int i = 0; i < input.length; ++i) {
+            input[i] = new int[] { random.nextInt(50), i };
+        }
+
+        Comparator<int[]> byKey = Comparator.comparingInt(pair -> pair[0]);
+        var expected = input.clone();
+        Arrays.sort(expected, byKey);
+
+        parallelSorter.sort(input, byKey);
+
+        assertArrayEquals(expected, input);
+    }
+
+    @Test
+    void test_sortingService_matchesSequentialSort() throws SortingException {
+        var random = new Random(7);
+        var input = new ArrayList<Customer>();
+        for (int i = 0; i < 50_000; ++i) {
+            input.add(i % 1000 == 0 ? null : new Customer(i % 777 == 0 ? null : "first" + random.nextInt(300), "last" + random.nextInt(300), "company" + i));
+        }
+
+        var sequential = new SortingService<Customer>()
+            .registerField("firstName", Customer::getFirstName)
+            .registerField("lastName", Comparator.comparing(Customer::getLastName));
+
+        var parallel = new SortingService<Customer>()
+            .registerField("firstName", Customer::getFirstName)
+            .registerField("lastName", Comparator.comparing(Customer::getLastName));
+        parallel.setParallelSorter(parallelSorter);
+
+        for (var field : new String[] { "firstName", "lastName" }) {
+            for (var nullBehavior : new NullOrderingBehavior[] { NullOrderingBehavior.NULLS_FIRST, NullOrderingBehavior.NULLS_LAST }) {
+                var expected = sequential.sort(new ArrayList<>(input), field, SortDirection.DESCENDING, nullBehavior);
+
+                assertEquals(expected, parallel.sort(new ArrayList<>(input), field, SortDirection.DESCENDING, nullBehavior), field + " " + nullBehavior);
+            }
+        }
+    }
+
+    @Test
+    void test_invalidPoolSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelSorter(0, 0));
+    }
+}
@@ -0,0 +1,142 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.SortingService.NullOrderingBehavior;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+
+public class SortedViewTest {
+
+    private SortingService<Customer> sortingService;
+
+    private List<Customer> customers;
+
+    private SortedView<Customer> view;
+
+    @BeforeEach
+    void setupView() throws SortingException {
+        sortingService = new SortingService<Customer>().registerField("firstName", Customer::getFirstName);
+        customers = createTestData(200, 7);
+
+        view = sortingService.createSortedView("firstName", SortedViewTest::idOf);
+        customers.forEach(customer -> view.put(ordinalOf(customer), customer));
+        view.build();
+    }
+
+    @Test // the input is in id order, so a stable sort breaks ties by ascending id, just like the view.
+    void test_first_matchesSort() throws SortingException {
+        for (var direction : SortDirection.values()) {
+            for (var nullBehavior : List.of(NullOrderingBehavior.NULLS_FIRST, NullOrderingBehavior.NULLS_LAST)) {
+                var expected = ids(sortingService.sort(new ArrayList<>(customers), "firstName", direction, nullBehavior));
+
+                for (var n : List.of(0, 1, 13, 200, 500)) {
+                    assertEquals(expected.subList(0, Math.min(n, expected.size())), view.first(n, direction, nullBehavior, null, null), direction + " " + nullBehavior + " n=" + n);
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_first_pagesByCursor() throws SortingException {
+        for (var direction : SortDirection.values()) {
+            for (var nullBehavior : List.of(NullOrderingBehavior.NULLS_FIRST, NullOrderingBehavior.NULLS_LAST)) {
+                var expected = ids(sortingService.sort(new ArrayList<>(customers), "firstName", direction, nullBehavior));
+                var paged = new ArrayList<Long>();
+                var page = view.first(17, direction, nullBehavior, null, null);
+
+                while (!page.isEmpty()) {
+                    paged.addAll(page);
+                    var last = customers.get((int) (page.get(page.size() - 1) - 1));
+                    page = view.first(17, direction, nullBehavior, last.getFirstName(), last.getId());
+                }
+
+                assertEquals(expected, paged, direction + " " + nullBehavior);
+            }
+        }
+    }
+
+    @Test
+    void test_put_movesAndRemoves() throws SortingException {
+        var emptyBytes = sortingService.createSortedView("firstName", SortedViewTest::idOf).estimateMemoryBytes();
+        var moved = customers.get(42);
+        moved.setFirstName("aaa");
+        view.put(ordinalOf(moved), moved);
+        var nulled = customers.get(99);
+        nulled.setFirstName(null);
+        view.put(ordinalOf(nulled), nulled);
+        view.remove(7);
+        view.remove(7);
+        customers.remove(7);
+
+        assertEquals(199, view.size());
+        assertEquals(moved.getId(), view.first(1, SortDirection.ASCENDING, NullOrderingBehavior.NULLS_LAST, null, null).get(0));
+        assertEquals(ids(sortingService.sort(new ArrayList<>(customers), "firstName")), view.first(200, SortDirection.ASCENDING, NullOrderingBehavior.NULLS_LAST, null, null));
+        assertEquals(ids(sortingService.sort(new ArrayList<>(customers), "firstName", SortDirection.DESCENDING, NullOrderingBehavior.NULLS_FIRST)),
+            view.first(200, SortDirection.DESCENDING, NullOrderingBehavior.NULLS_FIRST, null, null));
+        assertTrue(view.estimateMemoryBytes() > emptyBytes);
+
+        view.clear();
+        assertEquals(0, view.size());
+        assertEquals(emptyBytes, view.estimateMemoryBytes());
+    }
+
+    @Test // until build(), puts are only recorded, so walks would miss them.
+    void test_first_requiresBuild() {
+        view.clear();
+        view.put(0, customers.get(0));
+
+        assertThrows(IllegalStateException.class, () -> view.first(5, SortDirection.ASCENDING, NullOrderingBehavior.NULLS_LAST, null, null));
+
+        view.build();
+        assertEquals(List.of(1L), view.first(5, SortDirection.ASCENDING, NullOrderingBehavior.NULLS_LAST, null, null));
+    }
+
+    @Test
+    void test_invalidArguments() {
+        sortingService.registerField("lastName", (c1, c2) -> c1.getLastName().compareTo(c2.getLastName()));
+
+        assertThrows(SortingException.class, () -> sortingService.createSortedView("lastName", SortedViewTest::idOf));
+        assertThrows(SortingException.class, () -> sortingService.createSortedView("companyName", SortedViewTest::idOf));
+        assertThrows(IllegalArgumentException.class, () -> view.first(5, SortDirection.ASCENDING, NullOrderingBehavior.CUSTOM, null, null));
+    }
+
+    // The test data's ordinals are its ids, less one.
+    private static long idOf(int ordinal) {
+        return ordinal + 1L;
+    }
+
+    private static int ordinalOf(Customer customer) {
+        return (int) (customer.getId() - 1);
+    }
+
+    private static List<Long> ids(List<Customer> customers) {
+        return customers.stream().map(Customer::getId).collect(Collectors.toList());
+    }
+
+    // Customers with ids 1..size, few distinct first names (lots of ties), and every tenth first name null.
+    private static List<Customer> createTestData(int size, int distinctKeys) {
+        var random = new Random(size);
+        var output = new ArrayList<Customer>(size);
+
+        for (int i = 0; i < size; ++i) {
+            var customer = new Customer(i % 10 == 3 ? null : "first" + random.nextInt(distinctKeys), "last" + i, "company" + i);
+            ReflectionTestUtils.setField(customer, "id", i + 1L);
+            output.add(customer);
+        }
+
+        return output;
+    }
+}
@@ -0,0 +1,156 @@
+package com.mmontag.newrelic.filteringapp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.mmontag.newrelic.filteringapp.exception.SortingException;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
+
+public class SortingServiceTest {
+
+    private SortingService<Customer> sortingService;
+
+    @BeforeEach
+    void setupSortingService() {
+        sortingService = new SortingService<>();
+        sortingService.registerField("firstName", Customer::getFirstName);
+        sortingService.registerField("lastName", Customer::getLastName, SortDirection.DESCENDING);
+    }
+
+    @Test // with few distinct keys there are lots of ties, so this also checks that top-K is as stable as the full sort.
+    void test_sortTopK_matchesFullSort() throws SortingException {
+        var input = createTestData(200, 7);
+
+        for (var field : List.of("firstName", "lastName")) {
+            for (var direction : new SortDirection[] { null, SortDirection.ASCENDING, SortDirection.DESCENDING }) {
+                var expected = sortingService.sort(new ArrayList<>(input), field, direction);
+
+                for (var k : List.of(0, 1, 5, 50, 199, 200, 500)) {
+                    var output = sortingService.sortTopK(input, field, k, direction);
+
+                    assertEquals(expected.subList(0, Math.min(k, expected.size())), output, field + " " + direction + " k=" + k);
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_sortTopK_leavesInputUntouched() throws SortingException {
+        var input = createTestData(50, 10);
+        var copy = new ArrayList<>(input);
+
+        sortingService.sortTopK(input, "firstName", 10);
+
+        assertEquals(copy, input);
+    }
+
+    @Test
+    void test_sortTopK_nonRandomAccessInput() throws SortingException {
+        var input = new LinkedList<>(createTestData(100, 20));
+        var expected = sortingService.sort(new ArrayList<>(input), "firstName");
+
+        assertEquals(expected.subList(0, 10), sortingService.sortTopK(input, "firstName", 10));
+    }
+
+    @Test
+    void test_sortTopK_invalidArguments() {
+        var input = createTestData(10, 5);
+
+        assertThrows(IllegalArgumentException.class, () -> sortingService.sortTopK(input, "firstName", -1));
+        assertThrows(SortingException.class, () -> sortingService.sortTopK(input, "companyName", 3));
+    }
+
+    @Test
+    void test_sort_isInPlace() throws SortingException {
+        var input = createTestData(20, 5);
+
+        var output = sortingService.sort(input, "firstName");
+
+        assertSame(input, output);
+        for (int i = 1; i < output.size(); ++i) {
+            assertTrue(output.get(i - 1).getFirstName().compareTo(output.get(i).getFirstName()) <= 0);
+        }
+    }
+
+    @Test // fields registered by key extractor take the decorate-sort-undecorate path; it must order exactly like the comparator.
+    void test_sort_keyExtractorMatchesComparator() throws SortingException {
+        var input = createTestData(300, 11);
+        var comparatorService = new SortingService<Customer>().registerField("firstName", Comparator.comparing(Customer::getFirstName));
+
+        for (var direction : SortDirection.values()) {
+            var expected = comparatorService.sort(new ArrayList<>(input), "firstName", direction);
+
+            assertEquals(expected, sortingService.sort(new ArrayList<>(input), "firstName", direction), direction.toString());
+            assertEquals(expected, sortingService.sort(new LinkedList<>(input), "firstName", direction), direction.toString());
+        }
+    }
+
+    @Test
+    void test_sort_nullKeysFollowNullBehavior() throws SortingException {
+        var input = createTestData(20, 5);
+        input.get(3).setFirstName(null);
+        input.get(11).setFirstName(null);
+        input.add(7, null);
+
+        var nullsLast = sortingService.sort(new ArrayList<>(input), "firstName", SortingService.NullOrderingBehavior.NULLS_LAST);
+        assertEquals(Arrays.asList(input.get(3), input.get(7), input.get(12)), nullsLast.subList(18, 21));
+
+        var nullsFirst = sortingService.sort(new ArrayList<>(input), "firstName", SortDirection.DESCENDING, SortingService.NullOrderingBehavior.NULLS_FIRST);
+        assertEquals(Arrays.asList(input.get(3), input.get(7), input.get(12)), nullsFirst.subList(0, 3));
+        assertEquals(nullsFirst.subList(0, 5), sortingService.sortTopK(input, "firstName", 5, SortDirection.DESCENDING, SortingService.NullOrderingBehavior.NULLS_FIRST));
+    }
+
+    @Test // one composite sort must order exactly like stable sorts by each key, least significant first.
+    void test_sort_compositeMatchesChainedSorts() throws SortingException {
+        var input = createTestData(300, 5);
+        sortingService.registerField("companyName", Comparator.comparing(Customer::getCompanyName));
+
+        var expected = sortingService.sort(new ArrayList<>(input), "firstName", SortDirection.ASCENDING);
+        sortingService.sort(expected, "lastName", SortDirection.DESCENDING);
+
+        var specs = List.of(new SortSpec("lastName", null, null), new SortSpec("firstName", SortDirection.ASCENDING, null));
+        assertEquals(expected, sortingService.sort(new ArrayList<>(input), specs));
+        assertEquals(expected.subList(0, 20), sortingService.sortTopK(input, specs, 20));
+
+        // Mixing key-extractor and comparator fields; the unique company names make the last key decide every remaining tie.
+        var mixed = List.of(new SortSpec("lastName", SortDirection.ASCENDING, null), new SortSpec("companyName", SortDirection.DESCENDING, null));
+        var expectedMixed = sortingService.sort(new ArrayList<>(input), "companyName", SortDirection.DESCENDING);
+        sortingService.sort(expectedMixed, "lastName", SortDirection.ASCENDING);
+
+        assertEquals(expectedMixed, sortingService.sort(new ArrayList<>(input), mixed));
+    }
+
+    @Test
+    void test_sort_compositeInvalidSpecs() {
+        var input = createTestData(10, 5);
+
+        assertThrows(SortingException.class, () -> sortingService.sort(input, List.of()));
+        assertThrows(SortingException.class, () -> sortingService.sort(input, List.of(new SortSpec("firstName", null, null), new SortSpec("companyName", null, null))));
+        assertThrows(SortingException.class, () -> sortingService.sort(input, List.of(new SortSpec("firstName", null, null), new SortSpec("firstName", SortDirection.DESCENDING, null))));
+    }
+
+    private static List<Customer> createTestData(int size, int distinctKeys) {
+        var random = new Random(size);
+        var output = new ArrayList<Customer>(size);
+
+        for (int i = 0; i < size; ++i) {
+            output.add(new Customer("first" + random.nextInt(distinctKeys), "last" + random.nextInt(distinctKeys), "company" + i));
+        }
+
+        return output;
+    }
+}
@@ -1,20 +1,37 @@
 package com.mmontag.newrelic.filteringapp.services.controllers.customer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -22,37 +39,105 @@ import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+
+import com.mmontag.newrelic.filteringapp.model.CompanyCount;
 import com.mmontag.newrelic.filteringapp.model.Customer;
 import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+import com.mmontag.newrelic.filteringapp.repository.Keyset;
+import com.mmontag.newrelic.filteringapp.services.CustomerAutocompleteIndex;
+import com.mmontag.newrelic.filteringapp.services.CustomerColumnStore;
+import com.mmontag.newrelic.filteringapp.services.CustomerCompanyDictionary;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilter;
+import com.mmontag.newrelic.filteringapp.services.CustomerFilterIndex;
+import com.mmontag.newrelic.filteringapp.services.CustomerMetrics;
+import com.mmontag.newrelic.filteringapp.services.CustomerQueryCache;
+import com.mmontag.newrelic.filteringapp.services.CustomerRequestCoalescer;
+import com.mmontag.newrelic.filteringapp.services.CustomerSearchIndex;
+import com.mmontag.newrelic.filteringapp.services.CustomerSortedViews;
+import com.mmontag.newrelic.filteringapp.services.CustomerSortingConfiguration;
 import com.mmontag.newrelic.filteringapp.services.SortingService;
+import com.mmontag.newrelic.filteringapp.services.SortingService.NullOrderingBehavior;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortDirection;
+import com.mmontag.newrelic.filteringapp.services.SortingService.SortSpec;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CustomerBinaryReader;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CustomerBinaryWriter;
+import com.mmontag.newrelic.filteringapp.services.controllers.util.CustomerJsonWriter;
+import com.mmontag.newrelic.filteringapp.util.DBLoadUtil;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @SpringBootTest
 @ExtendWith(MockitoExtension.class)
 @MockitoSettings(strictness = Strictness.LENIENT)
 public class CustomerControllerTest {
 
+    private static final Map<String, Function<Customer, String>> PROPERTY_GETTERS = Map.of(
+        "firstName", Customer::getFirstName,
+        "lastName", Customer::getLastName,
+        "companyName", Customer::getCompanyName
+    );
+
     @Mock
     CustomerRepository _customerRepository;
 
-    @Autowired
+    @Mock
+    CustomerSearchIndex _searchIndex;
+
+    @Mock
+    CustomerSortedViews _sortedViews;
+
+    @Mock
+    CustomerColumnStore _columnStore;
+
+    @Mock
+    CustomerCompanyDictionary _companyDictionary;
+
+    @Mock
+    CustomerFilterIndex _filterIndex;
+
+    @Mock
+    CustomerAutocompleteIndex _autocompleteIndex;
+
+    @Mock
+    DBLoadUtil _dbLoadUtil;
+
+    // A fresh one per test, since some tests register fields of their own.
     SortingService<Customer> sortingService;
 
+    @Autowired
+    ObjectMapper objectMapper;
+
     @InjectMocks
     CustomerController customerController;
 
     @BeforeEach
     void setupController() {
+        sortingService = CustomerSortingConfiguration.createCustomerSortingService();
         customerController.sortingService = sortingService;
-        customerController.setupSortingService();
+        customerController.sortParser = new CustomerSortParser();
+        customerController.sortParser.sortingService = sortingService;
+        customerController.queryCache = new CustomerQueryCache(false, 0, Duration.ZERO, Duration.ofSeconds(10), new SimpleMeterRegistry());
+        customerController.requestCoalescer = new CustomerRequestCoalescer(true, Duration.ofSeconds(10), new SimpleMeterRegistry());
+        customerController.metrics = new CustomerMetrics(new SimpleMeterRegistry());
+        customerController.objectMapper = objectMapper;
+        when(_dbLoadUtil.isLoaded()).thenReturn(true);
     }
 
     @Test
     void test_getCustomers_no_params() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, null, null);
+        var output = customerController.getCustomers(null, null, null, null, null, null).getBody();
         
         mockListsEqual(_customers, output);
     }
@@ -61,9 +146,9 @@ public class CustomerControllerTest {
     void test_getCustomers_null_firstName_null() {
         var _customers = createSortTestData();
 
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "firstName", null);
+        var output = customerController.getCustomers(null, "firstName", null, null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getFirstName));
 
@@ -73,9 +158,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_lastName_null() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "lastName", null);
+        var output = customerController.getCustomers(null, "lastName", null, null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getLastName));
 
@@ -85,9 +170,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_companyName_null() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "companyName", null);
+        var output = customerController.getCustomers(null, "companyName", null, null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getCompanyName));
 
@@ -97,9 +182,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_firstName_1() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "firstName", "1");
+        var output = customerController.getCustomers(null, "firstName", "1", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getFirstName));
         
@@ -109,9 +194,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_firstName_a() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "firstName", "a");
+        var output = customerController.getCustomers(null, "firstName", "a", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getFirstName));
 
@@ -121,9 +206,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_firstName_asc() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "firstName", "asc");
+        var output = customerController.getCustomers(null, "firstName", "asc", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getFirstName));
 
@@ -133,9 +218,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_firstName_ascending() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "firstName", "ascending");
+        var output = customerController.getCustomers(null, "firstName", "ascending", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getFirstName));
 
@@ -145,9 +230,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_firstName_minus1() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "firstName", "-1");
+        var output = customerController.getCustomers(null, "firstName", "-1", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getFirstName).reversed());
 
@@ -157,9 +242,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_firstName_d() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "firstName", "d");
+        var output = customerController.getCustomers(null, "firstName", "d", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getFirstName).reversed());
 
@@ -169,9 +254,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_firstName_desc() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "firstName", "desc");
+        var output = customerController.getCustomers(null, "firstName", "desc", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getFirstName).reversed());
 
@@ -181,9 +266,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_firstName_descending() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "firstName", "descending");
+        var output = customerController.getCustomers(null, "firstName", "descending", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getFirstName).reversed());
 
@@ -193,9 +278,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_lastName_ascending() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "lastName", "ascending");
+        var output = customerController.getCustomers(null, "lastName", "ascending", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getLastName));
       
@@ -205,9 +290,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_lastName_descending() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "lastName", "descending");
+        var output = customerController.getCustomers(null, "lastName", "descending", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getLastName).reversed());
       
@@ -217,9 +302,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_companyName_ascending() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "companyName", "ascending");
+        var output = customerController.getCustomers(null, "companyName", "ascending", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getCompanyName));
 
@@ -229,9 +314,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_null_companyName_descending() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(null, "companyName", "descending");
+        var output = customerController.getCustomers(null, "companyName", "descending", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getCompanyName).reversed());
 
@@ -241,9 +326,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_positiveValidIndex_companyName_descending() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(3, "companyName", "descending");
+        var output = customerController.getCustomers(3, "companyName", "descending", null, null, null).getBody();
         
         _customers.sort(Comparator.comparing(Customer::getCompanyName).reversed());
 
@@ -253,9 +338,9 @@ public class CustomerControllerTest {
     @Test
     void test_getCustomers_positiveValidIndex_firstName_ascending() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(2, "firstName", "ascending");
+        var output = customerController.getCustomers(2, "firstName", "ascending", null, null, null).getBody();
 
         _customers.sort(Comparator.comparing(Customer::getFirstName));
 
@@ -265,9 +350,9 @@ public class CustomerControllerTest {
     @Test // should return full-length list.
     void test_getCustomers_nonPositiveIndex_firstName_ascending() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(0, "firstName", "ascending");
+        var output = customerController.getCustomers(0, "firstName", "ascending", null, null, null).getBody();
 
         _customers.sort(Comparator.comparing(Customer::getFirstName));
 
@@ -277,15 +362,133 @@ public class CustomerControllerTest {
     @Test // should return full-length list.
     void test_getCustomers_positiveOutOfBoundsIndex_firstName_ascending() {
         var _customers = createSortTestData();
-        when(_customerRepository.findAll()).thenReturn(_customers);
+        stubOrderedQueries(_customers);
 
-        var output = customerController.getCustomers(_customers.size() + 100, "firstName", "ascending");
+        var output = customerController.getCustomers(_customers.size() + 100, "firstName", "ascending", null, null, null).getBody();
 
         _customers.sort(Comparator.comparing(Customer::getFirstName));
 
         mockListsEqual(_customers, output);
     }
 
+    @Test
+    void test_getCustomers_pushesSortAndLimitToDatabase() {
+        var _customers = createSortTestData();
+        stubOrderedQueries(_customers);
+
+        customerController.getCustomers(3, "lastName", "desc", null, null, null).getBody();
+
+        var sortCaptor = ArgumentCaptor.forClass(Sort.class);
+        verify(_customerRepository).findAllOrdered(sortCaptor.capture(), eq(null), eq(3));
+        verify(_customerRepository, never()).findAll();
+
+        var order = sortCaptor.getValue().getOrderFor("lastName");
+        assertEquals(Sort.Direction.DESC, order.getDirection());
+        assertEquals(Sort.NullHandling.NULLS_LAST, order.getNullHandling());
+        assertTrue(order.isIgnoreCase());
+    }
+
+    @Test
+    void test_getCustomers_compositeSort_pushedToDatabase() {
+        var _customers = createSortTestData();
+        stubOrderedQueries(_customers);
+
+        var output = customerController.getCustomers(null, "companyName:asc, firstName:desc", null, null, null, null).getBody();
+
+        var sortCaptor = ArgumentCaptor.forClass(Sort.class);
+        verify(_customerRepository).findAllOrdered(sortCaptor.capture(), eq(null), eq(null));
+        verify(_customerRepository, never()).findAll();
+
+        var orders = sortCaptor.getValue().toList();
+        assertEquals(List.of("companyName", "firstName"), orders.stream().map(Sort.Order::getProperty).collect(Collectors.toList()));
+        assertEquals(List.of(Sort.Direction.ASC, Sort.Direction.DESC), orders.stream().map(Sort.Order::getDirection).collect(Collectors.toList()));
+
+        mockListsEqual(List.of(_customers.get(3), _customers.get(4), _customers.get(1), _customers.get(0), _customers.get(2)), output);
+    }
+
+    @Test // a single non-column field sends the whole composite sort to memory; fields without a direction use sortDirection.
+    void test_getCustomers_compositeSort_inMemory() {
+        var _customers = createSortTestData();
+        stubOrderedQueries(_customers);
+        sortingService.registerField("companyInitial", (Customer c) -> c.getCompanyName().substring(0, 1));
+
+        var output = customerController.getCustomers(3, "companyInitial:asc,unknownField,firstName,companyInitial:desc", "desc", null, null, null).getBody();
+
+        verify(_customerRepository).findAll();
+
+        mockListsEqual(List.of(_customers.get(4), _customers.get(3), _customers.get(1)), output);
+    }
+
+    @Test // fields without a backing column are sorted in memory.
+    void test_getCustomers_positiveValidIndex_nonColumnField_ascending() {
+        var _customers = createSortTestData();
+        stubOrderedQueries(_customers);
+        sortingService.registerField("fullName", (Customer c) -> c.getLastName() + ", " + c.getFirstName());
+
+        var output = customerController.getCustomers(4, "fullName", "ascending", null, null, null).getBody();
+
+        verify(_customerRepository).findAll();
+        _customers.sort(Comparator.comparing(Customer::getLastName));
+
+        mockListsEqual(_customers.subList(0, 4), output);
+    }
+
+    @Test // CUSTOM null-ordering can only be expressed by the comparator, so it can't be delegated to the database.
+    void test_getCustomers_customNullBehavior_sortsInMemory() {
+        var _customers = createSortTestData();
+        stubOrderedQueries(_customers);
+        sortingService.registerField("firstName", (Customer c) -> c.getFirstName().toUpperCase(), NullOrderingBehavior.CUSTOM);
+
+        var output = customerController.getCustomers(null, "firstName", "desc", null, null, null).getBody();
+
+        verify(_customerRepository).findAll();
+        _customers.sort(Comparator.comparing(Customer::getFirstName).reversed());
+
+        mockListsEqual(_customers, output);
+    }
+
+    @Test
+    void test_getCustomers_cursorPagination_lastName_ascending() {
+        var _customers = createSortTestData();
+        stubOrderedQueries(_customers);
+
+        var output = new ArrayList<Customer>();
+        var pages = 0;
+        String cursor = null;
+
+        do {
+            var response = customerController.getCustomers(2, "lastName", "asc", cursor, null, null);
+            output.addAll(response.getBody());
+            cursor = response.getHeaders().getFirst(CustomerController.NEXT_CURSOR_HEADER);
+            ++pages;
+        } while (cursor != null);
+
+        _customers.sort(Comparator.comparing(Customer::getLastName));
+
+        assertEquals(3, pages);
+        mockListsEqual(_customers, output);
+    }
+
+    @Test
+    void test_getCustomers_cursorFromDifferentSort() {
+        var _customers = createSortTestData();
+        stubOrderedQueries(_customers);
+
+        var cursor = customerController.getCustomers(2, "lastName", "asc", null, null, null).getHeaders().getFirst(CustomerController.NEXT_CURSOR_HEADER);
+        var thrown = assertThrows(ResponseStatusException.class, () -> customerController.getCustomers(2, "lastName", "desc", cursor, null, null));
+
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode());
+    }
+
+    @Test
+    void test_getCustomers_malformedCursor() {
+        stubOrderedQueries(createSortTestData());
+
+        var thrown = assertThrows(ResponseStatusException.class, () -> customerController.getCustomers(2, "firstName", null, "not-a-cursor", null, null));
+
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode());
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     void testSearchWithinNames() {
@@ -293,12 +496,327 @@ public class CustomerControllerTest {
         var testInput = "abc";
         when(_customerRepository.findByFirstNameContainsIgnoringCaseOrLastNameContainsIgnoringCase(anyString(), anyString())).thenReturn(_mockList);
 
-        var returned = customerController.searchWithinNames(testInput, null);
+        var returned = customerController.searchWithinNames(testInput, null, null).getBody();
         
         verify(_customerRepository).findByFirstNameContainsIgnoringCaseOrLastNameContainsIgnoringCase(eq(testInput), eq(testInput));
         assertTrue(returned == _mockList);
     }
     
+    @Test
+    void testSearchWithinNames_usesIndexWhenReady() {
+        var _customers = createSortTestData();
+        var testInput = "on";
+        when(_searchIndex.isReady()).thenReturn(true);
+        when(_searchIndex.search(eq(testInput), any(), eq(null), eq(2))).thenReturn(List.of(2L, 3L));
+        when(_customerRepository.findAllById(List.of(2L, 3L))).thenReturn(new ArrayList<>(List.of(_customers.get(2), _customers.get(1))));
+
+        var response = customerController.searchWithinNames(testInput, 2, null);
+
+        verify(_customerRepository, never()).findByFirstNameContainsIgnoringCaseOrLastNameContainsIgnoringCase(anyString(), anyString());
+        mockListsEqual(_customers.subList(1, 3), response.getBody());
+        assertTrue(response.getHeaders().containsKey(CustomerController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void test_getCustomers_usesSortedViewWhenReady() {
+        var _customers = createSortTestData();
+        var sortSpec = new SortSpec("lastName", SortDirection.DESCENDING, NullOrderingBehavior.NULLS_LAST);
+        when(_sortedViews.isReady("lastName")).thenReturn(true);
+        when(_sortedViews.first(sortSpec, 2, null, null)).thenReturn(List.of(1L, 3L));
+        when(_sortedViews.first(sortSpec, 2, "THOMPSON", 3L)).thenReturn(List.of(5L));
+        when(_customerRepository.findAllById(List.of(1L, 3L))).thenReturn(new ArrayList<>(List.of(_customers.get(2), _customers.get(0))));
+        when(_customerRepository.findAllById(List.of(5L))).thenReturn(new ArrayList<>(List.of(_customers.get(4))));
+
+        var firstPage = customerController.getCustomers(2, "lastName", "desc", null, null, null);
+        var secondPage = customerController.getCustomers(2, "lastName", "desc", firstPage.getHeaders().getFirst(CustomerController.NEXT_CURSOR_HEADER), null, null);
+
+        mockListsEqual(List.of(_customers.get(0), _customers.get(2)), firstPage.getBody());
+        mockListsEqual(List.of(_customers.get(4)), secondPage.getBody());
+        verify(_customerRepository, never()).findAllOrdered(any(), any(), any());
+    }
+
+    @Test
+    void test_getCustomers_readsFromColumnStoreWhenReady() {
+        var _customers = createSortTestData();
+        when(_columnStore.isReady()).thenReturn(true);
+        when(_columnStore.findAllOrdered(any(), any(), eq(2))).thenReturn(_customers.subList(0, 2));
+
+        var response = customerController.getCustomers(2, null, null, null, null, null);
+
+        mockListsEqual(_customers.subList(0, 2), response.getBody());
+        verify(_customerRepository, never()).findAllOrdered(any(), any(), any());
+    }
+
+    @Test // the database seeks sorted pages through its indexes, where the column store would rank every row.
+    void test_getCustomers_sortedPagesReadFromDatabase() {
+        var _customers = createSortTestData();
+        when(_columnStore.isReady()).thenReturn(true);
+        when(_customerRepository.findAllOrdered(any(), any(), eq(2))).thenReturn(_customers.subList(0, 2));
+
+        var response = customerController.getCustomers(2, "firstName", null, null, null, null);
+
+        mockListsEqual(_customers.subList(0, 2), response.getBody());
+        verify(_columnStore, never()).findAllOrdered(any(), any(), any());
+    }
+
+    @Test
+    void test_getCustomers_byCompany_usesDictionaryWhenReady() {
+        var _customers = createSortTestData();
+        when(_companyDictionary.isReady()).thenReturn(true);
+        when(_companyDictionary.idsOf("Wayback", null, 2)).thenReturn(List.of(1L, 3L));
+        when(_customerRepository.findAllById(List.of(1L, 3L))).thenReturn(new ArrayList<>(List.of(_customers.get(2), _customers.get(0))));
+
+        var response = customerController.getCustomers(2, null, null, null, "Wayback", null);
+
+        mockListsEqual(List.of(_customers.get(0), _customers.get(2)), response.getBody());
+        assertTrue(response.getHeaders().containsKey(CustomerController.NEXT_CURSOR_HEADER));
+        verify(_customerRepository, never()).findByCompanyNameOrdered(any(), any(), any(), any());
+    }
+
+    @Test
+    void test_getCustomers_byCompany_sortedByDatabase() {
+        var _customers = createSortTestData();
+        when(_companyDictionary.isReady()).thenReturn(true);
+        when(_customerRepository.findByCompanyNameOrdered(eq("Wayback"), any(), any(), eq(2))).thenReturn(_customers.subList(0, 2));
+
+        var response = customerController.getCustomers(2, "lastName", null, null, "Wayback", null);
+
+        var sortCaptor = ArgumentCaptor.forClass(Sort.class);
+        verify(_customerRepository).findByCompanyNameOrdered(eq("Wayback"), sortCaptor.capture(), eq(null), eq(2));
+        assertEquals("lastName", sortCaptor.getValue().iterator().next().getProperty());
+        mockListsEqual(_customers.subList(0, 2), response.getBody());
+        verify(_companyDictionary, never()).idsOf(any(), any(), any());
+    }
+
+    @Test
+    void test_getCustomers_filter_usesIndexWhenReady() {
+        var _customers = createSortTestData();
+        var filter = CustomerFilter.parse("firstName^=a OR company=Wayback");
+        when(_filterIndex.isReady()).thenReturn(true);
+        when(_filterIndex.search(filter, null, 2)).thenReturn(List.of(1L, 3L));
+        when(_customerRepository.findAllById(List.of(1L, 3L))).thenReturn(new ArrayList<>(List.of(_customers.get(2), _customers.get(0))));
+
+        var response = customerController.getCustomers(2, null, null, null, null, "firstName^=A or company=Wayback");
+
+        mockListsEqual(List.of(_customers.get(0), _customers.get(2)), response.getBody());
+        assertTrue(response.getHeaders().containsKey(CustomerController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test // only the matches are sorted.
+    void test_getCustomers_filter_sortsMatches() {
+        var _customers = createSortTestData();
+        when(_filterIndex.isReady()).thenReturn(true);
+        when(_filterIndex.search(any(), eq(null), eq(null))).thenReturn(List.of(1L, 3L, 5L));
+        when(_customerRepository.findAllById(List.of(1L, 3L, 5L))).thenReturn(new ArrayList<>(List.of(_customers.get(0), _customers.get(2), _customers.get(4))));
+
+        var output = customerController.getCustomers(2, "lastName", "desc", null, null, "lastName~o").getBody();
+
+        var expected = new ArrayList<>(List.of(_customers.get(0), _customers.get(2), _customers.get(4)));
+        expected.sort(Comparator.comparing(Customer::getLastName).reversed());
+        mockListsEqual(expected.subList(0, 2), output);
+        verify(_customerRepository, never()).findAllOrdered(any(), any(), any());
+    }
+
+    @Test
+    void test_getCustomers_filter_scansUntilIndexReady() {
+        var _customers = List.of(new Customer(1L, "Alice", "Zanzibar", "Middlish"), new Customer(2L, "Don", "Anderson", "Wayback"), new Customer(3L, "Al", "Smith", "Wayback"));
+        when(_customerRepository.findAllOrdered(any(), any(), any())).thenReturn(_customers);
+
+        var response = customerController.getCustomers(1, null, null, null, null, "firstName^=al");
+        var nextPage = customerController.getCustomers(1, null, null, response.getHeaders().getFirst(CustomerController.NEXT_CURSOR_HEADER), null, "firstName^=al");
+
+        assertEquals(List.of(_customers.get(0)), response.getBody());
+        assertEquals(List.of(_customers.get(2)), nextPage.getBody());
+        verify(_filterIndex, never()).search(any(), any(), any());
+    }
+
+    @Test
+    void test_getCustomers_filter_badRequests() {
+        for (var filter : List.of("firstName", "nickname=Al", "(firstName=Al")) {
+            var thrown = assertThrows(ResponseStatusException.class, () -> customerController.getCustomers(null, null, null, null, null, filter));
+            assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode(), filter);
+        }
+
+        var combined = assertThrows(ResponseStatusException.class, () -> customerController.getCustomers(null, null, null, null, "Wayback", "firstName=Al"));
+        var sortedWithCursor = assertThrows(ResponseStatusException.class, () -> customerController.getCustomers(2, "lastName", null, "abc", null, "firstName=Al"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, combined.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, sortedWithCursor.getStatusCode());
+    }
+
+    @Test
+    void test_getCompanies() {
+        var _companies = List.of(new CompanyCount("Early Co.", 2), new CompanyCount("Wayback", 1));
+        when(_customerRepository.countByCompanyName()).thenReturn(_companies);
+
+        assertEquals(_companies, customerController.getCompanies().getBody());
+
+        when(_companyDictionary.isReady()).thenReturn(true);
+        when(_companyDictionary.companies()).thenReturn(_companies.subList(1, 2));
+
+        assertEquals(_companies.subList(1, 2), customerController.getCompanies().getBody());
+        verify(_customerRepository, times(1)).countByCompanyName();
+    }
+
+    @Test
+    void test_autocomplete() throws Exception {
+        var _customers = createSortTestData();
+        var sortSpecs = customerController.sortParser.parse("lastName", "desc");
+        when(_autocompleteIndex.isReady()).thenReturn(true);
+        when(_autocompleteIndex.complete("an", List.of(), 10)).thenReturn(_customers.subList(0, 2));
+        when(_autocompleteIndex.complete("an", sortSpecs, 100)).thenReturn(_customers.subList(1, 2));
+
+        assertEquals(_customers.subList(0, 2), customerController.autocomplete("an", null, null, null).getBody());
+        assertEquals(_customers.subList(1, 2), customerController.autocomplete("an", 500, "lastName", "desc").getBody());
+        verifyNoInteractions(_customerRepository);
+    }
+
+    @Test
+    void test_autocomplete_badRequestsAndUnavailable() {
+        var blank = assertThrows(ResponseStatusException.class, () -> customerController.autocomplete(" ", null, null, null));
+        var notReady = assertThrows(ResponseStatusException.class, () -> customerController.autocomplete("an", null, null, null));
+
+        assertEquals(HttpStatus.BAD_REQUEST, blank.getStatusCode());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, notReady.getStatusCode());
+    }
+
+    @Test
+    void test_getCustomers_unavailableWhileLoading() {
+        stubOrderedQueries(createSortTestData());
+        when(_dbLoadUtil.isLoaded()).thenReturn(false);
+
+        var thrown = assertThrows(ResponseStatusException.class, () -> customerController.getCustomers(2, "firstName", null, null, null, null));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, thrown.getStatusCode());
+        verifyNoInteractions(_customerRepository);
+    }
+
+    @Test
+    void test_getCustomers_partialResultsWhileLoading() {
+        var _customers = createSortTestData();
+        stubOrderedQueries(_customers);
+        when(_dbLoadUtil.isLoaded()).thenReturn(false);
+        customerController.servePartialResults = true;
+
+        var response = customerController.getCustomers(2, "firstName", null, null, null, null);
+
+        mockListsEqual(_customers.subList(0, 2), response.getBody());
+        assertEquals("true", response.getHeaders().getFirst(CustomerController.PARTIAL_RESULTS_HEADER));
+        assertTrue(response.getHeaders().containsKey(CustomerController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test // equivalent requests (same fields, directions spelled differently, non-positive limits) share one cache entry.
+    void test_getCustomers_cachedUntilWrite() {
+        var _customers = createSortTestData();
+        stubOrderedQueries(_customers);
+        customerController.queryCache = new CustomerQueryCache(true, 1000, Duration.ofMinutes(1), Duration.ofSeconds(10), new SimpleMeterRegistry());
+
+        var first = customerController.getCustomers(0, "lastName", "desc", null, null, null);
+        var second = customerController.getCustomers(-1, "lastName:descending, lastName", null, null, null, null);
+
+        assertEquals(first, second);
+        verify(_customerRepository, times(1)).findAllOrdered(any(), any(), any());
+
+        customerController.queryCache.invalidateAll();
+        customerController.getCustomers(null, "lastName", "d", null, null, null);
+
+        verify(_customerRepository, times(2)).findAllOrdered(any(), any(), any());
+    }
+
+    @Test // pages which couldn't fit in the cache don't go through it (identical requests in flight are coalesced instead).
+    void test_getCustomers_pagesTooBigForCacheAreNotCached() {
+        stubOrderedQueries(createSortTestData());
+        customerController.queryCache = new CustomerQueryCache(true, 10, Duration.ofMinutes(1), Duration.ofSeconds(10), new SimpleMeterRegistry());
+
+        customerController.getCustomers(10, "lastName", "desc", null, null, null);
+        customerController.getCustomers(10, "lastName", "desc", null, null, null);
+
+        verify(_customerRepository, times(2)).findAllOrdered(any(), any(), any());
+        assertEquals(0, customerController.queryCache.size());
+    }
+
+    @Test // the streamed body is exactly what serializing the whole list would have produced.
+    void test_streamCustomers() throws IOException {
+        var _customers = List.of(new Customer(1L, "Alice", "Zanzibar", "Middlish"), new Customer(2L, "Don", null, "Wayback"));
+        var closed = new AtomicBoolean();
+        when(_customerRepository.streamAllOrdered(any(), anyInt())).thenReturn(_customers.stream().onClose(() -> closed.set(true)));
+
+        var response = customerController.streamCustomers("lastName", "desc", null);
+
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertEquals(objectMapper.writeValueAsString(_customers), write(response));
+        assertTrue(closed.get());
+
+        var sortCaptor = ArgumentCaptor.forClass(Sort.class);
+        verify(_customerRepository).streamAllOrdered(sortCaptor.capture(), anyInt());
+        assertEquals(Sort.Direction.DESC, sortCaptor.getValue().getOrderFor("lastName").getDirection());
+        verify(_customerRepository, never()).findAllOrdered(any(), any(), any());
+    }
+
+    @Test
+    void test_streamCustomers_ndjson() throws IOException {
+        var _customers = List.of(new Customer(1L, "Alice", "Zanzibar", "Middlish"), new Customer(2L, "Don", null, "Wayback"));
+        when(_customerRepository.streamAllOrdered(any(), anyInt())).thenAnswer(invocation -> _customers.stream());
+
+        var response = customerController.streamCustomers(null, null, "application/json;q=0.5, application/x-ndjson");
+
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        assertEquals(objectMapper.writeValueAsString(_customers.get(0)) + "\n" + objectMapper.writeValueAsString(_customers.get(1)) + "\n", write(response));
+        assertEquals(MediaType.APPLICATION_JSON, customerController.streamCustomers(null, null, "*/*").getHeaders().getContentType());
+    }
+
+    @Test // with a mapper configured to write customers differently, streamed JSON is written by the mapper itself.
+    void test_streamCustomers_customObjectMapper() throws IOException {
+        // The application's own mapper writes customers as the CustomerJsonWriter does.
+        assertTrue(CustomerJsonWriter.writesLike(objectMapper));
+
+        var _customers = List.of(new Customer(1L, "Alice", "Zanzibar", "Middlish"), new Customer(2L, "Don", null, "Wayback"));
+        when(_customerRepository.streamAllOrdered(any(), anyInt())).thenAnswer(invocation -> _customers.stream());
+        var snakeCase = new ObjectMapper().setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
+        customerController.objectMapper = snakeCase;
+
+        assertEquals(snakeCase.writeValueAsString(_customers), write(customerController.streamCustomers(null, null, null)));
+        assertEquals(snakeCase.writeValueAsString(_customers.get(0)) + "\n" + snakeCase.writeValueAsString(_customers.get(1)) + "\n",
+            write(customerController.streamCustomers(null, null, MediaType.APPLICATION_NDJSON_VALUE)));
+    }
+
+    @Test
+    void test_streamCustomers_binary() throws IOException {
+        var _customers = List.of(new Customer(1L, "Alice", "Zanzibar", "Middlish"), new Customer(2L, "Don", null, "Wayback"));
+        when(_customerRepository.streamAllOrdered(any(), anyInt())).thenAnswer(invocation -> _customers.stream());
+
+        var response = customerController.streamCustomers(null, null, "application/json;q=0.9, application/x-customer-binary");
+        var output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+
+        assertEquals(CustomerBinaryWriter.MEDIA_TYPE, response.getHeaders().getContentType());
+        assertEquals(objectMapper.writeValueAsString(_customers), objectMapper.writeValueAsString(CustomerBinaryReader.readAll(new ByteArrayInputStream(output.toByteArray()))));
+    }
+
+    @Test // by specificity, then quality; wildcards and unmatched or malformed headers get the first offered type.
+    void test_preferredType() {
+        var offered = List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON, CustomerBinaryWriter.MEDIA_TYPE);
+
+        assertEquals(MediaType.APPLICATION_JSON, CustomerController.preferredType(null, offered));
+        assertEquals(MediaType.APPLICATION_JSON, CustomerController.preferredType("*/*", offered));
+        assertEquals(MediaType.APPLICATION_JSON, CustomerController.preferredType("text/html", offered));
+        assertEquals(MediaType.APPLICATION_JSON, CustomerController.preferredType("not a type", offered));
+        assertEquals(MediaType.APPLICATION_JSON, CustomerController.preferredType("application/x-customer-binary;q=0, */*", offered));
+        assertEquals(CustomerBinaryWriter.MEDIA_TYPE, CustomerController.preferredType("application/x-customer-binary, */*", offered));
+        assertEquals(CustomerBinaryWriter.MEDIA_TYPE, CustomerController.preferredType("application/json;q=0.5, application/x-customer-binary", offered));
+        assertEquals(MediaType.APPLICATION_NDJSON, CustomerController.preferredType("application/x-ndjson, application/x-customer-binary;q=0.8", offered));
+    }
+
+    @Test
+    void test_streamCustomers_unavailableWhileLoading() {
+        when(_dbLoadUtil.isLoaded()).thenReturn(false);
+
+        var thrown = assertThrows(ResponseStatusException.class, () -> customerController.streamCustomers(null, null, null));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, thrown.getStatusCode());
+        verifyNoInteractions(_customerRepository);
+    }
+
     private List<Customer> createSortTestData() {
         var _customers = new ArrayList<Customer>();
 
@@ -342,6 +860,43 @@ public class CustomerControllerTest {
         return _customers;
     }
 
+    // Stubs the repository's query methods, with findAllOrdered behaving like the database would: ordering by the requested
+    // properties (honoring direction, case and null-handling), breaking ties by id, seeking past the keyset and applying the limit.
+    private void stubOrderedQueries(List<Customer> _customers) {
+        when(_customerRepository.findAll()).thenReturn(_customers);
+        when(_customerRepository.findAllOrdered(any(), any(), any())).thenAnswer(invocation -> {
+            Sort sort = invocation.getArgument(0);
+            Keyset after = invocation.getArgument(1);
+            Integer limit = invocation.getArgument(2);
+
+            Comparator<Customer> comparator = (c1, c2) -> 0;
+            for (var order : sort) {
+                var getter = PROPERTY_GETTERS.get(order.getProperty());
+                Comparator<String> valueComparator = order.isIgnoreCase() ? String.CASE_INSENSITIVE_ORDER : Comparator.naturalOrder();
+                valueComparator = order.isAscending() ? valueComparator : valueComparator.reversed();
+                valueComparator = order.getNullHandling() == Sort.NullHandling.NULLS_FIRST
+                    ? Comparator.nullsFirst(valueComparator)
+                    : Comparator.nullsLast(valueComparator);
+
+                comparator = comparator.thenComparing(getter, valueComparator);
+            }
+
+            var ordered = _customers.stream().sorted(comparator.thenComparing(Customer::getId)).collect(Collectors.toList());
+            var start = 0;
+            while (after != null && ordered.get(start++).getId() != after.getId());
+
+            return ordered.subList(start, ordered.size()).stream()
+                .limit(limit == null || limit <= 0 ? Long.MAX_VALUE : limit)
+                .collect(Collectors.toList());
+        });
+    }
+
+    private String write(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        var output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
     private void mockListsEqual(List<Customer> mockList1, List<Customer> mockList2) {
         assertTrue(mockList1.size() == mockList2.size());
         for (int i = 0; i < mockList1.size(); ++i) {
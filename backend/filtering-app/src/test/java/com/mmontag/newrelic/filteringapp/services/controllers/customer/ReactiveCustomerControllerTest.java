@@ -0,0 +1,228 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.customer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.config.EnableWebFlux;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.Keyset;
+import com.mmontag.newrelic.filteringapp.repository.ReactiveCustomerRepository;
+import com.mmontag.newrelic.filteringapp.services.CustomerSortingConfiguration;
+import com.mmontag.newrelic.filteringapp.util.DBLoadUtil;
+
+import reactor.core.publisher.Flux;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ReactiveCustomerControllerTest {
+
+    @Mock
+    ReactiveCustomerRepository _customers;
+
+    @Mock
+    DBLoadUtil _dbLoadUtil;
+
+    @InjectMocks
+    ReactiveCustomerController customerController;
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setupController() {
+        customerController.objectMapper = objectMapper;
+        customerController.sortingService = CustomerSortingConfiguration.createCustomerSortingService();
+        customerController.sortParser = new CustomerSortParser();
+        customerController.sortParser.sortingService = customerController.sortingService;
+        when(_dbLoadUtil.isLoaded()).thenReturn(true);
+    }
+
+    @Test
+    void test_getCustomers_fullPageReturnsNextCursor() {
+        var page = customers(3);
+        when(_customers.findAllOrdered(any(Sort.class), isNull(), eq(3))).thenReturn(Flux.fromIterable(page));
+
+        var response = customerController.getCustomers(3, "lastName", null, null, null, null).block();
+
+        assertEquals(page, response.getBody().collectList().block());
+        var cursor = response.getHeaders().getFirst(CustomerController.NEXT_CURSOR_HEADER);
+        assertNotNull(cursor);
+
+        // The cursor resumes after the page's last customer.
+        var next = customers(1);
+        when(_customers.findAllOrdered(any(Sort.class), eq(Keyset.of(page.get(2), sortByLastName())), eq(3))).thenReturn(Flux.fromIterable(next));
+
+        response = customerController.getCustomers(3, "lastName", null, cursor, null, null).block();
+
+        assertEquals(next, response.getBody().collectList().block());
+        assertNull(response.getHeaders().getFirst(CustomerController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void test_getCustomers_badCursorIsBadRequest() {
+        var e = assertThrows(ResponseStatusException.class, () -> customerController.getCustomers(3, "lastName", null, "not a cursor", null, null).block());
+
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        verifyNoInteractions(_customers);
+    }
+
+    @Test
+    void test_getCustomers_stillLoadingIsUnavailable() {
+        when(_dbLoadUtil.isLoaded()).thenReturn(false);
+        when(_customers.findAllOrdered(any(Sort.class), isNull(), eq(3))).thenReturn(Flux.empty());
+
+        var e = assertThrows(ResponseStatusException.class, () -> customerController.getCustomers(3, null, null, null, null, null).block());
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+    }
+
+    @Test // filtered requests are tested customer by customer, and paged, rather than streaming the whole table.
+    void test_getCustomers_filter() {
+        when(_customers.findAllOrdered(any(Sort.class), isNull(), isNull())).thenReturn(Flux.fromIterable(customers(5)));
+        var client = webTestClient();
+
+        var all = client.get().uri(uri -> uri.path("/customers").queryParam("filter", "{filter}").build("company=Company2 OR company=Company4 OR firstName=First5"))
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(Customer.class).returnResult();
+
+        assertEquals(List.of(2L, 4L, 5L), ids(all.getResponseBody()));
+
+        var page = client.get().uri(uri -> uri.path("/customers").queryParam("filter", "{filter}").queryParam("limit", 2).build("NOT company=Company1"))
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(Customer.class).returnResult();
+
+        assertEquals(List.of(2L, 3L), ids(page.getResponseBody()));
+
+        var cursor = page.getResponseHeaders().getFirst(CustomerController.NEXT_CURSOR_HEADER);
+        when(_customers.findAllOrdered(any(Sort.class), eq(Keyset.of(customers(3).get(2), Sort.unsorted())), isNull())).thenReturn(Flux.fromIterable(customers(4).subList(3, 4)));
+
+        var next = client.get().uri(uri -> uri.path("/customers").queryParam("filter", "{filter}").queryParam("limit", 2).queryParam("cursor", "{cursor}").build("NOT company=Company1", cursor))
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().doesNotExist(CustomerController.NEXT_CURSOR_HEADER)
+            .expectBodyList(Customer.class).returnResult();
+
+        assertEquals(List.of(4L), ids(next.getResponseBody()));
+    }
+
+    @Test
+    void test_getCustomers_badFilterIsBadRequest() {
+        var e = assertThrows(ResponseStatusException.class, () -> customerController.getCustomers(null, null, null, null, null, "firstName=").block());
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+
+        e = assertThrows(ResponseStatusException.class, () -> customerController.getCustomers(null, null, null, null, "Company1", "firstName=a").block());
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+
+        e = assertThrows(ResponseStatusException.class, () -> customerController.getCustomers(3, "lastName", null, "any", null, "firstName=a").block());
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+
+        verifyNoInteractions(_customers);
+    }
+
+    @Test
+    void test_streamCustomers_writesJsonArray() throws Exception {
+        var all = customers(2500);
+        when(_customers.findAllOrdered(any(Sort.class), isNull(), isNull())).thenReturn(Flux.fromIterable(all));
+
+        var response = customerController.streamCustomers(null, null, null, new MockServerHttpResponse()).block();
+
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertEquals(objectMapper.writeValueAsString(all), body(response));
+    }
+
+    @Test
+    void test_streamCustomers_writesEmptyJsonArray() {
+        when(_customers.findAllOrdered(any(Sort.class), isNull(), isNull())).thenReturn(Flux.empty());
+
+        var response = customerController.streamCustomers(null, null, MediaType.APPLICATION_JSON_VALUE, new MockServerHttpResponse()).block();
+
+        assertEquals("[]", body(response));
+    }
+
+    @Test
+    void test_streamCustomers_writesNdjson() throws Exception {
+        var all = customers(1500);
+        when(_customers.findAllOrdered(any(Sort.class), isNull(), isNull())).thenReturn(Flux.fromIterable(all));
+
+        var response = customerController.streamCustomers(null, null, MediaType.APPLICATION_NDJSON_VALUE, new MockServerHttpResponse()).block();
+
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+
+        var expected = new StringBuilder();
+        for (var customer : all) {
+            expected.append(objectMapper.writeValueAsString(customer)).append('\n');
+        }
+        assertEquals(expected.toString(), body(response));
+    }
+
+    // Routes requests through WebFlux's request mappings to the controller. Registered as a singleton, so that it keeps the mocks
+    // it's wired with, rather than being autowired.
+    private WebTestClient webTestClient() {
+        var context = new AnnotationConfigApplicationContext();
+        context.register(WebFluxConfiguration.class);
+        context.getBeanFactory().registerSingleton("customerController", customerController);
+        context.refresh();
+
+        return WebTestClient.bindToApplicationContext(context).build();
+    }
+
+    @EnableWebFlux
+    static class WebFluxConfiguration {}
+
+    private static Sort sortByLastName() {
+        return Sort.by(new Sort.Order(Sort.Direction.ASC, "lastName", Sort.NullHandling.NULLS_LAST).ignoreCase());
+    }
+
+    private static List<Customer> customers(int count) {
+        return LongStream.rangeClosed(1, count)
+            .mapToObj(id -> new Customer(id, "First" + id, "Last" + id, "Company" + id))
+            .collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<Customer> customers) {
+        return customers.stream().map(Customer::getId).collect(Collectors.toList());
+    }
+
+    private static String body(ResponseEntity<Flux<DataBuffer>> response) {
+        return DataBufferUtils.join(response.getBody())
+            .map(buffer -> {
+                var text = buffer.toString(StandardCharsets.UTF_8);
+                DataBufferUtils.release(buffer);
+                return text;
+            })
+            .block();
+    }
+}
@@ -0,0 +1,142 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+/**
+ * Reads customers written by the {@link CustomerBinaryWriter}, one at a time: a client-side decoder of the binary format, for the
+ * tests and benchmarks. A body which ends part way through a customer, or doesn't start with the format's header, is an
+ * IOException. Not thread-safe.
+ */
+public final class CustomerBinaryReader {
+
+    private final InputStream input;
+
+    private final byte[] buffer = new byte[CustomerWriter.BUFFER_SIZE];
+
+    private int position;
+
+    private int limit;
+
+    private long previousId;
+
+    public CustomerBinaryReader(InputStream input) throws IOException {
+        this.input = input;
+
+        var magic = new byte[CustomerBinaryWriter.MAGIC.length];
+        for (int i = 0; i < magic.length; ++i) {
+            magic[i] = readByte();
+        }
+
+        if (!Arrays.equals(magic, CustomerBinaryWriter.MAGIC)) {
+            throw new IOException("Not a customer binary body.");
+        }
+
+        var version = readByte();
+        if (version != CustomerBinaryWriter.VERSION) {
+            throw new IOException("Unsupported customer binary version: " + version);
+        }
+    }
+
+    /**
+     * Reads the whole body.
+     */
+    public static List<Customer> readAll(InputStream input) throws IOException {
+        var reader = new CustomerBinaryReader(input);
+        var customers = new ArrayList<Customer>();
+
+        for (var customer = reader.read(); customer != null; customer = reader.read()) {
+            customers.add(customer);
+        }
+
+        return customers;
+    }
+
+    /**
+     * The next customer, or null at the end of the body.
+     */
+    public Customer read() throws IOException {
+        if (position == limit && !fill()) {
+            return null;
+        }
+
+        var delta = readVarint();
+        var id = previousId + ((delta >>> 1) ^ -(delta & 1));
+        previousId = id;
+
+        return new Customer(id, readString(), readString(), readString());
+    }
+
+    private long readVarint() throws IOException {
+        var value = 0L;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            var b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint.");
+    }
+
+    private String readString() throws IOException {
+        var length = readVarint();
+
+        if (length == 0) {
+            return null;
+        }
+
+        if (--length > Integer.MAX_VALUE) {
+            throw new IOException("Malformed string length: " + length);
+        }
+
+        var bytes = (int) length;
+
+        if (bytes <= limit - position) {
+            var value = new String(buffer, position, bytes, StandardCharsets.UTF_8);
+            position += bytes;
+            return value;
+        }
+
+        // Longer than what's left in the buffer (or than the buffer itself).
+        var value = new byte[bytes];
+        var read = Math.min(bytes, limit - position);
+        System.arraycopy(buffer, position, value, 0, read);
+        position += read;
+
+        while (read < bytes) {
+            var n = input.read(value, read, bytes - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private byte readByte() throws IOException {
+        if (position == limit && !fill()) {
+            throw new EOFException();
+        }
+
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        var n = input.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+}
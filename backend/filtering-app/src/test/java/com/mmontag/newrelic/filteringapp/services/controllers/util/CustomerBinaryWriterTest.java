@@ -0,0 +1,97 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+public class CustomerBinaryWriterTest {
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test // non-ASCII characters (including ones outside the BMP), nulls, empty names, and ids of every size and in any order.
+    void test_writeBody_roundTrips() throws IOException {
+        var customers = List.of(
+            new Customer(0L, "Anna", "Smith", "Wayback"),
+            new Customer(Long.MAX_VALUE, "Quote \" and \\ backslash", "tab\tnewline\n", null),
+            new Customer(Long.MIN_VALUE, "Zo\u00EB", "\u00DCnal-\u00D8ster", "\u682A\u5F0F\u4F1A\u793E"),
+            new Customer(-42L, "emoji \uD83D\uDE00 pair", "", "\u007F\u0080\u07FF\u0800\uFFFF"),
+            new Customer(1234567890L, null, null, null));
+
+        assertEquals(objectMapper.writeValueAsString(customers), objectMapper.writeValueAsString(readAll(write(customers))));
+    }
+
+    @Test // customers (and names) much larger than the buffer are split across writes, and read back across reads.
+    void test_writeBody_spansBuffers() throws IOException {
+        var random = new Random(7L);
+        var customers = new ArrayList<Customer>();
+
+        for (long id = 1; id <= 5000; ++id) {
+            customers.add(new Customer(id, randomName(random, 12), randomName(random, 12), randomName(random, 12)));
+        }
+        customers.add(new Customer(5001L, randomName(random, CustomerWriter.BUFFER_SIZE * 2), "x", "\u20AC".repeat(CustomerWriter.BUFFER_SIZE)));
+
+        assertEquals(objectMapper.writeValueAsString(customers), objectMapper.writeValueAsString(readAll(write(customers))));
+    }
+
+    @Test // in id order, each id is a single byte; unpaired surrogates become '?', as String.getBytes would have them.
+    void test_writeBody_encoding() throws IOException {
+        var body = write(List.of(new Customer(1L, "Al", null, "\uD83D"), new Customer(2L, "", "\u00E9", "B")));
+
+        assertArrayEquals(new byte[] { 'C', 'U', 'S', 'T', 1, 2, 3, 'A', 'l', 0, 2, '?', 2, 1, 3, (byte) 0xC3, (byte) 0xA9, 2, 'B' }, body);
+        assertTrue(readAll(write(List.of())).isEmpty());
+    }
+
+    @Test
+    void test_read_rejectsMalformedBodies() throws IOException {
+        var body = write(List.of(new Customer(1L, "Anna", "Smith", "Wayback")));
+
+        assertThrows(EOFException.class, () -> readAll(Arrays.copyOf(body, body.length - 1)));
+        assertThrows(IOException.class, () -> readAll("[{\"id\":1}]".getBytes()));
+        assertThrows(EOFException.class, () -> readAll(new byte[0]));
+    }
+
+    private static byte[] write(List<Customer> customers) throws IOException {
+        var output = new ByteArrayOutputStream();
+        CustomerBinaryWriter.writeBody(output, customers);
+        return output.toByteArray();
+    }
+
+    private static List<Customer> readAll(byte[] body) throws IOException {
+        return CustomerBinaryReader.readAll(new ByteArrayInputStream(body));
+    }
+
+    // Mostly ASCII letters, with some characters of every UTF-8 length.
+    private static String randomName(Random random, int length) {
+        var alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ \u00E9\u00DF\u00D8\u20AC\u682A\uD83D\uDE00\"\\\n\u0001";
+        var name = new StringBuilder();
+
+        while (name.length() < length) {
+            var i = random.nextInt(alphabet.length());
+            // Keeps surrogate pairs together.
+            if (Character.isLowSurrogate(alphabet.charAt(i))) {
+                --i;
+            }
+            name.append(alphabet.charAt(i));
+            if (Character.isHighSurrogate(alphabet.charAt(i))) {
+                name.append(alphabet.charAt(i + 1));
+            }
+        }
+
+        return name.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+public class CustomerCompressionFilterTest {
+
+    static final byte[] BODY = "[{\"id\":1,\"firstName\":\"Anna\"}]".repeat(200).getBytes(StandardCharsets.UTF_8);
+
+    CustomerCompressionFilter filter = new CustomerCompressionFilter(List.of(MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE), 2048, 3, 6);
+
+    @Test
+    void test_preferredEncoding() {
+        assertNull(CustomerCompressionFilter.preferredEncoding(null));
+        assertNull(CustomerCompressionFilter.preferredEncoding("identity"));
+        assertNull(CustomerCompressionFilter.preferredEncoding("gzip;q=0, zstd;q=0"));
+        assertEquals("gzip", CustomerCompressionFilter.preferredEncoding("gzip, deflate, br"));
+        assertEquals("zstd", CustomerCompressionFilter.preferredEncoding("gzip, deflate, br, zstd"));
+        assertEquals("zstd", CustomerCompressionFilter.preferredEncoding("*"));
+        assertEquals("gzip", CustomerCompressionFilter.preferredEncoding("zstd;q=0.5, gzip"));
+        assertEquals("gzip", CustomerCompressionFilter.preferredEncoding("*;q=0.5, zstd;q=0, GZIP;q=0.1"));
+    }
+
+    @Test // each flush is decodable on its own; the end of the stream is written once the chain returns.
+    void test_doFilter_compresses() throws ServletException, IOException {
+        var response = filter("zstd", (request, servletResponse) -> {
+            servletResponse.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            servletResponse.getOutputStream().write(BODY, 0, 100);
+            servletResponse.flushBuffer();
+            servletResponse.getOutputStream().write(BODY, 100, BODY.length - 100);
+        });
+
+        assertEquals("zstd", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeader(HttpHeaders.VARY));
+        assertArrayEquals(BODY, new ZstdInputStream(new ByteArrayInputStream(response.getContentAsByteArray())).readAllBytes());
+
+        response = filter("gzip", (request, servletResponse) -> {
+            servletResponse.setContentType("application/x-ndjson;charset=UTF-8");
+            servletResponse.setContentLength(BODY.length);
+            servletResponse.getOutputStream().write(BODY);
+        });
+
+        assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertNull(response.getHeader(HttpHeaders.CONTENT_LENGTH));
+        assertArrayEquals(BODY, new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray())).readAllBytes());
+    }
+
+    @Test // other types, and bodies known to be small, are left alone, with their content length.
+    void test_doFilter_passesThrough() throws ServletException, IOException {
+        var response = filter("zstd", (request, servletResponse) -> {
+            servletResponse.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            servletResponse.setContentLength(BODY.length);
+            servletResponse.getOutputStream().write(BODY);
+        });
+
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(BODY.length, response.getContentLength());
+        assertArrayEquals(BODY, response.getContentAsByteArray());
+
+        response = filter("zstd, gzip", (request, servletResponse) -> {
+            servletResponse.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            servletResponse.setContentLength(2);
+            servletResponse.getOutputStream().write(BODY, 0, 2);
+        });
+
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(2, response.getContentLength());
+    }
+
+    private MockHttpServletResponse filter(String acceptEncoding, FilterChain chain) throws ServletException, IOException {
+        var request = new MockHttpServletRequest("GET", "/customers");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        var response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, chain);
+
+        return response;
+    }
+}
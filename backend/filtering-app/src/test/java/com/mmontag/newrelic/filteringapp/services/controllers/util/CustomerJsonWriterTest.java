@@ -0,0 +1,115 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+
+public class CustomerJsonWriterTest {
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test // escapes, non-ASCII characters (including ones outside the BMP), nulls and ids of every length, as Jackson writes them.
+    void test_writeArray_matchesJackson() throws IOException {
+        var customers = List.of(
+            new Customer(0L, "Anna", "Smith", "Wayback"),
+            new Customer(Long.MAX_VALUE, "Quote \" and \\ backslash", "tab\tnewline\ncr\rbell\u0007\u001F/", null),
+            new Customer(-42L, "Zo\u00EB", "\u00DCnal-\u00D8ster", "\u682A\u5F0F\u4F1A\u793E"),
+            new Customer(Long.MIN_VALUE, "emoji \uD83D\uDE00 pair", "", "\u007F\u0080\u07FF\u0800\uFFFF"),
+            new Customer(1234567890L, null, null, null));
+
+        assertArrayEquals(objectMapper.writeValueAsBytes(customers), write(customers));
+    }
+
+    @Test // customers (and names) much larger than the buffer are split across writes.
+    void test_writeArray_spansBuffers() throws IOException {
+        var random = new Random(7L);
+        var customers = new ArrayList<Customer>();
+
+        for (long id = 1; id <= 5000; ++id) {
+            customers.add(new Customer(id, randomName(random, 12), randomName(random, 12), randomName(random, 12)));
+        }
+        customers.add(new Customer(5001L, randomName(random, CustomerJsonWriter.BUFFER_SIZE * 2), "x", "\"".repeat(CustomerJsonWriter.BUFFER_SIZE)));
+
+        assertArrayEquals(objectMapper.writeValueAsBytes(customers), write(customers));
+    }
+
+    @Test
+    void test_write_emptyAndNdjson() throws IOException {
+        assertEquals("[]", new String(write(List.of()), StandardCharsets.UTF_8));
+
+        var output = new ByteArrayOutputStream();
+        var customers = List.of(new Customer(1L, "Anna", "Smith", "Wayback"), new Customer(2L, "Bob", null, "Middlish"));
+
+        try (var writer = new CustomerJsonWriter(output, true)) {
+            for (var customer : customers) {
+                writer.write(customer);
+            }
+        }
+
+        assertEquals(objectMapper.writeValueAsString(customers.get(0)) + "\n" + objectMapper.writeValueAsString(customers.get(1)) + "\n", output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test // Spring Boot's mapper writes customers as the default one does; other settings, mix-ins and modules change that.
+    void test_writesLike() {
+        assertTrue(CustomerJsonWriter.writesLike(objectMapper));
+        assertTrue(CustomerJsonWriter.writesLike(Jackson2ObjectMapperBuilder.json().build()));
+
+        assertFalse(CustomerJsonWriter.writesLike(new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)));
+        assertFalse(CustomerJsonWriter.writesLike(new ObjectMapper().setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)));
+        assertFalse(CustomerJsonWriter.writesLike(new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL)));
+        assertFalse(CustomerJsonWriter.writesLike(new ObjectMapper().enable(JsonGenerator.Feature.ESCAPE_NON_ASCII)));
+        assertFalse(CustomerJsonWriter.writesLike(new ObjectMapper().addMixIn(Customer.class, RenamedCompany.class)));
+        assertFalse(CustomerJsonWriter.writesLike(new ObjectMapper().registerModule(new SimpleModule().addSerializer(String.class, new ToStringSerializer() {
+            @Override
+            public void serialize(Object value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+                generator.writeString(value.toString().trim());
+            }
+        }))));
+    }
+
+    abstract static class RenamedCompany {
+
+        @JsonProperty("company")
+        abstract String getCompanyName();
+    }
+
+    private static byte[] write(List<Customer> customers) throws IOException {
+        var output = new ByteArrayOutputStream();
+        CustomerJsonWriter.writeArray(output, customers);
+        return output.toByteArray();
+    }
+
+    // Mostly ASCII letters, with some characters of every UTF-8 length and some which need escaping.
+    private static String randomName(Random random, int length) {
+        var alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ \u00E9\u00DF\u00D8\u20AC\u682A\"\\\n\u0001";
+        var name = new StringBuilder();
+
+        for (int i = 0; i < length; ++i) {
+            name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+
+        return name.toString();
+    }
+}
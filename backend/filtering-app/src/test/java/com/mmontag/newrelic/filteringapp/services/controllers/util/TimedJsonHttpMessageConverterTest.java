@@ -0,0 +1,45 @@
+package com.mmontag.newrelic.filteringapp.services.controllers.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.services.CustomerMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TimedJsonHttpMessageConverterTest {
+
+    static final List<Customer> CUSTOMERS = List.of(
+        new Customer(1L, "Anna", "Smith", "Wayback"),
+        new Customer(2L, "Zo\u00EB", null, "\u682A\u5F0F\u4F1A\u793E"));
+
+    @Test // lists of customers are written as the converter's ObjectMapper would write them, however it's configured.
+    void test_write_matchesObjectMapper() throws IOException {
+        for (var objectMapper : List.of(
+                new ObjectMapper(),
+                Jackson2ObjectMapperBuilder.json().build(),
+                new ObjectMapper().setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE),
+                new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL),
+                new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT))) {
+            var converter = new TimedJsonHttpMessageConverter(objectMapper, new CustomerMetrics(new SimpleMeterRegistry()));
+            var output = new MockHttpOutputMessage();
+
+            converter.write(CUSTOMERS, new ParameterizedTypeReference<List<Customer>>() {}.getType(), MediaType.APPLICATION_JSON, output);
+
+            assertArrayEquals(objectMapper.writeValueAsBytes(CUSTOMERS), output.getBodyAsBytes());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.mmontag.newrelic.filteringapp.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.mmontag.newrelic.filteringapp.model.Customer;
+import com.mmontag.newrelic.filteringapp.repository.CustomerRepository;
+
+@SpringBootTest(properties = "db-load-util.chunk_size=777")
+public class DBLoadUtilTest {
+
+    @Autowired
+    CustomerRepository customers;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    DBLoadUtil dbLoadUtil;
+
+    @Autowired
+    CustomerDataHealthIndicator healthIndicator;
+
+    @BeforeEach
+    void awaitLoad() throws InterruptedException {
+        for (var deadline = System.currentTimeMillis() + 30_000; !dbLoadUtil.isLoaded() && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test // 6000 lines don't divide into chunks of 777, so this also covers the final partial chunk.
+    void test_loadData_loadsEveryLine() {
+        assertTrue(dbLoadUtil.isLoaded());
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+        assertEquals(6000L, healthIndicator.health().getDetails().get("loadedRows"));
+
+        var ids = new HashSet<>(jdbcTemplate.queryForList("SELECT id FROM customers", Long.class));
+
+        assertEquals(6000, ids.size());
+
+        var first = customers.findById(1L).orElseThrow();
+        assertEquals("Clarinda", first.getFirstName());
+        assertEquals("Probey", first.getLastName());
+        assertEquals("Meemm", first.getCompanyName());
+
+        // Ids reserved by the loader must never be handed out again through JPA.
+        var saved = customers.save(new Customer("New", "Customer", "Co."));
+        assertFalse(ids.contains(saved.getId()));
+        customers.delete(saved);
+    }
+
+    @Test
+    void test_parseLine() {
+        assertArrayEquals(new String[] { "Clarinda", "Probey", "Meemm" }, DBLoadUtil.parseLine("Clarinda__Probey__Meemm"));
+        assertArrayEquals(new String[] { "", "Probey", "" }, DBLoadUtil.parseLine("__Probey__"));
+        assertArrayEquals(new String[] { "Mary_Ann", "O_Neil", "Co" }, DBLoadUtil.parseLine("Mary_Ann__O_Neil__Co"));
+        assertNull(DBLoadUtil.parseLine(""));
+        assertNull(DBLoadUtil.parseLine("Clarinda__Probey"));
+        assertNull(DBLoadUtil.parseLine("Clarinda__Probey__Meemm__Extra"));
+    }
+}